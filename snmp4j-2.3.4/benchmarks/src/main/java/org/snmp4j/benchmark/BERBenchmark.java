@@ -0,0 +1,107 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - BERBenchmark.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.snmp4j.PDU;
+import org.snmp4j.PDUCursor;
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.asn1.BEROutputStream;
+import org.snmp4j.asn1.BERReverseEncoder;
+import org.snmp4j.smi.VariableBindingBatch;
+
+/**
+ * Benchmarks the BER encoding and decoding of a GET response for the system
+ * group and of a GETBULK response on the ifTable.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class BERBenchmark {
+
+  /**
+   * The number of variable bindings of the PDU. Seven selects the GET
+   * response for the system group, larger values a GETBULK response.
+   */
+  @Param({"7", "50"})
+  public int size;
+
+  private PDU pdu;
+  private byte[] encoded;
+  private ByteBuffer buffer;
+  private BERReverseEncoder reverseEncoder;
+  private VariableBindingBatch batch;
+
+  @Setup
+  public void setup() throws IOException {
+    pdu = (size == 7) ? BenchmarkData.createGetResponse(new PDU()) :
+        BenchmarkData.createBulkResponse(new PDU(), size);
+    encoded = BenchmarkData.encode(pdu);
+    buffer = ByteBuffer.allocate(encoded.length);
+    reverseEncoder = new BERReverseEncoder(encoded.length);
+    batch = new VariableBindingBatch();
+  }
+
+  @Benchmark
+  public ByteBuffer encodeStream() throws IOException {
+    buffer.clear();
+    pdu.encodeBER(new BEROutputStream(buffer));
+    return buffer;
+  }
+
+  @Benchmark
+  public int encodeReverse() throws IOException {
+    reverseEncoder.reset();
+    pdu.encodeBER(reverseEncoder);
+    return reverseEncoder.length();
+  }
+
+  @Benchmark
+  public PDU decode() throws IOException {
+    PDU decoded = new PDU();
+    decoded.decodeBER(new BERInputStream(ByteBuffer.wrap(encoded)));
+    return decoded;
+  }
+
+  @Benchmark
+  public int decodeCursor() throws IOException {
+    PDUCursor cursor = PDUCursor.forPDU(ByteBuffer.wrap(encoded));
+    int length = 0;
+    while (cursor.nextVariableBinding()) {
+      length += cursor.getOIDLength();
+    }
+    return length;
+  }
+
+  @Benchmark
+  public VariableBindingBatch decodeBatch() throws IOException {
+    batch.clear();
+    PDUCursor.forPDU(ByteBuffer.wrap(encoded)).getVariableBindings(batch);
+    return batch;
+  }
+}
@@ -0,0 +1,169 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - BenchmarkData.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.io.IOException;
+
+import org.snmp4j.PDU;
+import org.snmp4j.asn1.BER;
+import org.snmp4j.asn1.BERReverseEncoder;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.*;
+
+/**
+ * Creates the representative PDUs used by the benchmarks.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+final class BenchmarkData {
+
+  static final OID IF_ENTRY = new OID("1.3.6.1.2.1.2.2.1");
+
+  private BenchmarkData() {
+  }
+
+  /**
+   * Creates a GET request for the system group.
+   * @param pdu
+   *    an empty PDU to fill.
+   * @return
+   *    <code>pdu</code>.
+   */
+  static <P extends PDU> P createGetRequest(P pdu) {
+    createGetResponse(pdu);
+    pdu.setType(PDU.GET);
+    for (VariableBinding vb : pdu.getVariableBindingList()) {
+      vb.setVariable(new Null());
+    }
+    return pdu;
+  }
+
+  /**
+   * Creates the response to a GET request for the system group.
+   * @param pdu
+   *    an empty PDU to fill.
+   * @return
+   *    <code>pdu</code>.
+   */
+  static <P extends PDU> P createGetResponse(P pdu) {
+    pdu.setType(PDU.RESPONSE);
+    pdu.setRequestID(new Integer32(1234567));
+    pdu.add(new VariableBinding(SnmpConstants.sysDescr,
+        new OctetString("SNMP4J benchmark agent running on a virtual machine")));
+    pdu.add(new VariableBinding(SnmpConstants.sysObjectID,
+                                new OID("1.3.6.1.4.1.4976.10.1.1")));
+    pdu.add(new VariableBinding(SnmpConstants.sysUpTime,
+                                new TimeTicks(123456789l)));
+    pdu.add(new VariableBinding(SnmpConstants.sysContact,
+                                new OctetString("noc@example.com")));
+    pdu.add(new VariableBinding(SnmpConstants.sysName,
+                                new OctetString("bench.example.com")));
+    pdu.add(new VariableBinding(SnmpConstants.sysLocation,
+                                new OctetString("Rack 42")));
+    pdu.add(new VariableBinding(SnmpConstants.sysServices, new Integer32(72)));
+    return pdu;
+  }
+
+  /**
+   * Creates the response to a GETBULK request on the ifTable with the given
+   * number of variable bindings.
+   * @param pdu
+   *    an empty PDU to fill.
+   * @param size
+   *    the number of variable bindings.
+   * @return
+   *    <code>pdu</code>.
+   */
+  static <P extends PDU> P createBulkResponse(P pdu, int size) {
+    pdu.setType(PDU.RESPONSE);
+    pdu.setRequestID(new Integer32(1234568));
+    for (int i=0; i<size; i++) {
+      int column = (i % 5);
+      int row = i / 5 + 1;
+      Variable value;
+      switch (column) {
+        case 0:
+          value = new OctetString("GigabitEthernet0/"+row);
+          column = 2;
+          break;
+        case 1:
+          value = new Integer32(6);
+          column = 3;
+          break;
+        case 2:
+          value = new Gauge32(1000000000l);
+          column = 5;
+          break;
+        case 3:
+          value = new Counter32(4000000000l - row);
+          column = 10;
+          break;
+        default:
+          value = new Counter32(row * 1000l);
+          column = 16;
+      }
+      pdu.add(new VariableBinding(new OID(IF_ENTRY.getValue(),
+                                          new int[] { column, row }), value));
+    }
+    return pdu;
+  }
+
+  /**
+   * Returns the BER encoding of the given PDU.
+   * @param pdu
+   *    a PDU.
+   * @return
+   *    the encoded PDU.
+   * @throws IOException
+   *    if the PDU cannot be encoded.
+   */
+  static byte[] encode(PDU pdu) throws IOException {
+    BERReverseEncoder encoder = new BERReverseEncoder();
+    pdu.encodeBER(encoder);
+    return encoder.toByteArray();
+  }
+
+  /**
+   * Returns the BER encoding of a community based SNMP message.
+   * @param version
+   *    the SNMP version, {@link SnmpConstants#version1} or
+   *    {@link SnmpConstants#version2c}.
+   * @param community
+   *    the community.
+   * @param pdu
+   *    the PDU.
+   * @return
+   *    the encoded message.
+   * @throws IOException
+   *    if the PDU cannot be encoded.
+   */
+  static byte[] encodeMessage(int version, OctetString community, PDU pdu)
+      throws IOException
+  {
+    BERReverseEncoder encoder = new BERReverseEncoder();
+    pdu.encodeBER(encoder);
+    encoder.encodeString(BER.OCTETSTRING, community.getValue());
+    encoder.encodeInteger(BER.INTEGER, version);
+    encoder.encodeHeader(BER.SEQUENCE, encoder.length());
+    return encoder.toByteArray();
+  }
+}
@@ -0,0 +1,152 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - LoopbackTransportMapping.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.transport.AbstractTransportMapping;
+
+/**
+ * The <code>LoopbackTransportMapping</code> delivers sent messages in memory
+ * to its peer. In contrast to {@link org.snmp4j.transport.DummyTransport},
+ * which polls its queue every 50ms, a listening loopback transport blocks on
+ * its queue and thus delivers messages without additional latency.
+ * <p>
+ * A loopback transport without a peer just records the last sent message.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+class LoopbackTransportMapping extends AbstractTransportMapping<UdpAddress> {
+
+  private static final byte[] STOP = new byte[0];
+
+  private final UdpAddress listenAddress;
+  private final BlockingQueue<byte[]> inbound =
+      new LinkedBlockingQueue<byte[]>();
+  private LoopbackTransportMapping peer;
+  private volatile byte[] lastMessage;
+  private Thread listenThread;
+
+  LoopbackTransportMapping(UdpAddress listenAddress) {
+    this.listenAddress = listenAddress;
+  }
+
+  /**
+   * Connects two loopback transports with each other.
+   * @param a
+   *    a loopback transport.
+   * @param b
+   *    another loopback transport.
+   */
+  static void connect(LoopbackTransportMapping a, LoopbackTransportMapping b) {
+    a.peer = b;
+    b.peer = a;
+  }
+
+  /**
+   * Returns the message most recently sent through this transport.
+   * @return
+   *    the last message or <code>null</code> if no message has been sent yet.
+   */
+  byte[] getLastMessage() {
+    return lastMessage;
+  }
+
+  @Override
+  public Class<? extends Address> getSupportedAddressClass() {
+    return UdpAddress.class;
+  }
+
+  @Override
+  public UdpAddress getListenAddress() {
+    return listenAddress;
+  }
+
+  @Override
+  public void sendMessage(UdpAddress address, byte[] message,
+                          TransportStateReference tmStateReference)
+      throws IOException
+  {
+    lastMessage = message;
+    if (peer != null) {
+      peer.inbound.add(message);
+    }
+  }
+
+  @Override
+  public synchronized void listen() throws IOException {
+    if (listenThread != null) {
+      return;
+    }
+    listenThread = new Thread(new Runnable() {
+      public void run() {
+        deliver();
+      }
+    }, "LoopbackTransportMapping_"+listenAddress);
+    listenThread.setDaemon(true);
+    listenThread.start();
+  }
+
+  private void deliver() {
+    try {
+      byte[] message;
+      while ((message = inbound.take()) != STOP) {
+        UdpAddress source = (peer != null) ? peer.listenAddress : listenAddress;
+        TransportStateReference stateReference =
+            new TransportStateReference(this, source, null,
+                                        SecurityLevel.undefined,
+                                        SecurityLevel.undefined,
+                                        false, null);
+        fireProcessMessage(source, ByteBuffer.wrap(message), stateReference);
+      }
+    }
+    catch (InterruptedException iex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (listenThread != null) {
+      inbound.add(STOP);
+      try {
+        listenThread.join();
+      }
+      catch (InterruptedException iex) {
+        Thread.currentThread().interrupt();
+      }
+      listenThread = null;
+    }
+  }
+
+  @Override
+  public synchronized boolean isListening() {
+    return (listenThread != null);
+  }
+}
@@ -0,0 +1,89 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - MessageDispatcherBenchmark.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.snmp4j.CommandResponder;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.mp.MPv1;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.transport.DummyTransport;
+
+/**
+ * Benchmarks {@link MessageDispatcherImpl#processMessage} end-to-end for a
+ * community based GET request received over a {@link DummyTransport}: message
+ * header and PDU decoding, dispatching to the message processing model, and
+ * delivery of the command responder event.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class MessageDispatcherBenchmark {
+
+  @Param({"v1", "v2c"})
+  public String version;
+
+  private MessageDispatcherImpl dispatcher;
+  private DummyTransport<UdpAddress> transport;
+  private UdpAddress sourceAddress;
+  private byte[] message;
+  private int processed;
+
+  @Setup
+  public void setup() throws IOException {
+    dispatcher = new MessageDispatcherImpl();
+    dispatcher.addMessageProcessingModel(new MPv1());
+    dispatcher.addMessageProcessingModel(new MPv2c());
+    dispatcher.addCommandResponder(new CommandResponder() {
+      public void processPdu(CommandResponderEvent event) {
+        processed += event.getPDU().size();
+        event.setProcessed(true);
+      }
+    });
+    sourceAddress = new UdpAddress("127.0.0.1/4967");
+    transport = new DummyTransport<UdpAddress>(new UdpAddress("127.0.0.1/161"));
+    boolean v1 = "v1".equals(version);
+    PDU pdu = BenchmarkData.createGetRequest(v1 ? new PDUv1() : new PDU());
+    message = BenchmarkData.encodeMessage(v1 ? SnmpConstants.version1 :
+                                          SnmpConstants.version2c,
+                                          new OctetString("public"), pdu);
+  }
+
+  @Benchmark
+  public int processMessage() {
+    dispatcher.processMessage(transport, sourceAddress,
+                              ByteBuffer.wrap(message), null);
+    return processed;
+  }
+}
@@ -0,0 +1,77 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - OIDBenchmark.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.snmp4j.smi.OID;
+
+/**
+ * Benchmarks the comparison and construction of instance OIDs of a table
+ * with a long common prefix.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class OIDBenchmark {
+
+  private OID a;
+  private OID b;
+  private OID prefix;
+  private int[] index;
+
+  @Setup
+  public void setup() {
+    a = new OID("1.3.6.1.4.1.4976.10.1.1.20.1.2.1.1.4.10.1.2.3");
+    b = new OID("1.3.6.1.4.1.4976.10.1.1.20.1.2.1.1.4.10.1.2.4");
+    prefix = new OID("1.3.6.1.4.1.4976.10.1.1.20.1.2.1");
+    index = new int[] { 1, 4, 10, 1, 2, 3 };
+  }
+
+  @Benchmark
+  public int compareTo() {
+    return a.compareTo(b);
+  }
+
+  @Benchmark
+  public boolean startsWith() {
+    return a.startsWith(prefix);
+  }
+
+  @Benchmark
+  public OID append() {
+    return new OID(prefix).append(new OID(index));
+  }
+
+  @Benchmark
+  public OID createFromPrefixAndIndex() {
+    return new OID(prefix.getValue(), index);
+  }
+
+  @Benchmark
+  public OID successor() {
+    return a.successor();
+  }
+}
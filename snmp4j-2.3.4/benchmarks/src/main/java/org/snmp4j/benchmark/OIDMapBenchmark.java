@@ -0,0 +1,110 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - OIDMapBenchmark.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.snmp4j.smi.OID;
+import org.snmp4j.util.OIDTrieMap;
+
+/**
+ * Compares the lookup of rows by exact match (GET) and by successor
+ * (GETNEXT) in a {@link TreeMap} and an {@link OIDTrieMap} with the row
+ * index OIDs of a table.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class OIDMapBenchmark {
+
+  @Param({"TreeMap", "OIDTrieMap"})
+  public String map;
+
+  @Param({"10000", "400000"})
+  public int size;
+
+  private NavigableMap<OID,Integer> rows;
+  private OID[] keys;
+  private OID[] misses;
+  private int next;
+
+  @Setup
+  public void setup() {
+    rows = ("TreeMap".equals(map)) ?
+        new TreeMap<OID,Integer>() : new OIDTrieMap<Integer>();
+    Random random = new Random(4976);
+    keys = new OID[size];
+    misses = new OID[size];
+    for (int i=0; i<size; i++) {
+      // IPv4 address index, like in the ipNetToPhysicalTable
+      int[] index = new int[] { 1, 4, 10, random.nextInt(256),
+                                random.nextInt(256), random.nextInt(256) };
+      keys[i] = new OID(index);
+      rows.put(keys[i], i);
+      index[5] = -1;
+      misses[i] = new OID(index);
+    }
+  }
+
+  private int nextIndex() {
+    if (++next >= size) {
+      next = 0;
+    }
+    return next;
+  }
+
+  @Benchmark
+  public Integer get() {
+    return rows.get(keys[nextIndex()]);
+  }
+
+  @Benchmark
+  public Map.Entry<OID,Integer> higherEntry() {
+    return rows.higherEntry(keys[nextIndex()]);
+  }
+
+  @Benchmark
+  public Map.Entry<OID,Integer> ceilingEntryMiss() {
+    return rows.ceilingEntry(misses[nextIndex()]);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(100)
+  public int iterate100() {
+    int sum = 0;
+    int n = 0;
+    for (Integer value : rows.tailMap(keys[nextIndex()], true).values()) {
+      sum += value;
+      if (++n >= 100) {
+        break;
+      }
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,162 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - SnmpRoundTripBenchmark.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.snmp4j.*;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.mp.StatusInformation;
+import org.snmp4j.security.*;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+
+/**
+ * Benchmarks synchronous GET requests through {@link Snmp} to a command
+ * responder in the same process. Request and response are exchanged in memory
+ * by {@link LoopbackTransportMapping}s, so the result covers the complete
+ * request processing of both sides, including request ID and timer
+ * management, but no network I/O.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class SnmpRoundTripBenchmark {
+
+  private static final OctetString USER = new OctetString("SHAAES");
+
+  /**
+   * The SNMP version: community based SNMPv2c or SNMPv3 with SHA
+   * authentication and AES encryption.
+   */
+  @Param({"v2c", "v3"})
+  public String version;
+
+  private Snmp generator;
+  private Snmp responder;
+  private Target target;
+  private PDU request;
+
+  @Setup
+  public void setup() throws IOException {
+    SecurityProtocols.getInstance().addDefaultProtocols();
+    UdpAddress generatorAddress = new UdpAddress("127.0.0.1/4967");
+    UdpAddress responderAddress = new UdpAddress("127.0.0.1/161");
+    LoopbackTransportMapping generatorTransport =
+        new LoopbackTransportMapping(generatorAddress);
+    LoopbackTransportMapping responderTransport =
+        new LoopbackTransportMapping(responderAddress);
+    LoopbackTransportMapping.connect(generatorTransport, responderTransport);
+
+    UsmUser user = new UsmUser(USER, AuthSHA.ID, new OctetString("_12345678_"),
+                               PrivAES128.ID, new OctetString("_0987654321_"));
+    USM generatorUSM = createUSM("generator", user);
+    USM responderUSM = createUSM("responder", user);
+    generator = new Snmp(createDispatcher(generatorUSM), generatorTransport);
+    responder = new Snmp(createDispatcher(responderUSM), responderTransport);
+    final List<? extends VariableBinding> values =
+        BenchmarkData.createGetResponse(new PDU()).getVariableBindingList();
+    responder.addCommandResponder(new CommandResponder() {
+      public void processPdu(CommandResponderEvent event) {
+        PDU response = event.getPDU();
+        response.setType(PDU.RESPONSE);
+        for (int i=0; i<values.size(); i++) {
+          response.set(i, values.get(i));
+        }
+        try {
+          event.getMessageDispatcher().returnResponsePdu(
+              event.getMessageProcessingModel(), event.getSecurityModel(),
+              event.getSecurityName(), event.getSecurityLevel(), response,
+              event.getMaxSizeResponsePDU(), event.getStateReference(),
+              new StatusInformation());
+        }
+        catch (MessageException mex) {
+          throw new IllegalStateException(mex);
+        }
+        event.setProcessed(true);
+      }
+    });
+    generator.listen();
+    responder.listen();
+
+    if ("v3".equals(version)) {
+      UserTarget userTarget = new UserTarget();
+      userTarget.setSecurityName(USER);
+      userTarget.setSecurityLevel(SecurityLevel.AUTH_PRIV);
+      userTarget.setAuthoritativeEngineID(
+          responderUSM.getLocalEngineID().getValue());
+      target = userTarget;
+      target.setVersion(SnmpConstants.version3);
+      request = BenchmarkData.createGetRequest(new ScopedPDU());
+    }
+    else {
+      CommunityTarget communityTarget = new CommunityTarget();
+      communityTarget.setCommunity(new OctetString("public"));
+      target = communityTarget;
+      target.setVersion(SnmpConstants.version2c);
+      request = BenchmarkData.createGetRequest(new PDU());
+    }
+    target.setAddress(responderAddress);
+    target.setTimeout(1000);
+    target.setRetries(1);
+    // synchronizes the SNMPv3 engine times of generator and responder
+    if (get() == null) {
+      throw new IllegalStateException("No response received");
+    }
+  }
+
+  private static USM createUSM(String engineName, UsmUser user) {
+    OctetString engineID =
+        new OctetString(MPv3.createLocalEngineID(new OctetString(engineName)));
+    USM usm = new USM(SecurityProtocols.getInstance(), engineID, 0);
+    usm.addUser(user);
+    return usm;
+  }
+
+  private static MessageDispatcher createDispatcher(USM usm) {
+    MessageDispatcher dispatcher = new MessageDispatcherImpl();
+    dispatcher.addMessageProcessingModel(new MPv2c());
+    dispatcher.addMessageProcessingModel(new MPv3(usm));
+    return dispatcher;
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    generator.close();
+    responder.close();
+  }
+
+  @Benchmark
+  public PDU get() throws IOException {
+    ResponseEvent response = generator.send(request, target);
+    return response.getResponse();
+  }
+}
@@ -0,0 +1,84 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - SyntaxFactoryBenchmark.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.snmp4j.SNMP4JSettings;
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.asn1.BERReverseEncoder;
+import org.snmp4j.smi.*;
+
+/**
+ * Benchmarks {@link AbstractVariable#createFromBER} with and without the
+ * extensibility feature of SNMP4J, which selects the registered syntaxes
+ * of the <code>smisyntaxes.properties</code>.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class SyntaxFactoryBenchmark {
+
+  private static final Variable[] VARIABLES = {
+      new Integer32(-4711), new OctetString("SNMP4J"),
+      new OID("1.3.6.1.4.1.4976"), new IpAddress("10.1.2.3"),
+      new Counter32(2147483648l), new Gauge32(1000000000l),
+      new TimeTicks(100), new Counter64(12345678901l), Null.noSuchInstance
+  };
+
+  @Param({"false", "true"})
+  public boolean extensibilityEnabled;
+
+  private ByteBuffer encoded;
+
+  @Setup
+  public void setup() throws IOException {
+    SNMP4JSettings.setExtensibilityEnabled(extensibilityEnabled);
+    BERReverseEncoder encoder = new BERReverseEncoder();
+    for (int i=VARIABLES.length-1; i>=0; i--) {
+      AbstractVariable.encodeVariable(VARIABLES[i], encoder);
+    }
+    encoded = encoder.toByteBuffer();
+  }
+
+  @TearDown
+  public void tearDown() {
+    SNMP4JSettings.setExtensibilityEnabled(false);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(9)
+  public Variable createFromBER() throws IOException {
+    encoded.rewind();
+    BERInputStream inputStream = new BERInputStream(encoded);
+    Variable last = null;
+    for (int i=0; i<VARIABLES.length; i++) {
+      last = AbstractVariable.createFromBER(inputStream);
+    }
+    return last;
+  }
+}
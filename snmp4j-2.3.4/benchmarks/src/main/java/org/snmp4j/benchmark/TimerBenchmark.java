@@ -0,0 +1,92 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TimerBenchmark.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.snmp4j.util.*;
+
+/**
+ * Benchmarks scheduling and cancelling timer tasks the way request retries
+ * are handled by {@link org.snmp4j.Snmp}: nearly all tasks are cancelled
+ * when the response arrives, long before they expire.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class TimerBenchmark {
+
+  private static final int TASKS = 1000;
+
+  @Param({"DefaultTimerFactory", "TimingWheelTimerFactory"})
+  public String timerFactory;
+
+  private CommonTimer timer;
+  private final RetryTask[] tasks = new RetryTask[TASKS];
+
+  @Setup
+  public void setup() {
+    TimerFactory factory = ("DefaultTimerFactory".equals(timerFactory)) ?
+        new DefaultTimerFactory() : new TimingWheelTimerFactory();
+    timer = factory.createTimer();
+  }
+
+  @TearDown
+  public void tearDown() {
+    timer.cancel();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TASKS)
+  public void scheduleAndCancel() {
+    for (int i=0; i<TASKS; i++) {
+      RetryTask task = new RetryTask();
+      tasks[i] = task;
+      timer.schedule(task, 5000 + (i & 0xFF));
+    }
+    for (int i=0; i<TASKS; i++) {
+      tasks[i].cancel();
+    }
+  }
+
+  private static final class RetryTask extends TimerTask
+      implements CancelableTask
+  {
+    private volatile boolean cancelled;
+
+    public void run() {
+    }
+
+    public boolean cancel() {
+      cancelled = true;
+      return super.cancel();
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+  }
+}
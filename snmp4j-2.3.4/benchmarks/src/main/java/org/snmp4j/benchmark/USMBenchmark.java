@@ -0,0 +1,140 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - USMBenchmark.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.snmp4j.CommandResponder;
+import org.snmp4j.CommandResponderEvent;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.MessageException;
+import org.snmp4j.PDU;
+import org.snmp4j.ScopedPDU;
+import org.snmp4j.UserTarget;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.security.*;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+
+/**
+ * Benchmarks sending and receiving an authenticated and encrypted SNMPv3
+ * notification with the system group as payload. Sending covers scoped PDU
+ * encoding, encryption, and authentication by {@link MPv3} and {@link USM}.
+ * Receiving covers the reverse path through
+ * {@link MessageDispatcherImpl#processMessage} including time window checks
+ * and the delivery to a command responder.
+ * <p>
+ * Because the receiver checks the time window of the sender, the received
+ * message is regenerated before each iteration.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class USMBenchmark {
+
+  private static final OctetString USER = new OctetString("benchmark");
+
+  @Param({"MD5", "SHA"})
+  public String auth;
+
+  @Param({"DES", "AES128"})
+  public String priv;
+
+  private MessageDispatcherImpl sender;
+  private MessageDispatcherImpl receiver;
+  private LoopbackTransportMapping transport;
+  private UserTarget target;
+  private ScopedPDU pdu;
+  private UdpAddress senderAddress;
+  private byte[] message;
+  private int processed;
+
+  @Setup
+  public void setup() throws IOException {
+    SecurityProtocols.getInstance().addDefaultProtocols();
+    OID authProtocol = "MD5".equals(auth) ? AuthMD5.ID : AuthSHA.ID;
+    OID privProtocol = "DES".equals(priv) ? PrivDES.ID : PrivAES128.ID;
+    UsmUser user = new UsmUser(USER, authProtocol, new OctetString("_12345678_"),
+                               privProtocol, new OctetString("_0987654321_"));
+
+    OctetString senderEngineID =
+        new OctetString(MPv3.createLocalEngineID(new OctetString("sender")));
+    USM senderUSM = new USM(SecurityProtocols.getInstance(), senderEngineID, 0);
+    senderUSM.addUser(user);
+    sender = new MessageDispatcherImpl();
+    sender.addMessageProcessingModel(new MPv3(senderUSM));
+
+    OctetString receiverEngineID =
+        new OctetString(MPv3.createLocalEngineID(new OctetString("receiver")));
+    USM receiverUSM = new USM(SecurityProtocols.getInstance(),
+                              receiverEngineID, 0);
+    receiverUSM.addUser(USER, senderEngineID, user);
+    receiver = new MessageDispatcherImpl();
+    receiver.addMessageProcessingModel(new MPv3(receiverUSM));
+    receiver.addCommandResponder(new CommandResponder() {
+      public void processPdu(CommandResponderEvent event) {
+        processed += event.getPDU().size();
+        event.setProcessed(true);
+      }
+    });
+
+    senderAddress = new UdpAddress("127.0.0.1/4967");
+    UdpAddress receiverAddress = new UdpAddress("127.0.0.1/162");
+    transport = new LoopbackTransportMapping(senderAddress);
+    target = new UserTarget(receiverAddress, USER, senderEngineID.getValue());
+    target.setSecurityLevel(SecurityLevel.AUTH_PRIV);
+    target.setVersion(SnmpConstants.version3);
+
+    pdu = BenchmarkData.createGetResponse(new ScopedPDU());
+    pdu.setType(PDU.NOTIFICATION);
+  }
+
+  @Setup(Level.Iteration)
+  public void createMessage() throws MessageException {
+    message = encodeAuthPriv();
+    processed = 0;
+    receiveAuthPriv();
+    if (processed != pdu.size()) {
+      throw new IllegalStateException("Notification not received");
+    }
+  }
+
+  @Benchmark
+  public byte[] encodeAuthPriv() throws MessageException {
+    sender.sendPdu(transport, target, pdu, false);
+    return transport.getLastMessage();
+  }
+
+  @Benchmark
+  public int receiveAuthPriv() {
+    receiver.processMessage(transport, senderAddress,
+                            ByteBuffer.wrap(message), null);
+    return processed;
+  }
+}
@@ -0,0 +1,63 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - AsyncSession.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j;
+
+import java.io.IOException;
+
+/**
+ * An <code>AsyncSession</code> is a {@link Session} that can return the
+ * outcome of an asynchronous request as a {@link SnmpFuture} instead of
+ * calling a <code>ResponseListener</code>.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public interface AsyncSession extends Session {
+
+  /**
+   * Asynchronously sends a <code>PDU</code> to the given target and returns
+   * a {@link SnmpFuture} that is completed with the response (or timeout) of
+   * the request. The request does not need to be cancelled after completion.
+   *
+   * @param pdu
+   *    a <code>PDU</code> instance. For SNMPv3 messages, the supplied PDU
+   *    instance has to be a <code>ScopedPDU</code> instance.
+   * @param target
+   *    the Target instance representing the target SNMP engine where to send
+   *    the <code>pdu</code>.
+   * @param transport
+   *    specifies the <code>TransportMapping</code> to be used when sending
+   *    the PDU. If <code>transport</code> is <code>null</code>, the associated
+   *    message dispatcher will try to determine the transport mapping by the
+   *    <code>target</code>'s address.
+   * @param userHandle
+   *    an user defined handle that is returned by the
+   *    <code>ResponseEvent</code> of the future.
+   * @return
+   *    the future of the request.
+   * @throws IOException
+   *    if the message could not be send.
+   */
+  public SnmpFuture sendAsync(PDU pdu, Target target,
+                              TransportMapping transport,
+                              Object userHandle) throws IOException;
+
+}
@@ -0,0 +1,56 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - BatchMessageDispatcher.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j;
+
+/**
+ * A <code>BatchMessageDispatcher</code> is a {@link MessageDispatcher} that
+ * can send the PDUs of a {@link RequestBatch} at once. {@link Snmp} uses it
+ * for {@link Snmp#send(RequestBatch, org.snmp4j.event.ResponseListener)}
+ * if its message dispatcher implements this interface and otherwise sends
+ * the requests of the batch one by one.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public interface BatchMessageDispatcher extends MessageDispatcher {
+
+  /**
+   * Sends the PDUs of a request batch. Compared to calling
+   * {@link #sendPdu(TransportMapping, Target, PDU, boolean,
+   * org.snmp4j.mp.PduHandleCallback)} for each request, implementations
+   * should encode all messages before sending them and minimize
+   * synchronization per request. The outcome of each request is stored in
+   * its {@link RequestBatch.Request} instance: the assigned
+   * <code>PduHandle</code> on success, a <code>MessageException</code>
+   * otherwise. The {@link RequestBatch.Request#getPduHandleCallback()} of a
+   * request is called just before its message is sent.
+   *
+   * @param batch
+   *    the requests to send.
+   * @param expectResponse
+   *    <code>true</code> if responses are expected and state references should
+   *    be saved (if needed for the message processing models).
+   * @return
+   *    the number of messages that have been sent successfully.
+   */
+  int sendPdus(RequestBatch batch, boolean expectResponse);
+
+}
@@ -0,0 +1,57 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - BatchSession.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j;
+
+import java.io.IOException;
+
+import org.snmp4j.event.ResponseListener;
+
+/**
+ * A <code>BatchSession</code> is a {@link Session} that can send the PDUs of
+ * a {@link RequestBatch} at once.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public interface BatchSession extends Session {
+
+  /**
+   * Asynchronously sends the PDUs of a request batch. All messages are encoded
+   * before they are sent and the retry timers of the confirmed requests are
+   * registered per batch rather than per request. Responses (or timeouts) are
+   * returned by calling the supplied <code>ResponseListener</code> with the
+   * user handle of the corresponding {@link RequestBatch.Request}.
+   * A request that could not be sent is reported to the listener by a
+   * <code>ResponseEvent</code> with an error and by
+   * {@link RequestBatch.Request#getException()}.
+   *
+   * @param batch
+   *    the PDU and target pairs to send.
+   * @param listener
+   *    a <code>ResponseListener</code> instance that is called for each
+   *    confirmed PDU of the batch when it is either answered or timed out.
+   * @throws IOException
+   *    if the batch could not be processed at all.
+   */
+  public void send(RequestBatch batch,
+                   ResponseListener listener) throws IOException;
+
+}
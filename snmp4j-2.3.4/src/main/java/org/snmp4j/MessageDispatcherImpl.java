@@ -30,6 +30,8 @@ import org.snmp4j.security.SecurityLevel;
 import org.snmp4j.security.TsmSecurityStateReference;
 import org.snmp4j.smi.*;
 import java.nio.ByteBuffer;
+import org.snmp4j.transport.AbstractTransportMapping;
+import org.snmp4j.transport.PooledBufferTransportMapping;
 import org.snmp4j.transport.UnsupportedAddressClassException;
 
 /**
@@ -52,7 +54,7 @@ import org.snmp4j.transport.UnsupportedAddressClassException;
  * @author Frank Fock
  * @version 2.0
  */
-public class MessageDispatcherImpl implements MessageDispatcher {
+public class MessageDispatcherImpl implements BatchMessageDispatcher {
 
   private static final LogAdapter logger =
       LogFactory.getLogger(MessageDispatcherImpl.class);
@@ -284,6 +286,8 @@ public class MessageDispatcherImpl implements MessageDispatcher {
       // make sure transport mapping is set
       mutableStateReference.
           getStateReference().setTransportMapping(sourceTransport);
+      mutableStateReference.
+          getStateReference().setTmStateReference(tmStateReference);
     }
     if (status == SnmpConstants.SNMP_ERROR_SUCCESS) {
       // dispatch it
@@ -330,8 +334,13 @@ public class MessageDispatcherImpl implements MessageDispatcher {
                              Address incomingAddress,
                              ByteBuffer wholeMessage,
                              TransportStateReference tmStateReference) {
+    // decoded values may only reference the message buffer if the transport
+    // mapping guarantees an array of its own for each message
+    boolean shareable = (sourceTransport instanceof AbstractTransportMapping) &&
+        !(sourceTransport instanceof PooledBufferTransportMapping) &&
+        ((AbstractTransportMapping)sourceTransport).isMessageBufferShareable();
     processMessage(sourceTransport, incomingAddress,
-                   new BERInputStream(wholeMessage),
+                   new BERInputStream(wholeMessage, shareable),
                    tmStateReference);
   }
 
@@ -409,6 +418,111 @@ public class MessageDispatcherImpl implements MessageDispatcher {
                            boolean expectResponse,
                            PduHandleCallback<PDU> pduHandleCallback)
       throws MessageException
+  {
+    OutgoingMessage message =
+        encodeOutgoingMessage(transport, target, pdu, expectResponse, null);
+    // inform callback about PDU new handle
+    if (pduHandleCallback != null) {
+      pduHandleCallback.pduHandleAssigned(message.pduHandle, pdu);
+    }
+    sendOutgoingMessage(message);
+    return message.pduHandle;
+  }
+
+  /**
+   * Sends the PDUs of a request batch. Request IDs for all requests are
+   * reserved with a single lock acquisition. Then all messages are encoded
+   * before they are sent out together. The assigned <code>PduHandle</code>
+   * or a <code>MessageException</code> is set on each
+   * {@link RequestBatch.Request}.
+   *
+   * @param batch
+   *    the request batch to send.
+   * @param expectResponse
+   *    <code>true</code> if responses are expected and state references should
+   *    be saved (if needed for the message processing models).
+   * @return
+   *    the number of messages that have been sent successfully.
+   * @since 2.4
+   */
+  public int sendPdus(RequestBatch batch, boolean expectResponse) {
+    List<RequestBatch.Request> requests = batch.getRequests();
+    int idCount = 0;
+    for (RequestBatch.Request request : requests) {
+      if (isRequestIdNeeded(request.getPdu())) {
+        idCount++;
+      }
+    }
+    int[] requestIDs = getNextRequestIDs(idCount);
+    OutgoingMessage[] messages = new OutgoingMessage[requests.size()];
+    int nextID = 0;
+    for (int i=0; i<messages.length; i++) {
+      RequestBatch.Request request = requests.get(i);
+      PduHandle pduHandle = null;
+      if (isRequestIdNeeded(request.getPdu())) {
+        pduHandle = new PduHandle(requestIDs[nextID++]);
+      }
+      try {
+        messages[i] = encodeOutgoingMessage(request.getTransport(),
+                                            request.getTarget(),
+                                            request.getPdu(),
+                                            expectResponse, pduHandle);
+        request.setPduHandle(messages[i].pduHandle);
+      }
+      catch (MessageException mex) {
+        request.setException(mex);
+      }
+    }
+    int sent = 0;
+    for (int i=0; i<messages.length; i++) {
+      OutgoingMessage message = messages[i];
+      if (message != null) {
+        RequestBatch.Request request = requests.get(i);
+        if (request.getPduHandleCallback() != null) {
+          request.getPduHandleCallback().pduHandleAssigned(message.pduHandle,
+                                                           request.getPdu());
+        }
+        try {
+          sendOutgoingMessage(message);
+          sent++;
+        }
+        catch (MessageException mex) {
+          request.setException(mex);
+        }
+      }
+    }
+    return sent;
+  }
+
+  /**
+   * Reserves <code>count</code> consecutive request IDs with a single lock
+   * acquisition.
+   * @param count
+   *    the number of request IDs needed.
+   * @return
+   *    an array of <code>count</code> request IDs.
+   * @since 2.4
+   */
+  protected synchronized int[] getNextRequestIDs(int count) {
+    int[] ids = new int[count];
+    for (int i=0; i<count; i++) {
+      ids[i] = getNextRequestID();
+    }
+    return ids;
+  }
+
+  private static boolean isRequestIdNeeded(PDU pdu) {
+    Integer32 reqID = pdu.getRequestID();
+    return (((reqID == null) || (reqID.getValue() == 0)) &&
+            (pdu.getType() != PDU.RESPONSE));
+  }
+
+  private OutgoingMessage encodeOutgoingMessage(TransportMapping transport,
+                                                Target target,
+                                                PDU pdu,
+                                                boolean expectResponse,
+                                                PduHandle reservedPduHandle)
+      throws MessageException
   {
     int messageProcessingModel = target.getVersion();
     Address transportAddress = target.getAddress();
@@ -450,10 +564,9 @@ public class MessageDispatcherImpl implements MessageDispatcher {
       // if request ID is == 0 then create one here, otherwise use the request
       // ID because it may be a resent request.
       PduHandle pduHandle;
-      Integer32 reqID = pdu.getRequestID();
-      if (((reqID == null) || (reqID.getValue() == 0)) &&
-          (pdu.getType() != PDU.RESPONSE)) {
-        pduHandle = createPduHandle();
+      if (isRequestIdNeeded(pdu)) {
+        pduHandle = (reservedPduHandle != null) ?
+            reservedPduHandle : createPduHandle();
       }
       else {
         pduHandle = new PduHandle(pdu.getRequestID().getValue());
@@ -494,20 +607,14 @@ public class MessageDispatcherImpl implements MessageDispatcher {
                                              outgoingMessage,
                                              tmStateReference);
 
-      if (status == SnmpConstants.SNMP_ERROR_SUCCESS) {
-        // inform callback about PDU new handle
-        if (pduHandleCallback != null) {
-          pduHandleCallback.pduHandleAssigned(pduHandle, pdu);
-        }
-        byte[] messageBytes = outgoingMessage.getBuffer().array();
-        sendMessage(transport, transportAddress, messageBytes, tmStateReference);
-      }
-      else {
+      if (status != SnmpConstants.SNMP_ERROR_SUCCESS) {
         throw new MessageException("Message processing model "+
                                    mp.getID()+" returned error: "+
                                    SnmpConstants.mpErrorMessage(status), status);
       }
-      return pduHandle;
+      return new OutgoingMessage(transport, transportAddress,
+                                 outgoingMessage.getBuffer().array(),
+                                 tmStateReference, pduHandle);
     }
     catch (IndexOutOfBoundsException iobex) {
       throw new MessageException("Unsupported message processing model: "
@@ -527,6 +634,21 @@ public class MessageDispatcherImpl implements MessageDispatcher {
     }
   }
 
+  private void sendOutgoingMessage(OutgoingMessage message)
+      throws MessageException
+  {
+    try {
+      sendMessage(message.transport, message.address, message.messageBytes,
+                  message.tmStateReference);
+    }
+    catch (IOException iox) {
+      if (logger.isDebugEnabled()) {
+        iox.printStackTrace();
+      }
+      throw new MessageException(iox.getMessage(), SnmpConstants.SNMP_MD_ERROR, iox);
+    }
+  }
+
   protected void configureAuthoritativeEngineID(Target target, MessageProcessingModel mp) {
     if ((target instanceof UserTarget) && (mp instanceof MPv3)) {
       UserTarget userTarget = (UserTarget)target;
@@ -620,6 +742,10 @@ public class MessageDispatcherImpl implements MessageDispatcher {
           tmStateReference = ((TsmSecurityStateReference)
               stateReference.getSecurityStateReference()).getTmStateReference();
         }
+        else {
+          // return the response through the socket the request came in
+          tmStateReference = stateReference.getTmStateReference();
+        }
         sendMessage(transport,
                     stateReference.getAddress(),
                     outgoingMessage.getBuffer().array(),
@@ -823,5 +949,26 @@ public class MessageDispatcherImpl implements MessageDispatcher {
     return sendPdu(transportMapping, target, pdu, expectResponse, null);
   }
 
-}
 
+  /**
+   * An encoded message that is ready to be sent.
+   */
+  private static class OutgoingMessage {
+    private final TransportMapping transport;
+    private final Address address;
+    private final byte[] messageBytes;
+    private final TransportStateReference tmStateReference;
+    private final PduHandle pduHandle;
+
+    OutgoingMessage(TransportMapping transport, Address address,
+                    byte[] messageBytes,
+                    TransportStateReference tmStateReference,
+                    PduHandle pduHandle) {
+      this.transport = transport;
+      this.address = address;
+      this.messageBytes = messageBytes;
+      this.tmStateReference = tmStateReference;
+      this.pduHandle = pduHandle;
+    }
+  }
+}
@@ -24,11 +24,15 @@ package org.snmp4j;
 import org.snmp4j.smi.*;
 import org.snmp4j.asn1.*;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.snmp4j.smi.Integer32;
 import org.snmp4j.mp.SnmpConstants;
 import java.io.Serializable;
@@ -203,7 +207,31 @@ public class PDU implements BERSerializable, Serializable {
   public static final int inconsistentName =
       SnmpConstants.SNMP_ERROR_INCONSISTENT_NAME;
 
-  protected Vector<VariableBinding> variableBindings = new Vector<VariableBinding>();
+  /**
+   * The serialized form of a PDU is the same as before version 2.4, where
+   * the variable bindings were held in a <code>Vector</code>.
+   */
+  private static final ObjectStreamField[] serialPersistentFields = {
+      new ObjectStreamField("variableBindings", Vector.class),
+      new ObjectStreamField("errorStatus", Integer32.class),
+      new ObjectStreamField("errorIndex", Integer32.class),
+      new ObjectStreamField("requestID", Integer32.class),
+      new ObjectStreamField("type", Integer.TYPE)
+  };
+
+  /**
+   * The variable bindings in an <code>ArrayList</code>, which is replaced by
+   * a <code>Vector</code> when the deprecated {@link #getVariableBindings()}
+   * is called.
+   */
+  protected List<VariableBinding> variableBindings =
+      new ArrayList<VariableBinding>();
+  /**
+   * Counts the PDUs sharing the variable binding list and its elements
+   * (see {@link #copyOnWriteClone()}) or is <code>null</code> if the list is
+   * not shared.
+   */
+  private transient AtomicInteger variableBindingsShares;
   protected Integer32 errorStatus = new Integer32();
   protected Integer32 errorIndex = new Integer32();
   protected Integer32 requestID = new Integer32();
@@ -222,9 +250,33 @@ public class PDU implements BERSerializable, Serializable {
    *    the <code>PDU</code> to copy from.
    */
   public PDU(PDU other) {
-    variableBindings = new Vector<VariableBinding>(other.size());
-    for (VariableBinding vb : other.variableBindings) {
-      variableBindings.add((VariableBinding) vb.clone());
+    this(other, false);
+  }
+
+  /**
+   * Copy constructor which creates a copy of the other PDU whose variable
+   * bindings are either cloned or shared with the other PDU until one of
+   * the PDUs accesses them (see {@link #copyOnWriteClone()}).
+   * @param other
+   *    the <code>PDU</code> to copy from.
+   * @param shareVariableBindings
+   *    if <code>true</code> the variable bindings are shared with
+   *    <code>other</code> until either PDU accesses them, otherwise they are
+   *    cloned immediately.
+   * @since 2.4
+   */
+  protected PDU(PDU other, boolean shareVariableBindings) {
+    // a vector returned by getVariableBindings() may be modified at any time
+    if (shareVariableBindings && !(other.variableBindings instanceof Vector)) {
+      if (other.variableBindingsShares == null) {
+        other.variableBindingsShares = new AtomicInteger(1);
+      }
+      other.variableBindingsShares.incrementAndGet();
+      variableBindings = other.variableBindings;
+      variableBindingsShares = other.variableBindingsShares;
+    }
+    else {
+      variableBindings = cloneVariableBindings(other.variableBindings);
     }
     errorIndex = (Integer32) other.errorIndex.clone();
     errorStatus = (Integer32) other.errorStatus.clone();
@@ -247,10 +299,71 @@ public class PDU implements BERSerializable, Serializable {
    */
   public PDU(int pduType, List<? extends VariableBinding> vbs) {
     this.type = pduType;
-    variableBindings = new Vector<VariableBinding>(vbs.size());
+    variableBindings = cloneVariableBindings(vbs);
+  }
+
+  private static ArrayList<VariableBinding> cloneVariableBindings(
+      List<? extends VariableBinding> vbs)
+  {
+    ArrayList<VariableBinding> clone = new ArrayList<VariableBinding>(vbs.size());
     for (VariableBinding vb : vbs) {
-      variableBindings.add((VariableBinding) vb.clone());
+      clone.add((VariableBinding) vb.clone());
     }
+    return clone;
+  }
+
+  /**
+   * Replaces shared variable bindings (see {@link #copyOnWriteClone()}) by
+   * private copies. This method has to be called by subclasses before they
+   * access the elements of {@link #variableBindings} other than for encoding.
+   * @since 2.4
+   */
+  protected final void unshareVariableBindings() {
+    AtomicInteger shares = variableBindingsShares;
+    if (shares != null) {
+      // copy before releasing the share, so that the last PDU holding the
+      // share does not modify the variable bindings while they are copied
+      if (shares.get() > 1) {
+        variableBindings = cloneVariableBindings(variableBindings);
+      }
+      shares.decrementAndGet();
+      variableBindingsShares = null;
+    }
+  }
+
+  /**
+   * Releases a shared variable binding list without copying it, because
+   * the list is replaced by the caller.
+   */
+  private void releaseVariableBindings() {
+    AtomicInteger shares = variableBindingsShares;
+    if (shares != null) {
+      shares.decrementAndGet();
+      variableBindingsShares = null;
+    }
+  }
+
+  /**
+   * Creates a copy of this PDU which initially shares the variable bindings
+   * with this PDU instead of cloning them. The variable bindings are cloned
+   * by either PDU when they are accessed or modified through the PDU for the
+   * first time. Thus, a PDU copy that is only encoded, for example a
+   * response or a forwarded request, does not copy its variable bindings.
+   * <p>
+   * A PDU that replaces its variable bindings, for example by
+   * {@link #clear()}, releases the shared variable bindings without copying
+   * them, and the last PDU holding them does not need to copy them either.
+   * <p>
+   * In contrast to {@link #clone()}, <code>VariableBinding</code> instances
+   * that had been added to or retrieved from this PDU before calling this
+   * method must not be modified afterwards, because such modifications
+   * would be visible in both PDUs.
+   * @return
+   *    a new PDU of the same class as this PDU with equal content.
+   * @since 2.4
+   */
+  public PDU copyOnWriteClone() {
+    return new PDU(this, true);
   }
 
   /**
@@ -261,6 +374,7 @@ public class PDU implements BERSerializable, Serializable {
    *   a <code>VariableBinding</code> instance.
    */
   public void add(VariableBinding vb) {
+    unshareVariableBindings();
     variableBindings.add(vb);
   }
 
@@ -277,6 +391,7 @@ public class PDU implements BERSerializable, Serializable {
    */
   public void addOID(VariableBinding vb) {
     VariableBinding cvb = new VariableBinding(vb.getOid());
+    unshareVariableBindings();
     variableBindings.add(cvb);
   }
 
@@ -289,7 +404,8 @@ public class PDU implements BERSerializable, Serializable {
    *   PDU.
    */
   public void addAll(VariableBinding[] vbs) {
-    variableBindings.ensureCapacity(variableBindings.size()+vbs.length);
+    unshareVariableBindings();
+    ensureCapacity(variableBindings.size()+vbs.length);
     for (int i=0; i<vbs.length; i++) {
       add(vbs[i]);
     }
@@ -305,6 +421,7 @@ public class PDU implements BERSerializable, Serializable {
    * @since 2.2.4
    */
   public void addAll(List<? extends VariableBinding> vbs) {
+    unshareVariableBindings();
     variableBindings.addAll(vbs);
   }
 
@@ -320,7 +437,8 @@ public class PDU implements BERSerializable, Serializable {
    * @since 1.8
    */
   public void addAllOIDs(VariableBinding[] vbs) {
-    variableBindings.ensureCapacity(variableBindings.size()+vbs.length);
+    unshareVariableBindings();
+    ensureCapacity(variableBindings.size()+vbs.length);
     for (VariableBinding vb : vbs) {
       addOID(vb);
     }
@@ -335,6 +453,7 @@ public class PDU implements BERSerializable, Serializable {
    *    an exception is thrown.
    */
   public VariableBinding get(int index) {
+    unshareVariableBindings();
     return variableBindings.get(index);
   }
 
@@ -349,6 +468,7 @@ public class PDU implements BERSerializable, Serializable {
    * @since 2.0
    */
   public Variable getVariable(OID prefix) {
+    unshareVariableBindings();
     for (VariableBinding vb : variableBindings) {
       if (vb.getOid().startsWith(prefix)) {
         return vb.getVariable();
@@ -368,6 +488,7 @@ public class PDU implements BERSerializable, Serializable {
    *    could be found, an empty List is returned.
    */
   public List<VariableBinding> getBindingList(OID prefix) {
+    unshareVariableBindings();
     List<VariableBinding> list = new ArrayList<VariableBinding>(variableBindings.size());
     for (VariableBinding vb : variableBindings) {
       if (vb.getOid().startsWith(prefix)) {
@@ -392,6 +513,7 @@ public class PDU implements BERSerializable, Serializable {
     if (vb == null) {
       throw new NullPointerException("Variable binding must not be null");
     }
+    unshareVariableBindings();
     return variableBindings.set(index, vb);
   }
 
@@ -401,6 +523,7 @@ public class PDU implements BERSerializable, Serializable {
    *    a position >= 0 and < {@link #size()}.
    */
   public void remove(int index) {
+    unshareVariableBindings();
     variableBindings.remove(index);
   }
 
@@ -413,15 +536,56 @@ public class PDU implements BERSerializable, Serializable {
     return variableBindings.size();
   }
 
+  private void ensureCapacity(int minCapacity) {
+    if (variableBindings instanceof ArrayList) {
+      ((ArrayList<VariableBinding>)variableBindings).ensureCapacity(minCapacity);
+    }
+  }
+
   /**
-   * Gets the variable binding vector.
+   * Gets the variable binding vector. As before version 2.4, modifications
+   * of the returned vector change the PDU. To achieve this, the PDU
+   * replaces its variable binding list by a <code>Vector</code> on the first
+   * call, which copies the variable bindings once.
    * @return
-   *    the internal <code>Vector</code> containing the PDU's variable bindings.
+   *    the internal <code>Vector</code> containing the PDU's variable
+   *    bindings.
+   * @deprecated
+   *    Use {@link #getVariableBindingList()} instead, which returns the
+   *    PDU's variable binding list without copying it.
    */
+  @Deprecated
   public Vector<? extends VariableBinding> getVariableBindings() {
+    unshareVariableBindings();
+    if (!(variableBindings instanceof Vector)) {
+      variableBindings = new Vector<VariableBinding>(variableBindings);
+    }
+    return (Vector<VariableBinding>) variableBindings;
+  }
+
+  /**
+   * Gets the variable binding list.
+   * @return
+   *    the internal (unsynchronized) list containing the PDU's variable
+   *    bindings.
+   * @since 2.4
+   */
+  public List<? extends VariableBinding> getVariableBindingList() {
+    unshareVariableBindings();
     return variableBindings;
   }
 
+  /**
+   * Gets a read-only view of the variable binding list.
+   * @return
+   *    an unmodifiable list backed by the PDU's variable binding list.
+   * @since 2.4
+   */
+  public List<? extends VariableBinding> getUnmodifiableVariableBindings() {
+    unshareVariableBindings();
+    return Collections.unmodifiableList(variableBindings);
+  }
+
   /**
    * Sets the {@link VariableBinding}s for this PDU.
    * @param vbs
@@ -433,13 +597,15 @@ public class PDU implements BERSerializable, Serializable {
     if (vbs == null) {
       throw new NullPointerException();
     }
-    this.variableBindings = new Vector<VariableBinding>(vbs);
+    releaseVariableBindings();
+    this.variableBindings = new ArrayList<VariableBinding>(vbs);
   }
 
   /**
    * Remove the last variable binding from the PDU, if such an element exists.
    */
   public void trim() {
+    unshareVariableBindings();
     if (variableBindings.size() > 0) {
       variableBindings.remove(variableBindings.size() - 1);
     }
@@ -567,7 +733,8 @@ public class PDU implements BERSerializable, Serializable {
     }
     // rest read count
     int startPos = (int)inputStream.getPosition();
-    variableBindings = new Vector<VariableBinding>();
+    releaseVariableBindings();
+    variableBindings = new ArrayList<VariableBinding>();
     while (inputStream.getPosition() - startPos < vbLength) {
       VariableBinding vb = new VariableBinding();
       vb.decodeBER(inputStream);
@@ -632,12 +799,118 @@ public class PDU implements BERSerializable, Serializable {
     }
   }
 
+  /**
+   * Encodes a PDU with the supplied reverse encoder. PDUs of the classes
+   * <code>PDU</code>, {@link PDUv1}, and {@link ScopedPDU} are encoded by
+   * {@link #encodeBER(BERReverseEncoder)}. Instances of other subclasses are
+   * encoded by {@link BERReverseEncoder#encode(org.snmp4j.asn1.BERSerializable)},
+   * which uses their {@link #getBERLength()} and
+   * {@link #encodeBER(OutputStream)} methods, because these might be
+   * overridden.
+   *
+   * @param pdu
+   *    the PDU to encode.
+   * @param encoder
+   *    a <code>BERReverseEncoder</code>.
+   * @throws IOException
+   *    if the PDU cannot be encoded.
+   * @since 2.4
+   */
+  public static void encodePDU(PDU pdu, BERReverseEncoder encoder)
+      throws IOException
+  {
+    Class<?> c = pdu.getClass();
+    if ((c == PDU.class) || (c == ScopedPDU.class) || (c == PDUv1.class)) {
+      pdu.encodeBER(encoder);
+    }
+    else {
+      encoder.encode(pdu);
+    }
+  }
+
+  /**
+   * Encodes this PDU with the supplied reverse encoder. In contrast to
+   * {@link #encodeBER(OutputStream)}, the lengths of the PDU and its variable
+   * bindings do not need to be computed before encoding. Subclasses that
+   * override {@link #encodeBER(OutputStream)} need to override this method
+   * accordingly. Message processing models use
+   * {@link #encodePDU(PDU, BERReverseEncoder)}, which falls back to
+   * {@link #encodeBER(OutputStream)} for subclasses.
+   *
+   * @param encoder
+   *    a <code>BERReverseEncoder</code>.
+   * @throws IOException
+   *    if a variable binding cannot be encoded.
+   * @since 2.4
+   */
+  public void encodeBER(BERReverseEncoder encoder) throws IOException {
+    int mark = encoder.length();
+    encodeVariableBindings(encoder, variableBindings);
+    AbstractVariable.encodeVariable(errorIndex, encoder);
+    AbstractVariable.encodeVariable(errorStatus, encoder);
+    AbstractVariable.encodeVariable(requestID, encoder);
+    encoder.encodeHeader(type, encoder.length() - mark);
+  }
+
+  /**
+   * Encodes the variable bindings sequence with the supplied reverse encoder.
+   * @param encoder
+   *    a <code>BERReverseEncoder</code>.
+   * @param variableBindings
+   *    a list of variable bindings.
+   * @throws IOException
+   *    if a variable binding cannot be encoded.
+   * @since 2.4
+   */
+  public static void encodeVariableBindings(BERReverseEncoder encoder,
+                                            List<? extends VariableBinding>
+                                                variableBindings)
+      throws IOException
+  {
+    int mark = encoder.length();
+    for (int i=variableBindings.size()-1; i>=0; i--) {
+      variableBindings.get(i).encodeBER(encoder);
+    }
+    encoder.encodeHeader(BER.SEQUENCE, encoder.length() - mark);
+  }
+
+  private void writeObject(ObjectOutputStream oos) throws IOException {
+    ObjectOutputStream.PutField fields = oos.putFields();
+    fields.put("variableBindings", new Vector<VariableBinding>(variableBindings));
+    fields.put("errorStatus", errorStatus);
+    fields.put("errorIndex", errorIndex);
+    fields.put("requestID", requestID);
+    fields.put("type", type);
+    oos.writeFields();
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream ois)
+      throws IOException, ClassNotFoundException
+  {
+    ObjectInputStream.GetField fields = ois.readFields();
+    Vector<VariableBinding> vbs =
+        (Vector<VariableBinding>) fields.get("variableBindings", null);
+    variableBindings = (vbs == null) ?
+        new ArrayList<VariableBinding>() : new ArrayList<VariableBinding>(vbs);
+    errorStatus = (Integer32) fields.get("errorStatus", null);
+    errorIndex = (Integer32) fields.get("errorIndex", null);
+    requestID = (Integer32) fields.get("requestID", null);
+    type = fields.get("type", GET);
+  }
+
   /**
    * Removes all variable bindings from the PDU and sets the request ID to zero.
    * This can be used to reuse a PDU for another request.
    */
   public void clear() {
-    variableBindings.clear();
+    if (variableBindingsShares != null) {
+      releaseVariableBindings();
+      variableBindings = new ArrayList<VariableBinding>();
+    }
+    else {
+      variableBindings.clear();
+    }
     setRequestID(new Integer32(0));
   }
 
@@ -824,6 +1097,7 @@ public class PDU implements BERSerializable, Serializable {
    *    same order as in the PDU.
    */
   public VariableBinding[] toArray() {
+    unshareVariableBindings();
     VariableBinding[] vbs = new VariableBinding[this.variableBindings.size()];
     this.variableBindings.toArray(vbs);
     return vbs;
@@ -0,0 +1,598 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - PDUCursor.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.snmp4j.asn1.BER;
+import org.snmp4j.asn1.BERCursor;
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.asn1.BERSerializable;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.*;
+
+/**
+ * The <code>PDUCursor</code> reads a BER encoded PDU variable binding by
+ * variable binding without decoding it into a {@link PDU}. The OID, the tag,
+ * the length, and the raw value of each variable binding are accessible
+ * without creating objects. {@link OID} and {@link Variable} instances are
+ * only created when requested by {@link #getOID()}, {@link #getVariable()},
+ * or {@link #getVariableBinding()}. Thus, notifications can be filtered or
+ * routed by their OIDs or values with little garbage:
+ * <pre>
+ *   PDUCursor cursor = PDUCursor.forMessage(message);
+ *   while (cursor.nextVariableBinding()) {
+ *     if (cursor.startsWith(linkDown)) {
+ *       ...
+ *     }
+ *   }
+ * </pre>
+ * The header fields of the PDU (type, request ID, error status, and error
+ * index or the SNMPv1 trap fields) are decoded when the cursor is created.
+ * A cursor is not thread safe.
+ * <p>
+ * Note that a message read by a cursor has not been processed by a message
+ * processing model, thus neither the community nor the authentication of
+ * the message have been verified.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class PDUCursor {
+
+  private final BERCursor cursor;
+  private final BERCursor oidCursor;
+
+  private int version = -1;
+  private int communityOffset = -1;
+  private int contextEngineIDOffset = -1;
+  private int contextNameOffset = -1;
+
+  private int type;
+  private int requestID;
+  private int errorStatus;
+  private int errorIndex;
+
+  private int enterpriseOffset = -1;
+  private int agentAddressOffset = -1;
+  private int genericTrap;
+  private int specificTrap;
+  private long timestamp;
+
+  private boolean inVariableBinding;
+
+  private PDUCursor(ByteBuffer buffer) {
+    this.cursor = new BERCursor(buffer);
+    this.oidCursor = new BERCursor(buffer);
+  }
+
+  /**
+   * Creates a cursor for the PDU of a whole SNMP message as received by a
+   * transport mapping. SNMPv1 and SNMPv2c messages as well as SNMPv3
+   * messages with an unencrypted scoped PDU are supported.
+   *
+   * @param message
+   *    a <code>ByteBuffer</code> containing a BER encoded SNMP message
+   *    between its position and limit. The buffer is not modified.
+   * @return
+   *    a <code>PDUCursor</code> positioned before the first variable binding.
+   * @throws IOException
+   *    if the message is not a properly encoded SNMP message or its scoped
+   *    PDU is encrypted.
+   */
+  public static PDUCursor forMessage(ByteBuffer message) throws IOException {
+    PDUCursor pduCursor = new PDUCursor(message);
+    BERCursor c = pduCursor.cursor;
+    expect(c, BER.SEQUENCE);
+    c.enter();
+    expect(c, BER.INTEGER);
+    pduCursor.version = c.getValueAsInteger();
+    if (pduCursor.version == SnmpConstants.version3) {
+      // msgGlobalData and msgSecurityParameters
+      expect(c, BER.SEQUENCE);
+      expect(c, BER.OCTETSTRING);
+      if (c.next() != (BER.SEQUENCE & 0xFF)) {
+        throw new IOException("Encrypted scoped PDU cannot be read");
+      }
+      pduCursor.readScopedPDU();
+    }
+    else {
+      expect(c, BER.OCTETSTRING);
+      pduCursor.communityOffset = c.getHeaderOffset();
+      pduCursor.readPDU();
+    }
+    return pduCursor;
+  }
+
+  /**
+   * Creates a cursor for a BER encoded PDU (for example encoded by
+   * {@link PDU#encodeBER}).
+   *
+   * @param pdu
+   *    a <code>ByteBuffer</code> containing a BER encoded PDU between its
+   *    position and limit. The buffer is not modified.
+   * @return
+   *    a <code>PDUCursor</code> positioned before the first variable binding.
+   * @throws IOException
+   *    if the PDU is not properly encoded.
+   */
+  public static PDUCursor forPDU(ByteBuffer pdu) throws IOException {
+    PDUCursor pduCursor = new PDUCursor(pdu);
+    pduCursor.readPDU();
+    return pduCursor;
+  }
+
+  /**
+   * Creates a cursor for a BER encoded scoped PDU.
+   *
+   * @param scopedPDU
+   *    a <code>ByteBuffer</code> containing a BER encoded scoped PDU between
+   *    its position and limit. The buffer is not modified.
+   * @return
+   *    a <code>PDUCursor</code> positioned before the first variable binding.
+   * @throws IOException
+   *    if the scoped PDU is not properly encoded.
+   */
+  public static PDUCursor forScopedPDU(ByteBuffer scopedPDU) throws IOException {
+    PDUCursor pduCursor = new PDUCursor(scopedPDU);
+    expect(pduCursor.cursor, BER.SEQUENCE);
+    pduCursor.readScopedPDU();
+    return pduCursor;
+  }
+
+  private static void expect(BERCursor c, byte tag) throws IOException {
+    int t = c.next();
+    if (t != (tag & 0xFF)) {
+      throw new IOException("Unexpected tag "+t+" at position "+
+                            c.getHeaderOffset()+", expected "+(tag & 0xFF));
+    }
+  }
+
+  private void readScopedPDU() throws IOException {
+    cursor.enter();
+    expect(cursor, BER.OCTETSTRING);
+    contextEngineIDOffset = cursor.getHeaderOffset();
+    expect(cursor, BER.OCTETSTRING);
+    contextNameOffset = cursor.getHeaderOffset();
+    readPDU();
+  }
+
+  private void readPDU() throws IOException {
+    type = (byte) cursor.next();
+    switch (type) {
+      case PDU.GET:
+      case PDU.GETNEXT:
+      case PDU.GETBULK:
+      case PDU.SET:
+      case PDU.RESPONSE:
+      case PDU.INFORM:
+      case PDU.TRAP:
+      case PDU.REPORT:
+      case PDU.V1TRAP:
+        break;
+      default:
+        throw new IOException("Unsupported PDU type: "+type);
+    }
+    cursor.enter();
+    if (type == PDU.V1TRAP) {
+      expect(cursor, BER.OID);
+      enterpriseOffset = cursor.getHeaderOffset();
+      expect(cursor, BER.IPADDRESS);
+      agentAddressOffset = cursor.getHeaderOffset();
+      expect(cursor, BER.INTEGER);
+      genericTrap = cursor.getValueAsInteger();
+      expect(cursor, BER.INTEGER);
+      specificTrap = cursor.getValueAsInteger();
+      expect(cursor, BER.TIMETICKS);
+      timestamp = cursor.getValueAsUnsignedInteger();
+    }
+    else {
+      expect(cursor, BER.INTEGER);
+      requestID = cursor.getValueAsInteger();
+      expect(cursor, BER.INTEGER);
+      errorStatus = cursor.getValueAsInteger();
+      expect(cursor, BER.INTEGER);
+      errorIndex = cursor.getValueAsInteger();
+    }
+    expect(cursor, BER.SEQUENCE);
+    cursor.enter();
+  }
+
+  /**
+   * Advances the cursor to the next variable binding.
+   * @return
+   *    <code>true</code> if the cursor is positioned on a variable binding,
+   *    <code>false</code> if there are no more variable bindings.
+   * @throws IOException
+   *    if the variable binding is not properly encoded.
+   */
+  public boolean nextVariableBinding() throws IOException {
+    if (inVariableBinding) {
+      cursor.exit();
+      inVariableBinding = false;
+    }
+    if (!cursor.hasNext()) {
+      return false;
+    }
+    expect(cursor, BER.SEQUENCE);
+    cursor.enter();
+    inVariableBinding = true;
+    expect(cursor, BER.OID);
+    oidCursor.set(cursor);
+    cursor.next();
+    return true;
+  }
+
+  /**
+   * Appends the remaining variable bindings of the PDU to the given batch
+   * without creating <code>VariableBinding</code>, <code>OID</code>, or
+   * <code>Variable</code> instances for the standard SMI syntaxes.
+   * Afterwards, the cursor is positioned after the last variable binding.
+   * @param batch
+   *    the batch to fill.
+   * @return
+   *    the number of variable bindings added to <code>batch</code>.
+   * @throws IOException
+   *    if a variable binding is not properly encoded.
+   */
+  public int getVariableBindings(VariableBindingBatch batch) throws IOException {
+    int count = 0;
+    while (nextVariableBinding()) {
+      batch.add(oidCursor, cursor);
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Gets the SNMP version of the message.
+   * @return
+   *    the version (see {@link SnmpConstants#version1},
+   *    {@link SnmpConstants#version2c}, and {@link SnmpConstants#version3})
+   *    or -1 if the cursor has not been created for a message.
+   */
+  public int getVersion() {
+    return version;
+  }
+
+  /**
+   * Gets the community of a SNMPv1 or SNMPv2c message.
+   * @return
+   *    the community or <code>null</code> if the cursor has not been created
+   *    for such a message.
+   * @throws IOException
+   *    if the community is not properly encoded.
+   */
+  public OctetString getCommunity() throws IOException {
+    return (OctetString) decode(new OctetString(), communityOffset);
+  }
+
+  /**
+   * Gets the context engine ID of a scoped PDU.
+   * @return
+   *    the context engine ID or <code>null</code> if the cursor has not been
+   *    created for a scoped PDU.
+   * @throws IOException
+   *    if the context engine ID is not properly encoded.
+   */
+  public OctetString getContextEngineID() throws IOException {
+    return (OctetString) decode(new OctetString(), contextEngineIDOffset);
+  }
+
+  /**
+   * Gets the context name of a scoped PDU.
+   * @return
+   *    the context name or <code>null</code> if the cursor has not been
+   *    created for a scoped PDU.
+   * @throws IOException
+   *    if the context name is not properly encoded.
+   */
+  public OctetString getContextName() throws IOException {
+    return (OctetString) decode(new OctetString(), contextNameOffset);
+  }
+
+  private BERSerializable decode(BERSerializable object, int offset)
+      throws IOException
+  {
+    if (offset < 0) {
+      return null;
+    }
+    ByteBuffer buf = cursor.getBuffer().duplicate();
+    buf.position(offset);
+    object.decodeBER(new BERInputStream(buf));
+    return object;
+  }
+
+  /**
+   * Gets the PDU type.
+   * @return
+   *    a PDU type constant like {@link PDU#TRAP} or {@link PDU#V1TRAP}.
+   */
+  public int getType() {
+    return type;
+  }
+
+  public int getRequestID() {
+    return requestID;
+  }
+
+  /**
+   * Gets the error status (or the non-repeaters of a GETBULK PDU).
+   * @return
+   *    the error status.
+   */
+  public int getErrorStatus() {
+    return errorStatus;
+  }
+
+  /**
+   * Gets the error index (or the max-repetitions of a GETBULK PDU).
+   * @return
+   *    the error index.
+   */
+  public int getErrorIndex() {
+    return errorIndex;
+  }
+
+  /**
+   * Gets the enterprise of a SNMPv1 trap.
+   * @return
+   *    the enterprise OID or <code>null</code> if the PDU is not a
+   *    {@link PDU#V1TRAP}.
+   * @throws IOException
+   *    if the enterprise is not properly encoded.
+   */
+  public OID getEnterprise() throws IOException {
+    return (OID) decode(new OID(), enterpriseOffset);
+  }
+
+  /**
+   * Gets the agent address of a SNMPv1 trap.
+   * @return
+   *    the agent address or <code>null</code> if the PDU is not a
+   *    {@link PDU#V1TRAP}.
+   * @throws IOException
+   *    if the agent address is not properly encoded.
+   */
+  public IpAddress getAgentAddress() throws IOException {
+    return (IpAddress) decode(new IpAddress(), agentAddressOffset);
+  }
+
+  public int getGenericTrap() {
+    return genericTrap;
+  }
+
+  public int getSpecificTrap() {
+    return specificTrap;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  private void checkVariableBinding() {
+    if (!inVariableBinding) {
+      throw new IllegalStateException("Cursor is not positioned on a "+
+                                      "variable binding");
+    }
+  }
+
+  /**
+   * Gets the number of sub-identifiers of the current variable binding's OID.
+   * @return
+   *    the OID length.
+   */
+  public int getOIDLength() {
+    checkVariableBinding();
+    return oidCursor.getOIDLength();
+  }
+
+  /**
+   * Decodes the OID of the current variable binding into the supplied array.
+   * @param dest
+   *    an array with at least {@link #getOIDLength()} elements.
+   * @return
+   *    the number of sub-identifiers decoded.
+   */
+  public int getOID(int[] dest) {
+    checkVariableBinding();
+    return oidCursor.getValueAsOID(dest);
+  }
+
+  /**
+   * Gets the OID of the current variable binding.
+   * @return
+   *    a new <code>OID</code> instance.
+   */
+  public OID getOID() {
+    int[] value = new int[getOIDLength()];
+    getOID(value);
+    return new OID(value);
+  }
+
+  /**
+   * Checks whether the OID of the current variable binding starts with the
+   * given prefix without decoding it.
+   * @param prefix
+   *    an OID.
+   * @return
+   *    <code>true</code> if the OID of the current variable binding starts
+   *    with or equals <code>prefix</code>.
+   */
+  public boolean startsWith(OID prefix) {
+    checkVariableBinding();
+    return oidCursor.startsWithOID(prefix.getValue());
+  }
+
+  /**
+   * Compares the OID of the current variable binding with the given OID
+   * without decoding it.
+   * @param oid
+   *    an OID.
+   * @return
+   *    a negative value, zero, or a positive value if the current OID is
+   *    less than, equal to, or greater than <code>oid</code>.
+   */
+  public int compareOID(OID oid) {
+    checkVariableBinding();
+    return oidCursor.compareOID(oid.getValue());
+  }
+
+  /**
+   * Gets the syntax of the current variable binding's value, which is also
+   * the BER tag of the value.
+   * @return
+   *    a syntax constant defined by {@link SMIConstants}.
+   */
+  public int getSyntax() {
+    checkVariableBinding();
+    return cursor.getTag();
+  }
+
+  /**
+   * Checks whether the value of the current variable binding is an exception
+   * value (noSuchObject, noSuchInstance, or endOfMibView).
+   * @return
+   *    <code>true</code> for an exception value.
+   */
+  public boolean isException() {
+    int syntax = getSyntax();
+    return (syntax == SMIConstants.EXCEPTION_NO_SUCH_OBJECT) ||
+        (syntax == SMIConstants.EXCEPTION_NO_SUCH_INSTANCE) ||
+        (syntax == SMIConstants.EXCEPTION_END_OF_MIB_VIEW);
+  }
+
+  /**
+   * Gets the number of bytes of the current variable binding's value
+   * (without tag and length).
+   * @return
+   *    the value length.
+   */
+  public int getValueLength() {
+    checkVariableBinding();
+    return cursor.getLength();
+  }
+
+  /**
+   * Gets a read-only view of the raw value bytes (without tag and length) of
+   * the current variable binding.
+   * @return
+   *    a <code>ByteBuffer</code> sharing the content of the message buffer.
+   */
+  public ByteBuffer getValue() {
+    checkVariableBinding();
+    return cursor.getValue();
+  }
+
+  /**
+   * Decodes the value of the current variable binding as signed integer.
+   * @return
+   *    the value of an INTEGER (Integer32) variable.
+   * @throws IOException
+   *    if the syntax of the value is not INTEGER.
+   */
+  public int getValueAsInteger() throws IOException {
+    checkSyntax(SMIConstants.SYNTAX_INTEGER32);
+    return cursor.getValueAsInteger();
+  }
+
+  /**
+   * Decodes the value of the current variable binding as unsigned 32bit
+   * integer.
+   * @return
+   *    the value of a Counter32, Gauge32 (Unsigned32), or TimeTicks
+   *    variable.
+   * @throws IOException
+   *    if the value is not of one of the above syntaxes.
+   */
+  public long getValueAsUnsignedInteger() throws IOException {
+    int syntax = getSyntax();
+    if ((syntax != SMIConstants.SYNTAX_COUNTER32) &&
+        (syntax != SMIConstants.SYNTAX_GAUGE32) &&
+        (syntax != SMIConstants.SYNTAX_TIMETICKS)) {
+      throw new IOException("Not an unsigned integer syntax: "+syntax);
+    }
+    return cursor.getValueAsUnsignedInteger();
+  }
+
+  /**
+   * Decodes the value of the current variable binding as Counter64.
+   * @return
+   *    the value of a Counter64 variable.
+   * @throws IOException
+   *    if the syntax of the value is not Counter64.
+   */
+  public long getValueAsCounter64() throws IOException {
+    checkSyntax(SMIConstants.SYNTAX_COUNTER64);
+    return cursor.getValueAsUnsignedInt64();
+  }
+
+  /**
+   * Compares the raw value bytes of the current variable binding with the
+   * given bytes, for example to match an OCTET STRING value without decoding
+   * it.
+   * @param value
+   *    a byte array.
+   * @return
+   *    <code>true</code> if the value bytes equal <code>value</code>.
+   */
+  public boolean valueEquals(byte[] value) {
+    checkVariableBinding();
+    return cursor.valueEquals(value);
+  }
+
+  private void checkSyntax(int syntax) throws IOException {
+    int actual = getSyntax();
+    if (actual != syntax) {
+      throw new IOException("Syntax "+actual+" does not match expected "+
+                            "syntax "+syntax);
+    }
+  }
+
+  /**
+   * Decodes the value of the current variable binding.
+   * @return
+   *    a new <code>Variable</code> instance.
+   * @throws IOException
+   *    if the value is not properly encoded.
+   */
+  public Variable getVariable() throws IOException {
+    checkVariableBinding();
+    return AbstractVariable.createFromBER(new BERInputStream(cursor.getEncoded()));
+  }
+
+  /**
+   * Decodes the current variable binding.
+   * @return
+   *    a new <code>VariableBinding</code> instance.
+   * @throws IOException
+   *    if the value is not properly encoded.
+   */
+  public VariableBinding getVariableBinding() throws IOException {
+    return new VariableBinding(getOID(), getVariable());
+  }
+
+  public String toString() {
+    return "PDUCursor[version="+version+",type="+PDU.getTypeString(type)+
+        ",requestID="+requestID+",cursor="+cursor+"]";
+  }
+}
@@ -124,7 +124,21 @@ public class PDUv1 extends PDU {
    * @since 1.9.1c
    */
   public PDUv1(PDUv1 other) {
-    super(other);
+    this(other, false);
+  }
+
+  /**
+   * Copy constructor that optionally shares the variable bindings with the
+   * other PDU (see {@link #copyOnWriteClone()}).
+   * @param other
+   *    the <code>PDUv1</code> to copy from.
+   * @param shareVariableBindings
+   *    if <code>true</code> the variable bindings are shared with
+   *    <code>other</code> until either PDU accesses them.
+   * @since 2.4
+   */
+  protected PDUv1(PDUv1 other, boolean shareVariableBindings) {
+    super(other, shareVariableBindings);
     enterprise = (OID) other.enterprise.clone();
     agentAddress = (IpAddress) other.agentAddress.clone();
     genericTrap = (Integer32) other.genericTrap.clone();
@@ -136,6 +150,10 @@ public class PDUv1 extends PDU {
     return new PDUv1(this);
   }
 
+  public PDUv1 copyOnWriteClone() {
+    return new PDUv1(this, true);
+  }
+
   /**
    * Decodes a <code>Variable</code> from an <code>InputStream</code>.
    *
@@ -187,7 +205,7 @@ public class PDUv1 extends PDU {
     }
     // rest read count
     int startPos = (int)inputStream.getPosition();
-    variableBindings = new Vector<VariableBinding>();
+    setVariableBindings(new ArrayList<VariableBinding>());
     while (inputStream.getPosition() - startPos < vbLength) {
       VariableBinding vb = new VariableBinding();
       vb.decodeBER(inputStream);
@@ -240,6 +258,29 @@ public class PDUv1 extends PDU {
     }
   }
 
+  public void encodeBER(BERReverseEncoder encoder) throws IOException {
+    int mark = encoder.length();
+    for (int i=0; i<variableBindings.size(); i++) {
+      if (!isVariableV1(variableBindings.get(i).getVariable())) {
+        throw new IOException("Cannot encode Counter64 into a SNMPv1 PDU");
+      }
+    }
+    encodeVariableBindings(encoder, variableBindings);
+    if (type == PDU.V1TRAP) {
+      AbstractVariable.encodeVariable(timestamp, encoder);
+      AbstractVariable.encodeVariable(specificTrap, encoder);
+      AbstractVariable.encodeVariable(genericTrap, encoder);
+      AbstractVariable.encodeVariable(agentAddress, encoder);
+      AbstractVariable.encodeVariable(enterprise, encoder);
+    }
+    else {
+      AbstractVariable.encodeVariable(errorIndex, encoder);
+      AbstractVariable.encodeVariable(errorStatus, encoder);
+      AbstractVariable.encodeVariable(requestID, encoder);
+    }
+    encoder.encodeHeader(type, encoder.length() - mark);
+  }
+
   /**
    * Check if the given variable can be encoded into a SNMPv1 PDU.
    * @param v
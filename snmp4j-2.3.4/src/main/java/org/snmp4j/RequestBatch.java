@@ -0,0 +1,255 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - RequestBatch.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.snmp4j.mp.PduHandle;
+import org.snmp4j.mp.PduHandleCallback;
+
+/**
+ * A <code>RequestBatch</code> is an ordered collection of PDU and target pairs
+ * that are encoded and sent together by
+ * {@link BatchMessageDispatcher#sendPdus(RequestBatch, boolean)} and
+ * {@link BatchSession#send(RequestBatch, org.snmp4j.event.ResponseListener)}.
+ * Sending a batch acquires request IDs with a single lock acquisition and
+ * registers one timer task per distinct timeout value for the whole batch
+ * instead of one per request.
+ * <p>
+ * After a batch has been sent, the outcome of each request can be obtained
+ * from its {@link Request#getPduHandle()} or {@link Request#getException()}.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class RequestBatch {
+
+  private List<Request> requests;
+
+  /**
+   * Creates an empty request batch.
+   */
+  public RequestBatch() {
+    requests = new ArrayList<Request>();
+  }
+
+  /**
+   * Creates an empty request batch with the specified initial capacity.
+   * @param initialCapacity
+   *    the expected number of requests.
+   */
+  public RequestBatch(int initialCapacity) {
+    requests = new ArrayList<Request>(initialCapacity);
+  }
+
+  /**
+   * Adds a request to the batch.
+   * @param pdu
+   *    the PDU to send.
+   * @param target
+   *    the target to send the PDU to.
+   * @return
+   *    the added <code>Request</code>.
+   */
+  public Request add(PDU pdu, Target target) {
+    return add(pdu, target, null, null);
+  }
+
+  /**
+   * Adds a request to the batch.
+   * @param pdu
+   *    the PDU to send.
+   * @param target
+   *    the target to send the PDU to.
+   * @param userHandle
+   *    a user defined handle that is returned in the
+   *    {@link org.snmp4j.event.ResponseEvent} of the request.
+   * @return
+   *    the added <code>Request</code>.
+   */
+  public Request add(PDU pdu, Target target, Object userHandle) {
+    return add(pdu, target, null, userHandle);
+  }
+
+  /**
+   * Adds a request to the batch.
+   * @param pdu
+   *    the PDU to send.
+   * @param target
+   *    the target to send the PDU to.
+   * @param transport
+   *    the transport mapping to be used or <code>null</code> to determine it
+   *    from the target.
+   * @param userHandle
+   *    a user defined handle that is returned in the
+   *    {@link org.snmp4j.event.ResponseEvent} of the request.
+   * @return
+   *    the added <code>Request</code>.
+   */
+  public Request add(PDU pdu, Target target, TransportMapping transport,
+                     Object userHandle) {
+    if ((pdu == null) || (target == null)) {
+      throw new NullPointerException("PDU and target must not be null");
+    }
+    Request request = new Request(pdu, target, transport, userHandle);
+    requests.add(request);
+    return request;
+  }
+
+  /**
+   * Adds an existing request (of another batch) to this batch.
+   * @param request
+   *    a <code>Request</code>.
+   */
+  void addRequest(Request request) {
+    requests.add(request);
+  }
+
+  /**
+   * Returns the requests of this batch in the order they have been added.
+   * @return
+   *    an unmodifiable list of requests.
+   */
+  public List<Request> getRequests() {
+    return Collections.unmodifiableList(requests);
+  }
+
+  /**
+   * Returns the number of requests in this batch.
+   * @return
+   *    the batch size.
+   */
+  public int size() {
+    return requests.size();
+  }
+
+  /**
+   * Checks whether all requests of the batch have been sent successfully.
+   * @return
+   *    <code>true</code> if no request has an exception set.
+   */
+  public boolean isSuccess() {
+    for (Request r : requests) {
+      if (r.getException() != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "RequestBatch[size="+requests.size()+"]";
+  }
+
+  /**
+   * A single request of a {@link RequestBatch}.
+   */
+  public static class Request {
+
+    private PDU pdu;
+    private Target target;
+    private TransportMapping transport;
+    private Object userHandle;
+    private PduHandleCallback<PDU> pduHandleCallback;
+    private PduHandle pduHandle;
+    private MessageException exception;
+
+    protected Request(PDU pdu, Target target, TransportMapping transport,
+                      Object userHandle) {
+      this.pdu = pdu;
+      this.target = target;
+      this.transport = transport;
+      this.userHandle = userHandle;
+    }
+
+    public PDU getPdu() {
+      return pdu;
+    }
+
+    public Target getTarget() {
+      return target;
+    }
+
+    public TransportMapping getTransport() {
+      return transport;
+    }
+
+    public void setTransport(TransportMapping transport) {
+      this.transport = transport;
+    }
+
+    public Object getUserHandle() {
+      return userHandle;
+    }
+
+    public PduHandleCallback<PDU> getPduHandleCallback() {
+      return pduHandleCallback;
+    }
+
+    /**
+     * Sets a callback that is informed about the assigned
+     * <code>PduHandle</code> just before the request is sent.
+     * @param pduHandleCallback
+     *    a <code>PduHandleCallback</code> or <code>null</code>.
+     */
+    public void setPduHandleCallback(PduHandleCallback<PDU> pduHandleCallback) {
+      this.pduHandleCallback = pduHandleCallback;
+    }
+
+    /**
+     * Returns the handle assigned to this request when it has been sent.
+     * @return
+     *    the <code>PduHandle</code> or <code>null</code> if the request has
+     *    not been sent (yet).
+     */
+    public PduHandle getPduHandle() {
+      return pduHandle;
+    }
+
+    public void setPduHandle(PduHandle pduHandle) {
+      this.pduHandle = pduHandle;
+    }
+
+    /**
+     * Returns the exception that occurred while encoding or sending this
+     * request.
+     * @return
+     *    a <code>MessageException</code> or <code>null</code> if the request
+     *    has been sent successfully (or not yet processed).
+     */
+    public MessageException getException() {
+      return exception;
+    }
+
+    public void setException(MessageException exception) {
+      this.exception = exception;
+    }
+
+    @Override
+    public String toString() {
+      return "Request[pdu="+pdu+",target="+target+",pduHandle="+pduHandle+
+          ",exception="+exception+"]";
+    }
+  }
+}
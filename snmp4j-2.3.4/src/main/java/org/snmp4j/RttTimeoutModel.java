@@ -0,0 +1,352 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - RttTimeoutModel.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.snmp4j.smi.Address;
+
+/**
+ * The <code>RttTimeoutModel</code> derives the retransmission timeout of
+ * requests from the round trip times measured for each target address. It
+ * maintains a smoothed round trip time (SRTT) and its mean deviation
+ * (RTTVAR) per address as specified by Jacobson/Karels (see RFC 6298):
+ * <pre>
+ *   RTTVAR = 3/4 * RTTVAR + 1/4 * |SRTT - R|
+ *   SRTT   = 7/8 * SRTT + 1/8 * R
+ *   RTO    = SRTT + 4 * RTTVAR
+ * </pre>
+ * The timeout of the first request is the RTO (bounded by
+ * {@link #getMinTimeout()} and {@link #getMaxTimeout()}), and the timeout is
+ * doubled with each retry. Round trip times of retransmitted requests are
+ * not sampled (Karn's algorithm). Instead, an expired timeout backs off the
+ * RTO of the address to twice the expired timeout. The backed off RTO is
+ * kept until a new round trip time has been sampled, so that responses of
+ * a target whose round trip time has increased are sampled again. As long
+ * as no round trip time has been
+ * measured for an address, the timeout of the target is used for each retry
+ * as by the {@link DefaultTimeoutModel}.
+ * <p>
+ * To use this model, set it on the session by
+ * <pre>
+ *   snmp.setTimeoutModel(new RttTimeoutModel());
+ * </pre>
+ * The statistics of each address can be monitored by
+ * {@link #getStatistics(Address)}.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class RttTimeoutModel implements TargetTimeoutModel {
+
+  /**
+   * The default lower bound of the retransmission timeout in milliseconds.
+   */
+  public static final long DEFAULT_MIN_TIMEOUT = 100;
+  /**
+   * The default upper bound of the retransmission timeout in milliseconds.
+   */
+  public static final long DEFAULT_MAX_TIMEOUT = 60000;
+  /**
+   * The default maximum number of addresses with statistics.
+   */
+  public static final int DEFAULT_MAX_ADDRESSES = 10000;
+
+  private final ConcurrentHashMap<Address, RttStatistics> statistics =
+      new ConcurrentHashMap<Address, RttStatistics>();
+  private volatile long minTimeout = DEFAULT_MIN_TIMEOUT;
+  private volatile long maxTimeout = DEFAULT_MAX_TIMEOUT;
+  private volatile int maxAddresses = DEFAULT_MAX_ADDRESSES;
+
+  public RttTimeoutModel() {
+  }
+
+  /**
+   * Creates a round trip time based timeout model.
+   * @param minTimeout
+   *    the lower bound of the retransmission timeout in milliseconds.
+   * @param maxTimeout
+   *    the upper bound of the retransmission timeout in milliseconds.
+   */
+  public RttTimeoutModel(long minTimeout, long maxTimeout) {
+    setTimeoutBounds(minTimeout, maxTimeout);
+  }
+
+  public long getRetryTimeout(int retryCount, int totalNumberOfRetries,
+                              long targetTimeout) {
+    return targetTimeout;
+  }
+
+  public long getRequestTimeout(int totalNumberOfRetries, long targetTimeout) {
+    return (totalNumberOfRetries+1)*targetTimeout;
+  }
+
+  public long getRetryTimeout(Address address, int retryCount,
+                              int totalNumberOfRetries, long targetTimeout) {
+    RttStatistics stats = statistics.get(address);
+    if (stats == null) {
+      return targetTimeout;
+    }
+    return stats.getRetryTimeout(retryCount);
+  }
+
+  public long getRequestTimeout(Address address, int totalNumberOfRetries,
+                                long targetTimeout) {
+    long timeout = 0;
+    for (int i=0; i<=totalNumberOfRetries; i++) {
+      timeout += getRetryTimeout(address, i, totalNumberOfRetries,
+                                 targetTimeout);
+    }
+    return timeout;
+  }
+
+  public void updateRoundTripTime(Address address, long roundTripTimeNanos) {
+    if ((address == null) || (roundTripTimeNanos < 0)) {
+      return;
+    }
+    RttStatistics stats = statistics.get(address);
+    if (stats == null) {
+      if (statistics.size() >= maxAddresses) {
+        return;
+      }
+      stats = new RttStatistics(address);
+      RttStatistics other = statistics.putIfAbsent(address, stats);
+      if (other != null) {
+        stats = other;
+      }
+    }
+    stats.update(roundTripTimeNanos);
+  }
+
+  public void timeoutExpired(Address address, long timeoutMillis) {
+    if (address == null) {
+      return;
+    }
+    RttStatistics stats = statistics.get(address);
+    if (stats != null) {
+      stats.backOff(timeoutMillis);
+    }
+  }
+
+  /**
+   * Gets the round trip time statistics for the given address.
+   * @param address
+   *    a target address.
+   * @return
+   *    the statistics or <code>null</code> if no round trip time has been
+   *    measured for <code>address</code>.
+   */
+  public RttStatistics getStatistics(Address address) {
+    return statistics.get(address);
+  }
+
+  /**
+   * Gets the round trip time statistics of all addresses.
+   * @return
+   *    a copy of the address to statistics map.
+   */
+  public Map<Address, RttStatistics> getStatistics() {
+    return new HashMap<Address, RttStatistics>(statistics);
+  }
+
+  /**
+   * Removes the statistics for the given address, for example when a target
+   * is removed from the configuration.
+   * @param address
+   *    a target address.
+   * @return
+   *    the removed statistics or <code>null</code> if there were none.
+   */
+  public RttStatistics removeStatistics(Address address) {
+    return statistics.remove(address);
+  }
+
+  /**
+   * Removes the statistics of all addresses.
+   */
+  public void clearStatistics() {
+    statistics.clear();
+  }
+
+  /**
+   * Sets the bounds of the retransmission timeout.
+   * @param minTimeout
+   *    the lower bound in milliseconds (must be > 0).
+   * @param maxTimeout
+   *    the upper bound in milliseconds (must be >= minTimeout).
+   */
+  public void setTimeoutBounds(long minTimeout, long maxTimeout) {
+    if ((minTimeout <= 0) || (maxTimeout < minTimeout)) {
+      throw new IllegalArgumentException("Invalid timeout bounds: "+
+                                         minTimeout+".."+maxTimeout);
+    }
+    this.minTimeout = minTimeout;
+    this.maxTimeout = maxTimeout;
+  }
+
+  public long getMinTimeout() {
+    return minTimeout;
+  }
+
+  public long getMaxTimeout() {
+    return maxTimeout;
+  }
+
+  public int getMaxAddresses() {
+    return maxAddresses;
+  }
+
+  /**
+   * Sets the maximum number of addresses for which statistics are kept.
+   * Requests to other addresses use the target timeout.
+   * @param maxAddresses
+   *    the maximum number of addresses.
+   */
+  public void setMaxAddresses(int maxAddresses) {
+    this.maxAddresses = maxAddresses;
+  }
+
+  /**
+   * The <code>RttStatistics</code> holds the round trip time estimation for
+   * a single address.
+   */
+  public class RttStatistics {
+
+    private final Address address;
+    private long smoothedRtt;
+    private long rttVariation;
+    private long samples;
+    private long lastRtt;
+    private long backedOffTimeout;
+
+    RttStatistics(Address address) {
+      this.address = address;
+    }
+
+    synchronized void update(long rttNanos) {
+      if (samples == 0) {
+        smoothedRtt = rttNanos;
+        rttVariation = rttNanos / 2;
+      }
+      else {
+        rttVariation += (Math.abs(smoothedRtt - rttNanos) - rttVariation) / 4;
+        smoothedRtt += (rttNanos - smoothedRtt) / 8;
+      }
+      lastRtt = rttNanos;
+      samples++;
+      backedOffTimeout = 0;
+    }
+
+    synchronized void backOff(long expiredTimeout) {
+      // concurrent timeouts of requests sent with the same timeout back off
+      // only once
+      long timeout = Math.min(maxTimeout, 2 * expiredTimeout);
+      if (timeout > backedOffTimeout) {
+        backedOffTimeout = timeout;
+      }
+    }
+
+    /**
+     * Gets the timeout to which the RTO has been backed off by expired
+     * timeouts since the last round trip time sample.
+     * @return
+     *    the backed off timeout in milliseconds or zero if no timeout
+     *    expired since the last sample.
+     */
+    public synchronized long getBackedOffTimeout() {
+      return backedOffTimeout;
+    }
+
+    public Address getAddress() {
+      return address;
+    }
+
+    /**
+     * Gets the smoothed round trip time (SRTT).
+     * @return
+     *    the SRTT in microseconds.
+     */
+    public synchronized long getSmoothedRoundTripTime() {
+      return TimeUnit.NANOSECONDS.toMicros(smoothedRtt);
+    }
+
+    /**
+     * Gets the round trip time variation (RTTVAR).
+     * @return
+     *    the RTTVAR in microseconds.
+     */
+    public synchronized long getRoundTripTimeVariation() {
+      return TimeUnit.NANOSECONDS.toMicros(rttVariation);
+    }
+
+    /**
+     * Gets the last measured round trip time.
+     * @return
+     *    the last round trip time in microseconds.
+     */
+    public synchronized long getLastRoundTripTime() {
+      return TimeUnit.NANOSECONDS.toMicros(lastRtt);
+    }
+
+    /**
+     * Gets the number of round trip times measured.
+     * @return
+     *    the number of samples.
+     */
+    public synchronized long getSamples() {
+      return samples;
+    }
+
+    /**
+     * Gets the retransmission timeout (RTO) for the first transmission of a
+     * request, including any backoff since the last sample.
+     * @return
+     *    the RTO in milliseconds within the bounds of the timeout model.
+     */
+    public long getRetransmissionTimeout() {
+      return getRetryTimeout(0);
+    }
+
+    long getRetryTimeout(int retryCount) {
+      long rto;
+      long backedOff;
+      synchronized (this) {
+        rto = smoothedRtt + 4 * rttVariation;
+        backedOff = backedOffTimeout;
+      }
+      // round up to the next millisecond
+      rto = Math.max(minTimeout, TimeUnit.NANOSECONDS.toMillis(rto + 999999));
+      for (int i=0; (i<retryCount) && (rto < maxTimeout); i++) {
+        rto <<= 1;
+      }
+      return Math.min(maxTimeout, Math.max(rto, backedOff));
+    }
+
+    public String toString() {
+      return "RttStatistics[address="+address+",srtt="+
+          getSmoothedRoundTripTime()+"us,rttvar="+getRoundTripTimeVariation()+
+          "us,rto="+getRetransmissionTimeout()+"ms,samples="+getSamples()+"]";
+    }
+  }
+}
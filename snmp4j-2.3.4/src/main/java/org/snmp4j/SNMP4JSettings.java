@@ -167,6 +167,14 @@ public final class SNMP4JSettings {
    */
   private static int enterpriseID = AGENTPP_ENTERPRISE_ID;
 
+  /**
+   * The minimum length of a BER encoded octet string value that is decoded
+   * as a view on the receive buffer instead of a copy. Zero (the default)
+   * disables such views.
+   * @since 2.4
+   */
+  private static volatile int octetStringViewMinLength = 0;
+
   /**
    * Enables (or disables) the extensibility feature of SNMP4J. When enabled,
    * SNMP4J checks certain properties files that describe which transport
@@ -256,7 +264,10 @@ public final class SNMP4JSettings {
   }
 
   /**
-   * Sets the timer factory for creating new timer instances.
+   * Sets the timer factory for creating new timer instances. Applications
+   * with many concurrently pending requests may use a
+   * {@link org.snmp4j.util.TimingWheelTimerFactory} instead of the default
+   * {@link java.util.Timer} based factory.
    * @param newTimerFactory
    *    a TimerFactory (must not be <code>null</code>).
    * @since 1.9
@@ -420,5 +431,38 @@ public final class SNMP4JSettings {
     SNMP4JSettings.maxEngineIdCacheSize = maxEngineIdCacheSize;
   }
 
+  /**
+   * Gets the minimum length of octet string values that are decoded without
+   * copying them from the receive buffer of a message.
+   * @return
+   *    the minimum length in bytes or zero if octet string values are always
+   *    copied (default).
+   * @since 2.4
+   */
+  public static int getOctetStringViewMinLength() {
+    return octetStringViewMinLength;
+  }
 
+  /**
+   * Sets the minimum length of octet string values (including
+   * {@link org.snmp4j.smi.Opaque} values) that are decoded as a view on the
+   * receive buffer of a message instead of a copy. The value bytes are
+   * copied only when the octet string is modified or its value array is
+   * accessed, see {@link org.snmp4j.smi.OctetString#isBufferView()}.
+   * <p>
+   * Views are only created if the transport mapping guarantees that the
+   * receive buffer of a message is never reused, see
+   * {@link org.snmp4j.transport.AbstractTransportMapping#isMessageBufferShareable()}.
+   * Transport mappings with pooled receive buffers never share them.
+   * A view keeps the whole
+   * message buffer in memory as long as the octet string is referenced.
+   * Thus, the minimum length should be large enough that only large values,
+   * which are typically forwarded or encoded again, are decoded as views.
+   * @param octetStringViewMinLength
+   *    the minimum length in bytes or zero to disable views.
+   * @since 2.4
+   */
+  public static void setOctetStringViewMinLength(int octetStringViewMinLength) {
+    SNMP4JSettings.octetStringViewMinLength = octetStringViewMinLength;
+  }
 }
@@ -25,6 +25,7 @@ import org.snmp4j.asn1.BER;
 import java.io.OutputStream;
 import java.io.IOException;
 import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.asn1.BERReverseEncoder;
 import org.snmp4j.asn1.BER.MutableByte;
 
 /**
@@ -53,7 +54,21 @@ public class ScopedPDU extends PDU {
    *    a <code>ScopedPDU</code> instance.
    */
   public ScopedPDU(ScopedPDU other) {
-    super(other);
+    this(other, false);
+  }
+
+  /**
+   * Copy constructor that optionally shares the variable bindings with the
+   * other PDU (see {@link #copyOnWriteClone()}).
+   * @param other
+   *    a <code>ScopedPDU</code> instance.
+   * @param shareVariableBindings
+   *    if <code>true</code> the variable bindings are shared with
+   *    <code>other</code> until either PDU accesses them.
+   * @since 2.4
+   */
+  protected ScopedPDU(ScopedPDU other, boolean shareVariableBindings) {
+    super(other, shareVariableBindings);
     this.contextEngineID = (OctetString) other.contextEngineID.clone();
     this.contextName = (OctetString) other.contextName.clone();
   }
@@ -123,12 +138,24 @@ public class ScopedPDU extends PDU {
     super.encodeBER(outputStream);
   }
 
+  public void encodeBER(BERReverseEncoder encoder) throws IOException {
+    int mark = encoder.length();
+    super.encodeBER(encoder);
+    AbstractVariable.encodeVariable(contextName, encoder);
+    AbstractVariable.encodeVariable(contextEngineID, encoder);
+    encoder.encodeHeader(BER.SEQUENCE, encoder.length() - mark);
+  }
+
 
 
   public Object clone() {
     return new ScopedPDU(this);
   }
 
+  public ScopedPDU copyOnWriteClone() {
+    return new ScopedPDU(this, true);
+  }
+
   /**
    * Decodes a <code>ScopedPDU</code> from an <code>InputStream</code>.
    *
@@ -21,6 +21,9 @@ package org.snmp4j;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.snmp4j.event.*;
 import org.snmp4j.log.*;
@@ -134,7 +137,7 @@ import org.snmp4j.util.*;
  * @author Frank Fock
  * @version 1.10
  */
-public class Snmp implements Session, CommandResponder {
+public class Snmp implements AsyncSession, BatchSession, CommandResponder {
 
   private static final LogAdapter logger = LogFactory.getLogger(Snmp.class);
 
@@ -146,15 +149,20 @@ public class Snmp implements Session, CommandResponder {
 
   /**
    * The <code>pendingRequests</code> table contains pending requests
-   * accessed trough the key <code>PduHandle</code>
+   * accessed trough the key <code>PduHandle</code>. State changes of a
+   * request are synchronized on the <code>PendingRequest</code> itself
+   * (or done atomically), so that no global lock is needed for
+   * matching responses, retries and cancellation.
    */
-  private final Map<PduHandle, PendingRequest> pendingRequests = new Hashtable<PduHandle, PendingRequest>(50);
+  private final ConcurrentMap<PduHandle, PendingRequest> pendingRequests =
+      new ConcurrentHashMap<PduHandle, PendingRequest>(64);
 
   /**
    * The <code>asyncRequests</code> table contains pending requests
    * accessed trough the key userObject
    */
-  private final Map<Object, PduHandle> asyncRequests = new Hashtable<Object, PduHandle>(50);
+  private final Map<Object, PduHandle> asyncRequests =
+      new ConcurrentHashMap<Object, PduHandle>(64);
 
   // Timer for retrying pending requests
   private CommonTimer timer;
@@ -512,17 +520,16 @@ public class Snmp implements Session, CommandResponder {
     if (notificationDispatcher != null) {
       notificationDispatcher.closeAll();
     }
-    List<PendingRequest> pr;
-    synchronized (pendingRequests) {
-      pr = new ArrayList<PendingRequest>(pendingRequests.values());
-    }
+    List<PendingRequest> pr =
+        new ArrayList<PendingRequest>(pendingRequests.values());
     for (PendingRequest pending : pr) {
-      pending.cancel();
+      // cancel clears the fields of the request, thus read them before
       ResponseEvent e =
           new ResponseEvent(this, null, pending.pdu, null, pending.userObject,
               new InterruptedException(
                   "Snmp session has been closed"));
       ResponseListener l = pending.listener;
+      pending.cancel();
       if (l != null) {
         l.onResponse(e);
       }
@@ -896,9 +903,7 @@ public class Snmp implements Session, CommandResponder {
           new PendingRequest(syncResponse, target, pdu, target, transport);
       request.maxRequestStatus = maxRequestStatus;
       handle = sendMessage(request.pdu, target, transport, request);
-      long totalTimeout =
-          timeoutModel.getRequestTimeout(target.getRetries(),
-                                         target.getTimeout());
+      long totalTimeout = getRequestTimeout(target);
       long stopTime = System.nanoTime()+totalTimeout*SnmpConstants.MILLISECOND_TO_NANOSECOND;
       try {
         while ((syncResponse.getResponse() == null) &&
@@ -925,7 +930,7 @@ public class Snmp implements Session, CommandResponder {
         Thread.currentThread().interrupt();
       }
       finally {
-        if (!request.finished) {
+        if (!request.isFinished()) {
           // free resources
           retryRequest = pendingRequests.remove(handle);
           if (retryRequest != null) {
@@ -974,6 +979,286 @@ public class Snmp implements Session, CommandResponder {
     sendMessage(request.pdu, target, transport, request);
   }
 
+  /**
+   * Asynchronously sends a <code>PDU</code> to the given target and returns
+   * a {@link SnmpFuture} that is completed with the response or timeout of
+   * the request. No thread is blocked while the request is pending and the
+   * request does not need to be cancelled after the future completed.
+   *
+   * @param pdu
+   *    a <code>PDU</code> instance. For SNMPv3 messages, the supplied PDU
+   *    instance has to be a <code>ScopedPDU</code> instance.
+   * @param target
+   *    the Target instance representing the target SNMP engine where to send
+   *    the <code>pdu</code>.
+   * @return
+   *    the future of the request. If <code>pdu</code> is an unconfirmed PDU,
+   *    the returned future is already completed with a
+   *    <code>ResponseEvent</code> without response.
+   * @throws IOException
+   *    if the PDU cannot be sent to the target.
+   * @since 2.4
+   */
+  public SnmpFuture sendAsync(PDU pdu, Target target) throws IOException {
+    return sendAsync(pdu, target, null, null);
+  }
+
+  /**
+   * Asynchronously sends a <code>PDU</code> to the given target using the
+   * supplied transport mapping and returns a {@link SnmpFuture} for the
+   * request.
+   *
+   * @param pdu
+   *    a <code>PDU</code> instance. For SNMPv3 messages, the supplied PDU
+   *    instance has to be a <code>ScopedPDU</code> instance.
+   * @param target
+   *    the Target instance representing the target SNMP engine where to send
+   *    the <code>pdu</code>.
+   * @param transport
+   *    specifies the <code>TransportMapping</code> to be used when sending
+   *    the PDU. If <code>transport</code> is <code>null</code>, the associated
+   *    message dispatcher will try to determine the transport mapping by the
+   *    <code>target</code>'s address.
+   * @param userHandle
+   *    an user defined handle that is returned by the
+   *    <code>ResponseEvent</code> of the future.
+   * @return
+   *    the future of the request. If <code>pdu</code> is an unconfirmed PDU,
+   *    the returned future is already completed with a
+   *    <code>ResponseEvent</code> without response.
+   * @throws IOException
+   *    if the PDU cannot be sent to the target.
+   * @since 2.4
+   */
+  public SnmpFuture sendAsync(PDU pdu, Target target,
+                              TransportMapping transport,
+                              Object userHandle) throws IOException {
+    SnmpFuture future = new SnmpFuture(this, pdu, userHandle);
+    if (!pdu.isConfirmedPdu()) {
+      sendMessage(pdu, target, transport, null);
+      future.complete(new ResponseEvent(this, null, pdu, null, userHandle));
+      return future;
+    }
+    if (timer == null) {
+      createPendingTimer();
+    }
+    PendingRequest request =
+        new FuturePendingRequest(future, pdu, target, transport);
+    sendMessage(request.pdu, target, transport, request);
+    return future;
+  }
+
+  /**
+   * Asynchronously sends a GET request <code>PDU</code> to the given target.
+   * This method sets the PDU's type to {@link PDU#GET} and then calls
+   * {@link #sendAsync(PDU pdu, Target target)}.
+   *
+   * @param pdu
+   *    the PDU instance to send.
+   * @param target
+   *    the Target instance representing the target SNMP engine where to send
+   *    the <code>pdu</code>.
+   * @return
+   *    the future of the request.
+   * @throws IOException
+   *    if the PDU cannot be sent to the target.
+   * @since 2.4
+   */
+  public SnmpFuture getAsync(PDU pdu, Target target) throws IOException {
+    pdu.setType(PDU.GET);
+    return sendAsync(pdu, target);
+  }
+
+  /**
+   * Asynchronously sends a GETNEXT request <code>PDU</code> to the given
+   * target. This method sets the PDU's type to {@link PDU#GETNEXT} and then
+   * calls {@link #sendAsync(PDU pdu, Target target)}.
+   *
+   * @param pdu
+   *    the PDU instance to send.
+   * @param target
+   *    the Target instance representing the target SNMP engine where to send
+   *    the <code>pdu</code>.
+   * @return
+   *    the future of the request.
+   * @throws IOException
+   *    if the PDU cannot be sent to the target.
+   * @since 2.4
+   */
+  public SnmpFuture getNextAsync(PDU pdu, Target target) throws IOException {
+    pdu.setType(PDU.GETNEXT);
+    return sendAsync(pdu, target);
+  }
+
+  /**
+   * Asynchronously sends a GETBULK request <code>PDU</code> to the given
+   * target. This method sets the PDU's type to {@link PDU#GETBULK} and then
+   * calls {@link #sendAsync(PDU pdu, Target target)}.
+   *
+   * @param pdu
+   *    the PDU instance to send.
+   * @param target
+   *    the Target instance representing the target SNMP engine where to send
+   *    the <code>pdu</code>.
+   * @return
+   *    the future of the request.
+   * @throws IOException
+   *    if the PDU cannot be sent to the target.
+   * @since 2.4
+   */
+  public SnmpFuture getBulkAsync(PDU pdu, Target target) throws IOException {
+    pdu.setType(PDU.GETBULK);
+    return sendAsync(pdu, target);
+  }
+
+  /**
+   * Asynchronously sends a SET request <code>PDU</code> to the given target.
+   * This method sets the PDU's type to {@link PDU#SET} and then calls
+   * {@link #sendAsync(PDU pdu, Target target)}.
+   *
+   * @param pdu
+   *    the PDU instance to send.
+   * @param target
+   *    the Target instance representing the target SNMP engine where to send
+   *    the <code>pdu</code>.
+   * @return
+   *    the future of the request.
+   * @throws IOException
+   *    if the PDU cannot be sent to the target.
+   * @since 2.4
+   */
+  public SnmpFuture setAsync(PDU pdu, Target target) throws IOException {
+    pdu.setType(PDU.SET);
+    return sendAsync(pdu, target);
+  }
+
+  /**
+   * Asynchronously sends an INFORM request <code>PDU</code> to the given
+   * target. This method sets the PDU's type to {@link PDU#INFORM} and then
+   * calls {@link #sendAsync(PDU pdu, Target target)}.
+   *
+   * @param pdu
+   *    the PDU instance to send.
+   * @param target
+   *    the Target instance representing the target SNMP engine where to send
+   *    the <code>pdu</code>.
+   * @return
+   *    the future of the request.
+   * @throws IOException
+   *    if the PDU cannot be sent to the target.
+   * @since 2.4
+   */
+  public SnmpFuture informAsync(PDU pdu, Target target) throws IOException {
+    pdu.setType(PDU.INFORM);
+    return sendAsync(pdu, target);
+  }
+
+  /**
+   * Asynchronously sends the PDUs of a request batch. The messages are sent
+   * through {@link BatchMessageDispatcher#sendPdus(RequestBatch, boolean)}
+   * if the message dispatcher supports it (otherwise one by one) and
+   * the initial timeouts of the confirmed requests are registered with one
+   * timer task per distinct timeout value. Retries are scheduled
+   * individually. Requests that could not be sent are reported to the
+   * <code>listener</code> with a <code>ResponseEvent</code> containing the
+   * error.
+   *
+   * @param batch
+   *    the PDU and target pairs to send. The transport mapping of a request
+   *    is determined by the preferred transports of its target if not set.
+   * @param listener
+   *    the <code>ResponseListener</code> that receives the responses (and
+   *    timeouts) of all confirmed requests of the batch. Each response has to
+   *    be cancelled by {@link #cancel(PDU, ResponseListener)} as for other
+   *    asynchronous requests.
+   * @throws IOException
+   *    if the batch could not be processed at all.
+   * @since 2.4
+   */
+  public void send(RequestBatch batch, ResponseListener listener)
+      throws IOException
+  {
+    if (timer == null) {
+      createPendingTimer();
+    }
+    BatchTimerTasks batchTimerTasks = new BatchTimerTasks();
+    List<RequestBatch.Request> requests = batch.getRequests();
+    PendingRequest[] pending = new PendingRequest[requests.size()];
+    RequestBatch sendBatch = new RequestBatch(requests.size());
+    for (int i=0; i<pending.length; i++) {
+      RequestBatch.Request r = requests.get(i);
+      if (r.getTransport() == null) {
+        r.setTransport(lookupTransportMapping(r.getTarget()));
+      }
+      if (r.getPdu().isConfirmedPdu()) {
+        pending[i] = new AsyncPendingRequest(listener, r.getUserHandle(),
+                                             r.getPdu(), r.getTarget(),
+                                             r.getTransport());
+        if (pending[i].pdu != r.getPdu()) {
+          // a context engine ID discovery has to be sent first
+          try {
+            r.setPduHandle(sendMessage(pending[i].pdu, r.getTarget(),
+                                       r.getTransport(), pending[i]));
+          }
+          catch (MessageException mex) {
+            r.setException(mex);
+          }
+          catch (IOException iox) {
+            // report the failure with the request and send the others
+            r.setException(new MessageException(iox.getMessage(),
+                                                SnmpConstants.SNMP_MD_ERROR,
+                                                iox));
+          }
+          continue;
+        }
+        pending[i].batchTimerTasks = batchTimerTasks;
+        r.setPduHandleCallback(pending[i]);
+      }
+      sendBatch.addRequest(r);
+    }
+    sendPdus(sendBatch);
+    batchTimerTasks.schedule();
+    for (int i=0; i<pending.length; i++) {
+      RequestBatch.Request r = requests.get(i);
+      if (r.getException() != null) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Failed to send batched request "+r+": "+
+                       r.getException().getMessage());
+        }
+        if (pending[i] != null) {
+          cancel(r.getPdu(), listener);
+          PduHandle handle = r.getPduHandle();
+          if (handle != null) {
+            pendingRequests.remove(handle);
+          }
+          pending[i].setFinished();
+          pending[i].cancel();
+          listener.onResponse(new ResponseEvent(this, null, r.getPdu(), null,
+                                                r.getUserHandle(),
+                                                r.getException()));
+        }
+      }
+    }
+  }
+
+  private void sendPdus(RequestBatch batch) {
+    if (messageDispatcher instanceof BatchMessageDispatcher) {
+      ((BatchMessageDispatcher)messageDispatcher).sendPdus(batch, true);
+      return;
+    }
+    for (RequestBatch.Request r : batch.getRequests()) {
+      try {
+        r.setPduHandle(messageDispatcher.sendPdu(r.getTransport(),
+                                                 r.getTarget(), r.getPdu(),
+                                                 true,
+                                                 r.getPduHandleCallback()));
+      }
+      catch (MessageException mex) {
+        r.setException(mex);
+      }
+    }
+  }
+
   /**
    * Actually sends a PDU to a target and returns a handle for the sent PDU.
    * @param pdu
@@ -1025,14 +1310,33 @@ public class Snmp implements Session, CommandResponder {
     if (logger.isDebugEnabled()) {
       logger.debug("Cancelling pending request with handle " + pending);
     }
+    cancelPendingRequest(pending);
+  }
+
+  /**
+   * Removes the pending request with the given handle and cancels its
+   * retries.
+   * @param pending
+   *    the handle of the pending request or <code>null</code>.
+   */
+  void cancelPendingRequest(PduHandle pending) {
     if (pending != null) {
       PendingRequest pendingRequest =
               pendingRequests.remove(pending);
-      if (pendingRequest != null) {
+      while (pendingRequest != null) {
+        PendingRequest retry;
         synchronized (pendingRequest) {
           pendingRequest.setFinished();
           pendingRequest.cancel();
+          // a retry sent by the timer task while the request was removed
+          // above has been registered in the meantime
+          retry = pendingRequest.retry;
         }
+        PduHandle retryKey = (retry != null) ? retry.key : null;
+        if (retryKey != null) {
+          pendingRequests.remove(retryKey, retry);
+        }
+        pendingRequest = retry;
       }
     }
   }
@@ -1183,11 +1487,9 @@ public class Snmp implements Session, CommandResponder {
       if (logger.isDebugEnabled()) {
         logger.debug("Looking up pending request with handle " + handle);
       }
-      synchronized (pendingRequests) {
-        request = pendingRequests.get(handle);
-        if (request != null) {
-          request.responseReceived();
-        }
+      request = pendingRequests.get(handle);
+      if (request != null) {
+        request.responseReceived();
       }
       if (request == null) {
         if (logger.isWarnEnabled()) {
@@ -1199,12 +1501,22 @@ public class Snmp implements Session, CommandResponder {
       }
       else if (!resendRequest(request, pdu)) {
         ResponseListener l = request.listener;
-        if (l != null) {
-          l.onResponse(new ResponseEvent(this,
-                                         event.getPeerAddress(),
-                                         request.pdu,
-                                         pdu,
-                                         request.userObject));
+        if (request.setFinished()) {
+          // the request timed out or has been cancelled concurrently
+          if (logger.isDebugEnabled()) {
+            logger.debug("Dropping response of finished request with handle " +
+                         handle);
+          }
+        }
+        else {
+          request.leaveBatch();
+          if (l != null) {
+            l.onResponse(new ResponseEvent(this,
+                                           event.getPeerAddress(),
+                                           request.pdu,
+                                           pdu,
+                                           request.userObject));
+          }
         }
       }
     }
@@ -1242,7 +1554,8 @@ public class Snmp implements Session, CommandResponder {
   protected boolean resendRequest(PendingRequest request, PDU response) {
     if (request.useNextPDU()) {
       request.responseReceived = false;
-      synchronized (pendingRequests) {
+      // the request's lock serializes the resend with its retry timer task
+      synchronized (request) {
         pendingRequests.remove(request.key);
         PduHandle holdKeyUntilResendDone = request.key;
         request.key = null;
@@ -1315,6 +1628,7 @@ public class Snmp implements Session, CommandResponder {
         try {
           // We need no callback here because we already have an equivalent
           // handle registered.
+          request.sendTime = System.nanoTime();
           PduHandle resentHandle =
               sendMessage(request.pdu, request.target, e.getTransportMapping(),
                           null);
@@ -1451,6 +1765,25 @@ public class Snmp implements Session, CommandResponder {
     }
   }
 
+  private long getRetryTimeout(Target target, int retryCount) {
+    TimeoutModel tm = timeoutModel;
+    if (tm instanceof TargetTimeoutModel) {
+      return ((TargetTimeoutModel)tm).getRetryTimeout(target.getAddress(),
+          retryCount, target.getRetries(), target.getTimeout());
+    }
+    return tm.getRetryTimeout(retryCount, target.getRetries(),
+                              target.getTimeout());
+  }
+
+  private long getRequestTimeout(Target target) {
+    TimeoutModel tm = timeoutModel;
+    if (tm instanceof TargetTimeoutModel) {
+      return ((TargetTimeoutModel)tm).getRequestTimeout(target.getAddress(),
+          target.getRetries(), target.getTimeout());
+    }
+    return tm.getRequestTimeout(target.getRetries(), target.getTimeout());
+  }
+
   /**
    * Gets the timeout model associated with this SNMP session.
    * @return
@@ -1477,7 +1810,9 @@ public class Snmp implements Session, CommandResponder {
    * sends retries whenever the time specified by the <code>timeout</code>
    * parameter of the target has elapsed without a response being received for
    * the request. By specifying a different timeout model this behaviour can
-   * be changed.
+   * be changed. If the timeout model is a {@link TargetTimeoutModel}, like
+   * the {@link RttTimeoutModel}, timeouts are computed per target address
+   * and the round trip times of answered requests are reported to it.
    * @param timeoutModel
    *    a <code>TimeoutModel</code> instance (must not be <code>null</code>).
    */
@@ -1512,7 +1847,8 @@ public class Snmp implements Session, CommandResponder {
   }
 
 
-  class PendingRequest extends TimerTask implements PduHandleCallback<PDU>, Cloneable {
+  class PendingRequest extends TimerTask
+      implements PduHandleCallback<PDU>, CancelableTask, Cloneable {
 
     private PduHandle key;
     protected int retryCount;
@@ -1528,10 +1864,17 @@ public class Snmp implements Session, CommandResponder {
     // send the original request again. A value of 0 is used for discovery.
     private int maxRequestStatus = DEFAULT_MAX_REQUEST_STATUS;
 
-    private volatile boolean finished = false;
+    private final AtomicBoolean finished = new AtomicBoolean();
     private volatile boolean responseReceived = false;
     private volatile boolean pendingRetry = false;
-    private volatile boolean cancelled = false;
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private volatile boolean executed = false;
+    private volatile long sendTime;
+    private volatile long timeout;
+    /**
+     * The request that has been sent as retry of this request.
+     */
+    private volatile PendingRequest retry;
 
     /**
      * The <code>nextPDU</code> field holds a PDU that has to be sent
@@ -1540,6 +1883,16 @@ public class Snmp implements Session, CommandResponder {
      */
     private PDU nextPDU;
 
+    /**
+     * If not <code>null</code>, the initial timeout of this request is
+     * scheduled together with the other requests of a request batch.
+     */
+    private BatchTimerTasks batchTimerTasks;
+    /**
+     * The batch timer task that references this request until its timeout.
+     */
+    private volatile BatchTimerTask batchTimerTask;
+
     public PendingRequest(ResponseListener listener,
                           Object userObject,
                           PDU pdu,
@@ -1613,6 +1966,27 @@ public class Snmp implements Session, CommandResponder {
 
     public void responseReceived() {
       this.responseReceived = true;
+      TimeoutModel tm = timeoutModel;
+      Target t = target;
+      long sent = sendTime;
+      // sample only requests that have not been retransmitted (Karn)
+      if ((tm instanceof TargetTimeoutModel) && (t != null) && (sent != 0) &&
+          (retryCount == t.getRetries()) && (nextPDU == null)) {
+        ((TargetTimeoutModel)tm).updateRoundTripTime(t.getAddress(),
+                                                     System.nanoTime() - sent);
+      }
+    }
+
+    /**
+     * Reports the expired timeout of this request to a
+     * {@link TargetTimeoutModel}, so that it can back off its timeouts for
+     * the target.
+     */
+    private void timeoutExpired(Target target) {
+      TimeoutModel tm = timeoutModel;
+      if ((tm instanceof TargetTimeoutModel) && (timeout > 0)) {
+        ((TargetTimeoutModel)tm).timeoutExpired(target.getAddress(), timeout);
+      }
     }
 
     public PDU getNextPDU() {
@@ -1635,7 +2009,7 @@ public class Snmp implements Session, CommandResponder {
         // to make sure that this retry is not being cancelled before we
         // got the target pointer.
         Target t = target;
-        if ((t != null) && (!cancelled)) {
+        if ((t != null) && (!cancelled.get())) {
           pendingRequests.put(handle, this);
           registerRequest(handle);
           if (logger.isDebugEnabled()) {
@@ -1645,14 +2019,16 @@ public class Snmp implements Session, CommandResponder {
                          " request with handle " + handle +
                          " and retry count left " + retryCount);
           }
-          long delay =
-              timeoutModel.getRetryTimeout(t.getRetries() - retryCount,
-                                           t.getRetries(),
-                                           t.getTimeout());
-          if ((!finished) && (!responseReceived) && (!cancelled)) {
+          long delay = getRetryTimeout(t, t.getRetries() - retryCount);
+          timeout = delay;
+          sendTime = System.nanoTime();
+          if ((!finished.get()) && (!responseReceived) && (!cancelled.get())) {
             try {
               CommonTimer timerCopy = timer;
-              if (timerCopy != null) {
+              if (batchTimerTasks != null) {
+                batchTimerTasks.add(this, delay);
+              }
+              else if (timerCopy != null) {
                 timerCopy.schedule(this, delay);
               }
               // pending request will be removed by the close() call
@@ -1675,6 +2051,7 @@ public class Snmp implements Session, CommandResponder {
      * Process retries of a pending request.
      */
     public synchronized void run() {
+      executed = true;
       PduHandle m_key = key;
       PDU m_pdu = pdu;
       Target m_target = target;
@@ -1693,19 +2070,19 @@ public class Snmp implements Session, CommandResponder {
       }
 
       try {
-        synchronized (pendingRequests) {
-          this.pendingRetry =
-              (!finished) && (retryCount > 0) && (!responseReceived);
-        }
+        this.pendingRetry =
+            (!finished.get()) && (retryCount > 0) && (!responseReceived);
         if (this.pendingRetry) {
+          timeoutExpired(m_target);
           try {
             PendingRequest nextRetry = new PendingRequest(this);
+            retry = nextRetry;
             sendMessage(m_pdu, m_target, m_transport, nextRetry);
             this.pendingRetry = false;
           }
           catch (IOException ex) {
             ResponseListener l = listener;
-            finished = true;
+            finished.set(true);
             logger.error("Failed to send SNMP message to " + m_target +
                          ": " +
                          ex.getMessage());
@@ -1717,14 +2094,14 @@ public class Snmp implements Session, CommandResponder {
             }
           }
         }
-        else if (!finished) {
-          finished = true;
+        else if (finished.compareAndSet(false, true)) {
           pendingRequests.remove(m_key);
-          if (!cancelled) {
+          if (!cancelled.get()) {
             // request timed out
             if (logger.isDebugEnabled()) {
               logger.debug("Request timed out: " + m_key.getTransactionID());
             }
+            timeoutExpired(m_target);
             messageDispatcher.releaseStateReference(m_target.getVersion(),
                                                     m_key);
             m_listener.onResponse(new ResponseEvent(Snmp.this, null,
@@ -1749,10 +2126,17 @@ public class Snmp implements Session, CommandResponder {
       }
     }
 
+    /**
+     * Marks this request as finished.
+     * @return
+     *    the previous finished state.
+     */
     public boolean setFinished() {
-      boolean currentState = finished;
-      this.finished = true;
-      return currentState;
+      return finished.getAndSet(true);
+    }
+
+    public boolean isFinished() {
+      return finished.get();
     }
 
     public void setMaxRequestStatus(int maxRequestStatus) {
@@ -1771,11 +2155,16 @@ public class Snmp implements Session, CommandResponder {
      * Cancels the request and clears all internal fields by setting them
      * to <code>null</code>.
      * @return
-     *    <code>true</code> if cancellation was successful.
+     *    <code>true</code> if this call cancelled the request before its
+     *    retry timer expired, <code>false</code> if the request has already
+     *    been cancelled or its timer task has been executed. In contrast to
+     *    {@link TimerTask#cancel()} this result does not depend on the
+     *    timer implementation.
      */
     public boolean cancel(){
-      cancelled = true;
-      boolean result = super.cancel();
+      boolean result = cancelled.compareAndSet(false, true) && !executed;
+      super.cancel();
+      leaveBatch();
 
       // free objects early
       if (!pendingRetry) {
@@ -1788,6 +2177,45 @@ public class Snmp implements Session, CommandResponder {
       }
       return result;
     }
+
+    public boolean isCancelled() {
+      return cancelled.get();
+    }
+
+    BatchTimerTask getBatchTimerTask() {
+      return batchTimerTask;
+    }
+
+    /**
+     * Removes this finished request from the timer task of its request
+     * batch (if any).
+     */
+    void leaveBatch() {
+      BatchTimerTask batchTask = batchTimerTask;
+      if (batchTask != null) {
+        batchTimerTask = null;
+        batchTask.remove(this);
+      }
+    }
+  }
+
+  class FuturePendingRequest extends PendingRequest {
+
+    private SnmpFuture future;
+
+    public FuturePendingRequest(SnmpFuture future,
+                                PDU pdu,
+                                Target target,
+                                TransportMapping transport) {
+      super(future.getCompletionListener(), future.getUserObject(),
+            pdu, target, transport);
+      this.future = future;
+    }
+
+    protected void registerRequest(PduHandle handle) {
+      future.setPduHandle(handle);
+    }
+
   }
 
   class AsyncPendingRequest extends PendingRequest {
@@ -1806,6 +2234,129 @@ public class Snmp implements Session, CommandResponder {
 
   }
 
+  /**
+   * Collects the pending requests of a request batch by their timeout, so that
+   * only one timer task per distinct timeout value has to be scheduled for
+   * the batch.
+   */
+  class BatchTimerTasks {
+
+    private Map<Long, BatchTimerTask> tasks = new HashMap<Long, BatchTimerTask>(2);
+    private boolean scheduled;
+
+    synchronized void add(PendingRequest request, long delay) {
+      if (scheduled) {
+        CommonTimer timerCopy = timer;
+        if (timerCopy != null) {
+          timerCopy.schedule(request, delay);
+        }
+        return;
+      }
+      BatchTimerTask task = tasks.get(delay);
+      if ((task == null) || task.isCancelled()) {
+        task = new BatchTimerTask();
+        tasks.put(delay, task);
+      }
+      task.add(request);
+      request.batchTimerTask = task;
+    }
+
+    synchronized void schedule() {
+      scheduled = true;
+      CommonTimer timerCopy = timer;
+      if (timerCopy != null) {
+        for (Map.Entry<Long, BatchTimerTask> entry : tasks.entrySet()) {
+          if (!entry.getValue().setScheduled()) {
+            // all requests of the task have already been finished
+            continue;
+          }
+          try {
+            timerCopy.schedule(entry.getValue(), entry.getKey());
+          }
+          catch (IllegalStateException isex) {
+            // timer has been cancelled by close()
+          }
+        }
+      }
+      tasks = null;
+    }
+  }
+
+  /**
+   * Processes the timeouts of the requests of a request batch that share the
+   * same timeout value.
+   */
+  static class BatchTimerTask extends TimerTask implements CancelableTask {
+
+    private final Set<PendingRequest> requests =
+        new LinkedHashSet<PendingRequest>();
+    private volatile boolean cancelled;
+    private boolean scheduled;
+
+    synchronized void add(PendingRequest request) {
+      requests.add(request);
+    }
+
+    /**
+     * Removes a finished request, so that it is not referenced until the
+     * timeout of the batch. The task is cancelled when its last request has
+     * been removed after the task has been scheduled. Before that, further
+     * requests of the batch may still be added to the task.
+     * @param request
+     *    a request of this task.
+     */
+    void remove(PendingRequest request) {
+      synchronized (this) {
+        if (!requests.remove(request) || !requests.isEmpty() || !scheduled) {
+          return;
+        }
+      }
+      cancel();
+    }
+
+    /**
+     * Marks this task as scheduled, so that it is cancelled when its last
+     * request is removed.
+     * @return
+     *    <code>true</code> if the task has requests left and thus has to be
+     *    scheduled, <code>false</code> if all its requests have already been
+     *    finished.
+     */
+    synchronized boolean setScheduled() {
+      scheduled = true;
+      return !requests.isEmpty();
+    }
+
+    public void run() {
+      PendingRequest[] due;
+      synchronized (this) {
+        due = requests.toArray(new PendingRequest[requests.size()]);
+        requests.clear();
+      }
+      for (PendingRequest request : due) {
+        try {
+          request.run();
+        }
+        catch (RuntimeException rex) {
+          // already logged by PendingRequest.run()
+        }
+      }
+    }
+
+    public boolean cancel() {
+      cancelled = true;
+      return super.cancel();
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    synchronized int size() {
+      return requests.size();
+    }
+  }
+
   static class AsyncRequestKey {
     private PDU request;
     private ResponseListener listener;
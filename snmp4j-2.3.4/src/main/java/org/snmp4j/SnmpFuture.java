@@ -0,0 +1,316 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - SnmpFuture.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+import org.snmp4j.mp.PduHandle;
+
+/**
+ * A <code>SnmpFuture</code> represents the result of an asynchronous request
+ * sent by one of the <code>*Async</code> methods of {@link Snmp}, for example
+ * {@link Snmp#sendAsync(PDU, Target)}. The future is completed with the
+ * {@link ResponseEvent} of the request when the response has been received,
+ * the request timed out, or the session has been closed.
+ * <p>
+ * No thread is blocked while the request is pending. Completion can be
+ * awaited by {@link #get()} or {@link #get(long, TimeUnit)}, or observed by
+ * {@link ResponseListener}s added with {@link #addResponseListener}, which is
+ * the way to compose requests (for example, to send the next request when
+ * the current one has been answered). In contrast to the
+ * {@link ResponseListener} based API, the request does not need to be
+ * cancelled by {@link Snmp#cancel(PDU, ResponseListener)} after
+ * completion. Cancelling the future by {@link #cancel(boolean)} removes the
+ * pending request from the session.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class SnmpFuture implements Future<ResponseEvent> {
+
+  private static final LogAdapter logger =
+      LogFactory.getLogger(SnmpFuture.class);
+
+  private final Snmp session;
+  private final PDU request;
+  private final Object userObject;
+  private volatile PduHandle pduHandle;
+
+  private boolean done;
+  private boolean cancelled;
+  private ResponseEvent event;
+  private List<ResponseListener> listeners;
+
+  private final ResponseListener completionListener = new ResponseListener() {
+    public void onResponse(ResponseEvent event) {
+      complete(event);
+    }
+  };
+
+  SnmpFuture(Snmp session, PDU request, Object userObject) {
+    this.session = session;
+    this.request = request;
+    this.userObject = userObject;
+  }
+
+  /**
+   * Gets the request PDU of this future.
+   * @return
+   *    the PDU sent.
+   */
+  public PDU getRequest() {
+    return request;
+  }
+
+  /**
+   * Gets the user object supplied when the request was sent.
+   * @return
+   *    the user object or <code>null</code>.
+   */
+  public Object getUserObject() {
+    return userObject;
+  }
+
+  /**
+   * Adds a listener that is called exactly once when this future completes.
+   * If the future has already been completed, the listener is called
+   * immediately by the calling thread. Otherwise it is called by the thread
+   * that completes the future, which is typically a transport or dispatcher
+   * thread and therefore must not block. If the future is cancelled, the
+   * listener receives an event whose error is a
+   * {@link CancellationException}.
+   *
+   * @param listener
+   *    a <code>ResponseListener</code>. The listener must not call
+   *    {@link Snmp#cancel(PDU, ResponseListener)}.
+   */
+  public void addResponseListener(ResponseListener listener) {
+    ResponseEvent e;
+    synchronized (this) {
+      if (!done) {
+        if (listeners == null) {
+          listeners = new ArrayList<ResponseListener>(2);
+        }
+        listeners.add(listener);
+        return;
+      }
+      e = event;
+    }
+    fireResponse(listener, e);
+  }
+
+  /**
+   * Cancels the request. The pending request is removed from the session,
+   * thus neither a retry will be sent nor a response be processed for it.
+   *
+   * @param mayInterruptIfRunning
+   *    ignored, because no thread is associated with a pending request.
+   * @return
+   *    <code>false</code> if the future has already been completed or
+   *    cancelled, <code>true</code> otherwise.
+   */
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    ResponseEvent e =
+        new ResponseEvent(session, null, request, null, userObject,
+                          new CancellationException("Request cancelled"));
+    List<ResponseListener> l;
+    synchronized (this) {
+      if (done) {
+        return false;
+      }
+      done = true;
+      cancelled = true;
+      event = e;
+      l = listeners;
+      listeners = null;
+      notifyAll();
+    }
+    session.cancelPendingRequest(pduHandle);
+    fireResponse(l, e);
+    return true;
+  }
+
+  public synchronized boolean isCancelled() {
+    return cancelled;
+  }
+
+  public synchronized boolean isDone() {
+    return done;
+  }
+
+  /**
+   * Waits until the request has been completed.
+   *
+   * @return
+   *    the <code>ResponseEvent</code> of the request. If the request timed
+   *    out, {@link ResponseEvent#getResponse()} returns <code>null</code>.
+   * @throws InterruptedException
+   *    if the current thread has been interrupted while waiting.
+   * @throws ExecutionException
+   *    if the request failed, for example because the session has been
+   *    closed or a retry could not be sent. The cause is the error of the
+   *    <code>ResponseEvent</code>.
+   * @throws CancellationException
+   *    if the future has been cancelled.
+   */
+  public ResponseEvent get() throws InterruptedException, ExecutionException {
+    synchronized (this) {
+      while (!done) {
+        wait();
+      }
+    }
+    return getResult();
+  }
+
+  /**
+   * Waits at most the given time until the request has been completed.
+   * Note that the request itself times out according to the timeout and
+   * retries of its target, which is independent from the waiting time
+   * specified here.
+   *
+   * @param timeout
+   *    the maximum time to wait.
+   * @param unit
+   *    the time unit of <code>timeout</code>.
+   * @return
+   *    the <code>ResponseEvent</code> of the request.
+   * @throws InterruptedException
+   *    if the current thread has been interrupted while waiting.
+   * @throws ExecutionException
+   *    if the request failed.
+   * @throws TimeoutException
+   *    if the request has not been completed in time. The request is still
+   *    pending then.
+   * @throws CancellationException
+   *    if the future has been cancelled.
+   */
+  public ResponseEvent get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException
+  {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    synchronized (this) {
+      while (!done) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          throw new TimeoutException();
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+      }
+    }
+    return getResult();
+  }
+
+  private ResponseEvent getResult() throws ExecutionException {
+    ResponseEvent e;
+    synchronized (this) {
+      if (cancelled) {
+        throw new CancellationException();
+      }
+      e = event;
+    }
+    if ((e != null) && (e.getError() != null)) {
+      throw new ExecutionException(e.getError());
+    }
+    return e;
+  }
+
+  /**
+   * Completes this future with the given event, unless it is already done.
+   * @param responseEvent
+   *    the result of the request.
+   * @return
+   *    <code>true</code> if this call completed the future.
+   */
+  boolean complete(ResponseEvent responseEvent) {
+    List<ResponseListener> l;
+    synchronized (this) {
+      if (done) {
+        return false;
+      }
+      done = true;
+      event = responseEvent;
+      l = listeners;
+      listeners = null;
+      notifyAll();
+    }
+    session.cancelPendingRequest(pduHandle);
+    fireResponse(l, responseEvent);
+    return true;
+  }
+
+  ResponseListener getCompletionListener() {
+    return completionListener;
+  }
+
+  /**
+   * Sets the handle of the pending request. If this future has already been
+   * cancelled or completed before the handle was assigned, the pending
+   * request is cancelled, because {@link #cancel(boolean)} and
+   * {@link #complete(ResponseEvent)} could not remove it from the session.
+   * @param pduHandle
+   *    the handle of the pending request.
+   */
+  void setPduHandle(PduHandle pduHandle) {
+    this.pduHandle = pduHandle;
+    boolean completed;
+    synchronized (this) {
+      completed = done;
+    }
+    if (completed) {
+      session.cancelPendingRequest(pduHandle);
+    }
+  }
+
+  private static void fireResponse(List<ResponseListener> listeners,
+                                   ResponseEvent e) {
+    if (listeners != null) {
+      for (ResponseListener l : listeners) {
+        fireResponse(l, e);
+      }
+    }
+  }
+
+  private static void fireResponse(ResponseListener listener,
+                                   ResponseEvent e) {
+    try {
+      listener.onResponse(e);
+    }
+    catch (RuntimeException ex) {
+      logger.error("Response listener "+listener+" failed: "+
+                   ex.getMessage(), ex);
+    }
+  }
+
+  public String toString() {
+    return "SnmpFuture[pduHandle="+pduHandle+",done="+isDone()+
+        ",cancelled="+isCancelled()+"]";
+  }
+}
@@ -0,0 +1,97 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TargetTimeoutModel.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j;
+
+import org.snmp4j.smi.Address;
+
+/**
+ * A <code>TargetTimeoutModel</code> is a {@link TimeoutModel} that computes
+ * timeouts individually for each target address, for example from the round
+ * trip times measured for previous requests. If the timeout model of a
+ * {@link Snmp} session implements this interface, the session uses the
+ * address based methods. It reports the round trip time of each request
+ * that has been answered without being retransmitted, and each expired
+ * timeout.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public interface TargetTimeoutModel extends TimeoutModel {
+
+  /**
+   * Gets the timeout for the specified retry of a request to the given
+   * address (a zero value for <code>retryCount</code> specifies the first
+   * request).
+   * @param address
+   *    the address of the target.
+   * @param retryCount
+   *    the number of retries already performed for the target.
+   * @param totalNumberOfRetries
+   *    the total number of retries configured for the target.
+   * @param targetTimeout
+   *    the timeout as specified for the target in milliseconds.
+   * @return
+   *    the timeout duration in milliseconds for the supplied retry.
+   */
+  long getRetryTimeout(Address address, int retryCount,
+                       int totalNumberOfRetries, long targetTimeout);
+
+  /**
+   * Gets the timeout for all retries of a request to the given address,
+   * which is the sum of
+   * {@link #getRetryTimeout(Address, int, int, long)} for all
+   * <code>retryCount</code> in
+   * <code>0 <= retryCount <= totalNumberOfRetries</code>.
+   * @param address
+   *    the address of the target.
+   * @param totalNumberOfRetries
+   *    the total number of retries configured for the target.
+   * @param targetTimeout
+   *    the timeout as specified for the target in milliseconds.
+   * @return
+   *    the time in milliseconds when the request will be timed out finally.
+   */
+  long getRequestTimeout(Address address, int totalNumberOfRetries,
+                         long targetTimeout);
+
+  /**
+   * Reports the round trip time of a request that has been answered by the
+   * target without being retransmitted.
+   * @param address
+   *    the address of the target.
+   * @param roundTripTimeNanos
+   *    the time elapsed between sending the request and receiving the
+   *    response in nanoseconds.
+   */
+  void updateRoundTripTime(Address address, long roundTripTimeNanos);
+
+  /**
+   * Reports that a request or retry sent to the given address has not been
+   * answered within its timeout. This is called before the request is
+   * retransmitted or finally timed out.
+   * @param address
+   *    the address of the target.
+   * @param timeoutMillis
+   *    the timeout in milliseconds that has expired.
+   */
+  void timeoutExpired(Address address, long timeoutMillis);
+
+}
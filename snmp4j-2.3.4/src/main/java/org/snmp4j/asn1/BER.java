@@ -706,22 +706,7 @@ public class BER {
   public static byte[] decodeString(BERInputStream is, MutableByte type)
       throws IOException
   {
-    /*
-     * ASN.1 octet string ::= primstring | cmpdstring
-     * primstring ::= 0x04 asnlength byte {byte}*
-     * cmpdstring ::= 0x24 asnlength string {string}*
-     * ipaddress  ::= 0x40 4 byte byte byte byte
-     */
-    // get the type
-    type.setValue((byte)is.read());
-    if ((type.value != BER.OCTETSTRING) && (type.value != 0x24) &&
-        (type.value != BER.IPADDRESS) && (type.value != BER.OPAQUE) &&
-        (type.value != BER.BITSTRING) &&
-        (type.value != 0x45)) {
-      throw new IOException("Wrong ASN.1 type. Not a string: "+type.value+
-                            getPositionMessage(is));
-    }
-    int length = decodeLength(is);
+    int length = decodeStringHeader(is, type);
 
     byte[] value = new byte[length];
     int pos = 0;
@@ -739,6 +724,40 @@ public class BER {
   }
 
 
+  /**
+   * Decodes the type and length of a string value. After this call, the
+   * input stream is positioned at the first byte of the string value.
+   * @param is
+   *    the BERInputStream to decode.
+   * @param type
+   *    returns the type of the string.
+   * @return
+   *    the length of the string value.
+   * @throws IOException
+   *    if the type is not a string type or the length cannot be decoded.
+   * @since 2.4
+   */
+  public static int decodeStringHeader(BERInputStream is, MutableByte type)
+      throws IOException
+  {
+    /*
+     * ASN.1 octet string ::= primstring | cmpdstring
+     * primstring ::= 0x04 asnlength byte {byte}*
+     * cmpdstring ::= 0x24 asnlength string {string}*
+     * ipaddress  ::= 0x40 4 byte byte byte byte
+     */
+    // get the type
+    type.setValue((byte)is.read());
+    if ((type.value != BER.OCTETSTRING) && (type.value != 0x24) &&
+        (type.value != BER.IPADDRESS) && (type.value != BER.OPAQUE) &&
+        (type.value != BER.BITSTRING) &&
+        (type.value != 0x45)) {
+      throw new IOException("Wrong ASN.1 type. Not a string: "+type.value+
+                            getPositionMessage(is));
+    }
+    return decodeLength(is);
+  }
+
   public static int[] decodeOID(BERInputStream is, MutableByte type)
       throws IOException
   {
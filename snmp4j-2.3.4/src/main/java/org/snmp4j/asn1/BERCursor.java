@@ -0,0 +1,575 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - BERCursor.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.asn1;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The <code>BERCursor</code> is a pull-style BER decoder that iterates over
+ * the TLV (type, length, value) elements of a <code>ByteBuffer</code> without
+ * copying the buffer's content and without allocating objects for the
+ * decoded elements.
+ * <p>
+ * {@link #next()} decodes the header of the next element in the current
+ * scope. The value of the element can then be read by the
+ * <code>getValueAs*</code> methods, accessed by {@link #getValueOffset()} and
+ * {@link #getLength()} in the underlying buffer, or descended into by
+ * {@link #enter()} if the element is constructed (for example a SEQUENCE).
+ * Elements that are not needed are skipped by simply calling {@link #next()}
+ * again:
+ * <pre>
+ *   BERCursor cursor = new BERCursor(buffer);
+ *   cursor.next();     // message SEQUENCE
+ *   cursor.enter();
+ *   cursor.next();     // version
+ *   int version = cursor.getValueAsInteger();
+ *   cursor.next();     // community (skipped)
+ *   cursor.next();     // PDU
+ *   int pduType = cursor.getTag();
+ * </pre>
+ * The position and limit of the supplied buffer are not modified. A cursor
+ * is not thread safe.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class BERCursor {
+
+  private ByteBuffer buffer;
+  private int position;
+  private int end;
+  private int[] scopeEnds = new int[8];
+  private int depth;
+
+  private int tag = -1;
+  private int headerOffset;
+  private int valueOffset;
+  private int valueLength;
+
+  /**
+   * Creates a cursor positioned before the first element between the
+   * position and the limit of the given buffer.
+   * @param buffer
+   *    a <code>ByteBuffer</code> containing BER encoded data.
+   */
+  public BERCursor(ByteBuffer buffer) {
+    reset(buffer);
+  }
+
+  /**
+   * Resets this cursor to iterate over the elements between the position and
+   * the limit of the given buffer.
+   * @param buffer
+   *    a <code>ByteBuffer</code> containing BER encoded data.
+   */
+  public void reset(ByteBuffer buffer) {
+    this.buffer = buffer;
+    this.position = buffer.position();
+    this.end = buffer.limit();
+    this.depth = 0;
+    this.tag = -1;
+  }
+
+  /**
+   * Sets this cursor to the current element of the given cursor, for example
+   * to keep an element while the other cursor advances. The scope of this
+   * cursor is the current scope of <code>other</code>, but it cannot
+   * {@link #exit()} to the enclosing scopes of <code>other</code>.
+   * @param other
+   *    another <code>BERCursor</code>.
+   */
+  public void set(BERCursor other) {
+    this.buffer = other.buffer;
+    this.position = other.position;
+    this.end = other.end;
+    this.depth = 0;
+    this.tag = other.tag;
+    this.headerOffset = other.headerOffset;
+    this.valueOffset = other.valueOffset;
+    this.valueLength = other.valueLength;
+  }
+
+  /**
+   * Gets the buffer this cursor is reading from.
+   * @return
+   *    the underlying <code>ByteBuffer</code>.
+   */
+  public ByteBuffer getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Checks whether there is another element in the current scope.
+   * @return
+   *    <code>true</code> if {@link #next()} can be called.
+   */
+  public boolean hasNext() {
+    return position < end;
+  }
+
+  /**
+   * Decodes the header of the next element in the current scope. The value
+   * of the previous element is skipped, unless the cursor has entered it.
+   * @return
+   *    the tag of the element as unsigned value (for example
+   *    <code>0xA2</code> for a RESPONSE PDU).
+   * @throws IOException
+   *    if there is no further element, the header is not properly encoded, or
+   *    the element exceeds its enclosing scope.
+   */
+  public int next() throws IOException {
+    if (position >= end) {
+      throw new IOException("No further BER element at position "+position);
+    }
+    int p = position;
+    int t = buffer.get(p++) & 0xFF;
+    if ((t & BER.ASN_EXTENSION_ID) == BER.ASN_EXTENSION_ID) {
+      throw new IOException("Cannot process extension IDs at position "+
+                            position);
+    }
+    if (p >= end) {
+      throw new IOException("Missing length at position "+p);
+    }
+    int length = buffer.get(p++) & 0xFF;
+    if ((length & BER.ASN_LONG_LEN) != 0) {
+      int numBytes = length & ~BER.ASN_LONG_LEN;
+      if (numBytes == 0) {
+        throw new IOException("Indefinite lengths are not supported");
+      }
+      if (numBytes > 4) {
+        throw new IOException("Data length > 4 bytes are not supported!");
+      }
+      if (p + numBytes > end) {
+        throw new IOException("Missing length at position "+p);
+      }
+      length = 0;
+      for (int i=0; i<numBytes; i++) {
+        length = (length << 8) | (buffer.get(p++) & 0xFF);
+      }
+      if (length < 0) {
+        throw new IOException("SNMP does not support data lengths > 2^31");
+      }
+    }
+    if (length > end - p) {
+      throw new IOException("Length "+length+" of BER element at position "+
+                            position+" exceeds available "+(end - p)+" bytes");
+    }
+    headerOffset = position;
+    valueOffset = p;
+    valueLength = length;
+    tag = t;
+    position = p + length;
+    return t;
+  }
+
+  /**
+   * Descends into the value of the current element, so that {@link #next()}
+   * iterates over the elements contained by the current element.
+   * @throws IOException
+   *    if the current element is not a constructed element.
+   */
+  public void enter() throws IOException {
+    if ((tag < 0) || ((tag & BER.ASN_CONSTRUCTOR) == 0)) {
+      throw new IOException("Current BER element is not constructed: "+tag);
+    }
+    if (depth == scopeEnds.length) {
+      int[] ends = new int[depth * 2];
+      System.arraycopy(scopeEnds, 0, ends, 0, depth);
+      scopeEnds = ends;
+    }
+    scopeEnds[depth++] = end;
+    end = valueOffset + valueLength;
+    position = valueOffset;
+    tag = -1;
+  }
+
+  /**
+   * Leaves the current scope, skipping any elements of the scope not visited
+   * yet. The next call of {@link #next()} returns the element following the
+   * element that has been entered.
+   * @throws IllegalStateException
+   *    if the cursor is at the top level scope.
+   */
+  public void exit() {
+    if (depth == 0) {
+      throw new IllegalStateException("Cursor is not within an element");
+    }
+    position = end;
+    end = scopeEnds[--depth];
+    tag = -1;
+  }
+
+  /**
+   * Gets the number of entered and not yet exited elements.
+   * @return
+   *    the depth of the current scope, where zero is the top level.
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Gets the tag of the current element.
+   * @return
+   *    the tag as unsigned value or -1 if {@link #next()} has not been called
+   *    in the current scope.
+   */
+  public int getTag() {
+    return tag;
+  }
+
+  /**
+   * Gets the length of the value of the current element.
+   * @return
+   *    the number of value bytes.
+   */
+  public int getLength() {
+    return valueLength;
+  }
+
+  /**
+   * Gets the absolute offset of the current element's header in the buffer.
+   * @return
+   *    the index of the tag byte in the underlying buffer.
+   */
+  public int getHeaderOffset() {
+    return headerOffset;
+  }
+
+  /**
+   * Gets the absolute offset of the current element's value in the buffer.
+   * @return
+   *    the index of the first value byte in the underlying buffer.
+   */
+  public int getValueOffset() {
+    return valueOffset;
+  }
+
+  /**
+   * Gets the length of the current element including its header.
+   * @return
+   *    the length of the TLV encoding of the current element.
+   */
+  public int getEncodedLength() {
+    return valueOffset + valueLength - headerOffset;
+  }
+
+  /**
+   * Returns a read-only view of the value bytes of the current element. The
+   * view shares the content of the underlying buffer.
+   * @return
+   *    a <code>ByteBuffer</code> whose position is zero and whose limit is
+   *    {@link #getLength()}.
+   */
+  public ByteBuffer getValue() {
+    return slice(valueOffset, valueLength);
+  }
+
+  /**
+   * Returns a read-only view of the complete encoding (header and value) of
+   * the current element, for example to decode it by
+   * {@link BERSerializable#decodeBER(BERInputStream)}.
+   * @return
+   *    a <code>ByteBuffer</code> whose position is zero and whose limit is
+   *    {@link #getEncodedLength()}.
+   */
+  public ByteBuffer getEncoded() {
+    return slice(headerOffset, getEncodedLength());
+  }
+
+  private ByteBuffer slice(int offset, int length) {
+    ByteBuffer view = buffer.asReadOnlyBuffer();
+    view.limit(offset + length);
+    view.position(offset);
+    return view.slice();
+  }
+
+  /**
+   * Copies the value bytes of the current element into a new array.
+   * @return
+   *    the value bytes.
+   */
+  public byte[] getValueAsBytes() {
+    byte[] value = new byte[valueLength];
+    copyValue(value, 0);
+    return value;
+  }
+
+  /**
+   * Copies the value bytes of the current element into the given array.
+   * @param dest
+   *    the destination array.
+   * @param offset
+   *    the index in <code>dest</code> of the first byte copied.
+   * @return
+   *    the number of bytes copied, which is {@link #getLength()}.
+   */
+  public int copyValue(byte[] dest, int offset) {
+    for (int i=0; i<valueLength; i++) {
+      dest[offset + i] = buffer.get(valueOffset + i);
+    }
+    return valueLength;
+  }
+
+  /**
+   * Compares the value bytes of the current element with the given bytes.
+   * @param value
+   *    a byte array.
+   * @return
+   *    <code>true</code> if the value of the current element equals
+   *    <code>value</code>.
+   */
+  public boolean valueEquals(byte[] value) {
+    if (value.length != valueLength) {
+      return false;
+    }
+    for (int i=0; i<valueLength; i++) {
+      if (buffer.get(valueOffset + i) != value[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decodes the value of the current element as signed 32bit integer.
+   * @return
+   *    the integer value.
+   * @throws IOException
+   *    if the value is longer than four bytes.
+   * @see BER#decodeInteger(BERInputStream, BER.MutableByte)
+   */
+  public int getValueAsInteger() throws IOException {
+    if ((valueLength < 1) || (valueLength > 4)) {
+      throw new IOException("Invalid length for a 32bit integer: "+
+                            valueLength+" at position "+headerOffset);
+    }
+    int value = buffer.get(valueOffset);
+    for (int i=1; i<valueLength; i++) {
+      value = (value << 8) | (buffer.get(valueOffset + i) & 0xFF);
+    }
+    return value;
+  }
+
+  /**
+   * Decodes the value of the current element as unsigned 32bit integer.
+   * @return
+   *    the unsigned integer value.
+   * @throws IOException
+   *    if the value does not fit into 32 bits.
+   * @see BER#decodeUnsignedInteger(BERInputStream, BER.MutableByte)
+   */
+  public long getValueAsUnsignedInteger() throws IOException {
+    if ((valueLength > 5) ||
+        ((valueLength == 5) && (buffer.get(valueOffset) != 0))) {
+      throw new IOException("Only 32bit unsigned integers are supported"+
+                            " at position "+headerOffset);
+    }
+    return getUnsigned();
+  }
+
+  /**
+   * Decodes the value of the current element as unsigned 64bit integer.
+   * @return
+   *    the unsigned integer value (values greater than 2^63-1 are negative).
+   * @throws IOException
+   *    if the value does not fit into 64 bits.
+   * @see BER#decodeUnsignedInt64(BERInputStream, BER.MutableByte)
+   */
+  public long getValueAsUnsignedInt64() throws IOException {
+    if ((valueLength > 9) ||
+        ((valueLength == 9) && (buffer.get(valueOffset) != 0))) {
+      throw new IOException("Invalid 64bit unsigned integer length: "+
+                            valueLength+" at position "+headerOffset);
+    }
+    return getUnsigned();
+  }
+
+  private long getUnsigned() {
+    long value = 0;
+    for (int i=0; i<valueLength; i++) {
+      value = (value << 8) | (buffer.get(valueOffset + i) & 0xFF);
+    }
+    return value;
+  }
+
+  /**
+   * Gets the number of sub-identifiers of the current OBJECT IDENTIFIER
+   * element, which is the minimum length of the array to be supplied to
+   * {@link #getValueAsOID(int[])}.
+   * @return
+   *    the number of sub-identifiers (at least two).
+   */
+  public int getOIDLength() {
+    int count = 0;
+    int e = valueOffset + valueLength;
+    for (int p=valueOffset; p<e; p++) {
+      if (((buffer.get(p) & BER.ASN_BIT8) == 0) || (p + 1 == e)) {
+        count++;
+      }
+    }
+    return Math.max(count + 1, 2);
+  }
+
+  /**
+   * Decodes the current OBJECT IDENTIFIER element into the supplied array.
+   * @param dest
+   *    an array with at least {@link #getOIDLength()} elements.
+   * @return
+   *    the number of sub-identifiers decoded into <code>dest</code>.
+   * @see BER#decodeOID(BERInputStream, BER.MutableByte)
+   */
+  public int getValueAsOID(int[] dest) {
+    return getValueAsOID(dest, 0);
+  }
+
+  /**
+   * Decodes the current OBJECT IDENTIFIER element into the supplied array
+   * starting at the given offset.
+   * @param dest
+   *    an array with at least <code>offset</code> + {@link #getOIDLength()}
+   *    elements.
+   * @param offset
+   *    the index in <code>dest</code> of the first sub-identifier.
+   * @return
+   *    the number of sub-identifiers decoded into <code>dest</code>.
+   */
+  public int getValueAsOID(int[] dest, int offset) {
+    if (valueLength == 0) {
+      dest[offset] = dest[offset + 1] = 0;
+      return 2;
+    }
+    int n = 0;
+    int p = valueOffset;
+    int e = valueOffset + valueLength;
+    while (p < e) {
+      int subID = 0;
+      int b;
+      do {
+        b = buffer.get(p++) & 0xFF;
+        subID = (subID << 7) + (b & ~BER.ASN_BIT8);
+      }
+      while ((p < e) && ((b & BER.ASN_BIT8) != 0));
+      if (n == 0) {
+        n = splitFirstSubID(subID, dest, offset);
+      }
+      else {
+        dest[offset + n++] = subID;
+      }
+    }
+    return n;
+  }
+
+  private static int splitFirstSubID(int subID, int[] dest, int offset) {
+    if ((subID >= 0) && (subID < 40)) {
+      dest[offset] = 0;
+      dest[offset + 1] = subID;
+    }
+    else if ((subID >= 0) && (subID < 80)) {
+      dest[offset] = 1;
+      dest[offset + 1] = subID - 40;
+    }
+    else {
+      dest[offset] = 2;
+      dest[offset + 1] = subID - 80;
+    }
+    return 2;
+  }
+
+  /**
+   * Compares the current OBJECT IDENTIFIER element with the given OID value
+   * without decoding the element into an array. Sub-identifiers are compared
+   * as unsigned values as by <code>OID.compareTo</code>.
+   * @param oid
+   *    an OID value.
+   * @return
+   *    a negative value, zero, or a positive value if the current element is
+   *    less than, equal to, or greater than <code>oid</code>.
+   */
+  public int compareOID(int[] oid) {
+    return compareOID(oid, false);
+  }
+
+  /**
+   * Checks whether the current OBJECT IDENTIFIER element starts with the
+   * given OID value (or equals it) without decoding the element into an
+   * array.
+   * @param prefix
+   *    an OID value.
+   * @return
+   *    <code>true</code> if the first sub-identifiers of the current element
+   *    equal <code>prefix</code>.
+   */
+  public boolean startsWithOID(int[] prefix) {
+    return compareOID(prefix, true) == 0;
+  }
+
+  private int compareOID(int[] oid, boolean prefix) {
+    int n = 0;
+    int p = valueOffset;
+    int e = valueOffset + valueLength;
+    // an empty encoding is decoded as 0.0
+    boolean empty = (valueLength == 0);
+    while (empty || (p < e)) {
+      int subID = 0;
+      if (!empty) {
+        int b;
+        do {
+          b = buffer.get(p++) & 0xFF;
+          subID = (subID << 7) + (b & ~BER.ASN_BIT8);
+        }
+        while ((p < e) && ((b & BER.ASN_BIT8) != 0));
+      }
+      empty = false;
+      if (n == 0) {
+        int first = ((subID >= 0) && (subID < 80)) ? subID / 40 : 2;
+        int result = compareSubID(first, oid, n++, prefix);
+        if (result != 0) {
+          return result;
+        }
+        subID -= first * 40;
+      }
+      int result = compareSubID(subID, oid, n++, prefix);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return (n < oid.length) ? -1 : 0;
+  }
+
+  private static int compareSubID(int subID, int[] oid, int n,
+                                  boolean prefix) {
+    if (n >= oid.length) {
+      // prefix matched completely
+      return prefix ? 0 : 1;
+    }
+    if (subID != oid[n]) {
+      return ((subID & 0xFFFFFFFFL) < (oid[n] & 0xFFFFFFFFL)) ? -1 : 1;
+    }
+    return 0;
+  }
+
+  public String toString() {
+    return "BERCursor[position="+position+",end="+end+",depth="+depth+
+        ",tag="+tag+",valueOffset="+valueOffset+",length="+valueLength+"]";
+  }
+}
@@ -36,12 +36,28 @@ import java.nio.BufferUnderflowException;
 public class BERInputStream extends InputStream {
 
   private ByteBuffer buffer;
+  private boolean bufferShareable;
 
   public BERInputStream(ByteBuffer buffer) {
     this.buffer = buffer;
     buffer.mark();
   }
 
+  /**
+   * Creates a BER input stream on the given buffer.
+   * @param buffer
+   *    the buffer to read from.
+   * @param bufferShareable
+   *    <code>true</code> if the content of the buffer is never modified
+   *    after decoding, so that decoded objects may reference it instead of
+   *    copying their values.
+   * @since 2.4
+   */
+  public BERInputStream(ByteBuffer buffer, boolean bufferShareable) {
+    this(buffer);
+    this.bufferShareable = bufferShareable;
+  }
+
   public ByteBuffer getBuffer() {
     return buffer;
   }
@@ -50,6 +66,32 @@ public class BERInputStream extends InputStream {
     this.buffer = buf;
   }
 
+  /**
+   * Checks whether decoded objects may reference the underlying buffer
+   * instead of copying their values from it.
+   * @return
+   *    <code>true</code> if the content of the buffer is never modified after
+   *    decoding.
+   * @since 2.4
+   */
+  public boolean isBufferShareable() {
+    return bufferShareable;
+  }
+
+  /**
+   * Sets whether decoded objects may reference the underlying buffer. This
+   * must only be set to <code>true</code> if the buffer content is not
+   * modified or reused after decoding, for example if the buffer has been
+   * allocated for a single received message.
+   * @param bufferShareable
+   *    <code>true</code> if the buffer content is never modified after
+   *    decoding.
+   * @since 2.4
+   */
+  public void setBufferShareable(boolean bufferShareable) {
+    this.bufferShareable = bufferShareable;
+  }
+
   public int read() throws java.io.IOException {
     try {
       return (buffer.get() & 0xFF);
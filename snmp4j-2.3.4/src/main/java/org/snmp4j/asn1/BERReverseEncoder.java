@@ -0,0 +1,380 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - BERReverseEncoder.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.asn1;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The <code>BERReverseEncoder</code> encodes BER objects from back to front
+ * into a growable byte array. Because the contents of a constructed object
+ * are written before its header, the length of the contents is known when
+ * the header is written and thus no length computation pass is needed.
+ * <p>
+ * Consequently, the elements of a sequence have to be encoded in reverse
+ * order, followed by the sequence header:
+ * <pre>
+ *   int mark = encoder.length();
+ *   encoder.encodeInteger(BER.INTEGER, second);
+ *   encoder.encodeInteger(BER.INTEGER, first);
+ *   encoder.encodeHeader(BER.SEQUENCE, encoder.length() - mark);
+ * </pre>
+ * The produced encoding is byte-identical to the encoding produced by the
+ * corresponding methods of {@link BER}. An encoder is not thread safe, but it
+ * can be reused after {@link #reset()}. {@link #getInstance()} returns
+ * an encoder reused by the calling thread.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class BERReverseEncoder {
+
+  /**
+   * The default initial capacity of an encoder in bytes.
+   */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  /**
+   * The maximum capacity of a thread local encoder that is kept when it is
+   * reset. Larger buffers are released to not hold memory of a single large
+   * message for the lifetime of a thread.
+   */
+  private static final int MAX_RETAINED_CAPACITY = 128 * 1024;
+
+  private static final ThreadLocal<BERReverseEncoder> threadLocalEncoder =
+      new ThreadLocal<BERReverseEncoder>() {
+        protected BERReverseEncoder initialValue() {
+          return new BERReverseEncoder();
+        }
+      };
+
+  private byte[] buffer;
+  private int position;
+
+  /**
+   * Creates an encoder with the default initial capacity.
+   */
+  public BERReverseEncoder() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an encoder with the given initial capacity. The capacity grows
+   * as needed.
+   * @param initialCapacity
+   *    the initial capacity in bytes.
+   */
+  public BERReverseEncoder(int initialCapacity) {
+    this.buffer = new byte[Math.max(initialCapacity, 16)];
+    this.position = buffer.length;
+  }
+
+  /**
+   * Gets the encoder of the calling thread. The encoder is reset before it is
+   * returned, thus any data encoded previously by the thread is discarded.
+   * @return
+   *    an empty <code>BERReverseEncoder</code> that must only be used by the
+   *    calling thread.
+   */
+  public static BERReverseEncoder getInstance() {
+    BERReverseEncoder encoder = threadLocalEncoder.get();
+    encoder.reset();
+    return encoder;
+  }
+
+  /**
+   * Discards the encoded data.
+   */
+  public void reset() {
+    if (buffer.length > MAX_RETAINED_CAPACITY) {
+      buffer = new byte[DEFAULT_CAPACITY];
+    }
+    position = buffer.length;
+  }
+
+  /**
+   * Returns the number of bytes encoded so far. The difference of two lengths
+   * is the length of the data encoded in between, which is the length of the
+   * contents of a constructed object.
+   * @return
+   *    the number of bytes encoded.
+   */
+  public int length() {
+    return buffer.length - position;
+  }
+
+  private void ensureCapacity(int n) {
+    if (position < n) {
+      int length = length();
+      int capacity = Math.max(buffer.length * 2, length + n);
+      byte[] newBuffer = new byte[capacity];
+      System.arraycopy(buffer, position, newBuffer, capacity - length, length);
+      buffer = newBuffer;
+      position = capacity - length;
+    }
+  }
+
+  /**
+   * Prepends a single byte.
+   * @param b
+   *    the byte to write (only the lower 8 bits are used).
+   */
+  public void write(int b) {
+    ensureCapacity(1);
+    buffer[--position] = (byte)b;
+  }
+
+  /**
+   * Prepends a byte array.
+   * @param b
+   *    the bytes to write.
+   */
+  public void write(byte[] b) {
+    write(b, 0, b.length);
+  }
+
+  /**
+   * Prepends <code>len</code> bytes from the given array.
+   * @param b
+   *    a byte array.
+   * @param off
+   *    the offset of the first byte to write.
+   * @param len
+   *    the number of bytes to write.
+   */
+  public void write(byte[] b, int off, int len) {
+    ensureCapacity(len);
+    position -= len;
+    System.arraycopy(b, off, buffer, position, len);
+  }
+
+  /**
+   * Encodes the length of an ASN.1 object.
+   * @param length
+   *    the length of the object.
+   * @see BER#encodeLength(java.io.OutputStream, int)
+   */
+  public void encodeLength(int length) {
+    if ((length >= 0) && (length < 0x80)) {
+      write(length);
+    }
+    else {
+      int numBytes = 0;
+      do {
+        write(length);
+        length >>>= 8;
+        numBytes++;
+      }
+      while (length != 0);
+      write(numBytes | BER.ASN_LONG_LEN);
+    }
+  }
+
+  /**
+   * Encodes an ASN.1 header for an object with the type and length specified.
+   * @param type
+   *    the type of the ASN.1 object. Must be < 30, i.e. no extension octets.
+   * @param length
+   *    the length of the contents, which have been encoded already.
+   */
+  public void encodeHeader(int type, int length) {
+    encodeLength(length);
+    write(type);
+  }
+
+  /**
+   * Encodes a signed integer.
+   * @param type
+   *    the tag type for the integer (typically 0x02)
+   * @param value
+   *    the integer value to encode.
+   * @see BER#encodeInteger(java.io.OutputStream, byte, int)
+   */
+  public void encodeInteger(byte type, int value) {
+    int intsize = 4;
+    int mask = 0x1FF << ((8 * 3) - 1);
+    int integer = value;
+    while ((((integer & mask) == 0) || ((integer & mask) == mask))
+           && intsize > 1) {
+      intsize--;
+      integer <<= 8;
+    }
+    for (int i=0; i<intsize; i++) {
+      write(value >> (8 * i));
+    }
+    encodeHeader(type, intsize);
+  }
+
+  /**
+   * Encodes an unsigned 32bit integer.
+   * @param type
+   *    the tag type for the integer (for example {@link BER#GAUGE}).
+   * @param value
+   *    the integer value to encode.
+   * @see BER#encodeUnsignedInteger(java.io.OutputStream, byte, long)
+   */
+  public void encodeUnsignedInteger(byte type, long value) {
+    int len = 1;
+    if (((value >> 24) & 0xFF) != 0) {
+      len = 4;
+    }
+    else if (((value >> 16) & 0xFF) != 0) {
+      len = 3;
+    }
+    else if (((value >> 8) & 0xFF) != 0) {
+      len = 2;
+    }
+    int valueLength = len;
+    for (int i=0; i<len; i++) {
+      write((int)(value >> (8 * i)));
+    }
+    if (((value >> (8 * (len - 1))) & 0x80) != 0) {
+      write(0);
+      valueLength++;
+    }
+    encodeHeader(type, valueLength);
+  }
+
+  /**
+   * Encodes an unsigned 64bit integer.
+   * @param type
+   *    the tag type for the integer (for example {@link BER#COUNTER64}).
+   * @param value
+   *    the integer value to encode.
+   * @see BER#encodeUnsignedInt64(java.io.OutputStream, byte, long)
+   */
+  public void encodeUnsignedInt64(byte type, long value) {
+    int len;
+    for (len = 8; len > 1; len--) {
+      if (((value >> (8 * (len - 1))) & 0xFF) != 0) {
+        break;
+      }
+    }
+    int valueLength = len;
+    for (int i=0; i<len; i++) {
+      write((int)(value >> (8 * i)));
+    }
+    if (((value >> (8 * (len - 1))) & 0x80) != 0) {
+      write(0);
+      valueLength++;
+    }
+    encodeHeader(type, valueLength);
+  }
+
+  /**
+   * Encodes an ASN.1 octet string.
+   * @param type
+   *    the tag type for the string (typically 0x04).
+   * @param string
+   *    the octet string value.
+   */
+  public void encodeString(byte type, byte[] string) {
+    write(string);
+    encodeHeader(type, string.length);
+  }
+
+  /**
+   * Encodes an ASN.1 object identifier.
+   * @param type
+   *    the tag type for the OID (typically 0x06).
+   * @param oid
+   *    the <code>int</code> array containing the OID value.
+   * @throws IOException
+   *    if the first sub-identifier is not 0, 1, or 2.
+   * @see BER#encodeOID(java.io.OutputStream, byte, int[])
+   */
+  public void encodeOID(byte type, int[] oid) throws IOException {
+    int mark = length();
+    if (oid.length < 2) {
+      write(0);
+    }
+    else {
+      int firstSubID = oid[0];
+      if (firstSubID < 0 || firstSubID > 2) {
+        throw new IOException("Invalid first sub-identifier (must be 0, 1, or 2)");
+      }
+      for (int i=oid.length-1; i>=2; i--) {
+        encodeSubID(oid[i]);
+      }
+      encodeSubID(oid[1] + (firstSubID * 40));
+    }
+    encodeHeader(type, length() - mark);
+  }
+
+  private void encodeSubID(int subID) {
+    long subid = (subID & 0xFFFFFFFFL);
+    write((int)(subid & 0x7F));
+    subid >>>= 7;
+    while (subid != 0) {
+      write((int)(subid & 0x7F) | BER.ASN_BIT8);
+      subid >>>= 7;
+    }
+  }
+
+  /**
+   * Encodes an object by its {@link BERSerializable#encodeBER} method. This
+   * is the fallback for objects without a dedicated reverse encoding. The
+   * object's {@link BERSerializable#getBERLength()} must return the exact
+   * length of its encoding.
+   * @param object
+   *    a <code>BERSerializable</code>.
+   * @throws IOException
+   *    if the object could not be encoded or its encoding does not match
+   *    its BER length.
+   */
+  public void encode(BERSerializable object) throws IOException {
+    int length = object.getBERLength();
+    ensureCapacity(length);
+    int start = position - length;
+    ByteBuffer buf = ByteBuffer.wrap(buffer, start, length);
+    object.encodeBER(new BEROutputStream(buf));
+    if (buf.position() != position) {
+      throw new IOException("BER length "+length+" of "+object+
+                            " does not match encoded length "+
+                            (buf.position() - start));
+    }
+    position = start;
+  }
+
+  /**
+   * Returns a copy of the encoded data.
+   * @return
+   *    a byte array with the exact length of the encoding.
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOfRange(buffer, position, buffer.length);
+  }
+
+  /**
+   * Returns a copy of the encoded data wrapped by a <code>ByteBuffer</code>.
+   * @return
+   *    a heap <code>ByteBuffer</code> whose position is zero and whose limit
+   *    and capacity equal the length of the encoding.
+   */
+  public ByteBuffer toByteBuffer() {
+    return ByteBuffer.wrap(toByteArray());
+  }
+
+  public String toString() {
+    return "BERReverseEncoder[length="+length()+",capacity="+buffer.length+"]";
+  }
+}
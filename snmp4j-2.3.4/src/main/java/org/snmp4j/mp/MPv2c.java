@@ -34,7 +34,7 @@ import org.snmp4j.asn1.BER.MutableByte;
 import org.snmp4j.security.SecurityModels;
 import org.snmp4j.security.SecurityLevel;
 import org.snmp4j.asn1.BEROutputStream;
-import java.nio.ByteBuffer;
+import org.snmp4j.asn1.BERReverseEncoder;
 import org.snmp4j.util.PDUFactory;
 
 /**
@@ -117,23 +117,14 @@ public class MPv2c implements MessageProcessingModel {
     }
 
     OctetString community = new OctetString(securityName);
-    Integer32 version = new Integer32(messageProcessingModel);
-    // compute total length
-    int length = pdu.getBERLength();
-    length += community.getBERLength();
-    length += version.getBERLength();
-
-    ByteBuffer buf = ByteBuffer.allocate(length +
-                                         BER.getBERLengthOfLength(length) + 1);
+    // encode the message back to front
+    BERReverseEncoder encoder = BERReverseEncoder.getInstance();
+    PDU.encodePDU(pdu, encoder);
+    encoder.encodeString(BER.OCTETSTRING, community.getValue());
+    encoder.encodeInteger(BER.INTEGER, messageProcessingModel);
+    encoder.encodeHeader(BER.SEQUENCE, encoder.length());
     // set the buffer of the outgoing message
-    outgoingMessage.setBuffer(buf);
-
-    // encode the message
-    BER.encodeHeader(outgoingMessage, BER.SEQUENCE, length);
-    version.encodeBER(outgoingMessage);
-
-    community.encodeBER(outgoingMessage);
-    pdu.encodeBER(outgoingMessage);
+    outgoingMessage.setBuffer(encoder.toByteBuffer());
 
     return SnmpConstants.SNMP_MP_OK;
   }
@@ -697,6 +697,15 @@ public class MPv3
       msgFlags.encodeBER(outputStream);
       securityModel.encodeBER(outputStream);
     }
+
+    public void encodeBER(BERReverseEncoder encoder) throws IOException {
+      int mark = encoder.length();
+      AbstractVariable.encodeVariable(securityModel, encoder);
+      AbstractVariable.encodeVariable(msgFlags, encoder);
+      AbstractVariable.encodeVariable(msgMaxSize, encoder);
+      AbstractVariable.encodeVariable(msgID, encoder);
+      encoder.encodeHeader(BER.SEQUENCE, encoder.length() - mark);
+    }
   }
 
   /**
@@ -794,7 +803,7 @@ public class MPv3
         if (secModel.supportsEngineIdDiscovery()) {
           securityLevel = SecurityLevel.NOAUTH_NOPRIV;
           // do not send any management information
-          scopedPDU = (ScopedPDU) scopedPDU.clone();
+          scopedPDU = scopedPDU.copyOnWriteClone();
           scopedPDU.clear();
         }
         else if ((scopedPDU.getContextEngineID() == null) ||
@@ -818,12 +827,10 @@ public class MPv3
       }
     }
 
-    // get length of scoped PDU
-    int scopedPDULength = scopedPDU.getBERLength();
-    BEROutputStream scopedPdu =
-        new BEROutputStream(ByteBuffer.allocate(scopedPDULength));
-
-    scopedPDU.encodeBER(scopedPdu);
+    // encode scoped PDU
+    BERReverseEncoder encoder = BERReverseEncoder.getInstance();
+    PDU.encodePDU(scopedPDU, encoder);
+    BEROutputStream scopedPdu = new BEROutputStream(encoder.toByteBuffer());
 
     HeaderData headerData = new HeaderData();
     int flags = 0;
@@ -851,11 +858,9 @@ public class MPv3
     headerData.setMsgMaxSize(maxMessageSize);
     headerData.setSecurityModel(securityModel);
 
-    ByteBuffer globalDataBuffer =
-        ByteBuffer.allocate(headerData.getBERLength());
-    BEROutputStream globalDataOutputStream =
-        new BEROutputStream(globalDataBuffer);
-    headerData.encodeBER(globalDataOutputStream);
+    encoder.reset();
+    headerData.encodeBER(encoder);
+    ByteBuffer globalDataBuffer = encoder.toByteBuffer();
 
     BERInputStream scopedPDUInput = new BERInputStream(scopedPdu.rewind());
 
@@ -912,25 +917,20 @@ public class MPv3
       return SnmpConstants.SNMP_MP_UNKNOWN_MSGID;
     }
 
-    // get length of scoped PDU
-    // get length of scoped PDU
-    int scopedPDULength = pdu.getBERLength();
-    BEROutputStream scopedPDU;
+    // encode scoped PDU
+    BERReverseEncoder encoder = BERReverseEncoder.getInstance();
+    PDU.encodePDU(pdu, encoder);
     // check length
-    if (scopedPDULength > maxSizeResponseScopedPDU) {
+    if (encoder.length() > maxSizeResponseScopedPDU) {
       PDU tooBigPDU = new ScopedPDU((ScopedPDU)pdu);
       tooBigPDU.clear();
       tooBigPDU.setRequestID(pdu.getRequestID());
       tooBigPDU.setErrorStatus(SnmpConstants.SNMP_ERROR_TOO_BIG);
       tooBigPDU.setErrorIndex(0);
-      scopedPDULength = tooBigPDU.getBERLength();
-      scopedPDU = new BEROutputStream(ByteBuffer.allocate(scopedPDULength));
-      tooBigPDU.encodeBER(scopedPDU);
-    }
-    else {
-      scopedPDU = new BEROutputStream(ByteBuffer.allocate(scopedPDULength));
-      pdu.encodeBER(scopedPDU);
+      encoder.reset();
+      tooBigPDU.encodeBER(encoder);
     }
+    BEROutputStream scopedPDU = new BEROutputStream(encoder.toByteBuffer());
 
     HeaderData headerData = new HeaderData();
     int flags = 0;
@@ -951,11 +951,9 @@ public class MPv3
     headerData.setMsgMaxSize(maxMessageSize);
     headerData.setSecurityModel(securityModel);
 
-    ByteBuffer globalDataBuffer =
-        ByteBuffer.allocate(headerData.getBERLength());
-    BEROutputStream globalDataOutputStream =
-        new BEROutputStream(globalDataBuffer);
-    headerData.encodeBER(globalDataOutputStream);
+    encoder.reset();
+    headerData.encodeBER(encoder);
+    ByteBuffer globalDataBuffer = encoder.toByteBuffer();
 
     OctetString securityEngineID;
     switch (pdu.getType()) {
@@ -1195,7 +1193,8 @@ public class MPv3
       if (status == SnmpConstants.SNMPv3_USM_OK) {
         try {
           BERInputStream scopedPduStream =
-              new BERInputStream(scopedPDU.rewind());
+              new BERInputStream(scopedPDU.rewind(),
+                                 wholeMsg.isBufferShareable());
           scopedPdu.decodeBER(scopedPduStream);
           sendPduHandle.setTransactionID(scopedPdu.getRequestID().getValue());
 
@@ -1244,7 +1243,8 @@ public class MPv3
           try {
             if (scopedPDU.getBuffer() != null) {
               BERInputStream scopedPduStream =
-                  new BERInputStream(scopedPDU.rewind());
+                  new BERInputStream(scopedPDU.rewind(),
+                                     wholeMsg.isBufferShareable());
               scopedPdu.decodeBER(scopedPduStream);
             }
             else { // incoming message could not be decoded
@@ -269,6 +269,24 @@ public final class SnmpConstants {
   public static final OID snmpSshtmSessionInvalidCaches =
     new OID(new int[] { 1,3,6,1,2,1,189,1,1,8,0 });
 
+  // SNMP4J statistics
+  /**
+   * The number of incoming messages dropped by the inbound queue of a
+   * {@link org.snmp4j.util.MultiThreadedMessageDispatcher} (or rejected by
+   * its worker pool).
+   * @since 2.4
+   */
+  public static final OID snmp4jStatsInQueueDrops =
+    new OID(new int[] { 1,3,6,1,4,1,4976,10,1,1,4,2,1,0 });
+  /**
+   * The number of incoming RESPONSE and REPORT messages dropped by the inbound
+   * queue of a {@link org.snmp4j.util.MultiThreadedMessageDispatcher}.
+   * Only counted when responses are prioritized.
+   * @since 2.4
+   */
+  public static final OID snmp4jStatsInQueueResponseDrops =
+    new OID(new int[] { 1,3,6,1,4,1,4976,10,1,1,4,2,2,0 });
+
 
   // SNMP framework
   public static final OID snmpSetSerialNo =
@@ -41,6 +41,7 @@ public class StateReference implements Serializable {
 
   private Address address;
   private transient TransportMapping transportMapping;
+  private transient TransportStateReference tmStateReference;
   private byte[] contextEngineID;
   private byte[] contextName;
   private SecurityModel securityModel;
@@ -230,6 +231,31 @@ public class StateReference implements Serializable {
     this.transportMapping = transportMapping;
   }
 
+  /**
+   * Returns the transport state reference of the incoming message this state
+   * reference belongs to.
+   * @return
+   *    the <code>TransportStateReference</code> provided by the transport
+   *    mapping that received the message or <code>null</code> if not
+   *    available.
+   * @since 2.4
+   */
+  public TransportStateReference getTmStateReference() {
+    return tmStateReference;
+  }
+
+  /**
+   * Sets the transport state reference of the incoming message, which allows
+   * a transport mapping to return the response through the same
+   * socket/session the request has been received on.
+   * @param tmStateReference
+   *    the <code>TransportStateReference</code> of the incoming message.
+   * @since 2.4
+   */
+  public void setTmStateReference(TransportStateReference tmStateReference) {
+    this.tmStateReference = tmStateReference;
+  }
+
   public boolean isMatchingMessageID(int msgID) {
     return ((this.msgID == msgID) ||
             ((retryMsgIDs != null) && (retryMsgIDs.contains(msgID))));
@@ -19,7 +19,10 @@
   _##########################################################################*/
 package org.snmp4j.security;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.security.MessageDigest;
+import java.util.Arrays;
 import org.snmp4j.log.*;
 import org.snmp4j.smi.OctetString;
 
@@ -34,18 +37,56 @@ import org.snmp4j.smi.OctetString;
 public abstract class AuthGeneric implements AuthenticationProtocol {
 
   private static final LogAdapter logger = LogFactory.getLogger(AuthGeneric.class);
+  /**
+   * The HMAC block size of MD5 and SHA-1.
+   * @since 2.4
+   */
+  protected static final int DEFAULT_HMAC_BLOCK_SIZE = 64;
+
   private int digestLength;
   private String protoName;
+  private int hmacBlockSize;
+  private transient ThreadLocal<MessageDigest> threadLocalDigest;
+  private transient volatile Boolean masterKeyCacheable;
 
   public AuthGeneric(String protoName, int digestLength) {
+    this(protoName, digestLength, DEFAULT_HMAC_BLOCK_SIZE);
+  }
+
+  /**
+   * Creates an authentication protocol based on the HMAC of the given
+   * message digest algorithm.
+   *
+   * @param protoName
+   *    the name of the <code>MessageDigest</code> algorithm.
+   * @param digestLength
+   *    the length of the digest in bytes.
+   * @param hmacBlockSize
+   *    the block size of the digest algorithm in bytes which is the length of
+   *    the HMAC pads, e.g. 64 for MD5, SHA-1, and SHA-256 and 128 for SHA-384
+   *    and SHA-512.
+   * @since 2.4
+   */
+  protected AuthGeneric(String protoName, int digestLength, int hmacBlockSize) {
     this.protoName = protoName;
     this.digestLength = digestLength;
+    this.hmacBlockSize = hmacBlockSize;
   }
 
   public int getDigestLength() {
     return digestLength;
   }
 
+  private void readObject(ObjectInputStream in)
+      throws IOException, ClassNotFoundException
+  {
+    in.defaultReadObject();
+    if (hmacBlockSize <= 0) {
+      // serialized by a version without HMAC block size
+      hmacBlockSize = DEFAULT_HMAC_BLOCK_SIZE;
+    }
+  }
+
   /**
    * Get a fresh MessageDigest object of the Algorithm specified in the
    * constructor.
@@ -64,21 +105,41 @@ public abstract class AuthGeneric implements AuthenticationProtocol {
     return md;
   }
 
+  /**
+   * Gets the message digest of the calling thread. This avoids looking up
+   * the algorithm provider for every message.
+   *
+   * @return
+   *    a reset <code>MessageDigest</code> that must only be used by the
+   *    calling thread and must not be retained.
+   */
+  private MessageDigest getThreadLocalDigest() {
+    ThreadLocal<MessageDigest> digests = threadLocalDigest;
+    if (digests == null) {
+      digests = new ThreadLocal<MessageDigest>();
+      threadLocalDigest = digests;
+    }
+    MessageDigest md = digests.get();
+    if (md == null) {
+      md = getDigestObject();
+      digests.set(md);
+    }
+    else {
+      md.reset();
+    }
+    return md;
+  }
+
   public boolean authenticate(byte[] authenticationKey,
                               byte[] message,
                               int messageOffset,
                               int messageLength,
                               ByteArrayWindow digest) {
-    MessageDigest md = getDigestObject();
+    MessageDigest md = getThreadLocalDigest();
 
     byte[] newDigest;
-    byte[] k_ipad = new byte[64]; /* inner padding - key XORd with ipad */
-    byte[] k_opad = new byte[64]; /* outer padding - key XORd with opad */
-
-    // clear the bytes for the digest (12 bytes only!)
-    for (int i = 0; i < MESSAGE_AUTHENTICATION_CODE_LENGTH; ++i) {
-      digest.set(i, (byte)0);
-    }
+    byte[] k_ipad = new byte[hmacBlockSize]; /* inner padding - key XORd with ipad */
+    byte[] k_opad = new byte[hmacBlockSize]; /* outer padding - key XORd with opad */
 
     /*
      * the HMAC_MD transform looks like:
@@ -90,16 +151,10 @@ public abstract class AuthGeneric implements AuthenticationProtocol {
      * opad is the byte 0x5c repeated 64 times
      * and text is the data being protected
      */
-    /* start out by storing key, ipad and opad in pads */
-    for (int i = 0; i < authenticationKey.length; ++i) {
-      k_ipad[i] = (byte) (authenticationKey[i] ^ 0x36);
-      k_opad[i] = (byte) (authenticationKey[i] ^ 0x5c);
-    }
-    for (int i = authenticationKey.length; i < 64; ++i) {
-      k_ipad[i] = 0x36;
-      k_opad[i] = 0x5c;
-    }
+    fillPads(authenticationKey, k_ipad, k_opad);
 
+    // clear the bytes for the digest (12 bytes only!)
+    clearDigest(digest);
     /* perform inner MD */
     md.update(k_ipad); /* start with inner pad      */
     md.update(message, messageOffset, messageLength); /* then text of msg  */
@@ -111,31 +166,165 @@ public abstract class AuthGeneric implements AuthenticationProtocol {
     newDigest = md.digest(); /* finish up 2nd pass        */
 
     // copy the digest into the message (12 bytes only!)
-    for (int i = 0; i < 12; ++i) {
+    for (int i = 0; i < MESSAGE_AUTHENTICATION_CODE_LENGTH; ++i) {
       digest.set(i, newDigest[i]);
     }
     return true;
   }
 
+  /**
+   * Authenticates an outgoing message with a precomputed key. This is
+   * equivalent to {@link #authenticate(byte[], byte[], int, int, ByteArrayWindow)}
+   * but does not digest the padded key for every message.
+   *
+   * @param key
+   *    a key precomputed by {@link #precomputeKey(byte[])}.
+   * @param message
+   *    the message to authenticate.
+   * @param messageOffset
+   *    the offset of the message in <code>message</code>.
+   * @param messageLength
+   *    the length of the message.
+   * @param digest
+   *    the window of the authentication parameters in the message.
+   * @return
+   *    <code>true</code>.
+   */
+  boolean authenticate(PrecomputedHmacKey key,
+                       byte[] message,
+                       int messageOffset,
+                       int messageLength,
+                       ByteArrayWindow digest) {
+    MessageDigest inner;
+    MessageDigest outer;
+    try {
+      inner = key.getInnerDigest();
+      outer = key.getOuterDigest();
+    }
+    catch (CloneNotSupportedException cnsex) {
+      // cannot happen because precomputeKey checked it
+      throw new InternalError(protoName + " digest cannot be cloned");
+    }
+    clearDigest(digest);
+    inner.update(message, messageOffset, messageLength);
+    outer.update(inner.digest());
+    byte[] newDigest = outer.digest();
+    for (int i = 0; i < MESSAGE_AUTHENTICATION_CODE_LENGTH; ++i) {
+      digest.set(i, newDigest[i]);
+    }
+    return true;
+  }
+
+  private static void clearDigest(ByteArrayWindow digest) {
+    for (int i = 0; i < MESSAGE_AUTHENTICATION_CODE_LENGTH; ++i) {
+      digest.set(i, (byte)0);
+    }
+  }
+
+  private void fillPads(byte[] authenticationKey, byte[] k_ipad, byte[] k_opad) {
+    /* start out by storing key, ipad and opad in pads */
+    for (int i = 0; i < authenticationKey.length; ++i) {
+      k_ipad[i] = (byte) (authenticationKey[i] ^ 0x36);
+      k_opad[i] = (byte) (authenticationKey[i] ^ 0x5c);
+    }
+    for (int i = authenticationKey.length; i < k_ipad.length; ++i) {
+      k_ipad[i] = 0x36;
+      k_opad[i] = 0x5c;
+    }
+  }
+
+  /**
+   * Precomputes the HMAC state of the given localized authentication key.
+   *
+   * @param authenticationKey
+   *    a localized authentication key.
+   * @return
+   *    the precomputed key or <code>null</code> if the message digest of this
+   *    protocol does not support cloning.
+   */
+  PrecomputedHmacKey precomputeKey(byte[] authenticationKey) {
+    byte[] k_ipad = new byte[hmacBlockSize];
+    byte[] k_opad = new byte[hmacBlockSize];
+    fillPads(authenticationKey, k_ipad, k_opad);
+    MessageDigest inner = getDigestObject();
+    MessageDigest outer = getDigestObject();
+    inner.update(k_ipad);
+    outer.update(k_opad);
+    Arrays.fill(k_ipad, (byte)0);
+    Arrays.fill(k_opad, (byte)0);
+    try {
+      // check that the precomputed key can be used
+      inner.clone();
+    }
+    catch (CloneNotSupportedException cnsex) {
+      if (logger.isDebugEnabled()) {
+        logger.debug(protoName + " digest does not support cloning");
+      }
+      return null;
+    }
+    return new PrecomputedHmacKey(this, authenticationKey, inner, outer);
+  }
+
   public boolean isAuthentic(byte[] authenticationKey,
                              byte[] message,
                              int messageOffset,
                              int messageLength,
                              ByteArrayWindow digest) {
-    // copy digest from message
-    ByteArrayWindow origDigest =
-        new ByteArrayWindow(new byte[MESSAGE_AUTHENTICATION_CODE_LENGTH], 0,
-                            MESSAGE_AUTHENTICATION_CODE_LENGTH);
-    System.arraycopy(digest.getValue(), digest.getOffset(),
-                     origDigest.getValue(), 0,
-                     MESSAGE_AUTHENTICATION_CODE_LENGTH);
+    byte[] origDigest = copyDigest(digest);
 
     // use the authenticate() method to recalculate the digest
     if (!authenticate(authenticationKey, message, messageOffset,
                       messageLength, digest)) {
       return false;
     }
-    return digest.equals(origDigest, 12);
+    return isEqualDigest(digest, origDigest);
+  }
+
+  /**
+   * Checks the authentication parameters of an incoming message with a
+   * precomputed key. This is equivalent to
+   * {@link #isAuthentic(byte[], byte[], int, int, ByteArrayWindow)} but does
+   * not digest the padded key for every message.
+   *
+   * @param key
+   *    a key precomputed by {@link #precomputeKey(byte[])}.
+   * @param message
+   *    the message to check.
+   * @param messageOffset
+   *    the offset of the message in <code>message</code>.
+   * @param messageLength
+   *    the length of the message.
+   * @param digest
+   *    the window of the authentication parameters in the message.
+   * @return
+   *    <code>true</code> if the message is authentic, <code>false</code>
+   *    otherwise.
+   */
+  boolean isAuthentic(PrecomputedHmacKey key,
+                      byte[] message,
+                      int messageOffset,
+                      int messageLength,
+                      ByteArrayWindow digest) {
+    byte[] origDigest = copyDigest(digest);
+    authenticate(key, message, messageOffset, messageLength, digest);
+    return isEqualDigest(digest, origDigest);
+  }
+
+  private static byte[] copyDigest(ByteArrayWindow digest) {
+    byte[] origDigest = new byte[MESSAGE_AUTHENTICATION_CODE_LENGTH];
+    System.arraycopy(digest.getValue(), digest.getOffset(),
+                     origDigest, 0, MESSAGE_AUTHENTICATION_CODE_LENGTH);
+    return origDigest;
+  }
+
+  private static boolean isEqualDigest(ByteArrayWindow digest,
+                                       byte[] origDigest) {
+    // compare in constant time
+    int diff = 0;
+    for (int i = 0; i < MESSAGE_AUTHENTICATION_CODE_LENGTH; i++) {
+      diff |= digest.get(i) ^ origDigest[i];
+    }
+    return (diff == 0);
   }
 
   public byte[] changeDelta(byte[] oldKey,
@@ -193,7 +382,57 @@ public abstract class AuthGeneric implements AuthenticationProtocol {
   }
 
   public byte[] passwordToKey(OctetString passwordString, byte[] engineID) {
+    byte[] masterKey = passwordToMasterKey(passwordString);
+    try {
+      return localizeKey(masterKey, engineID);
+    }
+    finally {
+      Arrays.fill(masterKey, (byte)0);
+    }
+  }
+
+  /**
+   * Checks whether the key of this protocol can be derived from a cached
+   * master key, which is the case unless a subclass provides its own
+   * {@link #passwordToKey(OctetString, byte[])} implementation.
+   *
+   * @return
+   *    <code>true</code> if <code>passwordToKey</code> is implemented by
+   *    <code>AuthGeneric</code> itself.
+   * @since 2.4
+   */
+  boolean isMasterKeyCacheable() {
+    Boolean cacheable = masterKeyCacheable;
+    if (cacheable == null) {
+      try {
+        cacheable = (getClass().getMethod("passwordToKey", OctetString.class,
+                                          byte[].class).getDeclaringClass() ==
+                     AuthGeneric.class);
+      }
+      catch (NoSuchMethodException nsmex) {
+        cacheable = Boolean.FALSE;
+      }
+      masterKeyCacheable = cacheable;
+    }
+    return cacheable;
+  }
 
+  /**
+   * Computes the intermediate key Ku from a password as defined by the first
+   * step of the password to key algorithm of RFC 3414 (A.2). This step hashes
+   * one megabyte of repeated password and is thus by far the most expensive
+   * part of the key generation. Because it does not depend on the engine ID,
+   * its result can be reused to localize the key for any number of engines
+   * by {@link #localizeKey(byte[], byte[])}.
+   *
+   * @param passwordString
+   *    the pass phrase.
+   * @return
+   *    the master key Ku. The caller should overwrite it with zeros when it is
+   *    no longer needed.
+   * @since 2.4
+   */
+  public byte[] passwordToMasterKey(OctetString passwordString) {
     MessageDigest md = getDigestObject();
 
     byte[] digest;
@@ -212,26 +451,37 @@ public abstract class AuthGeneric implements AuthenticationProtocol {
       md.update(buf);
       count += 64;
     }
+    Arrays.fill(buf, (byte)0);
     digest = md.digest();
     if (logger.isDebugEnabled()) {
       logger.debug(protoName + "First digest: " +
                    new OctetString(digest).toHexString());
     }
+    return digest;
+  }
 
-    /*****************************************************/
-    /* Now localize the key with the engine_id and pass  */
-    /* through MD to produce final key                   */
-    /*****************************************************/
-    md.reset();
-    md.update(digest);
+  /**
+   * Localizes a master key Ku with the given engine ID as defined by the
+   * second step of the password to key algorithm of RFC 3414 (A.2).
+   *
+   * @param masterKey
+   *    a master key computed by {@link #passwordToMasterKey(OctetString)}.
+   * @param engineID
+   *    the engine ID of the authoritative engine.
+   * @return
+   *    the localized key Kul.
+   * @since 2.4
+   */
+  public byte[] localizeKey(byte[] masterKey, byte[] engineID) {
+    MessageDigest md = getDigestObject();
+    md.update(masterKey);
     md.update(engineID);
-    md.update(digest);
-    digest = md.digest();
+    md.update(masterKey);
+    byte[] digest = md.digest();
     if (logger.isDebugEnabled()) {
       logger.debug(protoName + "localized key: " +
                    new OctetString(digest).toHexString());
     }
-
     return digest;
   }
 
@@ -22,24 +22,50 @@ package org.snmp4j.security;
 
 import javax.crypto.Cipher;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
-import java.util.LinkedList;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * The CipherPool class provides service to share and reuse Cipher instances, across
  * different threads. The maximum number of Ciphers in the pool might temporarily
  * exceed the {@link #maxPoolSize} to minimize waiting time.
+ * <p>
+ * Since 2.4, the pool does not use locks. In addition to the unkeyed ciphers
+ * returned by {@link #reuseCipher()}, it keeps a fixed number of key slots
+ * that hold ciphers together with the key they have been initialized with.
+ * A cipher taken from a key slot for the same key and operation mode only
+ * needs to be initialized with the new IV. The key specification is reused
+ * and providers may skip the key schedule for an unchanged key.
  *
  * @author Frank Fock
+ * @version 2.4
  * @since 2.2.2
  */
 public class CipherPool {
 
-  private LinkedList<Cipher> availableCiphers;
+  /**
+   * The default number of key slots.
+   * @since 2.4
+   */
+  public static final int DEFAULT_KEY_SLOTS = 64;
+
+  private final Queue<Cipher> availableCiphers;
+  private final AtomicInteger currentPoolSize = new AtomicInteger();
+  private final AtomicReferenceArray<KeyedCipher> keySlots;
 
   private int maxPoolSize;
-  private int currentPoolSize;
 
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong keyHitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
 
   /**
    * Creates a new cipher pool with a pool size of {@link Runtime#availableProcessors()}.
@@ -54,12 +80,29 @@ public class CipherPool {
    *   the maximum number of ciphers in the pool.
    */
   public CipherPool(int maxPoolSize) {
-    this.currentPoolSize = 0;
+    this(maxPoolSize, DEFAULT_KEY_SLOTS);
+  }
+
+  /**
+   * Creates a new cipher pool with a given pool size and number of key slots.
+   * @param maxPoolSize
+   *   the maximum number of unkeyed ciphers in the pool.
+   * @param keySlots
+   *   the number of ciphers cached with their key. It is rounded up to the
+   *   next power of two. Zero disables key caching.
+   * @since 2.4
+   */
+  public CipherPool(int maxPoolSize, int keySlots) {
     if (maxPoolSize < 0) {
       throw new IllegalArgumentException("Pool size must be >= 0");
     }
+    if (keySlots < 0) {
+      throw new IllegalArgumentException("Key slots must be >= 0");
+    }
     this.maxPoolSize = maxPoolSize;
-    this.availableCiphers = new LinkedList<Cipher>();
+    this.availableCiphers = new ConcurrentLinkedQueue<Cipher>();
+    int slots = (keySlots == 0) ? 0 : Integer.highestOneBit(keySlots - 1) << 1;
+    this.keySlots = new AtomicReferenceArray<KeyedCipher>(Math.max(slots, keySlots));
   }
 
   public int getMaxPoolSize() {
@@ -74,13 +117,14 @@ public class CipherPool {
    *    a Cipher from the pool, or <code>null</code> if the pool currently does not contain any
    *    cipher.
    */
-  public synchronized Cipher reuseCipher() throws NoSuchPaddingException, NoSuchAlgorithmException {
+  public Cipher reuseCipher() throws NoSuchPaddingException, NoSuchAlgorithmException {
     Cipher cipher = availableCiphers.poll();
-    if (cipher == null) {
-      currentPoolSize = 0;
+    if (cipher != null) {
+      currentPoolSize.decrementAndGet();
+      hitCount.incrementAndGet();
     }
     else {
-      currentPoolSize--;
+      missCount.incrementAndGet();
     }
     return cipher;
   }
@@ -90,10 +134,170 @@ public class CipherPool {
    * @param cipher
    *    a Cipher instance previously acquired by {@link #reuseCipher()} or created externally.
    */
-  public synchronized void offerCipher(Cipher cipher) {
-    if (currentPoolSize < maxPoolSize) {
-      currentPoolSize++;
+  public void offerCipher(Cipher cipher) {
+    if (currentPoolSize.incrementAndGet() <= maxPoolSize) {
       availableCiphers.offer(cipher);
     }
+    else {
+      currentPoolSize.decrementAndGet();
+    }
+  }
+
+  /**
+   * Gets a cipher initialized with the given key and initialization vector.
+   * A cipher that has been used with the same key and operation mode before
+   * is preferred. The returned cipher must be returned to the pool by
+   * {@link #offerCipher(KeyedCipher)} when it is not needed anymore.
+   *
+   * @param transformation
+   *    the transformation used to create a new cipher, if the pool does not
+   *    contain one.
+   * @param opmode
+   *    the operation mode, for example {@link Cipher#ENCRYPT_MODE}.
+   * @param key
+   *    the key bytes (the key starts at index zero).
+   * @param keyLength
+   *    the number of key bytes used.
+   * @param keyAlgorithm
+   *    the algorithm of the key, for example "AES".
+   * @param params
+   *    the initialization vector.
+   * @return
+   *    an initialized cipher.
+   * @throws GeneralSecurityException
+   *    if the cipher cannot be created or initialized.
+   * @since 2.4
+   */
+  KeyedCipher reuseCipher(String transformation, int opmode,
+                          byte[] key, int keyLength, String keyAlgorithm,
+                          AlgorithmParameterSpec params)
+      throws GeneralSecurityException
+  {
+    KeyedCipher keyedCipher = null;
+    int slot = -1;
+    if (keySlots.length() > 0) {
+      slot = slotIndex(opmode, key, keyLength);
+      keyedCipher = keySlots.getAndSet(slot, null);
+      if ((keyedCipher != null) &&
+          !keyedCipher.matches(opmode, key, keyLength)) {
+        // keep the cipher of the other key in its slot
+        keySlots.compareAndSet(slot, null, keyedCipher);
+        keyedCipher = null;
+      }
+    }
+    if (keyedCipher != null) {
+      hitCount.incrementAndGet();
+      keyHitCount.incrementAndGet();
+      keyedCipher.getCipher().init(opmode, keyedCipher.keySpec, params);
+      return keyedCipher;
+    }
+    Cipher cipher = reuseCipher();
+    if (cipher == null) {
+      cipher = Cipher.getInstance(transformation);
+    }
+    keyedCipher = new KeyedCipher(cipher, opmode, key, keyLength,
+                                  keyAlgorithm, slot);
+    cipher.init(opmode, keyedCipher.keySpec, params);
+    return keyedCipher;
+  }
+
+  /**
+   * Returns a cipher acquired by
+   * {@link #reuseCipher(String, int, byte[], int, String, AlgorithmParameterSpec)}
+   * to the pool. The cipher is kept in the slot of its key. A cipher
+   * previously occupying that slot for another key is moved to the unkeyed
+   * ciphers.
+   * @param keyedCipher
+   *    a keyed cipher whose <code>doFinal</code> method has been called.
+   * @since 2.4
+   */
+  void offerCipher(KeyedCipher keyedCipher) {
+    int slot = keyedCipher.slot;
+    if (slot < 0) {
+      offerCipher(keyedCipher.getCipher());
+      return;
+    }
+    KeyedCipher replaced = keySlots.getAndSet(slot, keyedCipher);
+    if ((replaced != null) && (replaced != keyedCipher)) {
+      offerCipher(replaced.getCipher());
+    }
+  }
+
+  private int slotIndex(int opmode, byte[] key, int keyLength) {
+    int hash = opmode;
+    for (int i = 0; i < keyLength; i++) {
+      hash = 31 * hash + key[i];
+    }
+    hash ^= (hash >>> 16);
+    return hash & (keySlots.length() - 1);
+  }
+
+  /**
+   * Gets the number of ciphers taken from the pool instead of being created.
+   * @return
+   *    the number of pool hits.
+   * @since 2.4
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Gets the number of ciphers taken from a key slot, which were thus already
+   * initialized with the requested key. Key hits are also counted as hits.
+   * @return
+   *    the number of key slot hits.
+   * @since 2.4
+   */
+  public long getKeyHitCount() {
+    return keyHitCount.get();
+  }
+
+  /**
+   * Gets the number of requests that could not be served from the pool.
+   * @return
+   *    the number of pool misses.
+   * @since 2.4
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * A <code>KeyedCipher</code> is a cipher together with the key
+   * specification it has been initialized with.
+   * @since 2.4
+   */
+  static final class KeyedCipher {
+
+    private final Cipher cipher;
+    private final int opmode;
+    private final byte[] key;
+    private final SecretKeySpec keySpec;
+    private final int slot;
+
+    KeyedCipher(Cipher cipher, int opmode, byte[] key, int keyLength,
+                String keyAlgorithm, int slot) {
+      this.cipher = cipher;
+      this.opmode = opmode;
+      this.key = Arrays.copyOf(key, keyLength);
+      this.keySpec = new SecretKeySpec(key, 0, keyLength, keyAlgorithm);
+      this.slot = slot;
+    }
+
+    Cipher getCipher() {
+      return cipher;
+    }
+
+    boolean matches(int opmode, byte[] key, int keyLength) {
+      if ((this.opmode != opmode) || (this.key.length != keyLength)) {
+        return false;
+      }
+      int diff = 0;
+      for (int i = 0; i < keyLength; i++) {
+        diff |= this.key[i] ^ key[i];
+      }
+      return (diff == 0);
+    }
   }
 }
@@ -0,0 +1,299 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - MasterKeyCache.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.security;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+
+/**
+ * The <code>MasterKeyCache</code> caches the intermediate keys Ku computed
+ * from pass phrases by {@link AuthGeneric#passwordToMasterKey(OctetString)}.
+ * With a cached master key, the localization of a key for a new
+ * authoritative engine costs a single digest instead of hashing one megabyte
+ * of the pass phrase.
+ * <p>
+ * The cache holds at most {@link #getMaxSize()} master keys and evicts the
+ * least recently used key when it is full. The master key and the copy of
+ * the pass phrase of an evicted entry are overwritten with zeros.
+ * <p>
+ * Master keys of different pass phrases are computed concurrently, whereas
+ * concurrent requests for the same pass phrase wait for the first thread
+ * computing it. Evicted entries are wiped after the cache lock has been
+ * released, so that waiting for a master key being computed for an evicted
+ * entry does not block lookups of other pass phrases.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+class MasterKeyCache {
+
+  private static final LogAdapter logger =
+      LogFactory.getLogger(MasterKeyCache.class);
+
+  /**
+   * The default maximum number of cached master keys.
+   */
+  public static final int DEFAULT_MAX_SIZE = 100;
+
+  private int maxSize;
+  private final LinkedHashMap<CacheKey, CacheEntry> entries;
+  // entries evicted while holding the cache lock that still need to be wiped
+  private List<Map.Entry<CacheKey, CacheEntry>> evicted =
+      new ArrayList<Map.Entry<CacheKey, CacheEntry>>();
+
+  MasterKeyCache(int maxSize) {
+    this.maxSize = maxSize;
+    this.entries = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+        if (size() > MasterKeyCache.this.maxSize) {
+          evicted.add(
+              new AbstractMap.SimpleImmutableEntry<CacheKey, CacheEntry>(eldest));
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Generates the localized key for the given pass phrase and engine ID by
+   * localizing the (cached) master key of the pass phrase.
+   *
+   * @param protocol
+   *    the authentication protocol.
+   * @param passwordString
+   *    the pass phrase.
+   * @param engineID
+   *    the engine ID of the authoritative engine.
+   * @return
+   *    the localized key.
+   */
+  byte[] passwordToKey(AuthGeneric protocol, OctetString passwordString,
+                       byte[] engineID) {
+    CacheEntry entry = getEntry(protocol, passwordString);
+    if (entry != null) {
+      byte[] key = entry.localizeKey(protocol, passwordString, engineID);
+      if (key != null) {
+        return key;
+      }
+    }
+    // entry has been evicted in the meantime or caching is disabled
+    return protocol.passwordToKey(passwordString, engineID);
+  }
+
+  /**
+   * Computes the master key for the given pass phrase and adds it to the
+   * cache, if it is not cached already.
+   *
+   * @param protocol
+   *    the authentication protocol.
+   * @param passwordString
+   *    the pass phrase.
+   */
+  void precompute(AuthGeneric protocol, OctetString passwordString) {
+    CacheEntry entry = getEntry(protocol, passwordString);
+    if (entry != null) {
+      entry.getMasterKey(protocol, passwordString);
+    }
+  }
+
+  private CacheEntry getEntry(AuthGeneric protocol,
+                              OctetString passwordString) {
+    CacheEntry entry;
+    List<Map.Entry<CacheKey, CacheEntry>> wipe;
+    synchronized (this) {
+      if (maxSize <= 0) {
+        return null;
+      }
+      CacheKey key = new CacheKey(protocol.getID(), passwordString.getValue());
+      entry = entries.get(key);
+      if (entry == null) {
+        key = new CacheKey(protocol.getID(), passwordString.getValue().clone());
+        entry = new CacheEntry();
+        entries.put(key, entry);
+      }
+      wipe = takeEvicted();
+    }
+    wipe(wipe);
+    return entry;
+  }
+
+  /**
+   * Takes the entries evicted since the last call. Must be called while
+   * holding the cache lock.
+   */
+  private List<Map.Entry<CacheKey, CacheEntry>> takeEvicted() {
+    if (evicted.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Map.Entry<CacheKey, CacheEntry>> result = evicted;
+    evicted = new ArrayList<Map.Entry<CacheKey, CacheEntry>>();
+    return result;
+  }
+
+  /**
+   * Overwrites the master keys and pass phrases of entries that have been
+   * removed from the cache. Must not be called while holding the cache lock,
+   * because wiping an entry waits until its master key has been computed.
+   */
+  private static void wipe(List<Map.Entry<CacheKey, CacheEntry>> removed) {
+    for (Map.Entry<CacheKey, CacheEntry> entry : removed) {
+      entry.getValue().wipe();
+      entry.getKey().wipe();
+    }
+  }
+
+  /**
+   * Gets the maximum number of cached master keys.
+   * @return
+   *    the maximum cache size. Zero disables caching.
+   */
+  synchronized int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Sets the maximum number of cached master keys. If the cache contains more
+   * entries, the least recently used entries are removed.
+   * @param maxSize
+   *    the maximum cache size. Zero disables caching.
+   */
+  void setMaxSize(int maxSize) {
+    List<Map.Entry<CacheKey, CacheEntry>> wipe;
+    synchronized (this) {
+      this.maxSize = maxSize;
+      int excess = entries.size() - Math.max(0, maxSize);
+      for (Iterator<Map.Entry<CacheKey, CacheEntry>> it =
+               entries.entrySet().iterator(); (excess > 0) && it.hasNext(); excess--) {
+        Map.Entry<CacheKey, CacheEntry> eldest = it.next();
+        evicted.add(
+            new AbstractMap.SimpleImmutableEntry<CacheKey, CacheEntry>(eldest));
+        it.remove();
+      }
+      wipe = takeEvicted();
+    }
+    wipe(wipe);
+  }
+
+  /**
+   * Removes all master keys from the cache and overwrites them with zeros.
+   */
+  void clear() {
+    List<Map.Entry<CacheKey, CacheEntry>> wipe;
+    synchronized (this) {
+      for (Map.Entry<CacheKey, CacheEntry> entry : entries.entrySet()) {
+        evicted.add(
+            new AbstractMap.SimpleImmutableEntry<CacheKey, CacheEntry>(entry));
+      }
+      entries.clear();
+      wipe = takeEvicted();
+    }
+    wipe(wipe);
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  private static final class CacheKey {
+
+    private final OID protocolID;
+    private final byte[] password;
+    private final int hashCode;
+
+    CacheKey(OID protocolID, byte[] password) {
+      this.protocolID = protocolID;
+      this.password = password;
+      this.hashCode = protocolID.hashCode() * 31 + Arrays.hashCode(password);
+    }
+
+    void wipe() {
+      Arrays.fill(password, (byte)0);
+    }
+
+    public int hashCode() {
+      return hashCode;
+    }
+
+    public boolean equals(Object o) {
+      if (o instanceof CacheKey) {
+        CacheKey other = (CacheKey)o;
+        return protocolID.equals(other.protocolID) &&
+            Arrays.equals(password, other.password);
+      }
+      return false;
+    }
+  }
+
+  private static final class CacheEntry {
+
+    private byte[] masterKey;
+    private boolean evicted;
+
+    /**
+     * Returns the master key and computes it if necessary.
+     * @return
+     *    the master key or <code>null</code> if this entry has been evicted.
+     */
+    synchronized byte[] getMasterKey(AuthGeneric protocol,
+                                     OctetString passwordString) {
+      if (evicted) {
+        return null;
+      }
+      if (masterKey == null) {
+        masterKey = protocol.passwordToMasterKey(passwordString);
+        if (logger.isDebugEnabled()) {
+          logger.debug("Cached master key for protocol "+protocol.getID());
+        }
+      }
+      return masterKey;
+    }
+
+    synchronized byte[] localizeKey(AuthGeneric protocol,
+                                    OctetString passwordString,
+                                    byte[] engineID) {
+      byte[] key = getMasterKey(protocol, passwordString);
+      if (key == null) {
+        return null;
+      }
+      return protocol.localizeKey(key, engineID);
+    }
+
+    synchronized void wipe() {
+      evicted = true;
+      if (masterKey != null) {
+        Arrays.fill(masterKey, (byte)0);
+        masterKey = null;
+      }
+    }
+  }
+}
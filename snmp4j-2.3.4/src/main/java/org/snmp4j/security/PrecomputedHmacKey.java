@@ -0,0 +1,92 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - PrecomputedHmacKey.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.security;
+
+import java.security.MessageDigest;
+
+/**
+ * A <code>PrecomputedHmacKey</code> holds the HMAC state of an
+ * authentication key after the inner and the outer padded key have been
+ * digested. Computing an HMAC with a precomputed key thus only clones the
+ * two digest states and finishes the inner and the outer digest.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+final class PrecomputedHmacKey {
+
+  private final AuthGeneric protocol;
+  private final byte[] authenticationKey;
+  private final MessageDigest inner;
+  private final MessageDigest outer;
+
+  PrecomputedHmacKey(AuthGeneric protocol, byte[] authenticationKey,
+                     MessageDigest inner, MessageDigest outer) {
+    this.protocol = protocol;
+    this.authenticationKey = authenticationKey;
+    this.inner = inner;
+    this.outer = outer;
+  }
+
+  /**
+   * Checks whether this key has been precomputed for the given protocol and
+   * key.
+   * @param protocol
+   *    an authentication protocol.
+   * @param authenticationKey
+   *    a localized authentication key.
+   * @return
+   *    <code>true</code> if this key has been precomputed by
+   *    <code>protocol</code> from the same key array instance.
+   */
+  boolean isKeyOf(AuthGeneric protocol, byte[] authenticationKey) {
+    return (this.protocol == protocol) &&
+        (this.authenticationKey == authenticationKey);
+  }
+
+  AuthGeneric getProtocol() {
+    return protocol;
+  }
+
+  /**
+   * Returns a copy of the digest state after the inner padded key.
+   * @return
+   *    a <code>MessageDigest</code> to be updated with the message.
+   * @throws CloneNotSupportedException
+   *    if the digest implementation cannot be cloned.
+   */
+  MessageDigest getInnerDigest() throws CloneNotSupportedException {
+    return (MessageDigest) inner.clone();
+  }
+
+  /**
+   * Returns a copy of the digest state after the outer padded key.
+   * @return
+   *    a <code>MessageDigest</code> to be updated with the inner digest.
+   * @throws CloneNotSupportedException
+   *    if the digest implementation cannot be cloned.
+   */
+  MessageDigest getOuterDigest() throws CloneNotSupportedException {
+    return (MessageDigest) outer.clone();
+  }
+}
@@ -23,7 +23,6 @@ import javax.crypto.*;
 
 import org.snmp4j.log.*;
 import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
 import org.snmp4j.smi.OctetString;
 
 
@@ -66,6 +65,17 @@ public abstract class PrivAES
     cipherPool = new CipherPool();
   }
 
+  /**
+   * Gets the pool of ciphers used by this privacy protocol, for example to
+   * monitor its hit and miss counters.
+   * @return
+   *    the <code>CipherPool</code> of this protocol.
+   * @since 2.4
+   */
+  public CipherPool getCipherPool() {
+    return cipherPool;
+  }
+
   public byte[] encrypt(byte[] unencryptedData, int offset, int length,
                         byte[] encryptionKey, long engineBoots,
                         long engineTime, DecryptParams decryptParams) {
@@ -108,16 +118,13 @@ public abstract class PrivAES
     byte[] encryptedData = null;
     try {
       // now do CFB encryption of the plaintext
-      Cipher alg = cipherPool.reuseCipher();
-      if (alg == null) {
-        alg = Cipher.getInstance("AES/CFB/NoPadding");
-      }
-      SecretKeySpec key =
-          new SecretKeySpec(encryptionKey, 0, keyBytes, "AES");
-      IvParameterSpec ivSpec = new IvParameterSpec(initVect);
-      alg.init(Cipher.ENCRYPT_MODE, key, ivSpec);
+      CipherPool.KeyedCipher keyedCipher =
+          cipherPool.reuseCipher("AES/CFB/NoPadding", Cipher.ENCRYPT_MODE,
+                                 encryptionKey, keyBytes, "AES",
+                                 new IvParameterSpec(initVect));
+      Cipher alg = keyedCipher.getCipher();
       encryptedData =  alg.doFinal(unencryptedData, offset, length);
-      cipherPool.offerCipher(alg);
+      cipherPool.offerCipher(keyedCipher);
 
       if (logger.isDebugEnabled()) {
         logger.debug("aes encrypt: Data to encrypt " + asHex(unencryptedData));
@@ -168,16 +175,13 @@ public abstract class PrivAES
     byte[] decryptedData = null;
     try {
       // now do CFB decryption of the encrypted data
-      Cipher alg = cipherPool.reuseCipher();
-      if (alg == null) {
-        alg = Cipher.getInstance("AES/CFB/NoPadding");
-      }
-      SecretKeySpec key =
-          new SecretKeySpec(decryptionKey, 0, keyBytes, "AES");
-      IvParameterSpec ivSpec = new IvParameterSpec(initVect);
-      alg.init(Cipher.DECRYPT_MODE, key, ivSpec);
+      CipherPool.KeyedCipher keyedCipher =
+          cipherPool.reuseCipher("AES/CFB/NoPadding", Cipher.DECRYPT_MODE,
+                                 decryptionKey, keyBytes, "AES",
+                                 new IvParameterSpec(initVect));
+      Cipher alg = keyedCipher.getCipher();
       decryptedData =  alg.doFinal(cryptedData, offset, length);
-      cipherPool.offerCipher(alg);
+      cipherPool.offerCipher(keyedCipher);
 
       if (logger.isDebugEnabled()) {
         logger.debug("aes decrypt: Data to decrypt " + asHex(cryptedData));
@@ -21,7 +21,6 @@ package org.snmp4j.security;
 
 import org.snmp4j.smi.OID;
 import org.snmp4j.log.*;
-import javax.crypto.spec.SecretKeySpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.Cipher;
 import org.snmp4j.smi.OctetString;
@@ -58,6 +57,17 @@ public class PrivDES
     cipherPool = new CipherPool();
   }
 
+  /**
+   * Gets the pool of ciphers used by this privacy protocol, for example to
+   * monitor its hit and miss counters.
+   * @return
+   *    the <code>CipherPool</code> of this protocol.
+   * @since 2.4
+   */
+  public CipherPool getCipherPool() {
+    return cipherPool;
+  }
+
   public byte[] encrypt(byte[] unencryptedData,
                         int offset,
                         int length,
@@ -105,14 +115,11 @@ public class PrivDES
 
     try {
       // now do CBC encryption of the plaintext
-      Cipher alg = cipherPool.reuseCipher();
-      if (alg == null) {
-        alg = Cipher.getInstance("DES/CBC/NoPadding");
-      }
-      SecretKeySpec key =
-          new SecretKeySpec(encryptionKey, 0, 8, "DES");
-      IvParameterSpec ivSpec = new IvParameterSpec(iv);
-      alg.init(Cipher.ENCRYPT_MODE, key, ivSpec);
+      CipherPool.KeyedCipher keyedCipher =
+          cipherPool.reuseCipher("DES/CBC/NoPadding", Cipher.ENCRYPT_MODE,
+                                 encryptionKey, 8, "DES",
+                                 new IvParameterSpec(iv));
+      Cipher alg = keyedCipher.getCipher();
       // allocate space for encrypted text
       if (length % 8 == 0) {
         encryptedData = alg.doFinal(unencryptedData, offset, length);
@@ -130,7 +137,7 @@ public class PrivDES
         encryptedLength += alg.doFinal(tmp, 0, 8 - (length % 8),
                                        encryptedData, encryptedLength);
       }
-      cipherPool.offerCipher(alg);
+      cipherPool.offerCipher(keyedCipher);
     }
     catch (Exception e) {
       logger.error(e);
@@ -198,16 +205,13 @@ public class PrivDES
     byte[] decryptedData = null;
     try {
       // now do CBC decryption of the crypted data
-      Cipher alg = cipherPool.reuseCipher();
-      if (alg == null) {
-        alg = Cipher.getInstance("DES/CBC/NoPadding");
-      }
-      SecretKeySpec key =
-          new SecretKeySpec(decryptionKey, 0, 8, "DES");
-      IvParameterSpec ivSpec = new IvParameterSpec(iv);
-      alg.init(Cipher.DECRYPT_MODE, key, ivSpec);
+      CipherPool.KeyedCipher keyedCipher =
+          cipherPool.reuseCipher("DES/CBC/NoPadding", Cipher.DECRYPT_MODE,
+                                 decryptionKey, 8, "DES",
+                                 new IvParameterSpec(iv));
+      Cipher alg = keyedCipher.getCipher();
       decryptedData = alg.doFinal(cryptedData, offset, length);
-      cipherPool.offerCipher(alg);
+      cipherPool.offerCipher(keyedCipher);
     }
     catch (Exception e) {
       logger.error(e);
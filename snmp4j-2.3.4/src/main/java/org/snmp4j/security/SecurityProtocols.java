@@ -58,6 +58,7 @@ public class SecurityProtocols implements Serializable {
   private static SecurityProtocols instance = null;
   private int maxAuthDigestLength = 0;
   private int maxPrivDecryptParamsLength = 0;
+  private transient MasterKeyCache masterKeyCache;
 
   protected SecurityProtocols() {
     authProtocols = new Hashtable<OID, AuthenticationProtocol>(5);
@@ -270,9 +271,90 @@ public class SecurityProtocols implements Serializable {
     if (protocol == null) {
       return null;
     }
+    return passwordToKey(protocol, passwordString, engineID);
+  }
+
+  private byte[] passwordToKey(AuthenticationProtocol protocol,
+                               OctetString passwordString,
+                               byte[] engineID) {
+    if ((protocol instanceof AuthGeneric) &&
+        ((AuthGeneric)protocol).isMasterKeyCacheable()) {
+      return getMasterKeyCache().passwordToKey((AuthGeneric)protocol,
+                                               passwordString, engineID);
+    }
     return protocol.passwordToKey(passwordString, engineID);
   }
 
+  private synchronized MasterKeyCache getMasterKeyCache() {
+    if (masterKeyCache == null) {
+      masterKeyCache = new MasterKeyCache(MasterKeyCache.DEFAULT_MAX_SIZE);
+    }
+    return masterKeyCache;
+  }
+
+  /**
+   * Computes the master key (Ku) of the given pass phrase for the specified
+   * authentication protocol and caches it, if it is not cached already.
+   * Afterwards, localizing keys for the pass phrase by
+   * {@link #passwordToKey(OID, OctetString, byte[])} or
+   * {@link #passwordToKey(OID, OID, OctetString, byte[])} no longer needs
+   * to hash one megabyte of the pass phrase for each engine ID.
+   *
+   * @param authProtocolID
+   *    an <code>OID</code> identifying the authentication protocol.
+   * @param passwordString
+   *    an authentication or privacy pass phrase.
+   * @since 2.4
+   */
+  public void precomputeMasterKey(OID authProtocolID,
+                                  OctetString passwordString) {
+    AuthenticationProtocol protocol = authProtocols.get(authProtocolID);
+    if ((protocol instanceof AuthGeneric) &&
+        ((AuthGeneric)protocol).isMasterKeyCacheable()) {
+      getMasterKeyCache().precompute((AuthGeneric)protocol, passwordString);
+    }
+  }
+
+  /**
+   * Gets the maximum number of master keys (Ku) cached by this
+   * <code>SecurityProtocols</code> instance.
+   *
+   * @return
+   *    the maximum number of cached master keys. The default is
+   *    100.
+   * @since 2.4
+   */
+  public int getMasterKeyCacheSize() {
+    return getMasterKeyCache().getMaxSize();
+  }
+
+  /**
+   * Sets the maximum number of master keys (Ku) cached by this
+   * <code>SecurityProtocols</code> instance. A master key is computed from a
+   * pass phrase by hashing one megabyte of repeated pass phrase. It is then
+   * localized with the authoritative engine ID to get the key actually used.
+   * Caching master keys thus speeds up key localization for many engines
+   * that share the same pass phrases, for example during engine discovery.
+   * The least recently used master keys are evicted and overwritten with
+   * zeros when the cache is full.
+   *
+   * @param maxSize
+   *    the maximum number of cached master keys. Zero disables caching and
+   *    wipes all cached keys.
+   * @since 2.4
+   */
+  public void setMasterKeyCacheSize(int maxSize) {
+    getMasterKeyCache().setMaxSize(maxSize);
+  }
+
+  /**
+   * Removes all cached master keys and overwrites them with zeros.
+   * @since 2.4
+   */
+  public void clearMasterKeyCache() {
+    getMasterKeyCache().clear();
+  }
+
   /**
    * Generates the localized key for the given password and engine id for the
    * privacy protocol specified by the supplied OID.
@@ -304,7 +386,7 @@ public class SecurityProtocols implements Serializable {
     if (privProtocol == null) {
       return null;
     }
-    byte[] key = authProtocol.passwordToKey(passwordString, engineID);
+    byte[] key = passwordToKey(authProtocol, passwordString, engineID);
 
     if (key == null) {
       return null;
@@ -22,6 +22,7 @@ package org.snmp4j.security;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.Executor;
 
 import org.snmp4j.SNMP4JSettings;
 import org.snmp4j.TransportStateReference;
@@ -58,6 +59,7 @@ public class USM extends SNMPv3SecurityModel {
   private SecurityProtocols securityProtocols;
   private transient Vector<UsmUserListener> usmUserListeners;
   private CounterSupport counterSupport;
+  private transient Executor masterKeyPrecomputationExecutor;
 
   /**
    * Creates a USM with the support for the supplied security protocols.
@@ -338,6 +340,8 @@ public class USM extends SNMPv3SecurityModel {
                                            getPrivacyProtocol());
       usmSecurityParams.setAuthenticationKey(usmSecurityStateReference.
                                              getAuthenticationKey());
+      usmSecurityParams.setPrecomputedHmacKey(usmSecurityStateReference.
+                                              getPrecomputedHmacKey());
       usmSecurityParams.setPrivacyKey(usmSecurityStateReference.getPrivacyKey());
     }
     else {
@@ -379,6 +383,7 @@ public class USM extends SNMPv3SecurityModel {
       usmSecurityParams.setAuthenticationProtocol(auth);
       usmSecurityParams.setPrivacyProtocol(priv);
       usmSecurityParams.setAuthenticationKey(user.getAuthenticationKey());
+      usmSecurityParams.setPrecomputedHmacKey(user.getPrecomputedHmacKey(auth));
       usmSecurityParams.setPrivacyKey(user.getPrivacyKey());
       usmSecurityParams.setUserName(user.getUsmUser().getSecurityName());
       usmSecurityParams.setAuthoritativeEngineID(secEngineID.getValue());
@@ -485,15 +490,25 @@ public class USM extends SNMPv3SecurityModel {
           usmSecurityParams.getAuthParametersPosition() +
           usmSecurityParams.getSecurityParametersPosition();
 
-      boolean authOK = usmSecurityParams.getAuthenticationProtocol().
-          authenticate(usmSecurityParams.getAuthenticationKey(),
-                       wholeMessage,
-                       0,
-                       wholeMessage.length,
-                       new ByteArrayWindow(wholeMessage,
-                                           authParamsPos,
-                                           AuthenticationProtocol.
-                                           MESSAGE_AUTHENTICATION_CODE_LENGTH));
+      AuthenticationProtocol authProtocol =
+          usmSecurityParams.getAuthenticationProtocol();
+      byte[] authKey = usmSecurityParams.getAuthenticationKey();
+      PrecomputedHmacKey hmacKey = usmSecurityParams.getPrecomputedHmacKey();
+      ByteArrayWindow authParams =
+          new ByteArrayWindow(wholeMessage, authParamsPos,
+                              AuthenticationProtocol.
+                              MESSAGE_AUTHENTICATION_CODE_LENGTH);
+      boolean authOK;
+      if ((hmacKey != null) && (authProtocol instanceof AuthGeneric) &&
+          hmacKey.isKeyOf((AuthGeneric)authProtocol, authKey)) {
+        authOK = ((AuthGeneric)authProtocol).authenticate(hmacKey, wholeMessage,
+                                                          0, wholeMessage.length,
+                                                          authParams);
+      }
+      else {
+        authOK = authProtocol.authenticate(authKey, wholeMessage, 0,
+                                           wholeMessage.length, authParams);
+      }
 
       if (!authOK) {
         if (logger.isDebugEnabled()) {
@@ -651,6 +666,8 @@ public class USM extends SNMPv3SecurityModel {
       usmSecurityStateReference.setAuthenticationKey(user.getAuthenticationKey());
       usmSecurityStateReference.setPrivacyKey(user.getPrivacyKey());
       usmSecurityStateReference.setAuthenticationProtocol(auth);
+      usmSecurityStateReference.setPrecomputedHmacKey(
+          user.getPrecomputedHmacKey(auth));
       usmSecurityStateReference.setPrivacyProtocol(priv);
       if (((securityLevel >= SecurityLevel.AUTH_NOPRIV) && (auth == null)) ||
           (((securityLevel >= SecurityLevel.AUTH_PRIV) && (priv == null)))) {
@@ -674,11 +691,15 @@ public class USM extends SNMPv3SecurityModel {
           int authParamsPos =
               usmSecurityParameters.getAuthParametersPosition() +
               usmSecurityParameters.getSecurityParametersPosition();
-          boolean authentic =
+          ByteArrayWindow authParams =
+              new ByteArrayWindow(message, authParamsPos,
+                  AuthenticationProtocol.MESSAGE_AUTHENTICATION_CODE_LENGTH);
+          PrecomputedHmacKey hmacKey = user.getPrecomputedHmacKey(auth);
+          boolean authentic = (hmacKey != null) ?
+              hmacKey.getProtocol().isAuthentic(hmacKey, message, 0,
+                                                message.length, authParams) :
               auth.isAuthentic(user.getAuthenticationKey(),
-                               message, 0, message.length,
-                               new ByteArrayWindow(message, authParamsPos,
-              AuthenticationProtocol.MESSAGE_AUTHENTICATION_CODE_LENGTH));
+                               message, 0, message.length, authParams);
           if (!authentic) {
             if (logger.isDebugEnabled()) {
               logger.debug(
@@ -697,9 +718,9 @@ public class USM extends SNMPv3SecurityModel {
             return SnmpConstants.SNMPv3_USM_AUTHENTICATION_FAILURE;
           }
           // check time
-          int status = timeTable.checkTime(new UsmTimeEntry(securityEngineID,
+          int status = timeTable.checkTime(securityEngineID,
             usmSecurityParameters.getAuthoritativeEngineBoots(),
-            usmSecurityParameters.getAuthoritativeEngineTime()));
+            usmSecurityParameters.getAuthoritativeEngineTime());
 
           switch (status) {
             case SnmpConstants.SNMPv3_USM_NOT_IN_TIME_WINDOW: {
@@ -888,6 +909,9 @@ public class USM extends SNMPv3SecurityModel {
         }
       }
     }
+    else if ((masterKeyPrecomputationExecutor != null) && !user.isLocalized()) {
+      precomputeMasterKeys(user);
+    }
     OctetString userEngineID;
     if (user.isLocalized()) {
       userEngineID = user.getLocalizationEngineID();
@@ -1100,6 +1124,61 @@ public class USM extends SNMPv3SecurityModel {
     this.engineDiscoveryEnabled = engineDiscoveryEnabled;
   }
 
+  /**
+   * Gets the executor that precomputes the master keys of users added
+   * without engine ID.
+   * @return
+   *    the <code>Executor</code> or <code>null</code> if master keys are
+   *    computed on demand (default).
+   * @since 2.4
+   */
+  public Executor getMasterKeyPrecomputationExecutor() {
+    return masterKeyPrecomputationExecutor;
+  }
+
+  /**
+   * Sets an executor that computes the master keys (Ku) of the pass phrases
+   * of users that are added without an engine ID. The master keys are cached
+   * by the {@link SecurityProtocols} of this USM. The keys of such a user are
+   * localized when a new authoritative engine ID is encountered, for example
+   * while processing an incoming message. With a precomputed master key, the
+   * localization costs only a single digest instead of hashing one megabyte
+   * of the pass phrase. An executor with several threads computes the master
+   * keys of many users in parallel.
+   * @param executor
+   *    an <code>Executor</code> or <code>null</code> to compute master keys on
+   *    demand (default).
+   * @since 2.4
+   */
+  public void setMasterKeyPrecomputationExecutor(Executor executor) {
+    this.masterKeyPrecomputationExecutor = executor;
+  }
+
+  private void precomputeMasterKeys(UsmUser user) {
+    final OID authProtocol = user.getAuthenticationProtocol();
+    if (authProtocol == null) {
+      return;
+    }
+    final SecurityProtocols protocols = securityProtocols;
+    final OctetString authPassphrase = user.getAuthenticationPassphrase();
+    final OctetString privPassphrase =
+        (user.getPrivacyProtocol() != null) ? user.getPrivacyPassphrase() : null;
+    if (authPassphrase != null) {
+      masterKeyPrecomputationExecutor.execute(new Runnable() {
+        public void run() {
+          protocols.precomputeMasterKey(authProtocol, authPassphrase);
+        }
+      });
+    }
+    if (privPassphrase != null) {
+      masterKeyPrecomputationExecutor.execute(new Runnable() {
+        public void run() {
+          protocols.precomputeMasterKey(authProtocol, privPassphrase);
+        }
+      });
+    }
+  }
+
   /**
    * Removes a <code>UsmUserListener</code>.
    * @param l
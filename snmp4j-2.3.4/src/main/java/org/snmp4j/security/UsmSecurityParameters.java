@@ -42,6 +42,7 @@ public class UsmSecurityParameters implements SecurityParameters {
   private AuthenticationProtocol authenticationProtocol = null;
   private PrivacyProtocol privacyProtocol = null;
   private byte[] authenticationKey;
+  private PrecomputedHmacKey precomputedHmacKey;
   private byte[] privacyKey;
   private OctetString privacyParameters = new OctetString();
   private OctetString authenticationParameters = new OctetString();
@@ -226,6 +227,28 @@ public class UsmSecurityParameters implements SecurityParameters {
   public byte[] getAuthenticationKey() {
     return authenticationKey;
   }
+
+  /**
+   * Gets the precomputed authentication key.
+   * @return
+   *    the precomputed HMAC key or <code>null</code> if not available.
+   * @since 2.4
+   */
+  PrecomputedHmacKey getPrecomputedHmacKey() {
+    return precomputedHmacKey;
+  }
+
+  /**
+   * Sets the precomputed authentication key matching the authentication key
+   * and protocol.
+   * @param precomputedHmacKey
+   *    the precomputed HMAC key or <code>null</code>.
+   * @since 2.4
+   */
+  void setPrecomputedHmacKey(PrecomputedHmacKey precomputedHmacKey) {
+    this.precomputedHmacKey = precomputedHmacKey;
+  }
+
   public void setAuthenticationKey(byte[] authenticationKey) {
     this.authenticationKey = authenticationKey;
   }
@@ -34,6 +34,7 @@ public class UsmSecurityStateReference implements SecurityStateReference {
   private AuthenticationProtocol authenticationProtocol;
   private PrivacyProtocol privacyProtocol;
   private byte[] authenticationKey;
+  private PrecomputedHmacKey precomputedHmacKey;
   private byte[] privacyKey;
   private int securityLevel;
 
@@ -75,6 +76,28 @@ public class UsmSecurityStateReference implements SecurityStateReference {
   public byte[] getAuthenticationKey() {
     return authenticationKey;
   }
+
+  /**
+   * Gets the precomputed authentication key.
+   * @return
+   *    the precomputed HMAC key or <code>null</code> if not available.
+   * @since 2.4
+   */
+  PrecomputedHmacKey getPrecomputedHmacKey() {
+    return precomputedHmacKey;
+  }
+
+  /**
+   * Sets the precomputed authentication key matching the authentication key
+   * and protocol.
+   * @param precomputedHmacKey
+   *    the precomputed HMAC key or <code>null</code>.
+   * @since 2.4
+   */
+  void setPrecomputedHmacKey(PrecomputedHmacKey precomputedHmacKey) {
+    this.precomputedHmacKey = precomputedHmacKey;
+  }
+
   public void setPrivacyKey(byte[] privacyKey) {
     this.privacyKey = privacyKey;
   }
@@ -29,9 +29,27 @@ import org.snmp4j.smi.*;
 /**
  * The <code>UsmTimeTable</code> class is a singleton that stores USM user
  * information as part of the Local Configuration Datastore (LCD).
+ * <p>
+ * The time entries of remote engines are distributed over a fixed number of
+ * independently locked segments by the hash code of their engine ID, so
+ * threads checking messages of different engines do not block each other.
+ * Checking the time window of messages for the local engine does not lock at
+ * all. Each segment evicts its least recently used entry when the table
+ * holds more than {@link #getMaxSize()} entries. Because eviction is done per
+ * segment, the table may evict an entry before it is completely full. An
+ * engine whose entry has been evicted is discovered again like an unknown
+ * engine.
+ * <p>
+ * Engines discovered by {@link #checkEngineID(OctetString, boolean)} are
+ * kept apart from the engines whose messages have been authenticated, until
+ * {@link #checkTime(OctetString, int, int)} is called for them, which USM
+ * does only for authentic messages. Discovered entries are evicted
+ * among themselves, so a flood of messages with spoofed engine IDs cannot
+ * displace the time entries of authenticated engines. Checking the engine
+ * ID does not change the eviction order of the entries either.
  *
  * @author Frank Fock
- * @version 1.2
+ * @version 2.4
  */
 public class UsmTimeTable implements Serializable {
 
@@ -41,23 +59,87 @@ public class UsmTimeTable implements Serializable {
 
   static final long TIME_PRECISION = 1000000000L;
 
-  private Hashtable<Variable, UsmTimeEntry> table = new Hashtable<Variable, UsmTimeEntry>(10);
-  private long lastLocalTimeChange = System.nanoTime();
-  private UsmTimeEntry localTime;
+  /**
+   * The default maximum number of remote engine time entries.
+   * @since 2.4
+   */
+  public static final int DEFAULT_MAX_SIZE = 100000;
+
+  private static final int SEGMENTS = 16;
+
+  private static final ObjectStreamField[] serialPersistentFields = {
+      new ObjectStreamField("table", Hashtable.class),
+      new ObjectStreamField("lastLocalTimeChange", Long.TYPE),
+      new ObjectStreamField("localTime", UsmTimeEntry.class),
+      new ObjectStreamField("maxSize", Integer.TYPE)
+  };
+
+  private transient Segment[] segments;
+  private volatile long lastLocalTimeChange = System.nanoTime();
+  private volatile UsmTimeEntry localTime;
+  private volatile int maxSize = DEFAULT_MAX_SIZE;
 
   public UsmTimeTable(OctetString localEngineID, int engineBoots) {
     setLocalTime(new UsmTimeEntry(localEngineID, engineBoots, 0));
+    initSegments();
+  }
+
+  private void initSegments() {
+    segments = new Segment[SEGMENTS];
+    for (int i=0; i<segments.length; i++) {
+      segments[i] = new Segment();
+    }
+  }
+
+  private Segment segmentFor(OctetString engineID) {
+    int h = engineID.hashCode();
+    h ^= (h >>> 16);
+    return segments[h & (SEGMENTS - 1)];
   }
 
   public void addEntry(final UsmTimeEntry entry) {
-    table.put(entry.getEngineID(), entry);
+    Segment segment = segmentFor(entry.getEngineID());
+    synchronized (segment) {
+      segment.discovered.remove(entry.getEngineID());
+      segment.authenticated.put(entry.getEngineID(), entry);
+    }
   }
 
   public UsmTimeEntry getEntry(final OctetString engineID) {
-    return table.get(engineID);
+    Segment segment = segmentFor(engineID);
+    synchronized (segment) {
+      UsmTimeEntry entry = segment.authenticated.get(engineID);
+      if (entry == null) {
+        entry = segment.discovered.get(engineID);
+      }
+      return entry;
+    }
+  }
+
+  /**
+   * Gets the time entry of an engine whose message has been authenticated
+   * and moves a discovered entry to the authenticated entries.
+   * @param engineID
+   *    the engine ID of a remote engine.
+   * @return
+   *    the time entry or <code>null</code> if the engine is unknown.
+   */
+  private UsmTimeEntry getAuthenticatedEntry(OctetString engineID) {
+    Segment segment = segmentFor(engineID);
+    synchronized (segment) {
+      UsmTimeEntry entry = segment.authenticated.get(engineID);
+      if (entry == null) {
+        entry = segment.discovered.remove(engineID);
+        if (entry != null) {
+          segment.authenticated.put(entry.getEngineID(), entry);
+        }
+      }
+      return entry;
+    }
   }
 
   public UsmTimeEntry getLocalTime() {
+    UsmTimeEntry localTime = this.localTime;
     UsmTimeEntry entry = new UsmTimeEntry(localTime.getEngineID(),
                                           localTime.getEngineBoots(),
                                           getEngineTime());
@@ -107,17 +189,22 @@ public class UsmTimeTable implements Serializable {
     return localTime.getEngineBoots();
   }
 
-  public synchronized UsmTimeEntry getTime(OctetString engineID) {
+  public UsmTimeEntry getTime(OctetString engineID) {
     if (localTime.getEngineID().equals(engineID)) {
       return getLocalTime();
     }
-    UsmTimeEntry found = table.get(engineID);
+    UsmTimeEntry found = getEntry(engineID);
     if (found == null) {
       return null;
     }
-    return new UsmTimeEntry(engineID, found.getEngineBoots(),
-                            found.getTimeDiff() +
-                            (int) (System.nanoTime() / TIME_PRECISION));
+    int engineBoots;
+    int timeDiff;
+    synchronized (found) {
+      engineBoots = found.getEngineBoots();
+      timeDiff = found.getTimeDiff();
+    }
+    return new UsmTimeEntry(engineID, engineBoots,
+                            timeDiff + (int) (System.nanoTime() / TIME_PRECISION));
   }
 
   /**
@@ -126,36 +213,83 @@ public class UsmTimeTable implements Serializable {
    *    the engine ID of the remote SNMP engine to remove from this  time cache.
    */
   public void removeEntry(final OctetString engineID) {
-    table.remove(engineID);
+    Segment segment = segmentFor(engineID);
+    synchronized (segment) {
+      segment.authenticated.remove(engineID);
+      segment.discovered.remove(engineID);
+    }
   }
 
-  public synchronized int checkEngineID(OctetString engineID,
-                                        boolean discoveryAllowed) {
-    if (table.get(engineID) != null) {
-      return SnmpConstants.SNMPv3_USM_OK;
-    }
-    else if (discoveryAllowed) {
-      addEntry(new UsmTimeEntry(engineID, 0, 0));
-      return SnmpConstants.SNMPv3_USM_OK;
+  /**
+   * Checks whether the engine ID of a received message is known and adds an
+   * unknown engine ID to the discovered engines if discovery is allowed. The
+   * message has not been authenticated yet, thus the eviction order of the
+   * known engines is not changed.
+   *
+   * @param engineID
+   *    the authoritative engine ID of the message.
+   * @param discoveryAllowed
+   *    <code>true</code> if an unknown engine ID may be added.
+   * @return
+   *    {@link SnmpConstants#SNMPv3_USM_OK} if the engine ID is known or has
+   *    been added, {@link SnmpConstants#SNMPv3_USM_UNKNOWN_ENGINEID} otherwise.
+   */
+  public int checkEngineID(OctetString engineID,
+                           boolean discoveryAllowed) {
+    Segment segment = segmentFor(engineID);
+    synchronized (segment) {
+      if (segment.authenticated.containsKey(engineID) ||
+          segment.discovered.containsKey(engineID)) {
+        return SnmpConstants.SNMPv3_USM_OK;
+      }
+      else if (discoveryAllowed) {
+        OctetString key = new OctetString(engineID.getValue());
+        segment.discovered.put(key, new UsmTimeEntry(key, 0, 0));
+        return SnmpConstants.SNMPv3_USM_OK;
+      }
     }
     return SnmpConstants.SNMPv3_USM_UNKNOWN_ENGINEID;
   }
 
-  public synchronized int checkTime(final UsmTimeEntry entry) {
+  public int checkTime(final UsmTimeEntry entry) {
+    return checkTime(entry.getEngineID(), entry.getEngineBoots(),
+                     entry.getLatestReceivedTime());
+  }
+
+  /**
+   * Checks whether a message with the given engine boots and engine time
+   * of the authoritative engine is within the time window as defined by
+   * RFC 3414 section 3.2.7 and updates the time entry of a non-authoritative
+   * engine accordingly.
+   *
+   * @param engineID
+   *    the authoritative engine ID of the message.
+   * @param engineBoots
+   *    the authoritative engine boots of the message.
+   * @param engineTime
+   *    the authoritative engine time of the message.
+   * @return
+   *    {@link SnmpConstants#SNMPv3_USM_OK} if the message is within the time
+   *    window, {@link SnmpConstants#SNMPv3_USM_NOT_IN_TIME_WINDOW} if not, and
+   *    {@link SnmpConstants#SNMPv3_USM_UNKNOWN_ENGINEID} if the engine ID is
+   *    unknown.
+   * @since 2.4
+   */
+  public int checkTime(OctetString engineID, int engineBoots, int engineTime) {
     int now = (int) (System.nanoTime() / TIME_PRECISION);
-    if (localTime.getEngineID().equals(entry.getEngineID())) {
+    UsmTimeEntry localTime = this.localTime;
+    if (localTime.getEngineID().equals(engineID)) {
       /* Entry found, we are authoritative */
-      if ((localTime.getEngineBoots() == 2147483647) ||
-          (localTime.getEngineBoots() != entry.getEngineBoots()) ||
-          (Math.abs(now + localTime.getTimeDiff() - entry.getLatestReceivedTime())
-           > 150)) {
+      int localEngineBoots = localTime.getEngineBoots();
+      if ((localEngineBoots == 2147483647) ||
+          (localEngineBoots != engineBoots) ||
+          (Math.abs(now + localTime.getTimeDiff() - engineTime) > 150)) {
         if (logger.isDebugEnabled()) {
           logger.debug(
               "CheckTime: received message outside time window (authoritative):"+
-              ((localTime.getEngineBoots() !=
-                entry.getEngineBoots()) ? "engineBoots differ "+localTime.getEngineBoots()+"!="+entry.getEngineBoots() :
-               ""+(Math.abs(now + localTime.getTimeDiff() -
-                            entry.getLatestReceivedTime()))+" > 150"));
+              ((localEngineBoots != engineBoots) ?
+               "engineBoots differ "+localEngineBoots+"!="+engineBoots :
+               ""+(Math.abs(now + localTime.getTimeDiff() - engineTime))+" > 150"));
         }
         return SnmpConstants.SNMPv3_USM_NOT_IN_TIME_WINDOW;
       }
@@ -167,24 +301,29 @@ public class UsmTimeTable implements Serializable {
       }
     }
     else {
-      UsmTimeEntry time = table.get(entry.getEngineID());
+      UsmTimeEntry time = getAuthenticatedEntry(engineID);
       if (time == null) {
         return SnmpConstants.SNMPv3_USM_UNKNOWN_ENGINEID;
       }
-      // RFC 3414 section 3.2.7 b) 1):
-      if ((entry.getEngineBoots() > time.getEngineBoots()) ||
-          ((entry.getEngineBoots() == time.getEngineBoots()) &&
-           (entry.getLatestReceivedTime() > time.getLatestReceivedTime()))) {
+      boolean inTimeWindow;
+      synchronized (time) {
+        // RFC 3414 section 3.2.7 b) 1):
+        if ((engineBoots > time.getEngineBoots()) ||
+            ((engineBoots == time.getEngineBoots()) &&
+             (engineTime > time.getLatestReceivedTime()))) {
           /* time ok, update values */
-        time.setEngineBoots(entry.getEngineBoots());
-        time.setLatestReceivedTime(entry.getLatestReceivedTime());
-        time.setTimeDiff(entry.getLatestReceivedTime() - now);
-      }
-      // RFC 3414 section 3.2.7 b) 2):
-      if ((entry.getEngineBoots() < time.getEngineBoots()) ||
-          ((entry.getEngineBoots() == time.getEngineBoots()) &&
-           (time.getLatestReceivedTime() > entry.getLatestReceivedTime() + 150)) ||
-          (time.getEngineBoots() == 2147483647)) {
+          time.setEngineBoots(engineBoots);
+          time.setLatestReceivedTime(engineTime);
+          time.setTimeDiff(engineTime - now);
+        }
+        // RFC 3414 section 3.2.7 b) 2):
+        inTimeWindow =
+            !((engineBoots < time.getEngineBoots()) ||
+              ((engineBoots == time.getEngineBoots()) &&
+               (time.getLatestReceivedTime() > engineTime + 150)) ||
+              (time.getEngineBoots() == 2147483647));
+      }
+      if (!inTimeWindow) {
         if (logger.isDebugEnabled()) {
           logger.debug(
               "CheckTime: received message outside time window (non authoritative)");
@@ -200,6 +339,149 @@ public class UsmTimeTable implements Serializable {
     }
   }
 
+  /**
+   * Gets the maximum number of remote engine time entries.
+   * @return
+   *    the maximum number of entries (default is {@link #DEFAULT_MAX_SIZE}).
+   * @since 2.4
+   */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Sets the maximum number of remote engine time entries. When the table is
+   * full, the least recently used entries are removed.
+   * @param maxSize
+   *    the maximum number of entries, must be greater than zero.
+   * @since 2.4
+   */
+  public void setMaxSize(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Maximum size must be greater than zero: "+
+                                         maxSize);
+    }
+    this.maxSize = maxSize;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        segment.authenticated.trim();
+        segment.discovered.trim();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of remote engine time entries, including the
+   * discovered engines whose messages have not been authenticated yet.
+   * @return
+   *    the number of entries in this table.
+   * @since 2.4
+   */
+  public int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        size += segment.authenticated.size() + segment.discovered.size();
+      }
+    }
+    return size;
+  }
+
   public void reset() {
   }
+
+  private Hashtable<OctetString, UsmTimeEntry> getEntries() {
+    Hashtable<OctetString, UsmTimeEntry> entries =
+        new Hashtable<OctetString, UsmTimeEntry>(Math.max(10, size()));
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        entries.putAll(segment.authenticated);
+      }
+    }
+    return entries;
+  }
+
+  private void writeObject(ObjectOutputStream oos) throws IOException {
+    ObjectOutputStream.PutField fields = oos.putFields();
+    fields.put("table", getEntries());
+    fields.put("lastLocalTimeChange", lastLocalTimeChange);
+    fields.put("localTime", localTime);
+    fields.put("maxSize", maxSize);
+    oos.writeFields();
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readObject(ObjectInputStream ois)
+      throws IOException, ClassNotFoundException
+  {
+    ObjectInputStream.GetField fields = ois.readFields();
+    lastLocalTimeChange = fields.get("lastLocalTimeChange", System.nanoTime());
+    localTime = (UsmTimeEntry) fields.get("localTime", null);
+    maxSize = fields.get("maxSize", DEFAULT_MAX_SIZE);
+    initSegments();
+    Map<OctetString, UsmTimeEntry> entries =
+        (Map<OctetString, UsmTimeEntry>) fields.get("table", null);
+    if (entries != null) {
+      for (UsmTimeEntry entry : entries.values()) {
+        addEntry(entry);
+      }
+    }
+  }
+
+  /**
+   * A <code>Segment</code> holds the time entries of a subset of the remote
+   * engines. The segment is also the lock for its entries.
+   */
+  private final class Segment {
+
+    /**
+     * The entries of engines whose messages have been authenticated or
+     * that have been added explicitly.
+     */
+    final EntryMap authenticated = new EntryMap();
+    /**
+     * The entries of engines that have been discovered by unauthenticated
+     * messages.
+     */
+    final EntryMap discovered = new EntryMap();
+
+  }
+
+  /**
+   * An <code>EntryMap</code> holds time entries in least recently used
+   * order and evicts the eldest entry when it holds more than its share of
+   * the maximum table size.
+   */
+  private final class EntryMap extends LinkedHashMap<OctetString, UsmTimeEntry> {
+
+    private static final long serialVersionUID = 7203815427345101231L;
+
+    EntryMap() {
+      super(16, 0.75f, true);
+    }
+
+    private int getMaxSegmentSize() {
+      return (maxSize + SEGMENTS - 1) / SEGMENTS;
+    }
+
+    void trim() {
+      int excess = size() - getMaxSegmentSize();
+      for (Iterator<OctetString> it = keySet().iterator();
+           (excess > 0) && it.hasNext(); excess--) {
+        it.next();
+        it.remove();
+      }
+    }
+
+    protected boolean removeEldestEntry(Map.Entry<OctetString, UsmTimeEntry> eldest) {
+      if (size() > getMaxSegmentSize()) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Removing least recently used time entry of engine "+
+                       eldest.getKey().toHexString());
+        }
+        return true;
+      }
+      return false;
+    }
+  }
 }
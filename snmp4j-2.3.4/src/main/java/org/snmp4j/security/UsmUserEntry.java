@@ -39,6 +39,7 @@ public class UsmUserEntry implements Serializable, Comparable {
   private UsmUser usmUser;
   private byte[] authenticationKey;
   private byte[] privacyKey;
+  private transient volatile PrecomputedHmacKey precomputedHmacKey;
 
   /**
    * Creates a new user entry with empty engine ID and empty user.
@@ -145,6 +146,32 @@ public class UsmUserEntry implements Serializable, Comparable {
   public byte[] getAuthenticationKey() {
     return authenticationKey;
   }
+
+  /**
+   * Gets the authentication key of this user precomputed for HMAC
+   * computation with the given authentication protocol. The key is
+   * precomputed on first use and cached until the authentication key
+   * changes.
+   *
+   * @param protocol
+   *    the authentication protocol of this user.
+   * @return
+   *    the precomputed key or <code>null</code> if the protocol does not
+   *    support precomputed keys or this user has no authentication key.
+   * @since 2.4
+   */
+  PrecomputedHmacKey getPrecomputedHmacKey(AuthenticationProtocol protocol) {
+    byte[] key = authenticationKey;
+    if ((key == null) || !(protocol instanceof AuthGeneric)) {
+      return null;
+    }
+    PrecomputedHmacKey hmacKey = precomputedHmacKey;
+    if ((hmacKey == null) || !hmacKey.isKeyOf((AuthGeneric)protocol, key)) {
+      hmacKey = ((AuthGeneric)protocol).precomputeKey(key);
+      precomputedHmacKey = hmacKey;
+    }
+    return hmacKey;
+  }
   public void setPrivacyKey(byte[] privacyKey) {
     this.privacyKey = privacyKey;
   }
@@ -19,8 +19,12 @@
   _##########################################################################*/
 package org.snmp4j.security;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 import org.snmp4j.smi.OctetString;
 import org.snmp4j.log.*;
@@ -28,9 +32,20 @@ import org.snmp4j.log.*;
 /**
  * The <code>UsmUserTable</code> class stores USM user
  * information as part of the Local Configuration Datastore (LCD).
+ * <p>
+ * Users are hashed by engine ID and security name, thus looking up a user
+ * does not depend on the size of the table. An additional index by security
+ * name and user name supports {@link #getUserEntries(OctetString)} and
+ * {@link #removeAllUsers(OctetString, OctetString)} without scanning all
+ * users. Lookups do not lock the table, whereas modifications are
+ * serialized. {@link #getUserEntries()} returns the users ordered by engine
+ * ID and security name.
+ * <p>
+ * The engine ID, user name, and security name of an entry must not be changed
+ * while the entry is contained in the table.
  *
  * @author Frank Fock
- * @version 1.1
+ * @version 2.4
  */
 public class UsmUserTable implements Serializable {
 
@@ -38,7 +53,13 @@ public class UsmUserTable implements Serializable {
 
   private static final LogAdapter logger = LogFactory.getLogger(UsmUserTable.class);
 
-  private Map<UsmUserKey, UsmUserEntry> table = new TreeMap<UsmUserKey, UsmUserEntry>();
+  private Map<UsmUserKey, UsmUserEntry> table =
+      new ConcurrentHashMap<UsmUserKey, UsmUserEntry>();
+  /**
+   * The keys of the users by security name and user name.
+   */
+  private transient ConcurrentHashMap<OctetString, ConcurrentSkipListSet<UsmUserKey>> nameIndex =
+      new ConcurrentHashMap<OctetString, ConcurrentSkipListSet<UsmUserKey>>();
 
   public UsmUserTable() {
   }
@@ -47,7 +68,13 @@ public class UsmUserTable implements Serializable {
     if (logger.isDebugEnabled()) {
       logger.debug("Adding user "+user.getUserName()+" = "+user.getUsmUser());
     }
-    return table.put(new UsmUserKey(user), user);
+    UsmUserKey key = new UsmUserKey(user);
+    UsmUserEntry oldEntry = table.put(key, user);
+    addToIndex(key, user);
+    if (oldEntry != null) {
+      removeUserNameFromIndex(key, oldEntry, user);
+    }
+    return oldEntry;
   }
 
   public synchronized void setUsers(Collection<UsmUserEntry> c) {
@@ -55,8 +82,14 @@ public class UsmUserTable implements Serializable {
       logger.debug("Setting users to "+c);
     }
     table.clear();
+    nameIndex.clear();
     for (UsmUserEntry user : c) {
-      table.put(new UsmUserKey(user), user);
+      UsmUserKey key = new UsmUserKey(user);
+      UsmUserEntry oldEntry = table.put(key, user);
+      addToIndex(key, user);
+      if (oldEntry != null) {
+        removeUserNameFromIndex(key, oldEntry, user);
+      }
     }
   }
 
@@ -68,11 +101,15 @@ public class UsmUserTable implements Serializable {
    *    a possibly empty <code>List</code> containing all user entries with
    *    the specified <code>userName</code>.
    */
-  public synchronized List<UsmUserEntry> getUserEntries(OctetString userName) {
-    LinkedList<UsmUserEntry> users = new LinkedList<UsmUserEntry>();
-    for (UsmUserEntry value : table.values()) {
-      if (userName.equals(value.getUserName())) {
-        users.add(value);
+  public List<UsmUserEntry> getUserEntries(OctetString userName) {
+    List<UsmUserEntry> users = new ArrayList<UsmUserEntry>();
+    Set<UsmUserKey> keys = nameIndex.get(userName);
+    if (keys != null) {
+      for (UsmUserKey key : keys) {
+        UsmUserEntry value = table.get(key);
+        if ((value != null) && userName.equals(value.getUserName())) {
+          users.add(value);
+        }
       }
     }
     if (logger.isDebugEnabled()) {
@@ -81,42 +118,48 @@ public class UsmUserTable implements Serializable {
     return users;
   }
 
-  public synchronized List<UsmUserEntry> getUserEntries() {
-    LinkedList<UsmUserEntry> l = new LinkedList<UsmUserEntry>();
-    for (UsmUserEntry usmUserEntry : table.values()) {
-      l.add(usmUserEntry);
-    }
-    return l;
+  /**
+   * Gets all user entries ordered by engine ID and security name.
+   * @return
+   *    a possibly empty <code>List</code> containing all user entries.
+   */
+  public List<UsmUserEntry> getUserEntries() {
+    return new ArrayList<UsmUserEntry>(
+        new TreeMap<UsmUserKey, UsmUserEntry>(table).values());
   }
 
   public synchronized List<UsmUserEntry> removeAllUsers(OctetString securityName, OctetString engineID) {
     if (engineID == null) {
       List<UsmUserEntry> deleted = new ArrayList<UsmUserEntry>();
-      for (Iterator<UsmUserEntry> usmUserEntryIterator = table.values().iterator(); usmUserEntryIterator.hasNext(); ) {
-        UsmUserEntry usmUserEntry = usmUserEntryIterator.next();
-        if (securityName.equals(usmUserEntry.getUsmUser().getSecurityName())) {
-          deleted.add(usmUserEntry);
-          usmUserEntryIterator.remove();
-          if (logger.isDebugEnabled()) {
-            logger.debug("Removed user "+usmUserEntry);
+      Set<UsmUserKey> keys = nameIndex.get(securityName);
+      if (keys != null) {
+        // the iterator of the index set tolerates the removals below
+        for (UsmUserKey key : keys) {
+          if (securityName.equals(key.securityName)) {
+            UsmUserEntry usmUserEntry = table.remove(key);
+            if (usmUserEntry != null) {
+              removeFromIndex(key, usmUserEntry);
+              deleted.add(usmUserEntry);
+              if (logger.isDebugEnabled()) {
+                logger.debug("Removed user "+usmUserEntry);
+              }
+            }
           }
         }
       }
       return deleted;
     }
-    UsmUserEntry entry =
-        table.remove(new UsmUserKey(engineID, securityName));
-    if (logger.isDebugEnabled()) {
-      logger.debug("Removed user with secName="+securityName+
-          " and engineID="+engineID);
-    }
+    UsmUserEntry entry = removeUser(engineID, securityName);
     return (entry != null) ? Collections.singletonList(entry) : Collections.<UsmUserEntry>emptyList();
   }
 
   public synchronized UsmUserEntry removeUser(OctetString engineID,
                                               OctetString securityName) {
-    UsmUserEntry entry =
-            table.remove(new UsmUserKey(engineID, securityName));
+    UsmUserKey key = new UsmUserKey(engineID, securityName);
+    UsmUserEntry entry = table.remove(key);
+    if (entry != null) {
+      removeFromIndex(key, entry);
+    }
     if (logger.isDebugEnabled()) {
       logger.debug("Removed user with secName="+securityName+
                    " and engineID="+engineID);
@@ -124,22 +167,92 @@ public class UsmUserTable implements Serializable {
     return entry;
   }
 
-  public synchronized UsmUserEntry getUser(OctetString engineID,
-                                           OctetString securityName) {
+  public UsmUserEntry getUser(OctetString engineID,
+                              OctetString securityName) {
     return table.get(new UsmUserKey(engineID, securityName));
   }
 
-  public synchronized UsmUserEntry getUser(OctetString securityName) {
+  public UsmUserEntry getUser(OctetString securityName) {
     return table.get(new UsmUserKey(new OctetString(), securityName));
   }
 
   public synchronized void clear() {
     table.clear();
+    nameIndex.clear();
     if (logger.isDebugEnabled()) {
       logger.debug("Cleared UsmUserTable");
     }
   }
 
+  /**
+   * Returns the number of users in this table.
+   * @return
+   *    the number of user entries.
+   * @since 2.4
+   */
+  public int size() {
+    return table.size();
+  }
+
+  private void addToIndex(UsmUserKey key, UsmUserEntry entry) {
+    addToIndex(key.securityName, key);
+    if ((entry.getUserName() != null) &&
+        !entry.getUserName().equals(key.securityName)) {
+      addToIndex(entry.getUserName(), key);
+    }
+  }
+
+  private void addToIndex(OctetString name, UsmUserKey key) {
+    ConcurrentSkipListSet<UsmUserKey> keys = nameIndex.get(name);
+    if (keys == null) {
+      keys = new ConcurrentSkipListSet<UsmUserKey>();
+      nameIndex.put(name, keys);
+    }
+    keys.add(key);
+  }
+
+  private void removeFromIndex(UsmUserKey key, UsmUserEntry entry) {
+    removeFromIndex(key.securityName, key);
+    if (entry.getUserName() != null) {
+      removeFromIndex(entry.getUserName(), key);
+    }
+  }
+
+  /**
+   * Removes the user name of a replaced entry from the index unless the
+   * replacing entry is indexed by the same name.
+   */
+  private void removeUserNameFromIndex(UsmUserKey key, UsmUserEntry oldEntry,
+                                       UsmUserEntry newEntry) {
+    OctetString oldName = oldEntry.getUserName();
+    if ((oldName != null) && !oldName.equals(key.securityName) &&
+        !oldName.equals(newEntry.getUserName())) {
+      removeFromIndex(oldName, key);
+    }
+  }
+
+  private void removeFromIndex(OctetString name, UsmUserKey key) {
+    ConcurrentSkipListSet<UsmUserKey> keys = nameIndex.get(name);
+    if ((keys != null) && keys.remove(key) && keys.isEmpty()) {
+      nameIndex.remove(name);
+    }
+  }
+
+  private void readObject(ObjectInputStream ois)
+      throws IOException, ClassNotFoundException
+  {
+    ois.defaultReadObject();
+    // tables serialized by previous versions contain a TreeMap
+    Map<UsmUserKey, UsmUserEntry> users = table;
+    table = new ConcurrentHashMap<UsmUserKey, UsmUserEntry>();
+    nameIndex = new ConcurrentHashMap<OctetString, ConcurrentSkipListSet<UsmUserKey>>();
+    for (UsmUserEntry user : users.values()) {
+      UsmUserKey key = new UsmUserKey(user);
+      table.put(key, user);
+      addToIndex(key, user);
+    }
+  }
+
   public static class UsmUserKey implements Comparable {
     OctetString engineID;
     OctetString securityName;
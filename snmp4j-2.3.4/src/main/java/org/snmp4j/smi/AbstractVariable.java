@@ -20,6 +20,8 @@
 package org.snmp4j.smi;
 
 import java.io.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 import org.snmp4j.log.*;
 import org.snmp4j.asn1.*;
@@ -40,9 +42,15 @@ import org.snmp4j.PDU;
  * {@link #SMISYNTAXES_PROPERTIES} before decoding a Variable for the first
  * time. The path of the property file must be accessible from the classpath
  * and it has to be specified relative to the <code>Variable</code> class.
+ * <p>
+ * The registered syntaxes are held in an array indexed by the BER type byte.
+ * The SNMP4J syntaxes are instantiated without reflection. Other classes
+ * from the properties file are instantiated through their cached public
+ * default constructor, unless a {@link VariableFactory} has been registered
+ * for their syntax with {@link #registerSyntax(int, VariableFactory)}.
  *
  * @author Jochen Katz & Frank Fock
- * @version 1.8
+ * @version 2.4
  * @since 1.8
  */
 public abstract class AbstractVariable implements Variable, Serializable {
@@ -72,7 +80,19 @@ public abstract class AbstractVariable implements Variable, Serializable {
       { "Opaque", (int) BER.OPAQUE}
   };
 
-  private static Hashtable<Integer, Class<? extends Variable>> registeredSyntaxes = null;
+  private static final int MAX_SYNTAX = 0xFF;
+
+  /**
+   * The factory for the built-in syntaxes that are supported by
+   * {@link #createVariable(int)}.
+   */
+  private static final VariableFactory DEFAULT_FACTORY = new VariableFactory() {
+    public Variable createVariable(int smiSyntax) {
+      return AbstractVariable.createVariable(smiSyntax);
+    }
+  };
+
+  private static volatile VariableFactory[] registeredSyntaxes = null;
 
   private static final LogAdapter logger =
       LogFactory.getLogger(AbstractVariable.class);
@@ -139,30 +159,21 @@ public abstract class AbstractVariable implements Variable, Serializable {
       throw new IOException(
           "InputStream for decoding a Variable must support marks");
     }
-    if (SNMP4JSettings.isExtensibilityEnabled() &&
-        (registeredSyntaxes == null)) {
-      registerSyntaxes();
-    }
     inputStream.mark(2);
     int type = inputStream.read();
     Variable variable;
     if (SNMP4JSettings.isExtensibilityEnabled()) {
-      Class<? extends Variable> c = registeredSyntaxes.get(new Integer(type));
-      if (c == null) {
+      VariableFactory factory =
+          (type < 0) ? null : getRegisteredSyntaxes()[type];
+      if (factory == null) {
         throw new IOException("Encountered unsupported variable syntax: " +
                               type);
       }
       try {
-        variable = c.newInstance();
+        variable = factory.createVariable(type);
       }
-      catch (IllegalAccessException aex) {
-        throw new IOException("Could not access variable syntax class for: " +
-                              c.getName());
-      }
-      catch (InstantiationException iex) {
-        throw new IOException(
-            "Could not instantiate variable syntax class for: " +
-            c.getName());
+      catch (RuntimeException rex) {
+        throw new IOException(rex.getMessage(), rex);
       }
     }
     else {
@@ -221,6 +232,80 @@ public abstract class AbstractVariable implements Variable, Serializable {
     }
   }
 
+  /**
+   * Encodes a variable with the supplied {@link BERReverseEncoder}. The SMI
+   * types of SNMP4J are encoded directly by the encoder, other variables
+   * (including subclasses of these types) are encoded by their
+   * {@link #encodeBER(OutputStream)} method.
+   *
+   * @param variable
+   *    the <code>Variable</code> to encode.
+   * @param encoder
+   *    the encoder that receives the BER encoding of <code>variable</code>.
+   * @throws IOException
+   *    if the variable cannot be encoded.
+   * @since 2.4
+   */
+  public static void encodeVariable(Variable variable,
+                                    BERReverseEncoder encoder)
+      throws IOException
+  {
+    Class<?> c = variable.getClass();
+    if (c == OctetString.class) {
+      ((OctetString)variable).encodeValue(encoder, BER.OCTETSTRING);
+    }
+    else if (c == Integer32.class) {
+      encoder.encodeInteger(BER.INTEGER, ((Integer32)variable).getValue());
+    }
+    else if (c == OID.class) {
+      encoder.encodeOID(BER.OID, ((OID)variable).getValue());
+    }
+    else if (c == ImmutableOID.class) {
+      byte[] encoding = ((ImmutableOID)variable).getBEREncoding();
+      if (encoding != null) {
+        encoder.write(encoding);
+      }
+      else {
+        encoder.encodeOID(BER.OID, ((OID)variable).getValue());
+      }
+    }
+    else if (c == ImmutableOctetString.class) {
+      byte[] encoding = ((ImmutableOctetString)variable).getBEREncoding();
+      if (encoding != null) {
+        encoder.write(encoding);
+      }
+      else {
+        encoder.encodeString(BER.OCTETSTRING,
+                             ((OctetString)variable).getValue());
+      }
+    }
+    else if (c == Counter32.class) {
+      encoder.encodeUnsignedInteger(BER.COUNTER32,
+                                    ((Counter32)variable).getValue());
+    }
+    else if ((c == Gauge32.class) || (c == UnsignedInteger32.class)) {
+      encoder.encodeUnsignedInteger(BER.GAUGE,
+                                    ((UnsignedInteger32)variable).getValue());
+    }
+    else if (c == TimeTicks.class) {
+      encoder.encodeUnsignedInteger(BER.TIMETICKS,
+                                    ((TimeTicks)variable).getValue());
+    }
+    else if (c == Counter64.class) {
+      encoder.encodeUnsignedInt64(BER.COUNTER64,
+                                  ((Counter64)variable).getValue());
+    }
+    else if (c == Null.class) {
+      encoder.encodeHeader((byte)variable.getSyntax(), 0);
+    }
+    else if (c == Opaque.class) {
+      ((Opaque)variable).encodeValue(encoder, BER.OPAQUE);
+    }
+    else {
+      encoder.encode(variable);
+    }
+  }
+
   /**
    * Creates a <code>Variable</code> from the supplied SMI syntax identifier.
    * Subclasses of <code>Variable</code> are registered using the properties
@@ -237,27 +322,71 @@ public abstract class AbstractVariable implements Variable, Serializable {
     if (!SNMP4JSettings.isExtensibilityEnabled()) {
       return createVariable(smiSyntax);
     }
-    if (registeredSyntaxes == null) {
-      registerSyntaxes();
-    }
-    Class<? extends Variable> c = registeredSyntaxes.get(new Integer(smiSyntax));
-    if (c == null) {
+    VariableFactory factory = ((smiSyntax < 0) || (smiSyntax > MAX_SYNTAX)) ?
+        null : getRegisteredSyntaxes()[smiSyntax];
+    if (factory == null) {
       throw new IllegalArgumentException("Unsupported variable syntax: " +
                                          smiSyntax);
     }
-    try {
-      Variable variable = c.newInstance();
-      return variable;
+    return factory.createVariable(smiSyntax);
+  }
+
+  /**
+   * Registers a factory for the given SMI syntax which is then used by
+   * {@link #createFromBER} and {@link #createFromSyntax(int)} if
+   * {@link SNMP4JSettings#isExtensibilityEnabled()} is <code>true</code>.
+   * A registration replaces the syntax class configured by the
+   * <code>smisyntaxes.properties</code> for that syntax.
+   *
+   * @param smiSyntax
+   *    a BER type between 0 and 255.
+   * @param factory
+   *    the <code>VariableFactory</code> creating variables of
+   *    <code>smiSyntax</code> or <code>null</code> to remove the syntax.
+   * @since 2.4
+   */
+  public static synchronized void registerSyntax(int smiSyntax,
+                                                 VariableFactory factory) {
+    if ((smiSyntax < 0) || (smiSyntax > MAX_SYNTAX)) {
+      throw new IllegalArgumentException("Invalid SMI syntax: "+smiSyntax);
     }
-    catch (IllegalAccessException aex) {
-      throw new RuntimeException("Could not access variable syntax class for: " +
-                                 c.getName());
+    VariableFactory[] syntaxes = getRegisteredSyntaxes().clone();
+    syntaxes[smiSyntax] = factory;
+    registeredSyntaxes = syntaxes;
+  }
+
+  private static VariableFactory[] getRegisteredSyntaxes() {
+    VariableFactory[] syntaxes = registeredSyntaxes;
+    if (syntaxes == null) {
+      syntaxes = registerSyntaxes();
     }
-    catch (InstantiationException iex) {
-      throw new RuntimeException(
-          "Could not instantiate variable syntax class for: " +
-          c.getName());
+    return syntaxes;
+  }
+
+  /**
+   * Creates the factory for a syntax class from the properties file.
+   * @param smiSyntax
+   *    the syntax the class is registered for.
+   * @param c
+   *    a <code>Variable</code> class with a public default constructor.
+   * @return
+   *    the factory for <code>c</code>.
+   * @throws NoSuchMethodException
+   *    if <code>c</code> has no public default constructor.
+   */
+  private static VariableFactory createFactory(int smiSyntax,
+                                               Class<? extends Variable> c)
+      throws NoSuchMethodException
+  {
+    try {
+      if (createVariable(smiSyntax).getClass() == c) {
+        return DEFAULT_FACTORY;
+      }
     }
+    catch (IllegalArgumentException iaex) {
+      // not a built-in syntax
+    }
+    return new ConstructorVariableFactory(c.getConstructor());
   }
 
   /**
@@ -265,9 +394,14 @@ public abstract class AbstractVariable implements Variable, Serializable {
    * syntaxes are used by the {@link #createFromBER} method to type-safe
    * instantiate sub-classes from <code>Variable</code> from an BER encoded
    * <code>InputStream</code>.
+   * @return
+   *    the registered syntax factories indexed by BER type.
    */
   @SuppressWarnings("unchecked")
-  private synchronized static void registerSyntaxes() {
+  private synchronized static VariableFactory[] registerSyntaxes() {
+    if (registeredSyntaxes != null) {
+      return registeredSyntaxes;
+    }
     String syntaxes = System.getProperty(SMISYNTAXES_PROPERTIES,
                                          SMISYNTAXES_PROPERTIES_DEFAULT);
     InputStream is = Variable.class.getResourceAsStream(syntaxes);
@@ -278,23 +412,39 @@ public abstract class AbstractVariable implements Variable, Serializable {
     Properties props = new Properties();
     try {
       props.load(is);
-      Hashtable<Integer, Class<? extends Variable>> regSyntaxes = new Hashtable<Integer, Class<? extends Variable>>(props.size());
+      VariableFactory[] regSyntaxes = new VariableFactory[MAX_SYNTAX+1];
       for (Enumeration en = props.propertyNames(); en.hasMoreElements(); ) {
         String id = en.nextElement().toString();
         String className = props.getProperty(id);
         try {
-          Class<? extends Variable> c = (Class<? extends Variable>) Class.forName(className);
-          regSyntaxes.put(new Integer(id), c);
+          int syntax = Integer.parseInt(id);
+          if ((syntax < 0) || (syntax > MAX_SYNTAX)) {
+            logger.error("Invalid SMI syntax '"+id+"' for "+className);
+            continue;
+          }
+          Class<? extends Variable> c =
+              (Class<? extends Variable>) Class.forName(className);
+          if (!Variable.class.isAssignableFrom(c)) {
+            throw new ClassCastException(className);
+          }
+          regSyntaxes[syntax] = createFactory(syntax, c);
+        }
+        catch (NumberFormatException nfex) {
+          logger.error(nfex);
         }
         catch (ClassNotFoundException cnfe) {
           logger.error(cnfe);
         }
+        catch (NoSuchMethodException nsmex) {
+          logger.error(nsmex);
+        }
         catch (ClassCastException ccex) {
           logger.error(ccex);
         }
       }
       // atomic syntax registration
       registeredSyntaxes = regSyntaxes;
+      return regSyntaxes;
     }
     catch (IOException iox) {
       String txt = "Could not read '" + syntaxes + "': " +
@@ -504,4 +654,38 @@ public abstract class AbstractVariable implements Variable, Serializable {
     return (a == null) ?  (b == null) : a.equals(b);
   }
 
+
+  /**
+   * Creates variables of a syntax class that is not built into SNMP4J by
+   * its cached public default constructor.
+   */
+  private static final class ConstructorVariableFactory
+      implements VariableFactory
+  {
+    private final Constructor<? extends Variable> constructor;
+
+    ConstructorVariableFactory(Constructor<? extends Variable> constructor) {
+      this.constructor = constructor;
+    }
+
+    public Variable createVariable(int smiSyntax) {
+      try {
+        return constructor.newInstance();
+      }
+      catch (IllegalAccessException aex) {
+        throw new RuntimeException("Could not access variable syntax class for: " +
+                                   constructor.getDeclaringClass().getName());
+      }
+      catch (InstantiationException iex) {
+        throw new RuntimeException(
+            "Could not instantiate variable syntax class for: " +
+            constructor.getDeclaringClass().getName());
+      }
+      catch (InvocationTargetException itex) {
+        throw new RuntimeException(
+            "Could not instantiate variable syntax class for: " +
+            constructor.getDeclaringClass().getName(), itex.getTargetException());
+      }
+    }
+  }
 }
@@ -0,0 +1,188 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - ImmutableOID.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.smi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.snmp4j.asn1.BER;
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.asn1.BEROutputStream;
+
+/**
+ * An <code>ImmutableOID</code> is an {@link OID} whose value cannot be
+ * changed after construction. It computes its BER encoded length once and
+ * optionally caches its complete BER encoding, so that encoding the OID
+ * of a variable binding becomes a single array copy. Immutable OIDs are
+ * intended for OIDs that are encoded many times, like the OIDs of
+ * registered managed objects.
+ * <p>
+ * All methods that would modify the OID throw an
+ * {@link UnsupportedOperationException}. The array returned by
+ * {@link #getValue()} must not be modified. {@link #clone()} returns a
+ * mutable {@link OID} with the same value. A {@link VariableBinding} does not
+ * clone an immutable OID, thus the OID of such a variable binding has to
+ * be replaced instead of being modified in place.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class ImmutableOID extends OID {
+
+  private static final long serialVersionUID = -2403597458126484549L;
+
+  private final int berLength;
+  private final byte[] berEncoding;
+
+  /**
+   * Creates an immutable copy of the given OID that caches its BER length.
+   * @param oid
+   *    an OID.
+   */
+  public ImmutableOID(OID oid) {
+    this(oid.getValue(), false);
+  }
+
+  /**
+   * Creates an immutable OID from a dotted string that caches its BER
+   * length.
+   * @param oid
+   *    a dotted OID string as accepted by {@link OID#OID(String)}.
+   */
+  public ImmutableOID(String oid) {
+    this(new OID(oid).getValue(), false);
+  }
+
+  /**
+   * Creates an immutable copy of the given OID.
+   * @param oid
+   *    an OID.
+   * @param cacheBEREncoding
+   *    if <code>true</code>, the BER encoding of the OID is computed and
+   *    cached by this constructor in addition to its BER length.
+   */
+  public ImmutableOID(OID oid, boolean cacheBEREncoding) {
+    this(oid.getValue(), cacheBEREncoding);
+  }
+
+  /**
+   * Creates an immutable OID from an array of sub-identifiers.
+   * @param rawOID
+   *    an array of sub-identifiers which is copied.
+   * @param cacheBEREncoding
+   *    if <code>true</code>, the BER encoding of the OID is computed and
+   *    cached by this constructor in addition to its BER length.
+   */
+  public ImmutableOID(int[] rawOID, boolean cacheBEREncoding) {
+    super(rawOID);
+    this.berLength = super.getBERLength();
+    this.berEncoding = (cacheBEREncoding) ? encode(this, berLength) : null;
+  }
+
+  static byte[] encode(AbstractVariable variable, int berLength) {
+    BEROutputStream os = new BEROutputStream(
+        java.nio.ByteBuffer.allocate(berLength));
+    try {
+      variable.encodeBER(os);
+    }
+    catch (IOException iox) {
+      throw new IllegalArgumentException(iox.getMessage());
+    }
+    return os.getBuffer().array();
+  }
+
+  /**
+   * Checks whether this OID caches its BER encoding.
+   * @return
+   *    <code>true</code> if {@link #encodeBER(OutputStream)} writes a cached
+   *    encoding.
+   */
+  public boolean isBEREncodingCached() {
+    return (berEncoding != null);
+  }
+
+  /**
+   * Gets the cached BER encoding.
+   * @return
+   *    the cached encoding which must not be modified or <code>null</code>
+   *    if the encoding is not cached.
+   */
+  byte[] getBEREncoding() {
+    return berEncoding;
+  }
+
+  public int getBERLength() {
+    return berLength;
+  }
+
+  public void encodeBER(OutputStream outputStream) throws IOException {
+    if (berEncoding != null) {
+      outputStream.write(berEncoding);
+    }
+    else {
+      BER.encodeOID(outputStream, BER.OID, getValue());
+    }
+  }
+
+  public void decodeBER(BERInputStream inputStream) throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
+  public void setValue(String value) {
+    throw new UnsupportedOperationException();
+  }
+
+  public void setValue(int[] value) {
+    throw new UnsupportedOperationException();
+  }
+
+  public void set(int index, int value) {
+    throw new UnsupportedOperationException();
+  }
+
+  public OID append(String oid) {
+    throw new UnsupportedOperationException();
+  }
+
+  public OID append(OID oid) {
+    throw new UnsupportedOperationException();
+  }
+
+  public OID append(int subID) {
+    throw new UnsupportedOperationException();
+  }
+
+  public OID appendUnsigned(long subID) {
+    throw new UnsupportedOperationException();
+  }
+
+  public int removeLast() {
+    throw new UnsupportedOperationException();
+  }
+
+  public void trim(int n) {
+    throw new UnsupportedOperationException();
+  }
+
+  public void fromSubIndex(OID subIndex, boolean impliedLength) {
+    throw new UnsupportedOperationException();
+  }
+}
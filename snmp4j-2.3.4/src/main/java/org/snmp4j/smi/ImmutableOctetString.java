@@ -0,0 +1,161 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - ImmutableOctetString.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.smi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.snmp4j.asn1.BER;
+import org.snmp4j.asn1.BERInputStream;
+
+/**
+ * An <code>ImmutableOctetString</code> is an {@link OctetString} whose value
+ * cannot be changed after construction. It computes its BER encoded length
+ * once and optionally caches its complete BER encoding, so that encoding
+ * it becomes a single array copy. Immutable octet strings are intended for
+ * static values that are encoded many times, like the values of constant
+ * scalars.
+ * <p>
+ * All methods that would modify the octet string throw an
+ * {@link UnsupportedOperationException}. The array returned by
+ * {@link #getValue()} must not be modified. {@link #clone()} returns a
+ * mutable {@link OctetString} with the same value. A {@link VariableBinding}
+ * does not clone an immutable octet string, so that its cached encoding is
+ * used when the variable binding is encoded.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class ImmutableOctetString extends OctetString {
+
+  private static final long serialVersionUID = 6181829379539164457L;
+
+  private final int berLength;
+  private final byte[] berEncoding;
+
+  /**
+   * Creates an immutable copy of the given octet string that caches its BER
+   * length.
+   * @param octetString
+   *    an octet string.
+   */
+  public ImmutableOctetString(OctetString octetString) {
+    this(octetString.getValue(), false);
+  }
+
+  /**
+   * Creates an immutable octet string from a Java string that caches its
+   * BER length.
+   * @param stringValue
+   *    a Java string.
+   */
+  public ImmutableOctetString(String stringValue) {
+    this(stringValue.getBytes(), false);
+  }
+
+  /**
+   * Creates an immutable octet string from a byte array.
+   * @param rawValue
+   *    an array of bytes which is copied.
+   * @param cacheBEREncoding
+   *    if <code>true</code>, the BER encoding of the octet string is computed
+   *    and cached by this constructor in addition to its BER length.
+   */
+  public ImmutableOctetString(byte[] rawValue, boolean cacheBEREncoding) {
+    super(rawValue);
+    this.berLength = super.getBERLength();
+    this.berEncoding =
+        (cacheBEREncoding) ? ImmutableOID.encode(this, berLength) : null;
+  }
+
+  /**
+   * Checks whether this octet string caches its BER encoding.
+   * @return
+   *    <code>true</code> if {@link #encodeBER(OutputStream)} writes a cached
+   *    encoding.
+   */
+  public boolean isBEREncodingCached() {
+    return (berEncoding != null);
+  }
+
+  /**
+   * Gets the cached BER encoding.
+   * @return
+   *    the cached encoding which must not be modified or <code>null</code>
+   *    if the encoding is not cached.
+   */
+  byte[] getBEREncoding() {
+    return berEncoding;
+  }
+
+  public int getBERLength() {
+    return berLength;
+  }
+
+  public void encodeBER(OutputStream outputStream) throws IOException {
+    if (berEncoding != null) {
+      outputStream.write(berEncoding);
+    }
+    else {
+      BER.encodeString(outputStream, BER.OCTETSTRING, getValue());
+    }
+  }
+
+  public void decodeBER(BERInputStream inputStream) throws IOException {
+    throw new UnsupportedOperationException();
+  }
+
+  public void append(byte b) {
+    throw new UnsupportedOperationException();
+  }
+
+  public void append(byte[] bytes) {
+    throw new UnsupportedOperationException();
+  }
+
+  public void append(OctetString octetString) {
+    throw new UnsupportedOperationException();
+  }
+
+  public void append(String string) {
+    throw new UnsupportedOperationException();
+  }
+
+  public void clear() {
+    throw new UnsupportedOperationException();
+  }
+
+  public void set(int index, byte b) {
+    throw new UnsupportedOperationException();
+  }
+
+  public void setValue(String value) {
+    throw new UnsupportedOperationException();
+  }
+
+  public void setValue(byte[] value) {
+    throw new UnsupportedOperationException();
+  }
+
+  public void fromSubIndex(OID subIndex, boolean impliedLength) {
+    throw new UnsupportedOperationException();
+  }
+}
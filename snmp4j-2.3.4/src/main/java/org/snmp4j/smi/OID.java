@@ -318,7 +318,7 @@ public class OID extends AbstractVariable
    * @throws IllegalArgumentException
    *    if value == null.
    */
-  public final void setValue(int[] value) {
+  public void setValue(int[] value) {
     if (value == null) {
       throw new IllegalArgumentException("OID value must not be set to null");
     }
@@ -374,7 +374,7 @@ public class OID extends AbstractVariable
    * @throws ArrayIndexOutOfBoundsException
    *    if the index is out of range (index < 0 || index >= size()).
    */
-  public final void set(int index, int value) {
+  public void set(int index, int value) {
     this.value[index] = value;
   }
 
@@ -385,7 +385,7 @@ public class OID extends AbstractVariable
    * @return
    *    a pointer to this OID instance (useful for chaining).
    */
-  public final OID append(String oid) {
+  public OID append(String oid) {
     OID suffix = new OID(oid);
     return append(suffix);
   }
@@ -397,7 +397,7 @@ public class OID extends AbstractVariable
    * @return
    *    a pointer to this OID instance (useful for chaining).
    */
-  public final OID append(OID oid) {
+  public OID append(OID oid) {
     int[] newValue = new int[value.length+oid.value.length];
     System.arraycopy(value, 0, newValue, 0, value.length);
     System.arraycopy(oid.value, 0, newValue, value.length, oid.value.length);
@@ -412,7 +412,7 @@ public class OID extends AbstractVariable
    * @return
    *    a pointer to this OID instance (useful for chaining).
    */
-  public final OID append(int subID) {
+  public OID append(int subID) {
     int[] newValue = new int[value.length+1];
     System.arraycopy(value, 0, newValue, 0, value.length);
     newValue[value.length] = subID;
@@ -428,7 +428,7 @@ public class OID extends AbstractVariable
    *    a pointer to this OID instance (useful for chaining).
    * @since 1.2
    */
-  public final OID appendUnsigned(long subID) {
+  public OID appendUnsigned(long subID) {
     return append((int)(subID & 0xFFFFFFFFL));
   }
 
@@ -639,7 +639,7 @@ public class OID extends AbstractVariable
     return subIndex;
   }
 
-  public final void fromSubIndex(OID subIndex, boolean impliedLength) {
+  public void fromSubIndex(OID subIndex, boolean impliedLength) {
     int offset = 1;
     if (impliedLength) {
       offset = 0;
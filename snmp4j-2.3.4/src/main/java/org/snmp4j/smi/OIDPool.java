@@ -0,0 +1,127 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - OIDPool.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.smi;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An <code>OIDPool</code> interns object identifiers as {@link PooledOID}
+ * instances which share their common prefixes. Interning an OID returns the
+ * same <code>PooledOID</code> instance for equal OIDs, so that pooled OIDs
+ * can be compared by identity and a large number of OIDs with long common
+ * prefixes, like the cell OIDs of a table or the results of a walk, can be
+ * held with a small memory footprint.
+ * <p>
+ * A pool is thread safe. Interned OIDs are never removed from a pool, they
+ * are released with the pool when neither the pool nor any of its OIDs are
+ * referenced anymore. Thus, a pool should be bound to the life-cycle of the
+ * data structure that uses its OIDs.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class OIDPool {
+
+  private final PooledOID root;
+  private final AtomicInteger size = new AtomicInteger();
+
+  /**
+   * Creates an empty OID pool.
+   */
+  public OIDPool() {
+    root = new PooledOID(this);
+  }
+
+  /**
+   * Gets the zero length OID of this pool which is the root of all OIDs of
+   * this pool.
+   * @return
+   *    the empty pooled OID.
+   */
+  public PooledOID getRoot() {
+    return root;
+  }
+
+  /**
+   * Interns the given OID.
+   * @param oid
+   *    an OID.
+   * @return
+   *    the unique <code>PooledOID</code> of this pool with the
+   *    sub-identifiers of <code>oid</code>.
+   */
+  public PooledOID intern(OID oid) {
+    return intern(oid.getValue(), 0, oid.size());
+  }
+
+  /**
+   * Interns the OID with the given sub-identifiers.
+   * @param value
+   *    an array of sub-identifiers.
+   * @param offset
+   *    the index of the first sub-identifier in <code>value</code>.
+   * @param length
+   *    the number of sub-identifiers.
+   * @return
+   *    the unique <code>PooledOID</code> of this pool with the given
+   *    sub-identifiers.
+   */
+  public PooledOID intern(int[] value, int offset, int length) {
+    PooledOID oid = root;
+    for (int i=offset; i<offset+length; i++) {
+      oid = oid.getOrCreateChild(value[i]);
+    }
+    return oid;
+  }
+
+  /**
+   * Gets the pooled OID with the sub-identifiers of the given OID if it has
+   * been interned before. In contrast to {@link #intern(OID)}, this method
+   * never adds an OID to the pool.
+   * @param oid
+   *    an OID.
+   * @return
+   *    the <code>PooledOID</code> equal to <code>oid</code> or
+   *    <code>null</code> if such an OID has not been interned by this pool.
+   */
+  public PooledOID get(OID oid) {
+    int[] value = oid.getValue();
+    PooledOID pooled = root;
+    for (int i=0; (pooled != null) && (i<value.length); i++) {
+      pooled = pooled.getChild(value[i]);
+    }
+    return pooled;
+  }
+
+  /**
+   * Returns the number of OIDs in this pool. The count includes all prefixes
+   * of the interned OIDs, but not the root OID.
+   * @return
+   *    the number of <code>PooledOID</code> instances created by this pool.
+   */
+  public int size() {
+    return size.get();
+  }
+
+  void created() {
+    size.incrementAndGet();
+  }
+}
@@ -20,9 +20,12 @@
 package org.snmp4j.smi;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import org.snmp4j.SNMP4JSettings;
 import org.snmp4j.asn1.BER;
 import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.asn1.BERReverseEncoder;
 
 /**
  * The <code>OctetString</code> class represents the SMI type OCTET STRING.
@@ -40,6 +43,17 @@ public class OctetString extends AbstractVariable
 
   private byte[] value = new byte[0];
 
+  /**
+   * The shared buffer referenced by this octet string if it has been decoded
+   * as a view. The value is copied from the buffer into <code>value</code>
+   * when it is needed the first time, see {@link #value()}. The field is
+   * volatile and cleared only after <code>value</code> has been assigned, so
+   * a thread reading <code>null</code> also sees the copied value.
+   */
+  private transient volatile byte[] viewBuffer;
+  private transient int viewOffset;
+  private transient int viewLength;
+
   /**
    * Creates a zero length octet string.
    */
@@ -97,9 +111,9 @@ public class OctetString extends AbstractVariable
    *    a byte value.
    */
   public void append(byte b) {
-    byte[] newValue = new byte[value.length+1];
-    System.arraycopy(value, 0, newValue, 0, value.length);
-    newValue[value.length] = b;
+    byte[] newValue = new byte[value().length+1];
+    System.arraycopy(value(), 0, newValue, 0, value().length);
+    newValue[value().length] = b;
     value = newValue;
   }
 
@@ -109,9 +123,9 @@ public class OctetString extends AbstractVariable
    *    an array of bytes.
    */
   public void append(byte[] bytes) {
-    byte[] newValue = new byte[value.length + bytes.length];
-    System.arraycopy(value, 0, newValue, 0, value.length);
-    System.arraycopy(bytes, 0, newValue, value.length, bytes.length);
+    byte[] newValue = new byte[value().length + bytes.length];
+    System.arraycopy(value(), 0, newValue, 0, value().length);
+    System.arraycopy(bytes, 0, newValue, value().length, bytes.length);
     value = newValue;
   }
 
@@ -139,24 +153,162 @@ public class OctetString extends AbstractVariable
    */
   public void clear() {
     value = new byte[0];
+    viewBuffer = null;
   }
 
   public void encodeBER(OutputStream outputStream) throws java.io.IOException {
-    BER.encodeString(outputStream, BER.OCTETSTRING, getValue());
+    encodeBER(outputStream, BER.OCTETSTRING);
+  }
+
+  /**
+   * Encodes this octet string with the given BER type. The value of a buffer
+   * view is encoded without copying it.
+   * @param outputStream
+   *    an <code>OutputStream</code>.
+   * @param berType
+   *    the BER type to encode.
+   * @throws IOException
+   *    if an error occurs while writing to the stream.
+   * @since 2.4
+   */
+  protected final void encodeBER(OutputStream outputStream, byte berType)
+      throws IOException
+  {
+    byte[] view = viewBuffer;
+    if (view != null) {
+      BER.encodeHeader(outputStream, berType, viewLength);
+      outputStream.write(view, viewOffset, viewLength);
+    }
+    else {
+      BER.encodeString(outputStream, berType, getValue());
+    }
   }
 
   public void decodeBER(BERInputStream inputStream) throws java.io.IOException {
+    decodeBER(inputStream, BER.OCTETSTRING);
+  }
+
+  /**
+   * Decodes a string value of the given BER type. If the input stream's
+   * buffer is {@link BERInputStream#isBufferShareable() shareable} and the
+   * value is at least {@link SNMP4JSettings#getOctetStringViewMinLength()}
+   * bytes long, this octet string becomes a view on the buffer, otherwise
+   * the value is copied.
+   *
+   * @param inputStream
+   *    a <code>BERInputStream</code> positioned at the string to decode.
+   * @param berType
+   *    the expected BER type of the string.
+   * @throws IOException
+   *    if the string cannot be decoded or its type does not match
+   *    <code>berType</code>.
+   * @since 2.4
+   */
+  protected final void decodeBER(BERInputStream inputStream, byte berType)
+      throws IOException
+  {
     BER.MutableByte type = new BER.MutableByte();
-    byte[] v = BER.decodeString(inputStream, type);
-    if (type.getValue() != BER.OCTETSTRING) {
+    int minViewLength = SNMP4JSettings.getOctetStringViewMinLength();
+    ByteBuffer buffer = inputStream.getBuffer();
+    if ((minViewLength <= 0) || !inputStream.isBufferShareable() ||
+        !buffer.hasArray()) {
+      byte[] v = BER.decodeString(inputStream, type);
+      checkType(type, berType);
+      setValue(v);
+      return;
+    }
+    int length = BER.decodeStringHeader(inputStream, type);
+    checkType(type, berType);
+    if (length > buffer.remaining()) {
+      throw new IOException("Wrong string length "+length+" > "+
+                            buffer.remaining());
+    }
+    if (length >= minViewLength) {
+      value = null;
+      viewOffset = buffer.arrayOffset() + buffer.position();
+      viewLength = length;
+      viewBuffer = buffer.array();
+      buffer.position(buffer.position() + length);
+    }
+    else {
+      byte[] v = new byte[length];
+      buffer.get(v);
+      setValue(v);
+    }
+  }
+
+  private static void checkType(BER.MutableByte type, byte berType)
+      throws IOException
+  {
+    if (type.getValue() != berType) {
       throw new IOException("Wrong type encountered when decoding OctetString: "+
                             type.getValue());
     }
-    setValue(v);
+  }
+
+  /**
+   * Checks whether this octet string references the buffer it has been
+   * decoded from. Such a view is replaced by a copy of its value when the
+   * value is accessed or modified the first time. Encoding the view, as
+   * well as {@link #length()} and {@link #clone()}, do not copy the value.
+   *
+   * @return
+   *    <code>true</code> if the value has not been copied from the decoded
+   *    buffer yet.
+   * @see SNMP4JSettings#setOctetStringViewMinLength(int)
+   * @since 2.4
+   */
+  public boolean isBufferView() {
+    return (viewBuffer != null);
+  }
+
+  /**
+   * Gets the value of this octet string and copies it from the referenced
+   * buffer if this octet string is still a buffer view. Concurrent calls
+   * copy the value only once.
+   * @return
+   *    the value array.
+   */
+  private byte[] value() {
+    if (viewBuffer != null) {
+      synchronized (this) {
+        byte[] view = viewBuffer;
+        if (view != null) {
+          value = Arrays.copyOfRange(view, viewOffset, viewOffset+viewLength);
+          viewBuffer = null;
+        }
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Encodes this octet string with the given BER type without copying the
+   * value of a buffer view.
+   * @param encoder
+   *    a <code>BERReverseEncoder</code>.
+   * @param berType
+   *    the BER type to encode.
+   */
+  void encodeValue(BERReverseEncoder encoder, byte berType) {
+    byte[] view = viewBuffer;
+    if (view != null) {
+      encoder.write(view, viewOffset, viewLength);
+      encoder.encodeHeader(berType, viewLength);
+    }
+    else {
+      encoder.encodeString(berType, value);
+    }
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    value();
+    out.defaultWriteObject();
   }
 
   public int getBERLength() {
-    return value.length + BER.getBERLengthOfLength(value.length) + 1;
+    int length = length();
+    return length + BER.getBERLengthOfLength(length) + 1;
   }
 
   public int getSyntax() {
@@ -173,7 +325,7 @@ public class OctetString extends AbstractVariable
    *    if <code>index</code> &lt; 0 or &gt; {@link #length()}.
    */
   public final byte get(int index) {
-    return value[index];
+    return value()[index];
   }
 
   /**
@@ -184,11 +336,12 @@ public class OctetString extends AbstractVariable
    *    the byte value to set.
    * @since v1.2
    */
-  public final void set(int index, byte b) {
-    value[index] = b;
+  public void set(int index, byte b) {
+    value()[index] = b;
   }
 
   public int hashCode() {
+    byte[] value = value();
     int hash = 0;
     for (int i=0; i<value.length; i++) {
       hash += value[i]*31^((value.length-1)-i);
@@ -199,7 +352,7 @@ public class OctetString extends AbstractVariable
   public boolean equals(Object o) {
     if (o instanceof OctetString) {
       OctetString other = (OctetString)o;
-      return Arrays.equals(value, other.value);
+      return Arrays.equals(value(), other.value());
     }
     return false;
   }
@@ -213,16 +366,18 @@ public class OctetString extends AbstractVariable
    * @since 2.0
    */
   public boolean equalsValue(byte[] v) {
-    return Arrays.equals(value, v);
+    return Arrays.equals(value(), v);
   }
 
   public int compareTo(Variable o) {
     if (o instanceof OctetString) {
       OctetString other = (OctetString)o;
-      int maxlen = Math.min(value.length, other.value.length);
+      byte[] value = value();
+      byte[] otherValue = other.value();
+      int maxlen = Math.min(value.length, otherValue.length);
       for (int i=0; i<maxlen; i++) {
-        if (value[i] != other.value[i]) {
-          if ((value[i] & 0xFF) < (other.value[i] & 0xFF)) {
+        if (value[i] != otherValue[i]) {
+          if ((value[i] & 0xFF) < (otherValue[i] & 0xFF)) {
             return -1;
           }
           else {
@@ -230,7 +385,7 @@ public class OctetString extends AbstractVariable
           }
         }
       }
-      return (value.length - other.value.length);
+      return (value.length - otherValue.length);
     }
     throw new ClassCastException(o.getClass().getName());
   }
@@ -253,7 +408,7 @@ public class OctetString extends AbstractVariable
       throw new IndexOutOfBoundsException();
     }
     byte[] substring = new byte[endIndex - beginIndex];
-    System.arraycopy(value, beginIndex, substring, 0, substring.length);
+    System.arraycopy(value(), beginIndex, substring, 0, substring.length);
     return new OctetString(substring);
   }
 
@@ -270,6 +425,7 @@ public class OctetString extends AbstractVariable
     if ((prefix == null) || prefix.length() > length()) {
       return false;
     }
+    byte[] value = value();
     for (int i=0; i<prefix.length(); i++) {
       if (prefix.get(i) != value[i]) {
         return false;
@@ -289,7 +445,7 @@ public class OctetString extends AbstractVariable
    *    <code>'&#92;u001C'</code>-<code>'&#92;u001F'</code>.
    */
   public boolean isPrintable() {
-    for (byte aValue : value) {
+    for (byte aValue : value()) {
       char c = (char) aValue;
       if ((Character.isISOControl(c) || ((c & 0xFF) >= 0x80)) &&
           ((!Character.isWhitespace(c)) ||
@@ -302,7 +458,7 @@ public class OctetString extends AbstractVariable
 
   public String toString() {
     if (isPrintable()) {
-      return new String(value);
+      return new String(value());
     }
     return toHexString();
   }
@@ -378,6 +534,7 @@ public class OctetString extends AbstractVariable
 
   public String toString(char separator, int radix) {
     int digits = (int)(Math.round((float)Math.log(256)/Math.log(radix)));
+    byte[] value = value();
     StringBuffer buf = new StringBuffer(value.length*(digits+1));
     for (int i=0; i<value.length; i++) {
       if (i > 0) {
@@ -406,8 +563,8 @@ public class OctetString extends AbstractVariable
    */
   public String toString(int radix) {
     int digits = (int)(Math.round((float)Math.log(256)/Math.log(radix)));
-    StringBuffer buf = new StringBuffer(value.length*(digits+1));
-    for (byte aValue : value) {
+    StringBuffer buf = new StringBuffer(value().length*(digits+1));
+    for (byte aValue : value()) {
       int v = (aValue & 0xFF);
       String val = Integer.toString(v, radix);
       for (int j = 0; j < digits - val.length(); j++) {
@@ -429,8 +586,8 @@ public class OctetString extends AbstractVariable
    * @since 1.6
    */
   public String toASCII(char placeholder) {
-    StringBuffer buf = new StringBuffer(value.length);
-    for (byte aValue : value) {
+    StringBuffer buf = new StringBuffer(value().length);
+    for (byte aValue : value()) {
       if ((Character.isISOControl((char) aValue)) ||
           ((aValue & 0xFF) >= 0x80)) {
         buf.append(placeholder);
@@ -451,10 +608,11 @@ public class OctetString extends AbstractVariable
           "OctetString must not be assigned a null value");
     }
     this.value = value;
+    this.viewBuffer = null;
   }
 
   public byte[] getValue() {
-    return value;
+    return value();
   }
 
   /**
@@ -463,10 +621,20 @@ public class OctetString extends AbstractVariable
    *    an integer >= 0.
    */
   public final int length() {
-    return value.length;
+    byte[] view = viewBuffer;
+    return (view != null) ? viewLength : value.length;
   }
 
   public Object clone() {
+    byte[] view = viewBuffer;
+    if (view != null) {
+      OctetString clone = new OctetString();
+      clone.value = null;
+      clone.viewOffset = viewOffset;
+      clone.viewLength = viewLength;
+      clone.viewBuffer = view;
+      return clone;
+    }
     return new OctetString(value);
   }
 
@@ -477,7 +645,7 @@ public class OctetString extends AbstractVariable
    * @return the BER encoded length of this variable.
    */
   public int getBERPayloadLength() {
-    return value.length;
+    return length();
   }
 
   public int toInt() {
@@ -499,8 +667,8 @@ public class OctetString extends AbstractVariable
    * @since 1.7
    */
   public OctetString mask(OctetString mask) {
-    byte[] masked = new byte[value.length];
-    System.arraycopy(value, 0, masked, 0, value.length);
+    byte[] masked = new byte[value().length];
+    System.arraycopy(value(), 0, masked, 0, value().length);
     for (int i=0; (i<mask.length()) && (i<masked.length); i++) {
       masked[i] = (byte)(masked[i] & mask.get(i));
     }
@@ -553,15 +721,16 @@ public class OctetString extends AbstractVariable
         maxDelim = delim;
       }
     }
+    byte[] value = octetString.value();
     int startPos = 0;
-    for (int i = 0; i<octetString.length(); i++) {
-      int c = octetString.value[i] & 0xFF;
+    for (int i = 0; i<value.length; i++) {
+      int c = value[i] & 0xFF;
       boolean isDelim = false;
       if (c <= maxDelim) {
         for (int j=0; j<delimOctets.length(); j++) {
           if (c == (delimOctets.get(j) & 0xFF)) {
             if ((startPos >= 0) && (i > startPos)) {
-              parts.add(new OctetString(octetString.value,
+              parts.add(new OctetString(value,
                                         startPos, i - startPos));
             }
             startPos = -1;
@@ -574,8 +743,7 @@ public class OctetString extends AbstractVariable
       }
     }
     if (startPos >= 0) {
-      parts.add(new OctetString(octetString.value, startPos,
-                                octetString.length() - startPos));
+      parts.add(new OctetString(value, startPos, value.length - startPos));
     }
     return parts;
   }
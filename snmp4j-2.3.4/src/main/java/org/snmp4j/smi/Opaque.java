@@ -51,17 +51,11 @@ public class Opaque extends OctetString {
   }
 
   public void encodeBER(OutputStream outputStream) throws IOException {
-    BER.encodeString(outputStream, BER.OPAQUE, getValue());
+    encodeBER(outputStream, BER.OPAQUE);
   }
 
   public void decodeBER(BERInputStream inputStream) throws IOException {
-    BER.MutableByte type = new BER.MutableByte();
-    byte[] v = BER.decodeString(inputStream, type);
-    if (type.getValue() != (BER.ASN_APPLICATION | 0x04)) {
-      throw new IOException("Wrong type encountered when decoding OctetString: "+
-                            type.getValue());
-    }
-    setValue(v);
+    decodeBER(inputStream, BER.OPAQUE);
   }
 
   public void setValue(OctetString value) {
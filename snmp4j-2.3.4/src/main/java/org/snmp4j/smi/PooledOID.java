@@ -0,0 +1,374 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - PooledOID.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.smi;
+
+/**
+ * A <code>PooledOID</code> is an immutable object identifier interned by an
+ * {@link OIDPool}. The OIDs of a pool form a prefix tree: each
+ * <code>PooledOID</code> only stores a reference to its parent (the OID
+ * without the last sub-identifier), its last sub-identifier, its length, and
+ * its hash code. Thus, a large number of OIDs sharing long prefixes (like the
+ * instance OIDs of table cells) needs considerably less memory than the
+ * corresponding {@link OID} instances with their own sub-identifier arrays.
+ * <p>
+ * Because pooled OIDs are unique within their pool, {@link #equals(Object)}
+ * is an identity check for OIDs of the same pool, and {@link #compareTo}
+ * as well as {@link #startsWith(PooledOID)} only need to walk up to the
+ * common prefix of both OIDs. Access to a single sub-identifier by
+ * {@link #get(int)} requires walking from the end of the OID, so
+ * {@link #toIntArray()} or {@link #toOID()} should be used to process all
+ * sub-identifiers.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public final class PooledOID implements Comparable<PooledOID> {
+
+  private static final PooledOID[] NO_CHILDREN = new PooledOID[0];
+
+  private final OIDPool pool;
+  private final PooledOID parent;
+  private final int subID;
+  private final int depth;
+  private final int hash;
+
+  private volatile PooledOID[] children = NO_CHILDREN;
+  private int numChildren;
+
+  PooledOID(OIDPool pool) {
+    this.pool = pool;
+    this.parent = null;
+    this.subID = 0;
+    this.depth = 0;
+    this.hash = 0;
+  }
+
+  private PooledOID(PooledOID parent, int subID) {
+    this.pool = parent.pool;
+    this.parent = parent;
+    this.subID = subID;
+    this.depth = parent.depth + 1;
+    this.hash = parent.hash * 31 + subID;
+  }
+
+  /**
+   * Gets the pool this OID belongs to.
+   * @return
+   *    the <code>OIDPool</code> that created this OID.
+   */
+  public OIDPool getPool() {
+    return pool;
+  }
+
+  /**
+   * Gets the child of this OID with the given last sub-identifier, if it has
+   * been interned already.
+   * @param subID
+   *    a sub-identifier.
+   * @return
+   *    the interned OID or <code>null</code>.
+   */
+  PooledOID getChild(int subID) {
+    PooledOID[] c = children;
+    int mask = c.length - 1;
+    if (mask < 0) {
+      return null;
+    }
+    for (int i = indexOf(subID, mask); ; i = (i + 1) & mask) {
+      PooledOID child = c[i];
+      if ((child == null) || (child.subID == subID)) {
+        return child;
+      }
+    }
+  }
+
+  PooledOID getOrCreateChild(int subID) {
+    PooledOID child = getChild(subID);
+    if (child != null) {
+      return child;
+    }
+    synchronized (this) {
+      child = getChild(subID);
+      if (child == null) {
+        child = new PooledOID(this, subID);
+        PooledOID[] c = children;
+        if ((numChildren + 1) * 4 > c.length * 3) {
+          c = rehash(c, Math.max(4, c.length * 2));
+        }
+        insert(c, child);
+        numChildren++;
+        children = c;
+        pool.created();
+      }
+      return child;
+    }
+  }
+
+  private static int indexOf(int subID, int mask) {
+    return (subID * 0x9E3779B9 >>> 16) & mask;
+  }
+
+  private static PooledOID[] rehash(PooledOID[] c, int capacity) {
+    PooledOID[] n = new PooledOID[capacity];
+    for (PooledOID child : c) {
+      if (child != null) {
+        insert(n, child);
+      }
+    }
+    return n;
+  }
+
+  private static void insert(PooledOID[] c, PooledOID child) {
+    int mask = c.length - 1;
+    int i = indexOf(child.subID, mask);
+    while (c[i] != null) {
+      i = (i + 1) & mask;
+    }
+    c[i] = child;
+  }
+
+  /**
+   * Gets the interned OID with the given sub-identifier appended to this
+   * OID.
+   * @param subID
+   *    a sub-identifier.
+   * @return
+   *    the pooled OID <code>this.subID</code>.
+   */
+  public PooledOID append(int subID) {
+    return getOrCreateChild(subID);
+  }
+
+  /**
+   * Gets the interned OID with the given sub-identifiers appended to this
+   * OID.
+   * @param suffix
+   *    the OID to append.
+   * @return
+   *    the pooled OID <code>this.suffix</code>.
+   */
+  public PooledOID append(OID suffix) {
+    PooledOID oid = this;
+    int[] value = suffix.getValue();
+    for (int i=0; i<value.length; i++) {
+      oid = oid.getOrCreateChild(value[i]);
+    }
+    return oid;
+  }
+
+  /**
+   * Gets the OID without the last sub-identifier.
+   * @return
+   *    the parent OID or <code>null</code> if this OID is empty.
+   */
+  public PooledOID getParent() {
+    return parent;
+  }
+
+  /**
+   * Gets the prefix of this OID with the given length.
+   * @param length
+   *    a length less or equal to {@link #size()}.
+   * @return
+   *    the pooled OID with the first <code>length</code> sub-identifiers of
+   *    this OID.
+   */
+  public PooledOID getPrefix(int length) {
+    if ((length < 0) || (length > depth)) {
+      throw new IndexOutOfBoundsException("Invalid prefix length "+length+
+                                          " for OID of size "+depth);
+    }
+    PooledOID oid = this;
+    while (oid.depth > length) {
+      oid = oid.parent;
+    }
+    return oid;
+  }
+
+  /**
+   * Returns the number of sub-identifiers of this OID.
+   * @return
+   *    the OID length.
+   */
+  public int size() {
+    return depth;
+  }
+
+  /**
+   * Gets the sub-identifier at the given position.
+   * @param index
+   *    a zero based index less than {@link #size()}.
+   * @return
+   *    the sub-identifier.
+   */
+  public int get(int index) {
+    if ((index < 0) || (index >= depth)) {
+      throw new IndexOutOfBoundsException("Index "+index+
+                                          " for OID of size "+depth);
+    }
+    return getPrefix(index + 1).subID;
+  }
+
+  /**
+   * Gets the last sub-identifier.
+   * @return
+   *    the last sub-identifier.
+   * @throws java.util.NoSuchElementException
+   *    if this OID is empty.
+   */
+  public int last() {
+    if (depth == 0) {
+      throw new java.util.NoSuchElementException();
+    }
+    return subID;
+  }
+
+  /**
+   * Checks whether this OID starts with (or equals) the given OID.
+   * @param prefix
+   *    a pooled OID.
+   * @return
+   *    <code>true</code> if <code>prefix</code> is a prefix of this OID.
+   */
+  public boolean startsWith(PooledOID prefix) {
+    if (prefix.depth > depth) {
+      return false;
+    }
+    if (prefix.pool == pool) {
+      return getPrefix(prefix.depth) == prefix;
+    }
+    return toOID().startsWith(prefix.toOID());
+  }
+
+  /**
+   * Checks whether this OID starts with (or equals) the given OID.
+   * @param prefix
+   *    an OID.
+   * @return
+   *    <code>true</code> if <code>prefix</code> is a prefix of this OID.
+   */
+  public boolean startsWith(OID prefix) {
+    int[] value = prefix.getValue();
+    if (value.length > depth) {
+      return false;
+    }
+    PooledOID oid = getPrefix(value.length);
+    for (int i=value.length-1; i>=0; i--) {
+      if (oid.subID != value[i]) {
+        return false;
+      }
+      oid = oid.parent;
+    }
+    return true;
+  }
+
+  /**
+   * Compares this OID with another pooled OID in lexicographic order with
+   * unsigned sub-identifiers, as {@link OID#compareTo(Variable)} does.
+   * Only the sub-identifiers following the common prefix of both OIDs are
+   * visited.
+   * @param other
+   *    another pooled OID.
+   * @return
+   *    a negative value, zero, or a positive value if this OID is less than,
+   *    equal to, or greater than <code>other</code>.
+   */
+  public int compareTo(PooledOID other) {
+    if (this == other) {
+      return 0;
+    }
+    if (pool != other.pool) {
+      return toOID().compareTo(other.toOID());
+    }
+    PooledOID a = this;
+    PooledOID b = other;
+    while (a.depth > b.depth) {
+      a = a.parent;
+    }
+    while (b.depth > a.depth) {
+      b = b.parent;
+    }
+    if (a == b) {
+      // one is a prefix of the other
+      return depth - other.depth;
+    }
+    while (a.parent != b.parent) {
+      a = a.parent;
+      b = b.parent;
+    }
+    return ((a.subID & 0xFFFFFFFFL) < (b.subID & 0xFFFFFFFFL)) ? -1 : 1;
+  }
+
+  /**
+   * Returns the sub-identifiers of this OID.
+   * @return
+   *    a new array of sub-identifiers.
+   */
+  public int[] toIntArray() {
+    int[] value = new int[depth];
+    PooledOID oid = this;
+    for (int i=depth-1; i>=0; i--) {
+      value[i] = oid.subID;
+      oid = oid.parent;
+    }
+    return value;
+  }
+
+  /**
+   * Creates an {@link OID} with the sub-identifiers of this OID.
+   * @return
+   *    a new <code>OID</code> instance.
+   */
+  public OID toOID() {
+    OID oid = new OID();
+    oid.setValue(toIntArray());
+    return oid;
+  }
+
+  public int hashCode() {
+    return hash;
+  }
+
+  /**
+   * Checks whether the given object is a pooled OID with the same value.
+   * For OIDs of the same pool, this is an identity check.
+   * @param o
+   *    an object.
+   * @return
+   *    <code>true</code> if <code>o</code> is a <code>PooledOID</code> with
+   *    the same sub-identifiers.
+   */
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o instanceof PooledOID) {
+      PooledOID other = (PooledOID)o;
+      return (other.pool != pool) && (other.hash == hash) &&
+          (other.depth == depth) && (compareTo(other) == 0);
+    }
+    return false;
+  }
+
+  public String toString() {
+    return toOID().toString();
+  }
+}
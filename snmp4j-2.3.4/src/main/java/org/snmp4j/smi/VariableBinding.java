@@ -110,14 +110,15 @@ public class VariableBinding
    * Sets the object instance identifier for the variable binding.
    * @param oid
    *    an OID (must not be <code>null</code>) that is cloned when added to
-   *    this binding.
+   *    this binding, unless it is an {@link ImmutableOID}.
    */
   public void setOid(OID oid) {
     if (oid == null) {
       throw new IllegalArgumentException(
           "OID of a VariableBinding must not be null");
     }
-    this.oid = (OID) oid.clone();
+    // immutable OIDs are shared to preserve their cached BER encoding
+    this.oid = (oid instanceof ImmutableOID) ? oid : (OID) oid.clone();
   }
 
   /**
@@ -125,14 +126,16 @@ public class VariableBinding
    *
    * @param variable
    *    a <code>Variable</code> (must not be <code>null</code>) that is cloned
-   *    when added to this binding.
+   *    when added to this binding, unless it is an
+   *    {@link ImmutableOctetString}.
    */
   public void setVariable(Variable variable) {
     if (variable == null) {
       throw new IllegalArgumentException(
           "Variable of a VariableBinding must not be null");
     }
-    this.variable = (Variable) variable.clone();
+    this.variable = (variable instanceof ImmutableOctetString) ?
+        variable : (Variable) variable.clone();
   }
 
   /**
@@ -187,6 +190,9 @@ public class VariableBinding
     if (type.getValue() != BER.SEQUENCE) {
       throw new IOException("Invalid sequence encoding: " + type.getValue());
     }
+    if (oid instanceof ImmutableOID) {
+      oid = new OID();
+    }
     oid.decodeBER(inputStream);
     variable = AbstractVariable.createFromBER(inputStream);
     if (BER.isCheckSequenceLength()) {
@@ -204,6 +210,21 @@ public class VariableBinding
     variable.encodeBER(outputStream);
   }
 
+  /**
+   * Encodes this variable binding with the supplied reverse encoder.
+   * @param encoder
+   *    a <code>BERReverseEncoder</code>.
+   * @throws IOException
+   *    if the OID or the variable cannot be encoded.
+   * @since 2.4
+   */
+  public final void encodeBER(BERReverseEncoder encoder) throws IOException {
+    int mark = encoder.length();
+    AbstractVariable.encodeVariable(variable, encoder);
+    AbstractVariable.encodeVariable(oid, encoder);
+    encoder.encodeHeader(BER.SEQUENCE, encoder.length() - mark);
+  }
+
   /**
    * Gets a string representation of this variable binding using the
    * {@link VariableTextFormat} configured by {@link SNMP4JSettings}.
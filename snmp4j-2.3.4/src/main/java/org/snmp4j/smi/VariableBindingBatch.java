@@ -0,0 +1,556 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - VariableBindingBatch.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.smi;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import org.snmp4j.asn1.BER;
+import org.snmp4j.asn1.BERCursor;
+import org.snmp4j.asn1.BERInputStream;
+
+/**
+ * A <code>VariableBindingBatch</code> is a list of variable bindings stored
+ * in columns of primitive arrays instead of {@link VariableBinding},
+ * {@link OID}, and {@link Variable} instances. The sub-identifiers of all OIDs
+ * are stored in a shared <code>int</code> buffer, the syntax of each value
+ * in a <code>byte</code> array, numeric values (INTEGER, Counter32, Gauge32,
+ * TimeTicks, and Counter64) in a <code>long</code> array, and the bytes of
+ * OCTET STRING, IpAddress, and Opaque values in a shared <code>byte</code>
+ * buffer.
+ * <p>
+ * A batch can be filled directly from BER encoded variable bindings with
+ * {@link #decodeBER(BERCursor)} or {@link org.snmp4j.PDUCursor}, so that the
+ * collection of a large number of values, like interface counters polled
+ * from many devices, allocates memory per batch instead of per value. The
+ * values are accessed by index with {@link #getOID(int, int[])},
+ * {@link #getSyntax(int)}, and {@link #getLong(int)}. As a
+ * <code>List&lt;VariableBinding&gt;</code>, the batch creates new
+ * <code>VariableBinding</code> instances on demand.
+ * <p>
+ * A batch can be reused by calling {@link #clear()} which keeps its buffers.
+ * It is not synchronized.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class VariableBindingBatch extends AbstractList<VariableBinding>
+    implements RandomAccess {
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private int size;
+  private int[] oidOffsets;
+  private int[] oidLengths;
+  private byte[] syntax;
+  private long[] values;
+
+  private int[] subIDs;
+  private int subIDCount;
+  private byte[] data;
+  private int dataCount;
+  private Variable[] otherValues;
+
+  /**
+   * Creates an empty batch with a default capacity.
+   */
+  public VariableBindingBatch() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an empty batch with the given initial capacity.
+   * @param capacity
+   *    the number of variable bindings the batch can hold before its
+   *    arrays need to be enlarged.
+   */
+  public VariableBindingBatch(int capacity) {
+    capacity = Math.max(capacity, 1);
+    oidOffsets = new int[capacity];
+    oidLengths = new int[capacity];
+    syntax = new byte[capacity];
+    values = new long[capacity];
+    subIDs = new int[capacity * 12];
+    data = new byte[capacity * 8];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Removes all variable bindings from this batch. The allocated buffers are
+   * kept for reuse.
+   */
+  public void clear() {
+    modCount++;
+    if (otherValues != null) {
+      for (int i=0; i<size; i++) {
+        otherValues[i] = null;
+      }
+    }
+    size = 0;
+    subIDCount = 0;
+    dataCount = 0;
+  }
+
+  private void ensureCapacity() {
+    if (size == syntax.length) {
+      int capacity = size + (size >> 1) + 1;
+      int[] offsets = new int[capacity];
+      System.arraycopy(oidOffsets, 0, offsets, 0, size);
+      oidOffsets = offsets;
+      int[] lengths = new int[capacity];
+      System.arraycopy(oidLengths, 0, lengths, 0, size);
+      oidLengths = lengths;
+      byte[] s = new byte[capacity];
+      System.arraycopy(syntax, 0, s, 0, size);
+      syntax = s;
+      long[] v = new long[capacity];
+      System.arraycopy(values, 0, v, 0, size);
+      values = v;
+      if (otherValues != null) {
+        Variable[] o = new Variable[capacity];
+        System.arraycopy(otherValues, 0, o, 0, size);
+        otherValues = o;
+      }
+    }
+  }
+
+  private int allocateSubIDs(int length) {
+    if (subIDCount + length > subIDs.length) {
+      int[] s = new int[Math.max(subIDCount + length, subIDs.length * 2)];
+      System.arraycopy(subIDs, 0, s, 0, subIDCount);
+      subIDs = s;
+    }
+    int offset = subIDCount;
+    subIDCount += length;
+    return offset;
+  }
+
+  private int allocateData(int length) {
+    if (dataCount + length > data.length) {
+      byte[] d = new byte[Math.max(dataCount + length, data.length * 2)];
+      System.arraycopy(data, 0, d, 0, dataCount);
+      data = d;
+    }
+    int offset = dataCount;
+    dataCount += length;
+    return offset;
+  }
+
+  private static long offsetAndLength(int offset, int length) {
+    return ((long)offset << 32) | length;
+  }
+
+  private static int offsetOf(long offsetAndLength) {
+    return (int)(offsetAndLength >>> 32);
+  }
+
+  private static int lengthOf(long offsetAndLength) {
+    return (int)offsetAndLength;
+  }
+
+  private void setOther(int index, Variable variable) {
+    if (otherValues == null) {
+      otherValues = new Variable[syntax.length];
+    }
+    otherValues[index] = variable;
+  }
+
+  private int addOID(int[] value, int offset, int length) {
+    int o = allocateSubIDs(length);
+    System.arraycopy(value, offset, subIDs, o, length);
+    return o;
+  }
+
+  private void addBytes(byte[] bytes) {
+    int o = allocateData(bytes.length);
+    System.arraycopy(bytes, 0, data, o, bytes.length);
+    values[size] = offsetAndLength(o, bytes.length);
+  }
+
+  /**
+   * Appends a copy of the given variable binding.
+   * @param vb
+   *    a variable binding.
+   * @return
+   *    <code>true</code>.
+   */
+  public boolean add(VariableBinding vb) {
+    add(vb.getOid(), vb.getVariable());
+    return true;
+  }
+
+  /**
+   * Appends a variable binding with a copy of the given OID and value.
+   * @param oid
+   *    the OID of the variable binding.
+   * @param variable
+   *    the value of the variable binding.
+   */
+  public void add(OID oid, Variable variable) {
+    ensureCapacity();
+    int[] value = oid.getValue();
+    oidOffsets[size] = addOID(value, 0, value.length);
+    oidLengths[size] = value.length;
+    int s = variable.getSyntax();
+    syntax[size] = (byte)s;
+    values[size] = 0;
+    switch (s) {
+      case SMIConstants.SYNTAX_INTEGER:
+      case SMIConstants.SYNTAX_COUNTER32:
+      case SMIConstants.SYNTAX_GAUGE32:
+      case SMIConstants.SYNTAX_TIMETICKS:
+      case SMIConstants.SYNTAX_COUNTER64:
+        values[size] = variable.toLong();
+        break;
+      case SMIConstants.SYNTAX_OCTET_STRING:
+      case SMIConstants.SYNTAX_OPAQUE:
+        if (variable instanceof OctetString) {
+          addBytes(((OctetString)variable).getValue());
+        }
+        else {
+          setOther(size, (Variable) variable.clone());
+        }
+        break;
+      case SMIConstants.SYNTAX_IPADDRESS:
+        if (variable instanceof IpAddress) {
+          addBytes(((IpAddress)variable).toByteArray());
+        }
+        else {
+          setOther(size, (Variable) variable.clone());
+        }
+        break;
+      case SMIConstants.SYNTAX_OBJECT_IDENTIFIER:
+        if (variable instanceof OID) {
+          int[] v = ((OID)variable).getValue();
+          values[size] = offsetAndLength(addOID(v, 0, v.length), v.length);
+        }
+        else {
+          setOther(size, (Variable) variable.clone());
+        }
+        break;
+      case SMIConstants.SYNTAX_NULL:
+      case SMIConstants.EXCEPTION_NO_SUCH_OBJECT:
+      case SMIConstants.EXCEPTION_NO_SUCH_INSTANCE:
+      case SMIConstants.EXCEPTION_END_OF_MIB_VIEW:
+        break;
+      default:
+        setOther(size, (Variable) variable.clone());
+    }
+    size++;
+    modCount++;
+  }
+
+  /**
+   * Appends the variable binding whose OID and value are the current elements
+   * of the given cursors without creating any <code>OID</code> or
+   * <code>Variable</code> instances for the supported syntaxes.
+   * @param oid
+   *    a cursor positioned on the OBJECT IDENTIFIER element of a variable
+   *    binding.
+   * @param value
+   *    a cursor positioned on the value element of a variable binding.
+   * @throws IOException
+   *    if the elements are not properly encoded.
+   */
+  public void add(BERCursor oid, BERCursor value) throws IOException {
+    if (oid.getTag() != BER.OID) {
+      throw new IOException("Expected OID but found tag "+oid.getTag()+
+                            " at position "+oid.getHeaderOffset());
+    }
+    ensureCapacity();
+    int length = oid.getOIDLength();
+    int offset = allocateSubIDs(length);
+    length = oid.getValueAsOID(subIDs, offset);
+    subIDCount = offset + length;
+    int s = value.getTag();
+    long v = 0;
+    switch (s) {
+      case SMIConstants.SYNTAX_INTEGER:
+        v = value.getValueAsInteger();
+        break;
+      case SMIConstants.SYNTAX_COUNTER32:
+      case SMIConstants.SYNTAX_GAUGE32:
+      case SMIConstants.SYNTAX_TIMETICKS:
+        v = value.getValueAsUnsignedInteger();
+        break;
+      case SMIConstants.SYNTAX_COUNTER64:
+        v = value.getValueAsUnsignedInt64();
+        break;
+      case SMIConstants.SYNTAX_OCTET_STRING:
+      case SMIConstants.SYNTAX_OPAQUE:
+      case SMIConstants.SYNTAX_IPADDRESS: {
+        int o = allocateData(value.getLength());
+        v = offsetAndLength(o, value.copyValue(data, o));
+        break;
+      }
+      case SMIConstants.SYNTAX_OBJECT_IDENTIFIER: {
+        int o = allocateSubIDs(value.getOIDLength());
+        int n = value.getValueAsOID(subIDs, o);
+        subIDCount = o + n;
+        v = offsetAndLength(o, n);
+        break;
+      }
+      case SMIConstants.SYNTAX_NULL:
+      case SMIConstants.EXCEPTION_NO_SUCH_OBJECT:
+      case SMIConstants.EXCEPTION_NO_SUCH_INSTANCE:
+      case SMIConstants.EXCEPTION_END_OF_MIB_VIEW:
+        break;
+      default:
+        setOther(size,
+                 AbstractVariable.createFromBER(new BERInputStream(value.getEncoded())));
+    }
+    oidOffsets[size] = offset;
+    oidLengths[size] = length;
+    syntax[size] = (byte)s;
+    values[size] = v;
+    size++;
+    modCount++;
+  }
+
+  /**
+   * Appends all variable bindings of the BER encoded variable binding list
+   * (a SEQUENCE of variable bindings) that is the current element of the
+   * given cursor.
+   * @param cursor
+   *    a cursor positioned on a variable binding list. On return, the cursor
+   *    is positioned on the same element.
+   * @return
+   *    the number of variable bindings added.
+   * @throws IOException
+   *    if the variable binding list is not properly encoded.
+   */
+  public int decodeBER(BERCursor cursor) throws IOException {
+    int count = 0;
+    int depth = cursor.getDepth();
+    BERCursor oid = new BERCursor(cursor.getBuffer());
+    cursor.enter();
+    try {
+      while (cursor.hasNext()) {
+        if (cursor.next() != BER.SEQUENCE) {
+          throw new IOException("Expected variable binding sequence but "+
+                                "found tag "+cursor.getTag()+" at position "+
+                                cursor.getHeaderOffset());
+        }
+        cursor.enter();
+        if (!cursor.hasNext()) {
+          throw new IOException("Empty variable binding at position "+
+                                cursor.getHeaderOffset());
+        }
+        cursor.next();
+        oid.set(cursor);
+        if (!cursor.hasNext()) {
+          throw new IOException("Missing value of variable binding at "+
+                                "position "+cursor.getHeaderOffset());
+        }
+        cursor.next();
+        add(oid, cursor);
+        cursor.exit();
+        count++;
+      }
+    }
+    finally {
+      while (cursor.getDepth() > depth) {
+        cursor.exit();
+      }
+    }
+    return count;
+  }
+
+  private void checkIndex(int index) {
+    if ((index < 0) || (index >= size)) {
+      throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+    }
+  }
+
+  /**
+   * Gets the number of sub-identifiers of the OID at the given index.
+   * @param index
+   *    a variable binding index.
+   * @return
+   *    the OID length.
+   */
+  public int getOIDLength(int index) {
+    checkIndex(index);
+    return oidLengths[index];
+  }
+
+  /**
+   * Copies the sub-identifiers of the OID at the given index into the
+   * supplied array.
+   * @param index
+   *    a variable binding index.
+   * @param dest
+   *    an array with at least {@link #getOIDLength(int)} elements.
+   * @return
+   *    the number of sub-identifiers copied.
+   */
+  public int getOID(int index, int[] dest) {
+    checkIndex(index);
+    System.arraycopy(subIDs, oidOffsets[index], dest, 0, oidLengths[index]);
+    return oidLengths[index];
+  }
+
+  /**
+   * Gets the OID at the given index.
+   * @param index
+   *    a variable binding index.
+   * @return
+   *    a new <code>OID</code> instance.
+   */
+  public OID getOID(int index) {
+    checkIndex(index);
+    return new OID(subIDs, oidOffsets[index], oidLengths[index]);
+  }
+
+  /**
+   * Checks whether the OID at the given index starts with the given prefix.
+   * @param index
+   *    a variable binding index.
+   * @param prefix
+   *    an OID.
+   * @return
+   *    <code>true</code> if the OID at <code>index</code> starts with or equals
+   *    <code>prefix</code>.
+   */
+  public boolean startsWith(int index, OID prefix) {
+    checkIndex(index);
+    int[] p = prefix.getValue();
+    if (p.length > oidLengths[index]) {
+      return false;
+    }
+    int offset = oidOffsets[index];
+    for (int i=0; i<p.length; i++) {
+      if (subIDs[offset + i] != p[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the syntax of the value at the given index.
+   * @param index
+   *    a variable binding index.
+   * @return
+   *    a {@link SMIConstants} syntax value.
+   */
+  public int getSyntax(int index) {
+    checkIndex(index);
+    return syntax[index] & 0xFF;
+  }
+
+  /**
+   * Checks whether the value at the given index is an exception value
+   * (noSuchObject, noSuchInstance, or endOfMibView).
+   * @param index
+   *    a variable binding index.
+   * @return
+   *    <code>true</code> if the value is an exception.
+   */
+  public boolean isException(int index) {
+    return Null.isExceptionSyntax(getSyntax(index));
+  }
+
+  /**
+   * Gets the numeric value at the given index without creating a
+   * <code>Variable</code> instance.
+   * @param index
+   *    a variable binding index.
+   * @return
+   *    the value of an INTEGER, Counter32, Gauge32, TimeTicks, or Counter64
+   *    (Counter64 values greater than 2^63-1 are negative).
+   * @throws UnsupportedOperationException
+   *    if the value does not have a numeric syntax.
+   */
+  public long getLong(int index) {
+    switch (getSyntax(index)) {
+      case SMIConstants.SYNTAX_INTEGER:
+      case SMIConstants.SYNTAX_COUNTER32:
+      case SMIConstants.SYNTAX_GAUGE32:
+      case SMIConstants.SYNTAX_TIMETICKS:
+      case SMIConstants.SYNTAX_COUNTER64:
+        return values[index];
+      default:
+        throw new UnsupportedOperationException("Syntax "+getSyntax(index)+
+                                                " of variable binding "+
+                                                index+" is not numeric");
+    }
+  }
+
+  private byte[] getBytes(int index) {
+    long v = values[index];
+    byte[] bytes = new byte[lengthOf(v)];
+    System.arraycopy(data, offsetOf(v), bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  /**
+   * Gets the value at the given index.
+   * @param index
+   *    a variable binding index.
+   * @return
+   *    a new <code>Variable</code> instance.
+   */
+  public Variable getVariable(int index) {
+    int s = getSyntax(index);
+    if ((otherValues != null) && (otherValues[index] != null)) {
+      return (Variable) otherValues[index].clone();
+    }
+    long v = values[index];
+    switch (s) {
+      case SMIConstants.SYNTAX_INTEGER:
+        return new Integer32((int)v);
+      case SMIConstants.SYNTAX_COUNTER32:
+        return new Counter32(v);
+      case SMIConstants.SYNTAX_GAUGE32:
+        return new Gauge32(v);
+      case SMIConstants.SYNTAX_TIMETICKS:
+        return new TimeTicks(v);
+      case SMIConstants.SYNTAX_COUNTER64:
+        return new Counter64(v);
+      case SMIConstants.SYNTAX_OCTET_STRING:
+        return new OctetString(getBytes(index));
+      case SMIConstants.SYNTAX_OPAQUE:
+        return new Opaque(getBytes(index));
+      case SMIConstants.SYNTAX_IPADDRESS:
+        return new IpAddress(getBytes(index));
+      case SMIConstants.SYNTAX_OBJECT_IDENTIFIER:
+        return new OID(subIDs, offsetOf(v), lengthOf(v));
+      default:
+        return new Null(s);
+    }
+  }
+
+  /**
+   * Gets the variable binding at the given index.
+   * @param index
+   *    a variable binding index.
+   * @return
+   *    a new <code>VariableBinding</code> instance.
+   */
+  public VariableBinding get(int index) {
+    return new VariableBinding(getOID(index), getVariable(index));
+  }
+}
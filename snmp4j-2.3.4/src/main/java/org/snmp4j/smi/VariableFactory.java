@@ -0,0 +1,49 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - VariableFactory.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.smi;
+
+/**
+ * A <code>VariableFactory</code> creates empty {@link Variable} instances
+ * for an SMI syntax. Factories are registered for a syntax with
+ * {@link AbstractVariable#registerSyntax(int, VariableFactory)} and are then
+ * used by {@link AbstractVariable#createFromBER} and
+ * {@link AbstractVariable#createFromSyntax(int)} when
+ * {@link org.snmp4j.SNMP4JSettings#isExtensibilityEnabled()} is
+ * <code>true</code>.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public interface VariableFactory {
+
+  /**
+   * Creates a new <code>Variable</code> instance for the given syntax. The
+   * returned variable is subsequently initialized by its
+   * {@link Variable#decodeBER} method if it is created while decoding.
+   *
+   * @param smiSyntax
+   *    the SMI syntax (BER type) the factory has been registered for.
+   * @return
+   *    a new <code>Variable</code> instance.
+   */
+  Variable createVariable(int smiSyntax);
+
+}
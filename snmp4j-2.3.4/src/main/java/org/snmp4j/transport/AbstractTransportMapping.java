@@ -116,4 +116,20 @@ public abstract class AbstractTransportMapping<A extends Address>
     this.asyncMsgProcessingSupported = asyncMsgProcessingSupported;
   }
 
+  /**
+   * Returns <code>true</code> if each message buffer provided to the
+   * transport listeners is backed by an array of its own, that is never
+   * written again by this transport mapping. Only then, decoded values may
+   * reference the message buffer instead of copying it
+   * (see {@link org.snmp4j.SNMP4JSettings#setOctetStringViewMinLength(int)}).
+   * The default is <code>false</code>.
+   *
+   * @return
+   *    <code>true</code> if message buffers are never reused.
+   * @since 2.4
+   */
+  public boolean isMessageBufferShareable() {
+    return false;
+  }
+
 }
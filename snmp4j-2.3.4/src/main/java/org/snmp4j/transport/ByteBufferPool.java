@@ -0,0 +1,178 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - ByteBufferPool.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.transport;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The <code>ByteBufferPool</code> is a bounded pool of equally sized
+ * {@link ByteBuffer}s that are allocated once when the pool is created.
+ * A buffer taken from the pool by {@link #acquire()} has a reference count of
+ * one. Each additional owner has to {@link #retain(java.nio.ByteBuffer)} the
+ * buffer and every owner has to {@link #release(java.nio.ByteBuffer)} it
+ * again. The buffer is returned to the pool when its reference count drops
+ * to zero.
+ * <p>
+ * If the pool is exhausted, {@link #acquire()} returns a new heap buffer that
+ * is not pooled. Such buffers are simply dropped on release. The number of
+ * pool misses can be monitored by {@link #getMissCount()}.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class ByteBufferPool {
+
+  private final int bufferSize;
+  private final BlockingQueue<ByteBuffer> freeBuffers;
+  private final Map<ByteBuffer, AtomicInteger> referenceCounts;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  /**
+   * Creates a buffer pool with <code>poolSize</code> buffers of
+   * <code>bufferSize</code> bytes each.
+   *
+   * @param poolSize
+   *    the number of pooled buffers (must be > 0).
+   * @param bufferSize
+   *    the capacity of each buffer in bytes.
+   * @param direct
+   *    if <code>true</code> direct buffers are allocated, otherwise heap
+   *    buffers.
+   */
+  public ByteBufferPool(int poolSize, int bufferSize, boolean direct) {
+    if (poolSize <= 0) {
+      throw new IllegalArgumentException("Pool size must be > 0");
+    }
+    this.bufferSize = bufferSize;
+    this.freeBuffers = new ArrayBlockingQueue<ByteBuffer>(poolSize);
+    IdentityHashMap<ByteBuffer, AtomicInteger> refs =
+        new IdentityHashMap<ByteBuffer, AtomicInteger>(poolSize);
+    for (int i=0; i<poolSize; i++) {
+      ByteBuffer buffer = (direct) ?
+          ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+      refs.put(buffer, new AtomicInteger());
+      freeBuffers.add(buffer);
+    }
+    // the map is never modified after construction and thus can be read
+    // concurrently without synchronization
+    this.referenceCounts = refs;
+  }
+
+  /**
+   * Takes a cleared buffer from the pool. If the pool is exhausted a new
+   * non-pooled heap buffer is returned.
+   *
+   * @return
+   *    a cleared <code>ByteBuffer</code> with a capacity of
+   *    {@link #getBufferSize()} and a reference count of one.
+   */
+  public ByteBuffer acquire() {
+    ByteBuffer buffer = freeBuffers.poll();
+    if (buffer == null) {
+      missCount.incrementAndGet();
+      return ByteBuffer.allocate(bufferSize);
+    }
+    hitCount.incrementAndGet();
+    referenceCounts.get(buffer).set(1);
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Increments the reference count of a pooled buffer.
+   *
+   * @param buffer
+   *    a buffer previously returned by {@link #acquire()} and not yet
+   *    released by its last owner.
+   * @return
+   *    <code>true</code> if the buffer belongs to this pool and has been
+   *    retained, <code>false</code> if the buffer is not pooled and thus
+   *    does not need to be released.
+   */
+  public boolean retain(ByteBuffer buffer) {
+    AtomicInteger refCount = referenceCounts.get(buffer);
+    if (refCount == null) {
+      return false;
+    }
+    refCount.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Decrements the reference count of the supplied buffer and returns it to
+   * the pool if the count reaches zero. Buffers that do not belong to this
+   * pool are ignored.
+   *
+   * @param buffer
+   *    a buffer returned by {@link #acquire()}.
+   */
+  public void release(ByteBuffer buffer) {
+    AtomicInteger refCount = referenceCounts.get(buffer);
+    if ((refCount != null) && (refCount.decrementAndGet() == 0)) {
+      freeBuffers.offer(buffer);
+    }
+  }
+
+  /**
+   * Returns the capacity of the buffers provided by this pool.
+   * @return
+   *    the buffer size in bytes.
+   */
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * Returns the number of buffers currently available in the pool.
+   * @return
+   *    the number of free pooled buffers.
+   */
+  public int getAvailableCount() {
+    return freeBuffers.size();
+  }
+
+  /**
+   * Returns the number of {@link #acquire()} calls that could be served from
+   * the pool.
+   * @return
+   *    the pool hit count.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Returns the number of {@link #acquire()} calls that had to allocate a
+   * non-pooled buffer because the pool was exhausted.
+   * @return
+   *    the pool miss count.
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+}
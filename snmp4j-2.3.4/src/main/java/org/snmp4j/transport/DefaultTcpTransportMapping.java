@@ -34,6 +34,7 @@ import org.snmp4j.security.SecurityLevel;
 import org.snmp4j.smi.*;
 import org.snmp4j.SNMP4JSettings;
 import org.snmp4j.util.WorkerTask;
+import org.snmp4j.util.CancelableTask;
 import org.snmp4j.util.CommonTimer;
 
 /**
@@ -372,6 +373,19 @@ public class DefaultTcpTransportMapping extends TcpTransportMapping {
     this.maxInboundMessageSize = maxInboundMessageSize;
   }
 
+  /**
+   * Returns <code>true</code> if asynchronous message processing is
+   * supported, because then each received message is copied into an array
+   * of its own.
+   *
+   * @return
+   *    {@link #isAsyncMsgProcessingSupported()}.
+   * @since 2.4
+   */
+  public boolean isMessageBufferShareable() {
+    return isAsyncMsgProcessingSupported();
+  }
+
 
   private synchronized void timeoutSocket(SocketEntry entry) {
     if (connectionTimeout > 0) {
@@ -505,14 +519,16 @@ public class DefaultTcpTransportMapping extends TcpTransportMapping {
     public MessageLength getMessageLength(ByteBuffer buf) throws IOException {
       MutableByte type = new MutableByte();
       BERInputStream is = new BERInputStream(buf);
-      int ml = BER.decodeHeader(is, type);
+      // the buffer may contain the header only, the message length is
+      // checked against the maximum inbound message size by the caller
+      int ml = BER.decodeHeader(is, type, false);
       int hl = (int)is.getPosition();
       MessageLength messageLength = new MessageLength(hl, ml);
       return messageLength;
     }
   }
 
-  class SocketTimeout extends TimerTask {
+  class SocketTimeout extends TimerTask implements CancelableTask {
     private SocketEntry entry;
 
     public SocketTimeout(SocketEntry entry) {
@@ -569,6 +585,10 @@ public class DefaultTcpTransportMapping extends TcpTransportMapping {
         entry = null;
         return result;
     }
+
+    public boolean isCancelled() {
+      return (entry == null);
+    }
   }
 
   class ServerThread implements WorkerTask {
@@ -257,6 +257,19 @@ public class DefaultUdpTransportMapping extends UdpTransportMapping {
     this.maxInboundMessageSize = maxInboundMessageSize;
   }
 
+  /**
+   * Returns <code>true</code> if asynchronous message processing is
+   * supported, because then each received message is copied into an array
+   * of its own.
+   *
+   * @return
+   *    {@link #isAsyncMsgProcessingSupported()}.
+   * @since 2.4
+   */
+  public boolean isMessageBufferShareable() {
+    return isAsyncMsgProcessingSupported();
+  }
+
   /**
    * Returns the socket timeout.
    * 0 returns implies that the option is disabled (i.e., timeout of infinity).
@@ -0,0 +1,324 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - MultiSocketUdpTransportMapping.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.transport;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.snmp4j.SNMP4JSettings;
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.util.WorkerTask;
+
+/**
+ * The <code>MultiSocketUdpTransportMapping</code> binds several datagram
+ * channels to the same UDP address using the SO_REUSEPORT socket option and
+ * receives on each channel with its own listen thread. The operating system
+ * (e.g. Linux 3.9 or later) distributes incoming datagrams over the
+ * channels, so that receive throughput scales with the number of channels.
+ * <p>
+ * All channels appear as a single transport mapping to the
+ * {@link org.snmp4j.MessageDispatcher}. Responses are sent through the channel
+ * the request has been received on, which is identified by the session ID of
+ * the {@link TransportStateReference} supplied to
+ * {@link #sendMessage(org.snmp4j.smi.UdpAddress, byte[], org.snmp4j.TransportStateReference)}.
+ * <p>
+ * SO_REUSEPORT is set through reflection and requires a Java 9 or later
+ * runtime and platform support. If the option is not available, a single
+ * channel is shared by all listen threads instead.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class MultiSocketUdpTransportMapping extends NioUdpTransportMapping {
+
+  private static final LogAdapter logger =
+      LogFactory.getLogger(MultiSocketUdpTransportMapping.class);
+
+  private int socketCount;
+  private final boolean reusePortEnabled;
+  private List<DatagramChannel> additionalChannels =
+      new ArrayList<DatagramChannel>();
+  private List<WorkerTask> additionalListeners = new ArrayList<WorkerTask>();
+  // snapshot of all bound channels for lock free lookup on the send path
+  private volatile DatagramChannel[] sendChannels = new DatagramChannel[0];
+
+  /**
+   * Creates a UDP transport mapping with one channel per available
+   * processor bound to the specified address.
+   *
+   * @param udpAddress
+   *    the local address for sending and receiving of UDP messages.
+   * @throws IOException
+   *    if the first channel cannot be opened or bound.
+   */
+  public MultiSocketUdpTransportMapping(UdpAddress udpAddress)
+      throws IOException
+  {
+    this(udpAddress, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a UDP transport mapping with <code>socketCount</code> channels
+   * bound to the specified address. Only the first channel is bound by the
+   * constructor, the others are bound when {@link #listen()} is called.
+   *
+   * @param udpAddress
+   *    the local address for sending and receiving of UDP messages.
+   * @param socketCount
+   *    the number of channels and listen threads (must be > 0).
+   * @throws IOException
+   *    if the first channel cannot be opened or bound.
+   */
+  public MultiSocketUdpTransportMapping(UdpAddress udpAddress, int socketCount)
+      throws IOException
+  {
+    super(udpAddress, true);
+    if (socketCount <= 0) {
+      super.close();
+      throw new IllegalArgumentException("Socket count must be > 0");
+    }
+    this.socketCount = socketCount;
+    // configureChannel is called by the super constructor before the fields
+    // of this class are initialized, thus the option is read from the channel
+    this.reusePortEnabled = isReusePort(channel);
+    // a wildcard port must be fixed for the additional channels
+    if (udpAddress.getPort() == 0) {
+      this.udpAddress = new UdpAddress(udpAddress.getInetAddress(),
+                                       channel.socket().getLocalPort());
+    }
+  }
+
+  protected void configureChannel(DatagramChannel channel) throws IOException {
+    setReusePort(channel);
+  }
+
+  /**
+   * Sets the SO_REUSEPORT option on the supplied channel if supported by the
+   * Java runtime and the operating system.
+   *
+   * @param channel
+   *    an unbound channel.
+   * @return
+   *    <code>true</code> if the option has been set, <code>false</code>
+   *    otherwise.
+   */
+  protected static boolean setReusePort(DatagramChannel channel) {
+    try {
+      Class<?> socketOptionClass = Class.forName("java.net.SocketOption");
+      Object soReusePort = Class.forName("java.net.StandardSocketOptions").
+          getField("SO_REUSEPORT").get(null);
+      Method setOption =
+          DatagramChannel.class.getMethod("setOption", socketOptionClass,
+                                          Object.class);
+      setOption.invoke(channel, soReusePort, Boolean.TRUE);
+      return true;
+    }
+    catch (InvocationTargetException itex) {
+      logger.info("SO_REUSEPORT is not supported on this platform: "+
+                  itex.getTargetException());
+    }
+    catch (Exception ex) {
+      logger.info("SO_REUSEPORT is not supported by this Java runtime: "+ex);
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether the SO_REUSEPORT option is set on the supplied channel.
+   *
+   * @param channel
+   *    a channel.
+   * @return
+   *    <code>true</code> if the option is set, <code>false</code> if it is
+   *    not set or not supported.
+   */
+  private static boolean isReusePort(DatagramChannel channel) {
+    try {
+      Class<?> socketOptionClass = Class.forName("java.net.SocketOption");
+      Object soReusePort = Class.forName("java.net.StandardSocketOptions").
+          getField("SO_REUSEPORT").get(null);
+      Method getOption =
+          DatagramChannel.class.getMethod("getOption", socketOptionClass);
+      return Boolean.TRUE.equals(getOption.invoke(channel, soReusePort));
+    }
+    catch (Exception ex) {
+      return false;
+    }
+  }
+
+  /**
+   * Indicates whether SO_REUSEPORT could be enabled and thus incoming
+   * messages are received on separate channels.
+   * @return
+   *    <code>true</code> if the channels are bound with SO_REUSEPORT.
+   */
+  public boolean isReusePortEnabled() {
+    return reusePortEnabled;
+  }
+
+  /**
+   * Returns the number of channels (or listen threads if SO_REUSEPORT is not
+   * available) used by this transport mapping.
+   * @return
+   *    the socket count.
+   */
+  public int getSocketCount() {
+    return socketCount;
+  }
+
+  public void sendMessage(UdpAddress targetAddress, byte[] message,
+                          TransportStateReference tmStateReference)
+      throws IOException
+  {
+    DatagramChannel c = null;
+    if ((tmStateReference != null) &&
+        (tmStateReference.getSessionID() instanceof DatagramChannel)) {
+      c = getChannel((DatagramChannel) tmStateReference.getSessionID());
+    }
+    if (c == null) {
+      c = ensureChannel();
+    }
+    if (logger.isDebugEnabled()) {
+      logger.debug("Sending message to "+targetAddress+" with length "+
+                   message.length+": "+
+                   new OctetString(message).toHexString());
+    }
+    c.send(ByteBuffer.wrap(message),
+           new InetSocketAddress(targetAddress.getInetAddress(),
+                                 targetAddress.getPort()));
+  }
+
+  private DatagramChannel getChannel(DatagramChannel sessionID) {
+    for (DatagramChannel c : sendChannels) {
+      if (c == sessionID) {
+        return c;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Binds the additional channels and starts one listen thread per channel.
+   * If SO_REUSEPORT is not available, all listen threads receive on the
+   * same channel.
+   *
+   * @throws IOException
+   *    if a channel cannot be opened or bound.
+   */
+  public synchronized void listen() throws IOException {
+    if (listener != null) {
+      throw new SocketException("Port already listening");
+    }
+    DatagramChannel first = ensureChannel();
+    applyReceiveBufferSize(first);
+    try {
+      for (int i = 1; reusePortEnabled && (i < socketCount); i++) {
+        DatagramChannel c = openChannel(true);
+        applyReceiveBufferSize(c);
+        additionalChannels.add(c);
+      }
+    }
+    catch (IOException iox) {
+      closeAdditionalChannels();
+      throw iox;
+    }
+    DatagramChannel[] channels = new DatagramChannel[additionalChannels.size()+1];
+    channels[0] = first;
+    for (int i=1; i<channels.length; i++) {
+      channels[i] = additionalChannels.get(i-1);
+    }
+    sendChannels = channels;
+    bufferPool = new ByteBufferPool(Math.max(getBufferPoolSize(), socketCount*2),
+                                    maxInboundMessageSize, isDirectBuffers());
+    listenerThread = new ListenThread(first);
+    listener = SNMP4JSettings.getThreadFactory().createWorkerThread(
+        "MultiSocketUdpTransportMapping_"+getAddress()+"_0", listenerThread,
+        true);
+    for (int i = 1; i < socketCount; i++) {
+      DatagramChannel c =
+          (reusePortEnabled) ? additionalChannels.get(i-1) : first;
+      WorkerTask l = SNMP4JSettings.getThreadFactory().createWorkerThread(
+          "MultiSocketUdpTransportMapping_"+getAddress()+"_"+i,
+          new ListenThread(c), true);
+      additionalListeners.add(l);
+    }
+    listener.run();
+    for (WorkerTask l : additionalListeners) {
+      l.run();
+    }
+  }
+
+  /**
+   * Closes all channels and stops the listen threads.
+   *
+   * @throws IOException
+   *    if a channel could not be closed.
+   */
+  public void close() throws IOException {
+    List<WorkerTask> listeners;
+    synchronized (this) {
+      listeners = new ArrayList<WorkerTask>(additionalListeners);
+      additionalListeners.clear();
+    }
+    for (WorkerTask l : listeners) {
+      l.terminate();
+    }
+    closeAdditionalChannels();
+    super.close();
+    for (WorkerTask l : listeners) {
+      try {
+        l.join();
+      }
+      catch (InterruptedException ex) {
+        logger.warn(ex);
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private synchronized void closeAdditionalChannels() {
+    sendChannels = new DatagramChannel[0];
+    for (DatagramChannel c : additionalChannels) {
+      try {
+        c.close();
+      }
+      catch (IOException iox) {
+        logger.warn("Failed to close channel of "+this+": "+iox.getMessage());
+      }
+    }
+    additionalChannels.clear();
+  }
+
+  public synchronized boolean isListening() {
+    return super.isListening() || !additionalListeners.isEmpty();
+  }
+}
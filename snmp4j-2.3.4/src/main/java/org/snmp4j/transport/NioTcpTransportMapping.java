@@ -0,0 +1,1225 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - NioTcpTransportMapping.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.snmp4j.SNMP4JSettings;
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.TcpAddress;
+import org.snmp4j.util.WorkerTask;
+
+/**
+ * The <code>NioTcpTransportMapping</code> implements a non-blocking TCP
+ * transport mapping that distributes its connections over several selector
+ * threads. In contrast to the {@link DefaultTcpTransportMapping}
+ * <ul>
+ * <li>incoming connections are accepted by the first selector thread and then
+ * handed over round-robin to all selector threads,</li>
+ * <li>outgoing messages are queued per connection and written with a single
+ * gathering write whenever the channel is writable,</li>
+ * <li>each connection reuses its read buffer, which is sized by the
+ * {@link MessageLengthDecoder} to the largest message received so far, as
+ * long as messages are processed synchronously. If asynchronous message
+ * processing is supported, each message is read into a buffer taken from a
+ * {@link ByteBufferPool} that is returned to the pool when the message has
+ * been processed (see {@link PooledBufferTransportMapping}), and</li>
+ * <li>the write queue of each connection is bounded by a high water mark.
+ * When the queued bytes exceed the high water mark, further sends to that
+ * peer are blocked for up to {@link #getMaxSendBlockTime()} milliseconds
+ * or rejected with an <code>IOException</code> until the queue has been
+ * drained below the low water mark.</li>
+ * </ul>
+ * Sends issued by one of the selector threads (i.e. synchronous responses)
+ * are never blocked; they are rejected immediately if the write queue is
+ * congested.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class NioTcpTransportMapping extends TcpTransportMapping
+    implements PooledBufferTransportMapping {
+
+  private static final LogAdapter logger =
+      LogFactory.getLogger(NioTcpTransportMapping.class);
+
+  /**
+   * The default number of bytes queued per connection, above which sends to
+   * the connection's peer are pushed back.
+   */
+  public static final int DEFAULT_HIGH_WATER_MARK = 1024 * 1024;
+  /**
+   * The default number of queued bytes per connection, below which sends to
+   * a congested peer are accepted again.
+   */
+  public static final int DEFAULT_LOW_WATER_MARK = 256 * 1024;
+  /**
+   * The default number of message buffers in the buffer pool.
+   */
+  public static final int DEFAULT_BUFFER_POOL_SIZE = 64;
+
+  private static final int MAX_GATHERING_WRITE_BUFFERS = 64;
+  private static final long IDLE_CHECK_INTERVAL_MILLIS = 1000;
+
+  private final ConcurrentMap<TcpAddress, Connection> connections =
+      new ConcurrentHashMap<TcpAddress, Connection>();
+  private final AtomicInteger nextSelectorThread = new AtomicInteger();
+  private volatile SelectorThread[] selectorThreads;
+  private WorkerTask[] workers;
+  private ServerSocketChannel serverChannel;
+
+  private boolean serverEnabled = false;
+  private int selectorThreadCount = Runtime.getRuntime().availableProcessors();
+  private volatile long connectionTimeout = 60000;
+  private volatile int highWaterMark = DEFAULT_HIGH_WATER_MARK;
+  private volatile int lowWaterMark = DEFAULT_LOW_WATER_MARK;
+  private volatile long maxSendBlockTime = 0;
+  private MessageLengthDecoder messageLengthDecoder =
+      new DefaultTcpTransportMapping.SnmpMesssageLengthDecoder();
+  private int bufferPoolSize = DEFAULT_BUFFER_POOL_SIZE;
+  private volatile ByteBufferPool bufferPool;
+
+  /**
+   * Creates a TCP transport mapping with the server for incoming messages
+   * disabled.
+   * @throws IOException
+   *    if the local host address cannot be determined.
+   */
+  public NioTcpTransportMapping() throws IOException {
+    super(new TcpAddress(InetAddress.getLocalHost(), 0));
+  }
+
+  /**
+   * Creates a TCP transport mapping that accepts incoming connections on the
+   * given address (interface) on the local host when {@link #listen()} is
+   * called.
+   *
+   * @param serverAddress
+   *    the TcpAddress instance that describes the server address to listen
+   *    on incoming connection requests.
+   */
+  public NioTcpTransportMapping(TcpAddress serverAddress) {
+    super(serverAddress);
+    this.serverEnabled = true;
+  }
+
+  /**
+   * Starts the selector threads and, if enabled, binds the server socket for
+   * incoming connections. If the server address has a wildcard port, the
+   * address returned by {@link #getListenAddress()} is updated with the bound
+   * port.
+   *
+   * @throws SocketException
+   *    when the transport is already listening for incoming/outgoing messages.
+   * @throws IOException
+   *    if the server socket cannot be bound.
+   */
+  public synchronized void listen() throws IOException {
+    if (selectorThreads != null) {
+      throw new SocketException("Port already listening");
+    }
+    SelectorThread[] threads = new SelectorThread[selectorThreadCount];
+    try {
+      for (int i=0; i<threads.length; i++) {
+        threads[i] = new SelectorThread();
+      }
+      if (serverEnabled) {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        setSocketOptions(serverChannel.socket());
+        serverChannel.socket().bind(
+            new InetSocketAddress(tcpAddress.getInetAddress(),
+                                  tcpAddress.getPort()));
+        if (tcpAddress.getPort() == 0) {
+          tcpAddress = new TcpAddress(tcpAddress.getInetAddress(),
+                                      serverChannel.socket().getLocalPort());
+        }
+        serverChannel.register(threads[0].selector, SelectionKey.OP_ACCEPT);
+      }
+    }
+    catch (IOException iox) {
+      for (SelectorThread t : threads) {
+        if (t != null) {
+          t.selector.close();
+        }
+      }
+      closeServerChannel();
+      throw iox;
+    }
+    workers = new WorkerTask[threads.length];
+    for (int i=0; i<threads.length; i++) {
+      workers[i] = SNMP4JSettings.getThreadFactory().createWorkerThread(
+          "NioTcpTransportMapping_"+getAddress()+"_"+i, threads[i], true);
+    }
+    selectorThreads = threads;
+    for (WorkerTask w : workers) {
+      w.run();
+    }
+  }
+
+  /**
+   * Sets optional server socket options. The default implementation does
+   * nothing.
+   * @param serverSocket
+   *    the <code>ServerSocket</code> to apply additional non-default options.
+   */
+  protected void setSocketOptions(ServerSocket serverSocket) {
+  }
+
+  /**
+   * Closes all connections and stops the selector threads. Messages that
+   * are still queued are discarded.
+   */
+  public void close() {
+    WorkerTask[] w;
+    SelectorThread[] threads;
+    synchronized (this) {
+      w = workers;
+      threads = selectorThreads;
+      workers = null;
+      selectorThreads = null;
+    }
+    if (threads == null) {
+      return;
+    }
+    for (WorkerTask t : w) {
+      t.terminate();
+    }
+    closeServerChannel();
+    for (WorkerTask t : w) {
+      try {
+        t.join();
+      }
+      catch (InterruptedException ex) {
+        logger.warn(ex);
+        Thread.currentThread().interrupt();
+      }
+    }
+    for (Connection c : connections.values()) {
+      c.close();
+      if (logger.isDebugEnabled()) {
+        logger.debug("Socket to " + c.getPeerAddress() + " closed");
+      }
+    }
+    connections.clear();
+  }
+
+  private synchronized void closeServerChannel() {
+    if (serverChannel != null) {
+      try {
+        serverChannel.close();
+      }
+      catch (IOException iox) {
+        logger.warn("Failed to close server socket of "+this+": "+
+                    iox.getMessage());
+      }
+      serverChannel = null;
+    }
+  }
+
+  /**
+   * Closes the connection to the supplied remote address, if it is open.
+   * Messages that are still queued for the peer are discarded.
+   *
+   * @param remoteAddress
+   *    the address of the peer socket.
+   * @return
+   *    <code>true</code> if the connection has been closed and
+   *    <code>false</code> if there was nothing to close.
+   */
+  public boolean close(TcpAddress remoteAddress) {
+    if (logger.isDebugEnabled()) {
+      logger.debug("Closing socket for peer address "+remoteAddress);
+    }
+    Connection c = connections.remove(remoteAddress);
+    if (c != null) {
+      c.close();
+      if (logger.isInfoEnabled()) {
+        logger.info("Socket to " + remoteAddress + " closed");
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Queues a SNMP message for the supplied address and opens a connection
+   * to it if necessary. The message is written asynchronously by the
+   * selector thread of the connection.
+   *
+   * @param address
+   *    a <code>TcpAddress</code>.
+   * @param message
+   *    the message to send.
+   * @param tmStateReference
+   *    the (optional) transport model state reference as defined by
+   *    RFC 5590 section 6.1. If it refers to a connection of this transport
+   *    mapping, the message is sent through that connection.
+   * @throws IOException
+   *    if the connection cannot be opened, or the connection's write queue
+   *    stayed above the low water mark for longer than
+   *    {@link #getMaxSendBlockTime()}.
+   */
+  public void sendMessage(TcpAddress address, byte[] message,
+                          TransportStateReference tmStateReference)
+      throws IOException
+  {
+    if (selectorThreads == null) {
+      synchronized (this) {
+        if (selectorThreads == null) {
+          listen();
+        }
+      }
+    }
+    Connection c = null;
+    if ((tmStateReference != null) &&
+        (tmStateReference.getSessionID() instanceof Connection)) {
+      c = (Connection) tmStateReference.getSessionID();
+      if ((c.getTransportMapping() != this) || c.isClosed()) {
+        c = null;
+      }
+    }
+    if (c == null) {
+      c = connections.get(address);
+    }
+    if ((c == null) || c.isClosed()) {
+      c = connect(address);
+    }
+    if (logger.isDebugEnabled()) {
+      logger.debug("Queueing message with length " + message.length +
+                   " for " + address + ": " +
+                   new OctetString(message).toHexString());
+    }
+    c.enqueue(message);
+  }
+
+  private Connection connect(TcpAddress address) throws IOException {
+    SocketChannel sc = SocketChannel.open();
+    boolean connected;
+    try {
+      sc.configureBlocking(false);
+      connected = sc.connect(new InetSocketAddress(address.getInetAddress(),
+                                                   address.getPort()));
+    }
+    catch (IOException iox) {
+      sc.close();
+      throw iox;
+    }
+    Connection c = new Connection(address, sc, nextSelectorThread());
+    Connection previous = connections.putIfAbsent(address, c);
+    while ((previous != null) && previous.isClosed()) {
+      if (connections.replace(address, previous, c)) {
+        previous = null;
+      }
+      else {
+        previous = connections.putIfAbsent(address, c);
+      }
+    }
+    if (previous != null) {
+      // another thread connected concurrently
+      sc.close();
+      return previous;
+    }
+    logger.debug("Trying to connect to "+address);
+    c.getSelectorThread().register(c);
+    if (connected) {
+      fireConnected(c);
+    }
+    return c;
+  }
+
+  private SelectorThread nextSelectorThread() throws IOException {
+    SelectorThread[] threads = selectorThreads;
+    if (threads == null) {
+      throw new SocketException("Transport mapping "+this+" is closed");
+    }
+    int i = (nextSelectorThread.getAndIncrement() & Integer.MAX_VALUE) %
+        threads.length;
+    return threads[i];
+  }
+
+  private boolean isSelectorThread() {
+    SelectorThread[] threads = selectorThreads;
+    if (threads != null) {
+      Thread current = Thread.currentThread();
+      for (SelectorThread t : threads) {
+        if (t.thread == current) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private boolean fireConnected(Connection c) {
+    TransportStateEvent e =
+        new TransportStateEvent(this, c.getPeerAddress(),
+                                TransportStateEvent.STATE_CONNECTED, null);
+    fireConnectionStateChanged(e);
+    return !e.isCancelled();
+  }
+
+  private void closeConnection(Connection c, int state, IOException cause) {
+    c.close();
+    c.releaseMessageBuffer();
+    connections.remove(c.getPeerAddress(), c);
+    TransportStateEvent e =
+        new TransportStateEvent(this, c.getPeerAddress(), state, cause);
+    fireConnectionStateChanged(e);
+  }
+
+  public boolean retainBuffer(ByteBuffer messageBuffer) {
+    ByteBufferPool pool = bufferPool;
+    return (pool != null) && pool.retain(messageBuffer);
+  }
+
+  public void releaseBuffer(ByteBuffer messageBuffer) {
+    ByteBufferPool pool = bufferPool;
+    if (pool != null) {
+      pool.release(messageBuffer);
+    }
+  }
+
+  /**
+   * Returns the buffer pool used for incoming messages that are processed
+   * asynchronously.
+   * @return
+   *    the <code>ByteBufferPool</code> or <code>null</code> if no message has
+   *    been received with asynchronous message processing yet.
+   */
+  public ByteBufferPool getBufferPool() {
+    return bufferPool;
+  }
+
+  /**
+   * Returns the number of message buffers in the buffer pool.
+   * @return
+   *    the buffer pool size.
+   */
+  public int getBufferPoolSize() {
+    return bufferPoolSize;
+  }
+
+  /**
+   * Sets the number of message buffers that are allocated for the buffer
+   * pool when the first message is received with asynchronous message
+   * processing. The pool size limits the number of messages that can be
+   * processed concurrently without allocating additional buffers.
+   *
+   * @param bufferPoolSize
+   *    the number of pooled message buffers (must be > 0).
+   */
+  public void setBufferPoolSize(int bufferPoolSize) {
+    if (bufferPoolSize <= 0) {
+      throw new IllegalArgumentException("Buffer pool size must be > 0");
+    }
+    this.bufferPoolSize = bufferPoolSize;
+  }
+
+  private synchronized ByteBufferPool ensureBufferPool() {
+    ByteBufferPool pool = bufferPool;
+    if (pool == null) {
+      pool = new ByteBufferPool(bufferPoolSize, getMaxInboundMessageSize(),
+                                false);
+      bufferPool = pool;
+    }
+    return pool;
+  }
+
+  /**
+   * Gets the connection timeout. This timeout specifies the time a connection
+   * may be idle before it is closed.
+   * @return
+   *    the idle timeout in milliseconds.
+   */
+  public long getConnectionTimeout() {
+    return connectionTimeout;
+  }
+
+  /**
+   * Sets the connection timeout. This timeout specifies the time a connection
+   * may be idle before it is closed.
+   * @param connectionTimeout
+   *    the idle timeout in milliseconds. A zero or negative value will disable
+   *    any timeout and connections opened by this transport mapping will stay
+   *    opened until they are explicitly closed.
+   */
+  public void setConnectionTimeout(long connectionTimeout) {
+    this.connectionTimeout = connectionTimeout;
+  }
+
+  /**
+   * Checks whether a server for incoming requests is enabled.
+   * @return
+   *    <code>true</code> if incoming connections are accepted.
+   */
+  public boolean isServerEnabled() {
+    return serverEnabled;
+  }
+
+  /**
+   * Sets whether a server for incoming requests should be created when
+   * the transport is set into listen state. Setting this value has no effect
+   * until the {@link #listen()} method is called.
+   * @param serverEnabled
+   *    if <code>true</code> the transport listens for incoming connections
+   *    after {@link #listen()} has been called.
+   */
+  public void setServerEnabled(boolean serverEnabled) {
+    this.serverEnabled = serverEnabled;
+  }
+
+  public MessageLengthDecoder getMessageLengthDecoder() {
+    return messageLengthDecoder;
+  }
+
+  /**
+   * Sets the message length decoder. Default message length decoder is the
+   * {@link DefaultTcpTransportMapping.SnmpMesssageLengthDecoder}.
+   * @param messageLengthDecoder
+   *    a <code>MessageLengthDecoder</code> instance.
+   */
+  public void setMessageLengthDecoder(MessageLengthDecoder messageLengthDecoder) {
+    if (messageLengthDecoder == null) {
+      throw new NullPointerException();
+    }
+    this.messageLengthDecoder = messageLengthDecoder;
+  }
+
+  /**
+   * Sets the maximum size of incoming messages. When longer messages are
+   * received, the connection is closed.
+   * @param maxInboundMessageSize
+   *    the maximum message size in bytes.
+   */
+  public void setMaxInboundMessageSize(int maxInboundMessageSize) {
+    this.maxInboundMessageSize = maxInboundMessageSize;
+  }
+
+  /**
+   * Returns the number of selector threads.
+   * @return
+   *    the number of threads processing the connections.
+   */
+  public int getSelectorThreadCount() {
+    return selectorThreadCount;
+  }
+
+  /**
+   * Sets the number of selector threads connections are spread across. This
+   * value has no effect until the {@link #listen()} method is called.
+   * By default, one thread per available processor is used.
+   * @param selectorThreadCount
+   *    the number of selector threads (must be > 0).
+   */
+  public void setSelectorThreadCount(int selectorThreadCount) {
+    if (selectorThreadCount <= 0) {
+      throw new IllegalArgumentException("Selector thread count must be > 0");
+    }
+    this.selectorThreadCount = selectorThreadCount;
+  }
+
+  /**
+   * Returns the number of bytes that may be queued for a connection before
+   * further sends to its peer are pushed back.
+   * @return
+   *    the high water mark in bytes.
+   */
+  public int getHighWaterMark() {
+    return highWaterMark;
+  }
+
+  /**
+   * Returns the number of queued bytes below which a congested connection
+   * accepts new messages again.
+   * @return
+   *    the low water mark in bytes.
+   */
+  public int getLowWaterMark() {
+    return lowWaterMark;
+  }
+
+  /**
+   * Sets the low and high water marks of the per connection write queues.
+   * @param lowWaterMark
+   *    the number of queued bytes below which a congested connection accepts
+   *    new messages again.
+   * @param highWaterMark
+   *    the number of queued bytes above which sends are pushed back. Must
+   *    not be less than <code>lowWaterMark</code>.
+   */
+  public void setWaterMarks(int lowWaterMark, int highWaterMark) {
+    if ((lowWaterMark < 0) || (highWaterMark < lowWaterMark)) {
+      throw new IllegalArgumentException("Invalid water marks: low="+
+                                         lowWaterMark+", high="+highWaterMark);
+    }
+    this.lowWaterMark = lowWaterMark;
+    this.highWaterMark = highWaterMark;
+  }
+
+  /**
+   * Returns the maximum time a sender is blocked while the write queue of
+   * the target connection is congested.
+   * @return
+   *    the maximum blocking time in milliseconds.
+   */
+  public long getMaxSendBlockTime() {
+    return maxSendBlockTime;
+  }
+
+  /**
+   * Sets the maximum time {@link #sendMessage} blocks while the write queue
+   * of the target connection is above its high water mark and not yet
+   * drained below the low water mark. Selector threads are never blocked.
+   * @param maxSendBlockTime
+   *    the maximum blocking time in milliseconds. Zero (the default) rejects
+   *    such sends immediately with an <code>IOException</code>.
+   */
+  public void setMaxSendBlockTime(long maxSendBlockTime) {
+    this.maxSendBlockTime = maxSendBlockTime;
+  }
+
+  /**
+   * Returns the number of bytes currently queued for the specified peer.
+   * @param remoteAddress
+   *    the address of the peer socket.
+   * @return
+   *    the number of queued bytes or zero if there is no connection to that
+   *    address.
+   */
+  public int getQueuedBytes(TcpAddress remoteAddress) {
+    Connection c = connections.get(remoteAddress);
+    return (c == null) ? 0 : c.getQueuedBytes();
+  }
+
+  public boolean isListening() {
+    return (selectorThreads != null);
+  }
+
+  /**
+   * A connection to a peer. It is used as session ID of the transport state
+   * references of the messages received through it.
+   */
+  class Connection {
+
+    private final TcpAddress peerAddress;
+    private final SocketChannel channel;
+    private final SelectorThread selectorThread;
+    private final TransportStateReference stateReference;
+    private volatile long lastUse;
+    private volatile boolean closed;
+
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<ByteBuffer>();
+    // the following members are guarded by writeQueue
+    private int queuedBytes;
+    private boolean congested;
+    private boolean flushRequested;
+
+    // read state, only accessed by the selector thread
+    private ByteBuffer headerBuffer;
+    private ByteBuffer messageBuffer;
+    private boolean messageBufferPooled;
+    private boolean readingBody;
+
+    Connection(TcpAddress peerAddress, SocketChannel channel,
+               SelectorThread selectorThread) {
+      this.peerAddress = peerAddress;
+      this.channel = channel;
+      this.selectorThread = selectorThread;
+      this.stateReference =
+          new TransportStateReference(NioTcpTransportMapping.this, peerAddress,
+                                      null, SecurityLevel.undefined,
+                                      SecurityLevel.undefined, false, this);
+      used();
+    }
+
+    NioTcpTransportMapping getTransportMapping() {
+      return NioTcpTransportMapping.this;
+    }
+
+    TcpAddress getPeerAddress() {
+      return peerAddress;
+    }
+
+    SelectorThread getSelectorThread() {
+      return selectorThread;
+    }
+
+    void used() {
+      lastUse = System.nanoTime();
+    }
+
+    long getIdleMillis(long now) {
+      return (now - lastUse) / SnmpConstants.MILLISECOND_TO_NANOSECOND;
+    }
+
+    boolean isClosed() {
+      return closed;
+    }
+
+    /**
+     * Returns the pooled buffer of a partially read message to the buffer
+     * pool. Must only be called by the selector thread of this connection.
+     */
+    void releaseMessageBuffer() {
+      ByteBuffer buffer = messageBuffer;
+      if (messageBufferPooled && (buffer != null)) {
+        messageBuffer = null;
+        messageBufferPooled = false;
+        readingBody = false;
+        releaseBuffer(buffer);
+      }
+    }
+
+    int getQueuedBytes() {
+      synchronized (writeQueue) {
+        return queuedBytes;
+      }
+    }
+
+    boolean hasQueuedMessages() {
+      synchronized (writeQueue) {
+        return !writeQueue.isEmpty();
+      }
+    }
+
+    void enqueue(byte[] message) throws IOException {
+      boolean requestFlush;
+      synchronized (writeQueue) {
+        if (congested && !closed) {
+          waitForDrain();
+        }
+        if (closed) {
+          throw new ClosedChannelException();
+        }
+        writeQueue.add(ByteBuffer.wrap(message));
+        queuedBytes += message.length;
+        if (queuedBytes > highWaterMark) {
+          congested = true;
+          if (logger.isDebugEnabled()) {
+            logger.debug("Write queue for "+peerAddress+" reached "+
+                         queuedBytes+" bytes, pushing back further sends");
+          }
+        }
+        requestFlush = !flushRequested;
+        flushRequested = true;
+      }
+      used();
+      if (requestFlush) {
+        selectorThread.requestFlush(this);
+      }
+    }
+
+    private void waitForDrain() throws IOException {
+      long blockTime = maxSendBlockTime;
+      if ((blockTime > 0) && !isSelectorThread()) {
+        long deadline = System.nanoTime() +
+            blockTime * SnmpConstants.MILLISECOND_TO_NANOSECOND;
+        long remaining = blockTime;
+        try {
+          while (congested && !closed && (remaining > 0)) {
+            writeQueue.wait(remaining);
+            remaining = (deadline - System.nanoTime()) /
+                SnmpConstants.MILLISECOND_TO_NANOSECOND;
+          }
+        }
+        catch (InterruptedException iex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (congested && !closed) {
+        throw new IOException("Write queue for "+peerAddress+" is congested ("+
+                              queuedBytes+" bytes queued)");
+      }
+    }
+
+    /**
+     * Writes as many queued messages as possible with gathering writes.
+     * @return
+     *    <code>true</code> if messages remain queued and the channel needs
+     *    to be selected for writing.
+     * @throws IOException
+     *    if the channel cannot be written.
+     */
+    boolean flush() throws IOException {
+      ByteBuffer[] buffers = new ByteBuffer[MAX_GATHERING_WRITE_BUFFERS];
+      while (true) {
+        int count = 0;
+        synchronized (writeQueue) {
+          for (Iterator<ByteBuffer> it = writeQueue.iterator();
+               it.hasNext() && (count < buffers.length); count++) {
+            buffers[count] = it.next();
+          }
+          if (count == 0) {
+            flushRequested = false;
+            return false;
+          }
+        }
+        long written = channel.write(buffers, 0, count);
+        if (logger.isDebugEnabled()) {
+          logger.debug("Sent "+written+" bytes of "+count+
+                       " queued message(s) to "+peerAddress);
+        }
+        boolean complete = !buffers[count-1].hasRemaining();
+        synchronized (writeQueue) {
+          for (int i=0; (i<count) && !buffers[i].hasRemaining(); i++) {
+            writeQueue.poll();
+          }
+          queuedBytes -= (int) written;
+          if (congested && (queuedBytes <= lowWaterMark)) {
+            congested = false;
+            writeQueue.notifyAll();
+          }
+        }
+        for (int i=0; i<count; i++) {
+          buffers[i] = null;
+        }
+        if (!complete) {
+          // socket send buffer is full
+          return true;
+        }
+      }
+    }
+
+    void close() {
+      closed = true;
+      synchronized (writeQueue) {
+        writeQueue.clear();
+        queuedBytes = 0;
+        congested = false;
+        writeQueue.notifyAll();
+      }
+      try {
+        channel.close();
+      }
+      catch (IOException iox) {
+        logger.debug(iox);
+      }
+    }
+
+    public String toString() {
+      return "Connection[peerAddress="+peerAddress+",closed="+closed+"]";
+    }
+  }
+
+  class SelectorThread implements WorkerTask {
+
+    private final Selector selector;
+    private final Queue<Connection> registrations =
+        new ConcurrentLinkedQueue<Connection>();
+    private final Queue<Connection> flushRequests =
+        new ConcurrentLinkedQueue<Connection>();
+    private volatile Thread thread;
+    private volatile boolean stop = false;
+    private long lastIdleCheck = System.nanoTime();
+
+    SelectorThread() throws IOException {
+      selector = Selector.open();
+    }
+
+    void register(Connection c) {
+      registrations.add(c);
+      if (Thread.currentThread() != thread) {
+        selector.wakeup();
+      }
+    }
+
+    void requestFlush(Connection c) {
+      flushRequests.add(c);
+      if (Thread.currentThread() != thread) {
+        selector.wakeup();
+      }
+    }
+
+    public void run() {
+      thread = Thread.currentThread();
+      try {
+        while (!stop) {
+          processRegistrations();
+          processFlushRequests();
+          long timeout = connectionTimeout;
+          if (timeout > 0) {
+            closeIdleConnections(timeout);
+            selector.select(Math.min(timeout, IDLE_CHECK_INTERVAL_MILLIS));
+          }
+          else {
+            selector.select();
+          }
+          if (stop) {
+            break;
+          }
+          for (Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+               it.hasNext(); ) {
+            SelectionKey key = it.next();
+            it.remove();
+            processKey(key);
+          }
+        }
+      }
+      catch (IOException iox) {
+        logger.error("Selector thread of "+NioTcpTransportMapping.this+
+                     " failed: "+iox.getMessage(), iox);
+      }
+      finally {
+        for (SelectionKey key : selector.keys()) {
+          if (key.attachment() instanceof Connection) {
+            Connection c = (Connection) key.attachment();
+            c.close();
+            connections.remove(c.getPeerAddress(), c);
+          }
+        }
+        try {
+          selector.close();
+        }
+        catch (IOException iox) {
+          logger.warn(iox);
+        }
+      }
+      if (logger.isDebugEnabled()) {
+        logger.debug("Worker task stopped:" + getClass().getName());
+      }
+    }
+
+    private void processRegistrations() {
+      Connection c;
+      while ((c = registrations.poll()) != null) {
+        if (c.isClosed()) {
+          continue;
+        }
+        int ops = SelectionKey.OP_CONNECT;
+        if (!c.channel.isConnectionPending()) {
+          ops = SelectionKey.OP_READ;
+          if (c.hasQueuedMessages()) {
+            ops |= SelectionKey.OP_WRITE;
+          }
+        }
+        try {
+          c.channel.register(selector, ops, c);
+        }
+        catch (ClosedChannelException ccex) {
+          closeConnection(c, TransportStateEvent.STATE_CLOSED, ccex);
+        }
+      }
+    }
+
+    private void processFlushRequests() {
+      Connection c;
+      while ((c = flushRequests.poll()) != null) {
+        SelectionKey key = c.channel.keyFor(selector);
+        if ((key == null) || !key.isValid() ||
+            c.channel.isConnectionPending()) {
+          // pending registration or connect will initiate writing
+          continue;
+        }
+        flush(c, key);
+      }
+    }
+
+    private void flush(Connection c, SelectionKey key) {
+      try {
+        if (c.flush()) {
+          key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+        else {
+          key.interestOps(SelectionKey.OP_READ);
+        }
+      }
+      catch (CancelledKeyException ckex) {
+        logger.debug("Selection key cancelled for "+c);
+      }
+      catch (IOException iox) {
+        logger.warn(iox);
+        closeConnection(c, TransportStateEvent.STATE_DISCONNECTED_REMOTELY,
+                        iox);
+      }
+    }
+
+    private void processKey(SelectionKey key) {
+      if (!(key.attachment() instanceof Connection)) {
+        if (key.isValid() && key.isAcceptable()) {
+          accept((ServerSocketChannel) key.channel());
+        }
+        return;
+      }
+      Connection c = (Connection) key.attachment();
+      try {
+        if (key.isConnectable()) {
+          finishConnect(c, key);
+        }
+        if (key.isValid() && key.isReadable()) {
+          readMessages(c);
+        }
+        if (key.isValid() && key.isWritable()) {
+          flush(c, key);
+        }
+      }
+      catch (CancelledKeyException ckex) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Selection key cancelled, skipping it");
+        }
+      }
+      catch (IOException iox) {
+        logger.warn(iox);
+        closeConnection(c, TransportStateEvent.STATE_DISCONNECTED_REMOTELY,
+                        iox);
+      }
+    }
+
+    private void accept(ServerSocketChannel ssc) {
+      try {
+        SocketChannel sc;
+        while ((sc = ssc.accept()) != null) {
+          sc.configureBlocking(false);
+          Socket s = sc.socket();
+          TcpAddress incomingAddress =
+              new TcpAddress(s.getInetAddress(), s.getPort());
+          Connection c =
+              new Connection(incomingAddress, sc, nextSelectorThread());
+          connections.put(incomingAddress, c);
+          if (!fireConnected(c)) {
+            logger.warn("Incoming connection cancelled");
+            connections.remove(incomingAddress, c);
+            c.close();
+          }
+          else {
+            c.getSelectorThread().register(c);
+          }
+        }
+      }
+      catch (IOException iox) {
+        logger.warn("Failed to accept connection on "+getAddress()+": "+iox);
+      }
+    }
+
+    private void finishConnect(Connection c, SelectionKey key)
+        throws IOException
+    {
+      if (c.channel.finishConnect()) {
+        logger.debug("Connected to " + c.getPeerAddress());
+        c.used();
+        key.interestOps(SelectionKey.OP_READ);
+        if (fireConnected(c)) {
+          flush(c, key);
+        }
+        else {
+          connections.remove(c.getPeerAddress(), c);
+          c.close();
+        }
+      }
+    }
+
+    private void readMessages(Connection c) throws IOException {
+      MessageLengthDecoder decoder = messageLengthDecoder;
+      while (true) {
+        ByteBuffer buf;
+        if (c.readingBody) {
+          buf = c.messageBuffer;
+        }
+        else {
+          int headerLength = decoder.getMinHeaderLength();
+          buf = c.headerBuffer;
+          if ((buf == null) || (buf.capacity() != headerLength)) {
+            buf = ByteBuffer.allocate(headerLength);
+            c.headerBuffer = buf;
+          }
+        }
+        int bytesRead = c.channel.read(buf);
+        if (bytesRead < 0) {
+          logger.debug("Socket closed remotely");
+          closeConnection(c, TransportStateEvent.STATE_DISCONNECTED_REMOTELY,
+                          null);
+          return;
+        }
+        if (buf.hasRemaining()) {
+          return;
+        }
+        c.used();
+        if (!c.readingBody) {
+          if (!startMessage(c, decoder)) {
+            return;
+          }
+        }
+        else {
+          dispatchMessage(c);
+        }
+      }
+    }
+
+    private boolean startMessage(Connection c, MessageLengthDecoder decoder)
+        throws IOException
+    {
+      ByteBuffer headerBuffer = c.headerBuffer;
+      headerBuffer.flip();
+      MessageLength messageLength =
+          decoder.getMessageLength(headerBuffer.duplicate());
+      if (logger.isDebugEnabled()) {
+        logger.debug("Message length is "+messageLength);
+      }
+      int length = messageLength.getMessageLength();
+      if (length > getMaxInboundMessageSize()) {
+        logger.error("Received message length "+messageLength+
+                     " is greater than inboundBufferSize "+
+                     getMaxInboundMessageSize());
+        closeConnection(c, TransportStateEvent.STATE_CLOSED, null);
+        return false;
+      }
+      if (length < headerBuffer.limit()) {
+        logger.error("Received message length "+messageLength+
+                     " is smaller than the "+headerBuffer.limit()+
+                     " header bytes already read");
+        closeConnection(c, TransportStateEvent.STATE_CLOSED, null);
+        return false;
+      }
+      ByteBuffer messageBuffer = c.messageBuffer;
+      if (isAsyncMsgProcessingSupported()) {
+        // the buffer is handed over to the message processing thread, thus
+        // each message gets its own buffer from the pool
+        ByteBufferPool pool = ensureBufferPool();
+        c.messageBufferPooled = (length <= pool.getBufferSize());
+        messageBuffer = (c.messageBufferPooled) ?
+            pool.acquire() : ByteBuffer.allocate(length);
+        c.messageBuffer = messageBuffer;
+      }
+      else if ((messageBuffer == null) || (messageBuffer.capacity() < length)) {
+        messageBuffer = ByteBuffer.allocate(length);
+        c.messageBuffer = messageBuffer;
+      }
+      messageBuffer.clear();
+      messageBuffer.limit(length);
+      messageBuffer.put(headerBuffer);
+      headerBuffer.clear();
+      if (messageBuffer.hasRemaining()) {
+        c.readingBody = true;
+      }
+      else {
+        dispatchMessage(c);
+      }
+      return true;
+    }
+
+    private void dispatchMessage(Connection c) {
+      ByteBuffer messageBuffer = c.messageBuffer;
+      messageBuffer.flip();
+      c.readingBody = false;
+      if (logger.isDebugEnabled()) {
+        logger.debug("Received message from " + c.getPeerAddress() +
+                     " with length " + messageBuffer.limit() + ": " +
+                     new OctetString(messageBuffer.array(), 0,
+                                     messageBuffer.limit()).toHexString());
+      }
+      boolean pooled = c.messageBufferPooled;
+      if (isAsyncMsgProcessingSupported() || pooled) {
+        // the buffer is handed over to the message processing thread
+        c.messageBuffer = null;
+        c.messageBufferPooled = false;
+      }
+      try {
+        fireProcessMessage(c.getPeerAddress(), messageBuffer, c.stateReference);
+      }
+      finally {
+        if (pooled) {
+          // listeners processing the message asynchronously have retained
+          // the buffer, thus it is returned to the pool when they are done
+          releaseBuffer(messageBuffer);
+        }
+        else if (c.messageBuffer != null) {
+          // reuse buffer for next message
+          c.messageBuffer.clear();
+        }
+      }
+    }
+
+    private void closeIdleConnections(long timeout) {
+      long now = System.nanoTime();
+      if ((now - lastIdleCheck) / SnmpConstants.MILLISECOND_TO_NANOSECOND <
+          IDLE_CHECK_INTERVAL_MILLIS) {
+        return;
+      }
+      lastIdleCheck = now;
+      List<Connection> idle = null;
+      for (SelectionKey key : selector.keys()) {
+        if (key.attachment() instanceof Connection) {
+          Connection c = (Connection) key.attachment();
+          if (c.getIdleMillis(now) >= timeout) {
+            if (idle == null) {
+              idle = new ArrayList<Connection>();
+            }
+            idle.add(c);
+          }
+        }
+      }
+      if (idle != null) {
+        for (Connection c : idle) {
+          if (logger.isInfoEnabled()) {
+            logger.info("Socket to " + c.getPeerAddress() +
+                        " closed due to timeout");
+          }
+          closeConnection(c, TransportStateEvent.STATE_DISCONNECTED_TIMEOUT,
+                          null);
+        }
+      }
+    }
+
+    public void terminate() {
+      stop = true;
+      selector.wakeup();
+      if (logger.isDebugEnabled()) {
+        logger.debug("Terminated worker task: " + getClass().getName());
+      }
+    }
+
+    public void join() throws InterruptedException {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Joining worker task: " + getClass().getName());
+      }
+    }
+
+    public void interrupt() {
+      terminate();
+    }
+  }
+}
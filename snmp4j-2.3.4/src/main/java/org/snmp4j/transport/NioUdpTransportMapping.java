@@ -0,0 +1,475 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - NioUdpTransportMapping.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+import org.snmp4j.SNMP4JSettings;
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.util.WorkerTask;
+
+/**
+ * The <code>NioUdpTransportMapping</code> implements a UDP transport mapping
+ * based on a {@link DatagramChannel}. In contrast to the
+ * {@link DefaultUdpTransportMapping}, incoming messages are received into
+ * reusable (by default direct) buffers taken from a bounded
+ * {@link ByteBufferPool}. The buffer is handed to the transport listeners
+ * without copying it, even if asynchronous message processing is supported.
+ * <p>
+ * A transport listener that processes a message after its
+ * {@link TransportListener#processMessage} method returned, has to retain the
+ * message buffer through the {@link PooledBufferTransportMapping} interface
+ * implemented by this class. The
+ * {@link org.snmp4j.util.MultiThreadedMessageDispatcher} does this
+ * automatically. Other asynchronous listeners have to copy the buffer or
+ * retain it in the same way.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class NioUdpTransportMapping extends UdpTransportMapping
+    implements PooledBufferTransportMapping {
+
+  private static final LogAdapter logger =
+      LogFactory.getLogger(NioUdpTransportMapping.class);
+
+  /**
+   * The default number of receive buffers in the buffer pool.
+   */
+  public static final int DEFAULT_BUFFER_POOL_SIZE = 64;
+
+  protected DatagramChannel channel;
+  protected WorkerTask listener;
+  protected ListenThread listenerThread;
+
+  private int receiveBufferSize = 0; // not set by default
+  private int bufferPoolSize = DEFAULT_BUFFER_POOL_SIZE;
+  private boolean directBuffers = true;
+  protected volatile ByteBufferPool bufferPool;
+
+  /**
+   * Creates a UDP transport with an arbitrary local port on all local
+   * interfaces.
+   *
+   * @throws IOException
+   *    if the channel cannot be opened or bound.
+   */
+  public NioUdpTransportMapping() throws IOException {
+    this(new UdpAddress("0.0.0.0/0"), false);
+  }
+
+  /**
+   * Creates a UDP transport on the specified address. The address will not be
+   * reused if it is currently in timeout state (TIME_WAIT).
+   *
+   * @param udpAddress
+   *    the local address for sending and receiving of UDP messages.
+   * @throws IOException
+   *    if the channel cannot be opened or bound.
+   */
+  public NioUdpTransportMapping(UdpAddress udpAddress) throws IOException {
+    this(udpAddress, false);
+  }
+
+  /**
+   * Creates a UDP transport with optional reusing the address if is currently
+   * in timeout state (TIME_WAIT) after the connection is closed.
+   *
+   * @param udpAddress
+   *    the local address for sending and receiving of UDP messages.
+   * @param reuseAddress
+   *    if <code>true</code> addresses are reused which provides faster socket
+   *    binding if an application is restarted for instance.
+   * @throws IOException
+   *    if the channel cannot be opened or bound.
+   */
+  public NioUdpTransportMapping(UdpAddress udpAddress,
+                                boolean reuseAddress) throws IOException {
+    super(udpAddress);
+    channel = openChannel(reuseAddress);
+  }
+
+  /**
+   * Opens a new blocking datagram channel and binds it to the address of this
+   * transport mapping.
+   *
+   * @param reuseAddress
+   *    if <code>true</code> the SO_REUSEADDR option is set.
+   * @return
+   *    the bound channel.
+   * @throws IOException
+   *    if the channel cannot be opened or bound.
+   */
+  protected DatagramChannel openChannel(boolean reuseAddress) throws IOException {
+    DatagramChannel c = DatagramChannel.open();
+    try {
+      c.socket().setReuseAddress(reuseAddress);
+      configureChannel(c);
+      c.socket().bind(new InetSocketAddress(udpAddress.getInetAddress(),
+                                            udpAddress.getPort()));
+      c.configureBlocking(true);
+    }
+    catch (IOException iox) {
+      c.close();
+      throw iox;
+    }
+    return c;
+  }
+
+  /**
+   * Configures a newly opened channel before it is bound. This method is
+   * called from {@link #openChannel(boolean)} and can be overridden by
+   * subclasses to set additional socket options. The default implementation
+   * does nothing.
+   *
+   * @param channel
+   *    an unbound <code>DatagramChannel</code>.
+   * @throws IOException
+   *    if the channel cannot be configured.
+   */
+  protected void configureChannel(DatagramChannel channel) throws IOException {
+  }
+
+  protected synchronized DatagramChannel ensureChannel() throws IOException {
+    DatagramChannel c = channel;
+    if (c == null) {
+      c = openChannel(false);
+      channel = c;
+    }
+    return c;
+  }
+
+  public void sendMessage(UdpAddress targetAddress, byte[] message,
+                          TransportStateReference tmStateReference)
+      throws IOException
+  {
+    InetSocketAddress targetSocketAddress =
+        new InetSocketAddress(targetAddress.getInetAddress(),
+                              targetAddress.getPort());
+    if (logger.isDebugEnabled()) {
+      logger.debug("Sending message to "+targetAddress+" with length "+
+                   message.length+": "+
+                   new OctetString(message).toHexString());
+    }
+    DatagramChannel c = ensureChannel();
+    c.send(ByteBuffer.wrap(message), targetSocketAddress);
+  }
+
+  /**
+   * Starts the listener thread that accepts incoming messages. The thread is
+   * started in daemon mode and thus it will not block application terminated.
+   * Nevertheless, the {@link #close()} method should be called to stop the
+   * listen thread gracefully and free associated ressources.
+   *
+   * @throws IOException
+   *    if the channel cannot be opened.
+   */
+  public synchronized void listen() throws IOException {
+    if (listener != null) {
+      throw new SocketException("Port already listening");
+    }
+    DatagramChannel c = ensureChannel();
+    applyReceiveBufferSize(c);
+    bufferPool = new ByteBufferPool(bufferPoolSize, maxInboundMessageSize,
+                                    directBuffers);
+    listenerThread = new ListenThread(c);
+    listener = SNMP4JSettings.getThreadFactory().createWorkerThread(
+        "NioUdpTransportMapping_"+getAddress(), listenerThread, true);
+    listener.run();
+  }
+
+  /**
+   * Applies the receive buffer size (if set) to the supplied channel.
+   *
+   * @param c
+   *    a channel used for receiving messages.
+   * @throws IOException
+   *    if the buffer size cannot be set.
+   */
+  protected void applyReceiveBufferSize(DatagramChannel c) throws IOException {
+    if (receiveBufferSize > 0) {
+      c.socket().setReceiveBufferSize(Math.max(receiveBufferSize,
+                                               maxInboundMessageSize));
+    }
+    if (logger.isDebugEnabled()) {
+      logger.debug("UDP receive buffer size for channel " +
+                   getAddress() + " is set to: " +
+                   c.socket().getReceiveBufferSize());
+    }
+  }
+
+  /**
+   * Closes the channel and stops the listener thread.
+   *
+   * @throws IOException
+   *    if the channel could not be closed.
+   */
+  public void close() throws IOException {
+    WorkerTask l;
+    DatagramChannel c;
+    synchronized (this) {
+      l = listener;
+      listener = null;
+      c = channel;
+      channel = null;
+    }
+    if (l != null) {
+      l.terminate();
+    }
+    if (c != null) {
+      // closing the channel wakes up a receiving listener thread
+      c.close();
+    }
+    if (l != null) {
+      try {
+        l.join();
+      }
+      catch (InterruptedException ex) {
+        logger.warn(ex);
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  public boolean retainBuffer(ByteBuffer messageBuffer) {
+    ByteBufferPool pool = bufferPool;
+    return (pool != null) && pool.retain(messageBuffer);
+  }
+
+  public void releaseBuffer(ByteBuffer messageBuffer) {
+    ByteBufferPool pool = bufferPool;
+    if (pool != null) {
+      pool.release(messageBuffer);
+    }
+  }
+
+  /**
+   * Returns the buffer pool used for incoming messages.
+   * @return
+   *    the <code>ByteBufferPool</code> or <code>null</code> if this transport
+   *    mapping has not been listening yet.
+   */
+  public ByteBufferPool getBufferPool() {
+    return bufferPool;
+  }
+
+  /**
+   * Returns the number of receive buffers in the buffer pool.
+   * @return
+   *    the buffer pool size.
+   */
+  public int getBufferPoolSize() {
+    return bufferPoolSize;
+  }
+
+  /**
+   * Sets the number of receive buffers that are allocated for the buffer
+   * pool when {@link #listen()} is called. The pool size limits the number
+   * of messages that can be processed concurrently without allocating
+   * additional buffers. It should be therefore somewhat greater than the
+   * number of threads processing incoming messages.
+   *
+   * @param bufferPoolSize
+   *    the number of pooled receive buffers (must be > 0).
+   */
+  public void setBufferPoolSize(int bufferPoolSize) {
+    if (bufferPoolSize <= 0) {
+      throw new IllegalArgumentException("Buffer pool size must be > 0");
+    }
+    this.bufferPoolSize = bufferPoolSize;
+  }
+
+  /**
+   * Indicates whether direct buffers are used for receiving messages.
+   * @return
+   *    <code>true</code> (default) if direct buffers are used.
+   */
+  public boolean isDirectBuffers() {
+    return directBuffers;
+  }
+
+  /**
+   * Sets whether direct or heap buffers are used for receiving messages.
+   * This method has to be called before {@link #listen()} to be effective.
+   * @param directBuffers
+   *    <code>true</code> to use direct buffers.
+   */
+  public void setDirectBuffers(boolean directBuffers) {
+    this.directBuffers = directBuffers;
+  }
+
+  public void setMaxInboundMessageSize(int maxInboundMessageSize) {
+    this.maxInboundMessageSize = maxInboundMessageSize;
+  }
+
+  /**
+   * Gets the requested receive buffer size for the underlying UDP socket.
+   * This size might not reflect the actual size of the receive buffer, which
+   * is implementation specific.
+   * @return
+   *    <=0 if the default buffer size of the OS is used, or a value >0 if the
+   *    user specified a buffer size.
+   */
+  public int getReceiveBufferSize() {
+    return receiveBufferSize;
+  }
+
+  /**
+   * Sets the receive buffer size, which should be > the maximum inbound message
+   * size. This method has to be called before {@link #listen()} to be
+   * effective.
+   * @param receiveBufferSize
+   *    an integer value >0 and > {@link #getMaxInboundMessageSize()}.
+   */
+  public void setReceiveBufferSize(int receiveBufferSize) {
+    if (receiveBufferSize <= 0) {
+      throw new IllegalArgumentException("Receive buffer size must be > 0");
+    }
+    this.receiveBufferSize = receiveBufferSize;
+  }
+
+  public boolean isListening() {
+    return (listener != null);
+  }
+
+  @Override
+  public UdpAddress getListenAddress() {
+    DatagramChannel c = channel;
+    if (c != null) {
+      return new UdpAddress(c.socket().getLocalAddress(),
+                            c.socket().getLocalPort());
+    }
+    return null;
+  }
+
+  class ListenThread implements WorkerTask {
+
+    private final DatagramChannel listenChannel;
+    private final TransportStateReference stateReference;
+    private volatile boolean stop = false;
+
+    public ListenThread(DatagramChannel listenChannel) {
+      this.listenChannel = listenChannel;
+      // the state reference is not modified for UDP and can be shared
+      this.stateReference =
+          new TransportStateReference(NioUdpTransportMapping.this, udpAddress,
+                                      null, SecurityLevel.undefined,
+                                      SecurityLevel.undefined,
+                                      false, listenChannel);
+    }
+
+    public void run() {
+      ByteBufferPool pool = bufferPool;
+      try {
+        while (!stop) {
+          ByteBuffer buf = pool.acquire();
+          try {
+            SocketAddress source = listenChannel.receive(buf);
+            if (source == null) {
+              continue;
+            }
+            buf.flip();
+            InetSocketAddress sourceAddress = (InetSocketAddress) source;
+            if (logger.isDebugEnabled()) {
+              logger.debug("Received message from " + sourceAddress +
+                           " with length " + buf.remaining() + ": " +
+                           toHexString(buf));
+            }
+            fireProcessMessage(new UdpAddress(sourceAddress.getAddress(),
+                                              sourceAddress.getPort()),
+                               buf, stateReference);
+          }
+          catch (ClosedChannelException ccex) {
+            if (!stop) {
+              logger.warn("Channel for transport mapping " + toString() +
+                          " closed unexpectedly: " + ccex);
+            }
+            stop = true;
+          }
+          catch (IOException iox) {
+            logger.warn(iox);
+            if (logger.isDebugEnabled()) {
+              iox.printStackTrace();
+            }
+            if (SNMP4JSettings.isForwardRuntimeExceptions()) {
+              stop = true;
+              throw new RuntimeException(iox);
+            }
+          }
+          finally {
+            pool.release(buf);
+          }
+        }
+      }
+      finally {
+        synchronized (NioUdpTransportMapping.this) {
+          if (listenerThread == this) {
+            listener = null;
+          }
+        }
+      }
+      if (logger.isDebugEnabled()) {
+        logger.debug("Worker task stopped:" + getClass().getName());
+      }
+    }
+
+    private String toHexString(ByteBuffer buf) {
+      byte[] bytes = new byte[buf.remaining()];
+      buf.duplicate().get(bytes);
+      return new OctetString(bytes).toHexString();
+    }
+
+    public void close() {
+      stop = true;
+    }
+
+    public void terminate() {
+      close();
+      if (logger.isDebugEnabled()) {
+        logger.debug("Terminated worker task: " + getClass().getName());
+      }
+    }
+
+    public void join() throws InterruptedException {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Joining worker task: " + getClass().getName());
+      }
+    }
+
+    public void interrupt() {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Interrupting worker task: " + getClass().getName());
+      }
+      close();
+    }
+  }
+}
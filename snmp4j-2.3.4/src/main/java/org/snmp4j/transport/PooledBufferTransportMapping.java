@@ -0,0 +1,66 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - PooledBufferTransportMapping.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.transport;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A <code>PooledBufferTransportMapping</code> hands out the message buffers
+ * it receives into directly to its {@link TransportListener}s without copying
+ * them. The buffer is reused by the transport mapping as soon as the
+ * {@link TransportListener#processMessage} call returns. A listener that
+ * needs to process the message asynchronously (for example
+ * {@link org.snmp4j.util.MultiThreadedMessageDispatcher}) has to
+ * {@link #retainBuffer(java.nio.ByteBuffer)} the buffer before returning and
+ * {@link #releaseBuffer(java.nio.ByteBuffer)} it when processing has been
+ * finished.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public interface PooledBufferTransportMapping {
+
+  /**
+   * Prevents the supplied message buffer from being reused by the transport
+   * mapping until {@link #releaseBuffer(java.nio.ByteBuffer)} is called for
+   * it. This method has to be called within
+   * {@link TransportListener#processMessage}.
+   *
+   * @param messageBuffer
+   *    the message buffer provided to the transport listener.
+   * @return
+   *    <code>true</code> if the buffer has been retained and thus has to be
+   *    released later, <code>false</code> if the buffer is not managed by
+   *    the transport mapping and can be used without releasing it.
+   */
+  boolean retainBuffer(ByteBuffer messageBuffer);
+
+  /**
+   * Releases a message buffer previously retained by
+   * {@link #retainBuffer(java.nio.ByteBuffer)}. The buffer must not be
+   * accessed by the caller after this call.
+   *
+   * @param messageBuffer
+   *    a retained message buffer.
+   */
+  void releaseBuffer(ByteBuffer messageBuffer);
+
+}
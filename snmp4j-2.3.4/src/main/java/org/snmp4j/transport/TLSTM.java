@@ -30,6 +30,7 @@ import org.snmp4j.mp.SnmpConstants;
 import org.snmp4j.security.SecurityLevel;
 import org.snmp4j.smi.*;
 import org.snmp4j.transport.tls.TlsTmSecurityCallback;
+import org.snmp4j.util.CancelableTask;
 import org.snmp4j.util.CommonTimer;
 import org.snmp4j.util.SnmpConfigurator;
 import org.snmp4j.util.WorkerTask;
@@ -544,6 +545,19 @@ public class TLSTM extends TcpTransportMapping {
     this.maxInboundMessageSize = maxInboundMessageSize;
   }
 
+  /**
+   * Returns <code>true</code> if asynchronous message processing is
+   * supported, because then each received message is copied into an array
+   * of its own.
+   *
+   * @return
+   *    {@link #isAsyncMsgProcessingSupported()}.
+   * @since 2.4
+   */
+  public boolean isMessageBufferShareable() {
+    return isAsyncMsgProcessingSupported();
+  }
+
 
   private synchronized void timeoutSocket(SocketEntry entry) {
     if (connectionTimeout > 0) {
@@ -830,7 +844,7 @@ public class TLSTM extends TcpTransportMapping {
     }
   }
 
-  class SocketTimeout extends TimerTask {
+  class SocketTimeout extends TimerTask implements CancelableTask {
     private SocketEntry entry;
 
     public SocketTimeout(SocketEntry entry) {
@@ -878,6 +892,10 @@ public class TLSTM extends TcpTransportMapping {
         entry = null;
         return result;
     }
+
+    public boolean isCancelled() {
+      return (entry == null);
+    }
   }
 
   class ServerThread implements WorkerTask {
@@ -235,7 +235,7 @@ public class SnmpURI {
           else {
             response = new SnmpUriResponse(
                 Collections.<VariableBinding[]>singletonList(
-                    responsePDU.getVariableBindings().toArray(new VariableBinding[responsePDU.size()])));
+                    responsePDU.getVariableBindingList().toArray(new VariableBinding[responsePDU.size()])));
           }
         }
         else {
@@ -409,7 +409,7 @@ public class SnmpURI {
         else {
           response = new SnmpUriResponse(
               Collections.<VariableBinding[]>singletonList(
-                  responsePDU.getVariableBindings().toArray(new VariableBinding[responsePDU.size()])));
+                  responsePDU.getVariableBindingList().toArray(new VariableBinding[responsePDU.size()])));
         }
       }
       callback.onResponse(response, url , event.getUserObject());
@@ -0,0 +1,43 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - CancelableTask.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+/**
+ * A <code>CancelableTask</code> is a {@link java.util.TimerTask} whose
+ * cancellation state can be queried. {@link java.util.TimerTask} does not
+ * expose whether {@link java.util.TimerTask#cancel()} has been called, thus
+ * {@link CommonTimer} implementations that do not rely on
+ * {@link java.util.Timer}, like the {@link TimingWheelTimer}, use this
+ * interface to discard cancelled tasks instead of running them.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public interface CancelableTask {
+
+  /**
+   * Checks whether this task has been cancelled.
+   * @return
+   *    <code>true</code> if the task must not be executed (anymore).
+   */
+  boolean isCancelled();
+
+}
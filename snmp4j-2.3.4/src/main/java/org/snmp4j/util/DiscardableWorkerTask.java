@@ -0,0 +1,42 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - DiscardableWorkerTask.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+/**
+ * A <code>DiscardableWorkerTask</code> is a {@link WorkerTask} that is
+ * notified when a {@link WorkerPool} drops it without executing it, for
+ * example by an {@link ExecutorWorkerPool} with the
+ * {@link ExecutorWorkerPool.RejectionPolicy#discard} policy. This allows the
+ * task to release the resources it holds.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public interface DiscardableWorkerTask extends WorkerTask {
+
+  /**
+   * Called instead of {@link #run()} when the task has been discarded by the
+   * worker pool. The method is called by the thread that submitted the task
+   * and must not block.
+   */
+  void discarded();
+
+}
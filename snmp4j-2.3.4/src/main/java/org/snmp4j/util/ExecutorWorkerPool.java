@@ -0,0 +1,367 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - ExecutorWorkerPool.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+
+/**
+ * The <code>ExecutorWorkerPool</code> is a {@link WorkerPool} that executes
+ * its tasks with an <code>ExecutorService</code>. In contrast to the
+ * {@link ThreadPool}, the number of tasks that are executing or waiting for
+ * execution is bounded by a configurable limit, independently from the number
+ * of threads of the executor. If that limit is reached, the
+ * {@link RejectionPolicy} of the pool determines whether {@link #execute}
+ * blocks, runs the task in the calling thread, drops the task, or throws a
+ * <code>RejectedExecutionException</code>.
+ * <p>
+ * Use {@link #create(String, int, int, RejectionPolicy)} for a pool with a
+ * fixed number of threads and a bounded queue, or
+ * {@link #createThreadPerTask(String, int, RejectionPolicy)} for a pool that
+ * runs each task in its own thread. The latter uses virtual threads when the
+ * Java runtime supports them (Java 21 or later), so that tasks blocking on
+ * I/O (for example proxy forwarding in an agent) do not starve other
+ * requests.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class ExecutorWorkerPool implements WorkerPool {
+
+  private static final LogAdapter logger =
+      LogFactory.getLogger(ExecutorWorkerPool.class);
+
+  /**
+   * The <code>RejectionPolicy</code> defines what happens with a task
+   * submitted by {@link WorkerPool#execute(WorkerTask)} when the maximum
+   * number of pending tasks has been reached.
+   */
+  public enum RejectionPolicy {
+    /**
+     * Block the submitting thread until a pending task has finished. This is
+     * the behavior of the {@link ThreadPool}.
+     */
+    block,
+    /**
+     * Run the task in the submitting thread.
+     */
+    callerRuns,
+    /**
+     * Drop the task and log a warning. A {@link DiscardableWorkerTask} is
+     * notified by {@link DiscardableWorkerTask#discarded()}, so that it can
+     * release its resources.
+     */
+    discard,
+    /**
+     * Throw a <code>RejectedExecutionException</code>.
+     */
+    abort
+  }
+
+  private final String name;
+  private final ExecutorService executor;
+  private final Semaphore permits;
+  private final int maxPendingTasks;
+  private final RejectionPolicy rejectionPolicy;
+  private final AtomicLong rejectedTasks = new AtomicLong();
+
+  /**
+   * Creates a worker pool that executes tasks with the supplied executor.
+   *
+   * @param name
+   *    the name of the pool.
+   * @param executor
+   *    the <code>ExecutorService</code> that executes the tasks. The executor
+   *    is shut down when the pool is stopped or cancelled.
+   * @param maxPendingTasks
+   *    the maximum number of tasks that are executing or waiting for
+   *    execution by the executor.
+   * @param rejectionPolicy
+   *    determines what {@link #execute(WorkerTask)} does, when
+   *    <code>maxPendingTasks</code> has been reached.
+   */
+  public ExecutorWorkerPool(String name, ExecutorService executor,
+                            int maxPendingTasks,
+                            RejectionPolicy rejectionPolicy) {
+    if (maxPendingTasks <= 0) {
+      throw new IllegalArgumentException("Maximum pending tasks must be > 0");
+    }
+    if (rejectionPolicy == null) {
+      throw new NullPointerException("Rejection policy must not be null");
+    }
+    this.name = name;
+    this.executor = executor;
+    this.maxPendingTasks = maxPendingTasks;
+    this.permits = new Semaphore(maxPendingTasks);
+    this.rejectionPolicy = rejectionPolicy;
+  }
+
+  /**
+   * Creates a worker pool with a fixed number of (daemon) threads and a
+   * bounded queue.
+   *
+   * @param name
+   *    the name of the pool, which is used as prefix for the thread names.
+   * @param size
+   *    the number of threads.
+   * @param queueCapacity
+   *    the maximum number of tasks waiting for a thread.
+   * @param rejectionPolicy
+   *    determines what {@link #execute(WorkerTask)} does, when all threads
+   *    are busy and the queue is full.
+   * @return
+   *    a new <code>ExecutorWorkerPool</code>.
+   */
+  public static ExecutorWorkerPool create(String name, int size,
+                                          int queueCapacity,
+                                          RejectionPolicy rejectionPolicy) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Pool size must be > 0");
+    }
+    // the queue is bounded by the permits of the pool
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                               new LinkedBlockingQueue<Runnable>(),
+                               new NamedThreadFactory(name));
+    return new ExecutorWorkerPool(name, executor, size + queueCapacity,
+                                  rejectionPolicy);
+  }
+
+  /**
+   * Creates a worker pool that executes each task in a new thread. If
+   * available, virtual threads are used, otherwise platform (daemon) threads
+   * are created and reused as needed.
+   *
+   * @param name
+   *    the name of the pool.
+   * @param maxConcurrentTasks
+   *    the maximum number of tasks executed concurrently.
+   * @param rejectionPolicy
+   *    determines what {@link #execute(WorkerTask)} does, when
+   *    <code>maxConcurrentTasks</code> tasks are executing.
+   * @return
+   *    a new <code>ExecutorWorkerPool</code>.
+   */
+  public static ExecutorWorkerPool createThreadPerTask(String name,
+                                                       int maxConcurrentTasks,
+                                                       RejectionPolicy
+                                                           rejectionPolicy) {
+    ExecutorService executor = createVirtualThreadPerTaskExecutor();
+    if (executor == null) {
+      executor = Executors.newCachedThreadPool(new NamedThreadFactory(name));
+    }
+    else if (logger.isDebugEnabled()) {
+      logger.debug("Worker pool "+name+" uses virtual threads");
+    }
+    return new ExecutorWorkerPool(name, executor, maxConcurrentTasks,
+                                  rejectionPolicy);
+  }
+
+  private static ExecutorService createVirtualThreadPerTaskExecutor() {
+    try {
+      Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) m.invoke(null);
+    }
+    catch (NoSuchMethodException nsmex) {
+      return null;
+    }
+    catch (Exception ex) {
+      logger.warn("Failed to create virtual thread executor: "+ex.getMessage());
+      return null;
+    }
+  }
+
+  public void execute(WorkerTask task) {
+    if (!permits.tryAcquire()) {
+      switch (rejectionPolicy) {
+        case block:
+          try {
+            permits.acquire();
+          }
+          catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(
+                "Interrupted while waiting for worker of pool "+name, iex);
+          }
+          break;
+        case callerRuns:
+          rejectedTasks.incrementAndGet();
+          task.run();
+          return;
+        case discard:
+          rejectedTasks.incrementAndGet();
+          logger.warn("Worker pool "+name+" is exhausted, task "+task+
+                      " discarded");
+          if (task instanceof DiscardableWorkerTask) {
+            ((DiscardableWorkerTask)task).discarded();
+          }
+          return;
+        default:
+          rejectedTasks.incrementAndGet();
+          throw new RejectedExecutionException("Worker pool "+name+
+                                               " is exhausted");
+      }
+    }
+    submit(task);
+  }
+
+  public boolean tryToExecute(WorkerTask task) {
+    if (!permits.tryAcquire()) {
+      return false;
+    }
+    try {
+      submit(task);
+    }
+    catch (RejectedExecutionException rex) {
+      return false;
+    }
+    return true;
+  }
+
+  private void submit(WorkerTask task) {
+    try {
+      executor.execute(new PoolTask(task));
+    }
+    catch (RejectedExecutionException rex) {
+      permits.release();
+      rejectedTasks.incrementAndGet();
+      throw rex;
+    }
+  }
+
+  /**
+   * Stops the pool gracefully. Tasks already submitted are executed. This
+   * method does not return until all tasks have been finished.
+   */
+  public void stop() {
+    executor.shutdown();
+    try {
+      while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Waiting for termination of worker pool "+name);
+        }
+      }
+    }
+    catch (InterruptedException iex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Cancels the pool non-blocking by interrupting the executing tasks.
+   * Waiting tasks are not executed.
+   */
+  public void cancel() {
+    executor.shutdownNow();
+  }
+
+  public boolean isIdle() {
+    return permits.availablePermits() == maxPendingTasks;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public RejectionPolicy getRejectionPolicy() {
+    return rejectionPolicy;
+  }
+
+  public int getMaxPendingTasks() {
+    return maxPendingTasks;
+  }
+
+  /**
+   * Returns the number of tasks executing or waiting for execution.
+   * @return
+   *    the number of pending tasks.
+   */
+  public int getPendingTaskCount() {
+    return maxPendingTasks - permits.availablePermits();
+  }
+
+  /**
+   * Returns the number of tasks that could not be executed by the executor
+   * because the pool was exhausted or shut down (including tasks run by the
+   * caller according to {@link RejectionPolicy#callerRuns}).
+   * @return
+   *    the number of rejected tasks.
+   */
+  public long getRejectedTaskCount() {
+    return rejectedTasks.get();
+  }
+
+  public String toString() {
+    return "ExecutorWorkerPool[name="+name+",pendingTasks="+
+        getPendingTaskCount()+",maxPendingTasks="+maxPendingTasks+
+        ",rejectionPolicy="+rejectionPolicy+",rejectedTasks="+
+        rejectedTasks.get()+"]";
+  }
+
+  class PoolTask implements Runnable {
+
+    private WorkerTask task;
+
+    PoolTask(WorkerTask task) {
+      this.task = task;
+    }
+
+    public void run() {
+      try {
+        task.run();
+      }
+      catch (RuntimeException ex) {
+        logger.error("Task "+task+" of worker pool "+name+" failed: "+
+                     ex.getMessage(), ex);
+      }
+      finally {
+        permits.release();
+      }
+    }
+  }
+
+  static class NamedThreadFactory implements java.util.concurrent.ThreadFactory {
+
+    private final String name;
+    private final AtomicInteger nextID = new AtomicInteger();
+
+    NamedThreadFactory(String name) {
+      this.name = name;
+    }
+
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, name+"."+nextID.getAndIncrement());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
@@ -28,8 +28,24 @@ import org.snmp4j.mp.PduHandle;
 import org.snmp4j.mp.StateReference;
 import org.snmp4j.mp.StatusInformation;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.snmp4j.asn1.BERCursor;
+import org.snmp4j.event.CounterEvent;
+import org.snmp4j.mp.CounterSupport;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.mp.SnmpConstants;
+
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
 import org.snmp4j.mp.PduHandleCallback;
+import org.snmp4j.transport.PooledBufferTransportMapping;
 
 /**
  * The <code>MultiThreadedMessageDispatcher</code> class is a decorator
@@ -37,21 +53,74 @@ import org.snmp4j.mp.PduHandleCallback;
  * message with a supplied <code>ThreadPool</code>. The processing is thus
  * parallelized on up to the size of the supplied thread pool threads.
  * <p>
- * In contrast to a {@link MessageDispatcherImpl} a
- * <code>MultiThreadedMessageDispatcher</code> copies the incoming
- * <code>ByteBuffer</code> for {@link #processMessage(TransportMapping
+ * With an {@link ExecutorWorkerPool} the number of messages waiting for
+ * processing can be bounded. Messages rejected by the worker pool
+ * (according to its {@link ExecutorWorkerPool.RejectionPolicy}) are dropped.
+ * <p>
+ * Alternatively, a bounded inbound queue can be placed between the
+ * transport mappings and the worker pool by
+ * {@link #MultiThreadedMessageDispatcher(WorkerPool, MessageDispatcher, int,
+ * InboundQueuePolicy)}. Then the receiving threads of the transport mappings
+ * never block on a busy worker pool. Instead, messages are dropped according
+ * to the {@link InboundQueuePolicy} when the queue is full. Dropped messages
+ * are counted by {@link SnmpConstants#snmp4jStatsInQueueDrops} and
+ * {@link SnmpConstants#snmp4jStatsInQueueResponseDrops} through the
+ * {@link CounterSupport}.
+ * <p>
+ * The incoming <code>ByteBuffer</code> of {@link #processMessage(TransportMapping
  * sourceTransport, Address incomingAddress, ByteBuffer wholeMessage,
- * TransportStateReference tmStateReference)} to allow
- * concurrent processing of the buffer.
+ * TransportStateReference tmStateReference)} is not copied. Instead, it is
+ * handed over to the worker thread that processes the message later:
+ * <ul>
+ * <li>If the source transport mapping is a
+ * {@link PooledBufferTransportMapping} and accepts to retain the buffer, the
+ * buffer is released to that transport mapping after the worker thread has
+ * processed the message, or when the message is dropped by the worker pool
+ * or the inbound queue, or is still queued when the dispatcher is
+ * stopped.</li>
+ * <li>Otherwise, the transport mapping must not reuse the buffer after
+ * <code>processMessage</code> returns, because it may still be waiting for
+ * or under processing.</li>
+ * </ul>
  *
  * @author Frank Fock
  * @version 2.0
  * @since 1.0.2
  */
-public class MultiThreadedMessageDispatcher implements MessageDispatcher {
+public class MultiThreadedMessageDispatcher
+    implements BatchMessageDispatcher {
+
+  private static final LogAdapter logger =
+      LogFactory.getLogger(MultiThreadedMessageDispatcher.class);
+
+  /**
+   * The <code>InboundQueuePolicy</code> determines which message is dropped
+   * when the inbound queue is full.
+   * @since 2.4
+   */
+  public enum InboundQueuePolicy {
+    /**
+     * Drop the message just received.
+     */
+    dropNewest,
+    /**
+     * Drop the oldest queued message.
+     */
+    dropOldest,
+    /**
+     * Process RESPONSE and REPORT messages (SNMPv3 messages without the
+     * reportable flag) before other messages. If the queue is full, a received
+     * response replaces the oldest queued request. Other messages are
+     * dropped when the queue is full.
+     */
+    prioritizeResponses
+  }
 
   private MessageDispatcher dispatcher;
   private WorkerPool threadPool;
+  private InboundQueue inboundQueue;
+  private CounterSupport counterSupport = CounterSupport.getInstance();
+  private final AtomicLong droppedMessages = new AtomicLong();
 
   /**
    * Creates a multi-threaded message dispatcher using the provided
@@ -72,6 +141,115 @@ public class MultiThreadedMessageDispatcher implements MessageDispatcher {
     this.dispatcher = decoratedDispatcher;
   }
 
+  /**
+   * Creates a multi-threaded message dispatcher with a bounded inbound queue.
+   * Incoming messages are added to the queue by the receiving thread of the
+   * transport mapping without blocking. A separate (daemon) thread submits
+   * queued messages to the worker pool.
+   *
+   * @param workerPool
+   *    a <code>WorkerPool</code> instance (that can be shared). <em>The worker
+   *    pool has to be stopped externally.</em>
+   * @param decoratedDispatcher
+   *    the decorated <code>MessageDispatcher</code> that must be
+   *    multi-threading safe.
+   * @param inboundQueueCapacity
+   *    the maximum number of messages waiting for a worker.
+   * @param inboundQueuePolicy
+   *    determines which messages are dropped if the inbound queue is full.
+   * @since 2.4
+   */
+  public MultiThreadedMessageDispatcher(WorkerPool workerPool,
+                                        MessageDispatcher decoratedDispatcher,
+                                        int inboundQueueCapacity,
+                                        InboundQueuePolicy inboundQueuePolicy) {
+    this(workerPool, decoratedDispatcher);
+    if (inboundQueueCapacity <= 0) {
+      throw new IllegalArgumentException("Inbound queue capacity must be > 0");
+    }
+    if (inboundQueuePolicy == null) {
+      throw new NullPointerException("Inbound queue policy must not be null");
+    }
+    this.inboundQueue =
+        new InboundQueue(inboundQueueCapacity, inboundQueuePolicy);
+    WorkerTask thread = SNMP4JSettings.getThreadFactory().
+        createWorkerThread("MTMD.InboundQueue", inboundQueue, true);
+    inboundQueue.thread = thread;
+    thread.run();
+  }
+
+  /**
+   * Stops the thread of the inbound queue (if any) and drops all queued
+   * messages. Messages received afterwards are dropped too.
+   * The worker pool is not stopped by this method.
+   * @since 2.4
+   */
+  public void stop() {
+    InboundQueue queue = inboundQueue;
+    if (queue != null) {
+      WorkerTask thread = queue.thread;
+      thread.terminate();
+      try {
+        thread.join();
+      }
+      catch (InterruptedException iex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of messages waiting in the inbound queue.
+   * @return
+   *    the current queue depth, or 0 if there is no inbound queue.
+   * @since 2.4
+   */
+  public int getInboundQueueSize() {
+    InboundQueue queue = inboundQueue;
+    return (queue == null) ? 0 : queue.size();
+  }
+
+  /**
+   * Returns the capacity of the inbound queue.
+   * @return
+   *    the maximum number of queued messages, or 0 if there is no inbound
+   *    queue.
+   * @since 2.4
+   */
+  public int getInboundQueueCapacity() {
+    InboundQueue queue = inboundQueue;
+    return (queue == null) ? 0 : queue.capacity;
+  }
+
+  /**
+   * Returns the number of incoming messages dropped by the inbound queue or
+   * rejected by the worker pool.
+   * @return
+   *    the number of dropped messages.
+   * @since 2.4
+   */
+  public long getDroppedMessages() {
+    return droppedMessages.get();
+  }
+
+  public CounterSupport getCounterSupport() {
+    return counterSupport;
+  }
+
+  /**
+   * Sets the counter support used to count dropped messages. By default,
+   * {@link CounterSupport#getInstance()} is used.
+   * @param counterSupport
+   *    a <code>CounterSupport</code> instance.
+   * @since 2.4
+   */
+  public void setCounterSupport(CounterSupport counterSupport) {
+    if (counterSupport == null) {
+      throw new NullPointerException();
+    }
+    this.counterSupport = counterSupport;
+  }
+
   public int getNextRequestID() {
     return dispatcher.getNextRequestID();
   }
@@ -127,6 +305,41 @@ public class MultiThreadedMessageDispatcher implements MessageDispatcher {
     return dispatcher.sendPdu(transportMapping, target, pdu, expectResponse, callback);
   }
 
+  /**
+   * Sends the PDUs of a request batch through the decorated dispatcher. If
+   * that dispatcher is not a {@link BatchMessageDispatcher}, the requests
+   * are sent one by one.
+   *
+   * @param batch
+   *    the requests to send.
+   * @param expectResponse
+   *    <code>true</code> if responses are expected and state references should
+   *    be saved (if needed for the message processing models).
+   * @return
+   *    the number of messages that have been sent successfully.
+   * @since 2.4
+   */
+  public int sendPdus(RequestBatch batch, boolean expectResponse) {
+    if (dispatcher instanceof BatchMessageDispatcher) {
+      return ((BatchMessageDispatcher)dispatcher).sendPdus(batch,
+                                                           expectResponse);
+    }
+    int sent = 0;
+    for (RequestBatch.Request request : batch.getRequests()) {
+      try {
+        request.setPduHandle(
+            dispatcher.sendPdu(request.getTransport(), request.getTarget(),
+                               request.getPdu(), expectResponse,
+                               request.getPduHandleCallback()));
+        sent++;
+      }
+      catch (MessageException mex) {
+        request.setException(mex);
+      }
+    }
+    return sent;
+  }
+
   public int returnResponsePdu(int messageProcessingModel,
                                int securityModel,
                                byte[] securityName,
@@ -157,30 +370,159 @@ public class MultiThreadedMessageDispatcher implements MessageDispatcher {
   public void processMessage(TransportMapping sourceTransport,
                              Address incomingAddress, ByteBuffer wholeMessage,
                              TransportStateReference tmStateReference) {
+    PooledBufferTransportMapping bufferOwner = null;
+    if ((sourceTransport instanceof PooledBufferTransportMapping) &&
+        ((PooledBufferTransportMapping)sourceTransport).retainBuffer(wholeMessage)) {
+      bufferOwner = (PooledBufferTransportMapping)sourceTransport;
+    }
     MessageTask task =
-        new MessageTask(sourceTransport, incomingAddress, wholeMessage, tmStateReference);
-    threadPool.execute(task);
+        new MessageTask(sourceTransport, incomingAddress, wholeMessage,
+                        tmStateReference, bufferOwner);
+    InboundQueue queue = inboundQueue;
+    if (queue != null) {
+      queue.add(task);
+      return;
+    }
+    try {
+      threadPool.execute(task);
+    }
+    catch (RejectedExecutionException rex) {
+      // the worker pool is exhausted, drop the message like a lost packet
+      task.discard();
+      fireMessageDropped(task, false);
+      logger.warn("Dropped message from "+incomingAddress+": "+
+                  rex.getMessage());
+    }
+    catch (RuntimeException rex) {
+      task.discard();
+      throw rex;
+    }
+  }
+
+  private void fireMessageDropped(MessageTask task, boolean response) {
+    droppedMessages.incrementAndGet();
+    counterSupport.fireIncrementCounter(
+        new CounterEvent(this, SnmpConstants.snmp4jStatsInQueueDrops));
+    if (response) {
+      counterSupport.fireIncrementCounter(
+          new CounterEvent(this, SnmpConstants.snmp4jStatsInQueueResponseDrops));
+    }
+    if (logger.isDebugEnabled()) {
+      logger.debug("Dropped message from "+task.incomingAddress);
+    }
+  }
+
+  /**
+   * Checks whether the supplied message contains a RESPONSE or REPORT PDU
+   * without decoding the whole message. For SNMPv3 the reportable flag is
+   * checked, because the scoped PDU might be encrypted.
+   *
+   * @param message
+   *    the BER encoded message. Its position is not modified.
+   * @return
+   *    <code>true</code> if the message is (most likely) a response.
+   */
+  static boolean isResponse(ByteBuffer message) {
+    try {
+      BERCursor cursor = new BERCursor(message);
+      cursor.next();
+      cursor.enter();
+      cursor.next();
+      int version = cursor.getValueAsInteger();
+      if (version == SnmpConstants.version3) {
+        // msgID, msgMaxSize, and msgFlags of msgGlobalData
+        cursor.next();
+        cursor.enter();
+        cursor.next();
+        cursor.next();
+        cursor.next();
+        return (cursor.getLength() == 1) &&
+            ((cursor.getBuffer().get(cursor.getValueOffset()) &
+              MPv3.MPv3_REPORTABLE_FLAG) == 0);
+      }
+      // skip community and check PDU type
+      cursor.next();
+      // PDU type constants are sign extended
+      int pduType = (byte) cursor.next();
+      return (pduType == PDU.RESPONSE) || (pduType == PDU.REPORT);
+    }
+    catch (IOException iox) {
+      return false;
+    }
   }
 
-  class MessageTask implements WorkerTask {
+  class MessageTask implements DiscardableWorkerTask {
     private TransportMapping sourceTransport;
     private Address incomingAddress;
     private ByteBuffer wholeMessage;
     private TransportStateReference tmStateReference;
+    private PooledBufferTransportMapping bufferOwner;
 
     public MessageTask(TransportMapping sourceTransport,
                        Address incomingAddress,
                        ByteBuffer wholeMessage,
                        TransportStateReference tmStateReference) {
+      this(sourceTransport, incomingAddress, wholeMessage, tmStateReference,
+           null);
+    }
+
+    /**
+     * Creates a message task that releases the message buffer to its owning
+     * transport mapping after the message has been processed.
+     *
+     * @param sourceTransport
+     *    the source transport mapping.
+     * @param incomingAddress
+     *    the source address of the message.
+     * @param wholeMessage
+     *    the message buffer.
+     * @param tmStateReference
+     *    the transport state reference.
+     * @param bufferOwner
+     *    the transport mapping that retained <code>wholeMessage</code> or
+     *    <code>null</code> if the buffer does not need to be released.
+     * @since 2.4
+     */
+    public MessageTask(TransportMapping sourceTransport,
+                       Address incomingAddress,
+                       ByteBuffer wholeMessage,
+                       TransportStateReference tmStateReference,
+                       PooledBufferTransportMapping bufferOwner) {
       this.sourceTransport = sourceTransport;
       this.incomingAddress = incomingAddress;
       this.wholeMessage = wholeMessage;
       this.tmStateReference = tmStateReference;
+      this.bufferOwner = bufferOwner;
     }
 
     public void run() {
-      dispatcher.processMessage(sourceTransport, incomingAddress, wholeMessage,
-                                tmStateReference);
+      try {
+        dispatcher.processMessage(sourceTransport, incomingAddress, wholeMessage,
+                                  tmStateReference);
+      }
+      finally {
+        if (bufferOwner != null) {
+          bufferOwner.releaseBuffer(wholeMessage);
+        }
+      }
+    }
+
+    /**
+     * Releases the resources of a message that is not processed.
+     */
+    void discard() {
+      if (bufferOwner != null) {
+        bufferOwner.releaseBuffer(wholeMessage);
+      }
+    }
+
+    /**
+     * Releases the message buffer and counts the message as dropped when the
+     * worker pool discards this task.
+     */
+    public void discarded() {
+      discard();
+      fireMessageDropped(this, false);
     }
 
     public void terminate() {
@@ -193,4 +535,140 @@ public class MultiThreadedMessageDispatcher implements MessageDispatcher {
     }
 
   }
+
+  /**
+   * The <code>InboundQueue</code> buffers incoming messages and submits them
+   * to the worker pool from its own thread.
+   */
+  class InboundQueue implements WorkerTask {
+
+    private final int capacity;
+    private final InboundQueuePolicy policy;
+    private final ArrayDeque<MessageTask> responses;
+    private final ArrayDeque<MessageTask> requests;
+    private volatile boolean stop;
+    private WorkerTask thread;
+
+    InboundQueue(int capacity, InboundQueuePolicy policy) {
+      this.capacity = capacity;
+      this.policy = policy;
+      this.requests = new ArrayDeque<MessageTask>(Math.min(capacity, 1024));
+      this.responses = (policy == InboundQueuePolicy.prioritizeResponses) ?
+          new ArrayDeque<MessageTask>(Math.min(capacity, 1024)) : requests;
+    }
+
+    void add(MessageTask task) {
+      boolean response = (policy == InboundQueuePolicy.prioritizeResponses) &&
+          isResponse(task.wholeMessage);
+      MessageTask dropped = null;
+      boolean droppedResponse = false;
+      synchronized (this) {
+        if (stop) {
+          dropped = task;
+        }
+        else if (size() < capacity) {
+          (response ? responses : requests).add(task);
+          notify();
+        }
+        else {
+          switch (policy) {
+            case dropOldest:
+              dropped = requests.poll();
+              requests.add(task);
+              break;
+            case prioritizeResponses:
+              if (response && !requests.isEmpty()) {
+                dropped = requests.poll();
+                responses.add(task);
+              }
+              else {
+                dropped = task;
+                droppedResponse = response;
+              }
+              break;
+            default:
+              dropped = task;
+          }
+        }
+      }
+      if (dropped != null) {
+        dropped.discard();
+        fireMessageDropped(dropped, droppedResponse);
+      }
+    }
+
+    synchronized int size() {
+      return (responses == requests) ?
+          requests.size() : responses.size() + requests.size();
+    }
+
+    private synchronized MessageTask take() throws InterruptedException {
+      while (!stop) {
+        MessageTask task = responses.poll();
+        if (task == null) {
+          task = requests.poll();
+        }
+        if (task != null) {
+          return task;
+        }
+        wait();
+      }
+      return null;
+    }
+
+    public void run() {
+      try {
+        MessageTask task;
+        while ((task = take()) != null) {
+          try {
+            threadPool.execute(task);
+          }
+          catch (RejectedExecutionException rex) {
+            task.discard();
+            fireMessageDropped(task, false);
+          }
+          catch (RuntimeException rex) {
+            task.discard();
+            logger.error("Failed to process message from "+
+                         task.incomingAddress+": "+rex.getMessage(), rex);
+          }
+        }
+      }
+      catch (InterruptedException iex) {
+        if (!stop) {
+          logger.warn("Inbound queue thread interrupted");
+        }
+      }
+      finally {
+        discardAll();
+      }
+    }
+
+    private void discardAll() {
+      List<MessageTask> tasks;
+      synchronized (this) {
+        stop = true;
+        tasks = new ArrayList<MessageTask>(responses);
+        if (responses != requests) {
+          tasks.addAll(requests);
+        }
+        responses.clear();
+        requests.clear();
+      }
+      for (MessageTask task : tasks) {
+        task.discard();
+      }
+    }
+
+    public synchronized void terminate() {
+      stop = true;
+      notify();
+    }
+
+    public void join() throws InterruptedException {
+    }
+
+    public void interrupt() {
+    }
+  }
 }
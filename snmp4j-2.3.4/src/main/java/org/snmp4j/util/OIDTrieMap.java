@@ -0,0 +1,1209 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - OIDTrieMap.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.util.*;
+
+import org.snmp4j.smi.OID;
+
+/**
+ * An <code>OIDTrieMap</code> is a {@link NavigableMap} with {@link OID} keys
+ * which stores its entries in a compressed prefix tree (radix trie) of
+ * sub-identifiers instead of a balanced binary tree like a {@link TreeMap}.
+ * Looking up a key, or its successor as needed by a GETNEXT operation,
+ * visits each sub-identifier of the key at most once instead of comparing
+ * the whole key with O(log n) other keys.
+ * <p>
+ * The entries are ordered like {@link OID#compareTo(org.snmp4j.smi.Variable)}
+ * orders OIDs, that is lexicographically with unsigned sub-identifiers.
+ * In addition to the <code>NavigableMap</code> operations, the map supports
+ * a longest prefix match by {@link #longestPrefixEntry(OID)} and a view of
+ * all entries of a subtree by {@link #prefixMap(OID)}.
+ * <p>
+ * As for <code>TreeMap</code>, the keys must not be modified while they are
+ * contained in the map, <code>null</code> keys are not supported, and the
+ * map is not synchronized. The iterators of the map and its views are
+ * fail-fast.
+ *
+ * @param <V>
+ *    the value type.
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class OIDTrieMap<V> extends AbstractMap<OID,V>
+    implements NavigableMap<OID,V> {
+
+  private Node<V> root = new Node<V>(null, new int[0], 0);
+  private int size;
+  private int modCount;
+
+  private transient EntrySet entrySet;
+  private transient KeySet<OID> keySet;
+  private transient NavigableMap<OID,V> descendingMap;
+
+  /**
+   * Creates an empty map.
+   */
+  public OIDTrieMap() {
+  }
+
+  /**
+   * Creates a map with the entries of the given map.
+   * @param map
+   *    a map with <code>OID</code> keys.
+   */
+  public OIDTrieMap(Map<? extends OID, ? extends V> map) {
+    putAll(map);
+  }
+
+  /**
+   * A trie node. The sub-identifiers of the OID represented by a node are
+   * the first <code>length</code> elements of <code>path</code>, which is
+   * the value of one of the keys in the node's subtree. The children are
+   * sorted by their sub-identifier at index <code>length</code> of the
+   * parent node. A node is an entry of the map if <code>key</code> is not
+   * <code>null</code>.
+   * @param <V>
+   *    the value type.
+   */
+  static final class Node<V> implements Map.Entry<OID,V> {
+    Node<V> parent;
+    int[] path;
+    final int length;
+    Node<V>[] children;
+    int childCount;
+    OID key;
+    V value;
+
+    Node(Node<V> parent, int[] path, int length) {
+      this.parent = parent;
+      this.path = path;
+      this.length = length;
+    }
+
+    public OID getKey() {
+      return key;
+    }
+
+    public V getValue() {
+      return value;
+    }
+
+    public V setValue(V value) {
+      V oldValue = this.value;
+      this.value = value;
+      return oldValue;
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?,?> e = (Map.Entry<?,?>)o;
+      return key.equals(e.getKey()) &&
+          ((value == null) ? (e.getValue() == null) : value.equals(e.getValue()));
+    }
+
+    public int hashCode() {
+      return key.hashCode() ^ ((value == null) ? 0 : value.hashCode());
+    }
+
+    public String toString() {
+      return key+"="+value;
+    }
+  }
+
+  private static int compareSubID(int a, int b) {
+    return (a == b) ? 0 : (((a & 0xFFFFFFFFL) < (b & 0xFFFFFFFFL)) ? -1 : 1);
+  }
+
+  /**
+   * Searches the child of the given node whose sub-identifier at index
+   * <code>node.length</code> equals <code>subID</code>.
+   * @return
+   *    the index of the child or <code>-(insertion point) - 1</code>.
+   */
+  private static int childIndex(Node<?> node, int subID) {
+    int low = 0;
+    int high = node.childCount - 1;
+    int depth = node.length;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int c = compareSubID(node.children[mid].path[depth], subID);
+      if (c < 0) {
+        low = mid + 1;
+      }
+      else if (c > 0) {
+        high = mid - 1;
+      }
+      else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <V> void insertChild(Node<V> node, int index, Node<V> child) {
+    if (node.children == null) {
+      node.children = new Node[2];
+    }
+    else if (node.childCount == node.children.length) {
+      Node<V>[] c = new Node[node.childCount * 2];
+      System.arraycopy(node.children, 0, c, 0, node.childCount);
+      node.children = c;
+    }
+    System.arraycopy(node.children, index, node.children, index + 1,
+                     node.childCount - index);
+    node.children[index] = child;
+    node.childCount++;
+  }
+
+  private static <V> void removeChild(Node<V> node, int index) {
+    node.childCount--;
+    System.arraycopy(node.children, index + 1, node.children, index,
+                     node.childCount - index);
+    node.children[node.childCount] = null;
+    if (node.childCount == 0) {
+      node.children = null;
+    }
+  }
+
+  private static <V> Node<V> lastInSubtree(Node<V> node) {
+    while (node.childCount > 0) {
+      node = node.children[node.childCount - 1];
+    }
+    return node;
+  }
+
+  private Node<V> afterSubtree(Node<V> node) {
+    while (node != root) {
+      Node<V> parent = node.parent;
+      int i = childIndex(parent, node.path[parent.length]) + 1;
+      if (i < parent.childCount) {
+        return parent.children[i];
+      }
+      node = parent;
+    }
+    return null;
+  }
+
+  private Node<V> nextNode(Node<V> node) {
+    return (node.childCount > 0) ? node.children[0] : afterSubtree(node);
+  }
+
+  private Node<V> prevNode(Node<V> node) {
+    if (node == root) {
+      return null;
+    }
+    Node<V> parent = node.parent;
+    int i = childIndex(parent, node.path[parent.length]);
+    return (i > 0) ? lastInSubtree(parent.children[i - 1]) : parent;
+  }
+
+  Node<V> successor(Node<V> node) {
+    do {
+      node = nextNode(node);
+    }
+    while ((node != null) && (node.key == null));
+    return node;
+  }
+
+  Node<V> predecessor(Node<V> node) {
+    do {
+      node = prevNode(node);
+    }
+    while ((node != null) && (node.key == null));
+    return node;
+  }
+
+  Node<V> firstNode() {
+    return (root.key != null) ? root : successor(root);
+  }
+
+  Node<V> lastNode() {
+    Node<V> node = lastInSubtree(root);
+    return (node.key != null) ? node : predecessor(node);
+  }
+
+  /**
+   * Returns the first index at which the label of <code>child</code> differs
+   * from <code>k</code>, or the end of the label or of <code>k</code>.
+   */
+  private static int matchLabel(Node<?> parent, Node<?> child, int[] k) {
+    int end = Math.min(child.length, k.length);
+    int p = parent.length + 1;
+    int[] path = child.path;
+    while ((p < end) && (path[p] == k[p])) {
+      p++;
+    }
+    return p;
+  }
+
+  private Node<V> getNode(Object key) {
+    int[] k = ((OID)key).getValue();
+    Node<V> node = root;
+    while (node.length < k.length) {
+      int i = childIndex(node, k[node.length]);
+      if (i < 0) {
+        return null;
+      }
+      Node<V> child = node.children[i];
+      if (matchLabel(node, child, k) != child.length) {
+        return null;
+      }
+      node = child;
+    }
+    return (node.key != null) ? node : null;
+  }
+
+  /**
+   * Gets the entry with the smallest key greater than (or equal to) the
+   * given key.
+   */
+  Node<V> ceilingNode(OID key, boolean inclusive) {
+    int[] k = key.getValue();
+    Node<V> node = root;
+    Node<V> result;
+    for (;;) {
+      if (node.length == k.length) {
+        result = (inclusive) ? node : nextNode(node);
+        break;
+      }
+      int i = childIndex(node, k[node.length]);
+      if (i < 0) {
+        i = -(i + 1);
+        result = (i < node.childCount) ? node.children[i] : afterSubtree(node);
+        break;
+      }
+      Node<V> child = node.children[i];
+      int p = matchLabel(node, child, k);
+      if (p == child.length) {
+        node = child;
+      }
+      else {
+        // the whole subtree of child is either greater or less than key
+        result = ((p == k.length) || (compareSubID(child.path[p], k[p]) > 0)) ?
+            child : afterSubtree(child);
+        break;
+      }
+    }
+    while ((result != null) && (result.key == null)) {
+      result = nextNode(result);
+    }
+    return result;
+  }
+
+  /**
+   * Gets the entry with the greatest key less than (or equal to) the given
+   * key.
+   */
+  Node<V> floorNode(OID key, boolean inclusive) {
+    int[] k = key.getValue();
+    Node<V> node = root;
+    Node<V> result;
+    for (;;) {
+      if (node.length == k.length) {
+        result = (inclusive) ? node : prevNode(node);
+        break;
+      }
+      int i = childIndex(node, k[node.length]);
+      if (i < 0) {
+        i = -(i + 1);
+        result = (i > 0) ? lastInSubtree(node.children[i - 1]) : node;
+        break;
+      }
+      Node<V> child = node.children[i];
+      int p = matchLabel(node, child, k);
+      if (p == child.length) {
+        node = child;
+      }
+      else {
+        // the whole subtree of child is either greater or less than key
+        result = ((p < k.length) && (compareSubID(child.path[p], k[p]) < 0)) ?
+            lastInSubtree(child) : prevNode(child);
+        break;
+      }
+    }
+    while ((result != null) && (result.key == null)) {
+      result = prevNode(result);
+    }
+    return result;
+  }
+
+  /**
+   * Gets the root of the subtree with all OIDs starting with the given
+   * prefix.
+   * @return
+   *    the topmost node whose OID starts with <code>prefix</code> or
+   *    <code>null</code> if there is no such node.
+   */
+  private Node<V> subtreeNode(OID prefix) {
+    int[] k = prefix.getValue();
+    Node<V> node = root;
+    while (node.length < k.length) {
+      int i = childIndex(node, k[node.length]);
+      if (i < 0) {
+        return null;
+      }
+      Node<V> child = node.children[i];
+      int p = matchLabel(node, child, k);
+      if (p == k.length) {
+        return child;
+      }
+      if (p != child.length) {
+        return null;
+      }
+      node = child;
+    }
+    return node;
+  }
+
+  Node<V> lastNodeWithPrefix(OID prefix) {
+    Node<V> node = subtreeNode(prefix);
+    if (node == null) {
+      return null;
+    }
+    Node<V> last = lastInSubtree(node);
+    return (last.key != null) ? last : predecessor(last);
+  }
+
+  /**
+   * Removes the entry of the given node from the trie. The node is detached
+   * from the trie and keeps its key and value, so that entries returned by an
+   * iterator remain valid after their removal. Nodes that are no longer
+   * needed to keep the trie compressed are removed or merged.
+   */
+  void deleteNode(Node<V> node) {
+    int[] released = node.key.getValue();
+    size--;
+    modCount++;
+    Node<V> parent = node.parent;
+    if (node == root) {
+      root = copyBranch(node, null, node.path);
+      node.children = null;
+      node.childCount = 0;
+      return;
+    }
+    int index = childIndex(parent, node.path[parent.length]);
+    if (node.childCount == 0) {
+      removeChild(parent, index);
+      if ((parent != root) && (parent.key == null) && (parent.childCount == 1)) {
+        Node<V> child = parent.children[0];
+        Node<V> grandParent = parent.parent;
+        grandParent.children[childIndex(grandParent,
+                                        parent.path[grandParent.length])] = child;
+        child.parent = grandParent;
+        parent.parent = null;
+        parent = grandParent;
+      }
+    }
+    else if (node.childCount == 1) {
+      Node<V> child = node.children[0];
+      parent.children[index] = child;
+      child.parent = parent;
+    }
+    else {
+      parent.children[index] = copyBranch(node, parent, node.children[0].path);
+    }
+    node.parent = null;
+    node.children = null;
+    node.childCount = 0;
+    // do not keep the sub-identifier array of a removed key referenced
+    for (; parent != root; parent = parent.parent) {
+      if (parent.path == released) {
+        parent.path = (parent.childCount > 0) ?
+            parent.children[0].path : parent.key.getValue();
+      }
+    }
+  }
+
+  private static <V> Node<V> copyBranch(Node<V> node, Node<V> parent,
+                                        int[] path) {
+    Node<V> branch = new Node<V>(parent, path, node.length);
+    branch.children = node.children;
+    branch.childCount = node.childCount;
+    for (int i=0; i<branch.childCount; i++) {
+      branch.children[i].parent = branch;
+    }
+    return branch;
+  }
+
+  static <V> Map.Entry<OID,V> exportEntry(Node<V> node) {
+    return (node == null) ?
+        null : new AbstractMap.SimpleImmutableEntry<OID,V>(node.key, node.value);
+  }
+
+  static OID keyOrNull(Node<?> node) {
+    return (node == null) ? null : node.key;
+  }
+
+  static OID key(Node<?> node) {
+    if (node == null) {
+      throw new NoSuchElementException();
+    }
+    return node.key;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean containsKey(Object key) {
+    return getNode(key) != null;
+  }
+
+  public V get(Object key) {
+    Node<V> node = getNode(key);
+    return (node == null) ? null : node.value;
+  }
+
+  public V put(OID key, V value) {
+    int[] k = key.getValue();
+    Node<V> node = root;
+    while (node.length < k.length) {
+      int i = childIndex(node, k[node.length]);
+      if (i < 0) {
+        Node<V> leaf = new Node<V>(node, k, k.length);
+        insertChild(node, -(i + 1), leaf);
+        return setEntry(leaf, key, value);
+      }
+      Node<V> child = node.children[i];
+      int p = matchLabel(node, child, k);
+      if (p == child.length) {
+        node = child;
+      }
+      else {
+        // split the label of child at p
+        Node<V> split = new Node<V>(node, child.path, p);
+        node.children[i] = split;
+        child.parent = split;
+        insertChild(split, 0, child);
+        modCount++;
+        if (p == k.length) {
+          return setEntry(split, key, value);
+        }
+        Node<V> leaf = new Node<V>(split, k, k.length);
+        insertChild(split, (compareSubID(k[p], child.path[p]) < 0) ? 0 : 1, leaf);
+        return setEntry(leaf, key, value);
+      }
+    }
+    return setEntry(node, key, value);
+  }
+
+  private V setEntry(Node<V> node, OID key, V value) {
+    if (node.key == null) {
+      node.key = key;
+      node.value = value;
+      size++;
+      modCount++;
+      return null;
+    }
+    return node.setValue(value);
+  }
+
+  public V remove(Object key) {
+    Node<V> node = getNode(key);
+    if (node == null) {
+      return null;
+    }
+    V oldValue = node.value;
+    deleteNode(node);
+    return oldValue;
+  }
+
+  public void clear() {
+    modCount++;
+    size = 0;
+    root = new Node<V>(null, new int[0], 0);
+  }
+
+  /**
+   * Returns the entry whose key is the longest prefix of (or equal to) the
+   * given OID.
+   * @param oid
+   *    an OID.
+   * @return
+   *    the entry with the longest key that is a prefix of <code>oid</code> or
+   *    <code>null</code> if no key of this map is a prefix of
+   *    <code>oid</code>.
+   */
+  public Map.Entry<OID,V> longestPrefixEntry(OID oid) {
+    int[] k = oid.getValue();
+    Node<V> node = root;
+    Node<V> best = (root.key != null) ? root : null;
+    while (node.length < k.length) {
+      int i = childIndex(node, k[node.length]);
+      if (i < 0) {
+        break;
+      }
+      Node<V> child = node.children[i];
+      if ((child.length > k.length) ||
+          (matchLabel(node, child, k) != child.length)) {
+        break;
+      }
+      node = child;
+      if (node.key != null) {
+        best = node;
+      }
+    }
+    return exportEntry(best);
+  }
+
+  /**
+   * Returns a view of the entries of this map whose keys start with the given
+   * prefix, including the entry with the prefix itself as key.
+   * @param prefix
+   *    the OID of the subtree.
+   * @return
+   *    a view of the subtree which is backed by this map.
+   */
+  public NavigableMap<OID,V> prefixMap(OID prefix) {
+    return new SubMap(null, true, null, true, new OID(prefix), false);
+  }
+
+  public Map.Entry<OID,V> firstEntry() {
+    return exportEntry(firstNode());
+  }
+
+  public Map.Entry<OID,V> lastEntry() {
+    return exportEntry(lastNode());
+  }
+
+  public Map.Entry<OID,V> pollFirstEntry() {
+    return pollNode(firstNode());
+  }
+
+  public Map.Entry<OID,V> pollLastEntry() {
+    return pollNode(lastNode());
+  }
+
+  Map.Entry<OID,V> pollNode(Node<V> node) {
+    Map.Entry<OID,V> entry = exportEntry(node);
+    if (node != null) {
+      deleteNode(node);
+    }
+    return entry;
+  }
+
+  public OID firstKey() {
+    return key(firstNode());
+  }
+
+  public OID lastKey() {
+    return key(lastNode());
+  }
+
+  public Map.Entry<OID,V> lowerEntry(OID key) {
+    return exportEntry(floorNode(key, false));
+  }
+
+  public OID lowerKey(OID key) {
+    return keyOrNull(floorNode(key, false));
+  }
+
+  public Map.Entry<OID,V> floorEntry(OID key) {
+    return exportEntry(floorNode(key, true));
+  }
+
+  public OID floorKey(OID key) {
+    return keyOrNull(floorNode(key, true));
+  }
+
+  public Map.Entry<OID,V> ceilingEntry(OID key) {
+    return exportEntry(ceilingNode(key, true));
+  }
+
+  public OID ceilingKey(OID key) {
+    return keyOrNull(ceilingNode(key, true));
+  }
+
+  public Map.Entry<OID,V> higherEntry(OID key) {
+    return exportEntry(ceilingNode(key, false));
+  }
+
+  public OID higherKey(OID key) {
+    return keyOrNull(ceilingNode(key, false));
+  }
+
+  public Comparator<? super OID> comparator() {
+    return null;
+  }
+
+  public Set<Map.Entry<OID,V>> entrySet() {
+    EntrySet es = entrySet;
+    return (es != null) ? es : (entrySet = new EntrySet(null));
+  }
+
+  public Set<OID> keySet() {
+    return navigableKeySet();
+  }
+
+  public NavigableSet<OID> navigableKeySet() {
+    KeySet<OID> ks = keySet;
+    return (ks != null) ? ks : (keySet = new KeySet<OID>(this));
+  }
+
+  public NavigableSet<OID> descendingKeySet() {
+    return descendingMap().navigableKeySet();
+  }
+
+  public NavigableMap<OID,V> descendingMap() {
+    NavigableMap<OID,V> dm = descendingMap;
+    return (dm != null) ? dm :
+        (descendingMap = new SubMap(null, true, null, true, null, true));
+  }
+
+  public NavigableMap<OID,V> subMap(OID fromKey, boolean fromInclusive,
+                                    OID toKey, boolean toInclusive) {
+    if (fromKey.compareTo(toKey) > 0) {
+      throw new IllegalArgumentException("fromKey > toKey");
+    }
+    return new SubMap(fromKey, fromInclusive, toKey, toInclusive, null, false);
+  }
+
+  public NavigableMap<OID,V> headMap(OID toKey, boolean inclusive) {
+    return new SubMap(null, true, toKey, inclusive, null, false);
+  }
+
+  public NavigableMap<OID,V> tailMap(OID fromKey, boolean inclusive) {
+    return new SubMap(fromKey, inclusive, null, true, null, false);
+  }
+
+  public SortedMap<OID,V> subMap(OID fromKey, OID toKey) {
+    return subMap(fromKey, true, toKey, false);
+  }
+
+  public SortedMap<OID,V> headMap(OID toKey) {
+    return headMap(toKey, false);
+  }
+
+  public SortedMap<OID,V> tailMap(OID fromKey) {
+    return tailMap(fromKey, true);
+  }
+
+  /**
+   * Iterates over the entries of the map or of a view in ascending or
+   * descending order.
+   */
+  final class EntryIterator implements Iterator<Map.Entry<OID,V>> {
+    private final SubMap range;
+    private final boolean descending;
+    private Node<V> next;
+    private Node<V> lastReturned;
+    private int expectedModCount = modCount;
+
+    EntryIterator(Node<V> first, SubMap range, boolean descending) {
+      this.next = first;
+      this.range = range;
+      this.descending = descending;
+    }
+
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    public Map.Entry<OID,V> next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      lastReturned = next;
+      next = (descending) ? predecessor(next) : successor(next);
+      if ((next != null) && (range != null) &&
+          ((descending) ? range.tooLow(next.key) : range.tooHigh(next.key))) {
+        next = null;
+      }
+      return lastReturned;
+    }
+
+    public void remove() {
+      if (lastReturned == null) {
+        throw new IllegalStateException();
+      }
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      deleteNode(lastReturned);
+      lastReturned = null;
+      expectedModCount = modCount;
+    }
+  }
+
+  /**
+   * The entry set of the map or of a view.
+   */
+  final class EntrySet extends AbstractSet<Map.Entry<OID,V>> {
+    private final SubMap range;
+
+    EntrySet(SubMap range) {
+      this.range = range;
+    }
+
+    public Iterator<Map.Entry<OID,V>> iterator() {
+      if (range == null) {
+        return new EntryIterator(firstNode(), null, false);
+      }
+      return new EntryIterator((range.descending) ?
+                               range.absHighest() : range.absLowest(),
+                               range, range.descending);
+    }
+
+    public int size() {
+      if (range == null) {
+        return size;
+      }
+      int n = 0;
+      for (Iterator<Map.Entry<OID,V>> it = iterator(); it.hasNext(); it.next()) {
+        n++;
+      }
+      return n;
+    }
+
+    public boolean isEmpty() {
+      return (range == null) ? (size == 0) : (range.absLowest() == null);
+    }
+
+    public boolean contains(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?,?> entry = (Map.Entry<?,?>)o;
+      if (!(entry.getKey() instanceof OID) ||
+          ((range != null) && !range.inRange((OID)entry.getKey()))) {
+        return false;
+      }
+      Node<V> node = getNode(entry.getKey());
+      return (node != null) && node.equals(entry);
+    }
+
+    public boolean remove(Object o) {
+      if (contains(o)) {
+        deleteNode(getNode(((Map.Entry<?,?>)o).getKey()));
+        return true;
+      }
+      return false;
+    }
+
+    public void clear() {
+      if (range == null) {
+        OIDTrieMap.this.clear();
+      }
+      else {
+        super.clear();
+      }
+    }
+  }
+
+  /**
+   * A range, subtree, and/or descending view of the map.
+   */
+  final class SubMap extends AbstractMap<OID,V> implements NavigableMap<OID,V> {
+    private final OID lo;
+    private final boolean loInclusive;
+    private final OID hi;
+    private final boolean hiInclusive;
+    private final OID prefix;
+    final boolean descending;
+
+    private transient EntrySet entrySet;
+
+    SubMap(OID lo, boolean loInclusive, OID hi, boolean hiInclusive,
+           OID prefix, boolean descending) {
+      this.lo = lo;
+      this.loInclusive = loInclusive;
+      this.hi = hi;
+      this.hiInclusive = hiInclusive;
+      this.prefix = prefix;
+      this.descending = descending;
+    }
+
+    boolean tooLow(OID key) {
+      if (lo != null) {
+        int c = key.compareTo(lo);
+        if ((c < 0) || ((c == 0) && !loInclusive)) {
+          return true;
+        }
+      }
+      return (prefix != null) && (key.compareTo(prefix) < 0);
+    }
+
+    boolean tooHigh(OID key) {
+      if (hi != null) {
+        int c = key.compareTo(hi);
+        if ((c > 0) || ((c == 0) && !hiInclusive)) {
+          return true;
+        }
+      }
+      return (prefix != null) && !key.startsWith(prefix) &&
+          (key.compareTo(prefix) > 0);
+    }
+
+    boolean inRange(OID key) {
+      return !tooLow(key) && !tooHigh(key);
+    }
+
+    private boolean inClosedRange(OID key) {
+      return ((lo == null) || (key.compareTo(lo) >= 0)) &&
+          ((hi == null) || (key.compareTo(hi) <= 0)) &&
+          ((prefix == null) || key.startsWith(prefix));
+    }
+
+    private boolean inRange(OID key, boolean inclusive) {
+      return (inclusive) ? inRange(key) : inClosedRange(key);
+    }
+
+    Node<V> absLowest() {
+      Node<V> node = (lo == null) ? firstNode() : ceilingNode(lo, loInclusive);
+      if ((node != null) && (prefix != null) && tooLow(node.key)) {
+        node = ceilingNode(prefix, true);
+      }
+      return ((node == null) || tooHigh(node.key)) ? null : node;
+    }
+
+    Node<V> absHighest() {
+      Node<V> node = (hi == null) ? lastNode() : floorNode(hi, hiInclusive);
+      if ((node != null) && (prefix != null) && tooHigh(node.key)) {
+        node = lastNodeWithPrefix(prefix);
+      }
+      return ((node == null) || tooLow(node.key)) ? null : node;
+    }
+
+    private Node<V> absCeiling(OID key, boolean inclusive) {
+      if (tooLow(key)) {
+        return absLowest();
+      }
+      Node<V> node = ceilingNode(key, inclusive);
+      return ((node == null) || tooHigh(node.key)) ? null : node;
+    }
+
+    private Node<V> absFloor(OID key, boolean inclusive) {
+      if (tooHigh(key)) {
+        return absHighest();
+      }
+      Node<V> node = floorNode(key, inclusive);
+      return ((node == null) || tooLow(node.key)) ? null : node;
+    }
+
+    private Node<V> first() {
+      return (descending) ? absHighest() : absLowest();
+    }
+
+    private Node<V> last() {
+      return (descending) ? absLowest() : absHighest();
+    }
+
+    private Node<V> ceiling(OID key, boolean inclusive) {
+      return (descending) ? absFloor(key, inclusive) : absCeiling(key, inclusive);
+    }
+
+    private Node<V> floor(OID key, boolean inclusive) {
+      return (descending) ? absCeiling(key, inclusive) : absFloor(key, inclusive);
+    }
+
+    public int size() {
+      return entrySet().size();
+    }
+
+    public boolean isEmpty() {
+      return absLowest() == null;
+    }
+
+    public boolean containsKey(Object key) {
+      return inRange((OID)key) && OIDTrieMap.this.containsKey(key);
+    }
+
+    public V get(Object key) {
+      return inRange((OID)key) ? OIDTrieMap.this.get(key) : null;
+    }
+
+    public V put(OID key, V value) {
+      if (!inRange(key)) {
+        throw new IllegalArgumentException("Key out of range: "+key);
+      }
+      return OIDTrieMap.this.put(key, value);
+    }
+
+    public V remove(Object key) {
+      return inRange((OID)key) ? OIDTrieMap.this.remove(key) : null;
+    }
+
+    public Map.Entry<OID,V> firstEntry() {
+      return exportEntry(first());
+    }
+
+    public Map.Entry<OID,V> lastEntry() {
+      return exportEntry(last());
+    }
+
+    public Map.Entry<OID,V> pollFirstEntry() {
+      return pollNode(first());
+    }
+
+    public Map.Entry<OID,V> pollLastEntry() {
+      return pollNode(last());
+    }
+
+    public OID firstKey() {
+      return key(first());
+    }
+
+    public OID lastKey() {
+      return key(last());
+    }
+
+    public Map.Entry<OID,V> lowerEntry(OID key) {
+      return exportEntry(floor(key, false));
+    }
+
+    public OID lowerKey(OID key) {
+      return keyOrNull(floor(key, false));
+    }
+
+    public Map.Entry<OID,V> floorEntry(OID key) {
+      return exportEntry(floor(key, true));
+    }
+
+    public OID floorKey(OID key) {
+      return keyOrNull(floor(key, true));
+    }
+
+    public Map.Entry<OID,V> ceilingEntry(OID key) {
+      return exportEntry(ceiling(key, true));
+    }
+
+    public OID ceilingKey(OID key) {
+      return keyOrNull(ceiling(key, true));
+    }
+
+    public Map.Entry<OID,V> higherEntry(OID key) {
+      return exportEntry(ceiling(key, false));
+    }
+
+    public OID higherKey(OID key) {
+      return keyOrNull(ceiling(key, false));
+    }
+
+    public Comparator<? super OID> comparator() {
+      return (descending) ? Collections.<OID>reverseOrder() : null;
+    }
+
+    public Set<Map.Entry<OID,V>> entrySet() {
+      EntrySet es = entrySet;
+      return (es != null) ? es : (entrySet = new EntrySet(this));
+    }
+
+    public Set<OID> keySet() {
+      return navigableKeySet();
+    }
+
+    public NavigableSet<OID> navigableKeySet() {
+      return new KeySet<OID>(this);
+    }
+
+    public NavigableSet<OID> descendingKeySet() {
+      return descendingMap().navigableKeySet();
+    }
+
+    public NavigableMap<OID,V> descendingMap() {
+      return new SubMap(lo, loInclusive, hi, hiInclusive, prefix, !descending);
+    }
+
+    public NavigableMap<OID,V> subMap(OID fromKey, boolean fromInclusive,
+                                      OID toKey, boolean toInclusive) {
+      if (!inRange(fromKey, fromInclusive) || !inRange(toKey, toInclusive)) {
+        throw new IllegalArgumentException("Key out of range");
+      }
+      if (descending) {
+        if (fromKey.compareTo(toKey) < 0) {
+          throw new IllegalArgumentException("fromKey > toKey");
+        }
+        return new SubMap(toKey, toInclusive, fromKey, fromInclusive,
+                          prefix, true);
+      }
+      if (fromKey.compareTo(toKey) > 0) {
+        throw new IllegalArgumentException("fromKey > toKey");
+      }
+      return new SubMap(fromKey, fromInclusive, toKey, toInclusive,
+                        prefix, false);
+    }
+
+    public NavigableMap<OID,V> headMap(OID toKey, boolean inclusive) {
+      if (!inRange(toKey, inclusive)) {
+        throw new IllegalArgumentException("Key out of range");
+      }
+      return (descending) ?
+          new SubMap(toKey, inclusive, hi, hiInclusive, prefix, true) :
+          new SubMap(lo, loInclusive, toKey, inclusive, prefix, false);
+    }
+
+    public NavigableMap<OID,V> tailMap(OID fromKey, boolean inclusive) {
+      if (!inRange(fromKey, inclusive)) {
+        throw new IllegalArgumentException("Key out of range");
+      }
+      return (descending) ?
+          new SubMap(lo, loInclusive, fromKey, inclusive, prefix, true) :
+          new SubMap(fromKey, inclusive, hi, hiInclusive, prefix, false);
+    }
+
+    public SortedMap<OID,V> subMap(OID fromKey, OID toKey) {
+      return subMap(fromKey, true, toKey, false);
+    }
+
+    public SortedMap<OID,V> headMap(OID toKey) {
+      return headMap(toKey, false);
+    }
+
+    public SortedMap<OID,V> tailMap(OID fromKey) {
+      return tailMap(fromKey, true);
+    }
+  }
+
+  /**
+   * The navigable key set of a map or of one of its views.
+   * @param <K>
+   *    the key type.
+   */
+  static final class KeySet<K> extends AbstractSet<K> implements NavigableSet<K> {
+    private final NavigableMap<K,?> map;
+
+    KeySet(NavigableMap<K,?> map) {
+      this.map = map;
+    }
+
+    public Iterator<K> iterator() {
+      final Iterator<? extends Map.Entry<K,?>> it = map.entrySet().iterator();
+      return new Iterator<K>() {
+        public boolean hasNext() {
+          return it.hasNext();
+        }
+
+        public K next() {
+          return it.next().getKey();
+        }
+
+        public void remove() {
+          it.remove();
+        }
+      };
+    }
+
+    public Iterator<K> descendingIterator() {
+      return descendingSet().iterator();
+    }
+
+    public int size() {
+      return map.size();
+    }
+
+    public boolean isEmpty() {
+      return map.isEmpty();
+    }
+
+    public boolean contains(Object o) {
+      return map.containsKey(o);
+    }
+
+    public boolean remove(Object o) {
+      int oldSize = map.size();
+      map.remove(o);
+      return map.size() != oldSize;
+    }
+
+    public void clear() {
+      map.clear();
+    }
+
+    public Comparator<? super K> comparator() {
+      return map.comparator();
+    }
+
+    public K first() {
+      return map.firstKey();
+    }
+
+    public K last() {
+      return map.lastKey();
+    }
+
+    public K lower(K k) {
+      return map.lowerKey(k);
+    }
+
+    public K floor(K k) {
+      return map.floorKey(k);
+    }
+
+    public K ceiling(K k) {
+      return map.ceilingKey(k);
+    }
+
+    public K higher(K k) {
+      return map.higherKey(k);
+    }
+
+    public K pollFirst() {
+      Map.Entry<K,?> e = map.pollFirstEntry();
+      return (e == null) ? null : e.getKey();
+    }
+
+    public K pollLast() {
+      Map.Entry<K,?> e = map.pollLastEntry();
+      return (e == null) ? null : e.getKey();
+    }
+
+    public NavigableSet<K> descendingSet() {
+      return new KeySet<K>(map.descendingMap());
+    }
+
+    public NavigableSet<K> subSet(K fromElement, boolean fromInclusive,
+                                  K toElement, boolean toInclusive) {
+      return new KeySet<K>(map.subMap(fromElement, fromInclusive,
+                                      toElement, toInclusive));
+    }
+
+    public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+      return new KeySet<K>(map.headMap(toElement, inclusive));
+    }
+
+    public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+      return new KeySet<K>(map.tailMap(fromElement, inclusive));
+    }
+
+    public SortedSet<K> subSet(K fromElement, K toElement) {
+      return subSet(fromElement, true, toElement, false);
+    }
+
+    public SortedSet<K> headSet(K toElement) {
+      return headSet(toElement, false);
+    }
+
+    public SortedSet<K> tailSet(K fromElement) {
+      return tailSet(fromElement, true);
+    }
+  }
+}
@@ -0,0 +1,334 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TimingWheelTimer.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.snmp4j.log.LogAdapter;
+import org.snmp4j.log.LogFactory;
+
+/**
+ * The <code>TimingWheelTimer</code> is a {@link CommonTimer} based on a
+ * hashed timing wheel. Scheduling a task is a constant time operation that
+ * appends the task to a lock free queue. A single daemon thread advances the
+ * wheel every tick, moves newly scheduled tasks into their wheel slot, and
+ * executes all tasks of the current slot that are due as one batch.
+ * <p>
+ * Tasks are executed with a precision of one tick (and never earlier than
+ * requested). Tasks scheduled further than one wheel revolution
+ * (<code>tickMillis * wheelSize</code>) ahead are kept in their slot with a
+ * round counter.
+ * <p>
+ * Because {@link TimerTask} does not expose its cancellation state,
+ * cancelled tasks are recognized only if they implement
+ * {@link CancelableTask}. Such tasks are removed when their slot is visited
+ * the next time, which makes cancellation a constant time operation too.
+ * Other cancelled tasks are still executed by this timer and therefore
+ * have to ignore calls of their <code>run</code> method after they have been
+ * cancelled. In contrast to {@link java.util.Timer}, an exception thrown by
+ * a task is logged and does not terminate the timer.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class TimingWheelTimer implements CommonTimer {
+
+  private static final LogAdapter logger =
+      LogFactory.getLogger(TimingWheelTimer.class);
+
+  private static final AtomicInteger nextTimerID = new AtomicInteger();
+
+  private final long tickNanos;
+  private final Slot[] wheel;
+  private final int mask;
+  private final Queue<Entry> newEntries = new ConcurrentLinkedQueue<Entry>();
+  private final long startTime;
+  private final Thread thread;
+  private volatile boolean cancelled;
+  private long tick;
+
+  /**
+   * Creates a timing wheel timer and starts its daemon thread.
+   *
+   * @param tickMillis
+   *    the duration of a tick in milliseconds (must be > 0).
+   * @param wheelSize
+   *    the number of slots of the wheel, which is rounded up to the next
+   *    power of two.
+   */
+  public TimingWheelTimer(long tickMillis, int wheelSize) {
+    if (tickMillis <= 0) {
+      throw new IllegalArgumentException("Tick duration must be > 0");
+    }
+    if ((wheelSize <= 0) || (wheelSize > (1 << 30))) {
+      throw new IllegalArgumentException("Wheel size must be in (0..2^30]");
+    }
+    int size = Integer.highestOneBit(wheelSize);
+    if (size < wheelSize) {
+      size <<= 1;
+    }
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    this.wheel = new Slot[size];
+    for (int i=0; i<size; i++) {
+      wheel[i] = new Slot();
+    }
+    this.mask = size - 1;
+    this.startTime = System.nanoTime();
+    this.thread = new Thread(new Worker(),
+                             "TimingWheelTimer-"+nextTimerID.incrementAndGet());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public void schedule(TimerTask task, long delay) {
+    if (delay < 0) {
+      throw new IllegalArgumentException("Negative delay.");
+    }
+    add(new Entry(task, delay, 0));
+  }
+
+  public void schedule(TimerTask task, Date firstTime, long period) {
+    if (period <= 0) {
+      throw new IllegalArgumentException("Non-positive period.");
+    }
+    long delay = Math.max(0, firstTime.getTime() - System.currentTimeMillis());
+    add(new Entry(task, delay, period));
+  }
+
+  public void schedule(TimerTask task, long delay, long period) {
+    if (delay < 0) {
+      throw new IllegalArgumentException("Negative delay.");
+    }
+    if (period <= 0) {
+      throw new IllegalArgumentException("Non-positive period.");
+    }
+    add(new Entry(task, delay, period));
+  }
+
+  private void add(Entry entry) {
+    if (cancelled) {
+      throw new IllegalStateException("Timer already cancelled.");
+    }
+    newEntries.add(entry);
+  }
+
+  /**
+   * Terminates this timer and discards all scheduled tasks. A task currently
+   * executed by the timer thread is not interrupted.
+   */
+  public void cancel() {
+    cancelled = true;
+    thread.interrupt();
+  }
+
+  /**
+   * Returns the duration of a tick.
+   * @return
+   *    the tick duration in milliseconds.
+   */
+  public long getTickMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+  }
+
+  /**
+   * Returns the number of slots of the wheel.
+   * @return
+   *    the wheel size (a power of two).
+   */
+  public int getWheelSize() {
+    return wheel.length;
+  }
+
+  private static boolean isCancelled(TimerTask task) {
+    return (task instanceof CancelableTask) &&
+        ((CancelableTask) task).isCancelled();
+  }
+
+  private void transferNewEntries() {
+    // limit the number of transfers per tick to keep the tick on time
+    for (int i=0; i<100000; i++) {
+      Entry entry = newEntries.poll();
+      if (entry == null) {
+        return;
+      }
+      if (isCancelled(entry.task)) {
+        continue;
+      }
+      long deadlineTick = (entry.deadline - startTime) / tickNanos;
+      entry.remainingRounds = (deadlineTick - tick) / wheel.length;
+      wheel[(int) (Math.max(deadlineTick, tick) & mask)].add(entry);
+    }
+  }
+
+  private long waitForNextTick() throws InterruptedException {
+    long deadline = (tick + 1) * tickNanos;
+    while (true) {
+      long now = System.nanoTime() - startTime;
+      long sleepNanos = deadline - now;
+      if (sleepNanos <= 0) {
+        return now;
+      }
+      TimeUnit.NANOSECONDS.sleep(sleepNanos);
+    }
+  }
+
+  class Worker implements Runnable {
+
+    private final List<Entry> expired = new ArrayList<Entry>();
+
+    public void run() {
+      while (!cancelled) {
+        try {
+          waitForNextTick();
+        }
+        catch (InterruptedException iex) {
+          if (cancelled) {
+            break;
+          }
+          continue;
+        }
+        transferNewEntries();
+        wheel[(int) (tick & mask)].expire(expired);
+        tick++;
+        for (Entry entry : expired) {
+          if (cancelled) {
+            break;
+          }
+          runTask(entry);
+        }
+        expired.clear();
+      }
+      newEntries.clear();
+      for (Slot slot : wheel) {
+        slot.clear();
+      }
+      if (logger.isDebugEnabled()) {
+        logger.debug("Timer thread stopped: "+Thread.currentThread().getName());
+      }
+    }
+
+    private void runTask(Entry entry) {
+      try {
+        entry.task.run();
+      }
+      catch (RuntimeException ex) {
+        logger.error("Timer task "+entry.task+" failed: "+ex.getMessage(), ex);
+      }
+      if ((entry.period > 0) && !cancelled && !isCancelled(entry.task)) {
+        // fixed-delay execution
+        entry.deadline = System.nanoTime() +
+            TimeUnit.MILLISECONDS.toNanos(entry.period);
+        newEntries.add(entry);
+      }
+    }
+  }
+
+  static class Entry {
+    final TimerTask task;
+    final long period;
+    long deadline;
+    long remainingRounds;
+    Entry next;
+    Entry prev;
+
+    Entry(TimerTask task, long delay, long period) {
+      if (task == null) {
+        throw new NullPointerException();
+      }
+      this.task = task;
+      this.period = period;
+      this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+    }
+  }
+
+  /**
+   * A slot of the wheel. Slots are only accessed by the timer thread.
+   */
+  static class Slot {
+    private Entry head;
+    private Entry tail;
+
+    void add(Entry entry) {
+      entry.next = null;
+      entry.prev = tail;
+      if (tail == null) {
+        head = entry;
+      }
+      else {
+        tail.next = entry;
+      }
+      tail = entry;
+    }
+
+    void remove(Entry entry) {
+      if (entry.prev == null) {
+        head = entry.next;
+      }
+      else {
+        entry.prev.next = entry.next;
+      }
+      if (entry.next == null) {
+        tail = entry.prev;
+      }
+      else {
+        entry.next.prev = entry.prev;
+      }
+      entry.next = null;
+      entry.prev = null;
+    }
+
+    /**
+     * Removes all due and cancelled entries from this slot and adds the due
+     * entries to the supplied list.
+     * @param expired
+     *    receives the entries that have to be executed now.
+     */
+    void expire(List<Entry> expired) {
+      Entry entry = head;
+      while (entry != null) {
+        Entry next = entry.next;
+        if (isCancelled(entry.task)) {
+          remove(entry);
+        }
+        else if (entry.remainingRounds <= 0) {
+          remove(entry);
+          expired.add(entry);
+        }
+        else {
+          entry.remainingRounds--;
+        }
+        entry = next;
+      }
+    }
+
+    void clear() {
+      head = null;
+      tail = null;
+    }
+  }
+}
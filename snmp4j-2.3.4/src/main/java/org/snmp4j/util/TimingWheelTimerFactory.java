@@ -0,0 +1,86 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TimingWheelTimerFactory.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+/**
+ * The <code>TimingWheelTimerFactory</code> creates {@link TimingWheelTimer}
+ * instances. To use timing wheel timers for request retries and connection
+ * timeouts, call
+ * <pre>
+ *   SNMP4JSettings.setTimerFactory(new TimingWheelTimerFactory());
+ * </pre>
+ * before creating any {@link org.snmp4j.Snmp} session or transport mapping.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class TimingWheelTimerFactory implements TimerFactory {
+
+  /**
+   * The default tick duration in milliseconds.
+   */
+  public static final long DEFAULT_TICK_MILLIS = 10;
+  /**
+   * The default number of wheel slots.
+   */
+  public static final int DEFAULT_WHEEL_SIZE = 512;
+
+  private long tickMillis;
+  private int wheelSize;
+
+  /**
+   * Creates a factory for timers with a tick duration of
+   * {@link #DEFAULT_TICK_MILLIS} and {@link #DEFAULT_WHEEL_SIZE} slots.
+   */
+  public TimingWheelTimerFactory() {
+    this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+  }
+
+  /**
+   * Creates a factory for timing wheel timers.
+   * @param tickMillis
+   *    the tick duration (timer granularity) in milliseconds.
+   * @param wheelSize
+   *    the number of slots of the wheel (rounded up to a power of two).
+   */
+  public TimingWheelTimerFactory(long tickMillis, int wheelSize) {
+    if (tickMillis <= 0) {
+      throw new IllegalArgumentException("Tick duration must be > 0");
+    }
+    if (wheelSize <= 0) {
+      throw new IllegalArgumentException("Wheel size must be > 0");
+    }
+    this.tickMillis = tickMillis;
+    this.wheelSize = wheelSize;
+  }
+
+  public CommonTimer createTimer() {
+    return new TimingWheelTimer(tickMillis, wheelSize);
+  }
+
+  public long getTickMillis() {
+    return tickMillis;
+  }
+
+  public int getWheelSize() {
+    return wheelSize;
+  }
+}
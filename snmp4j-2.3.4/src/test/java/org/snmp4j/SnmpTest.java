@@ -538,7 +538,7 @@ public class SnmpTest extends TestCase {
     responsePDU.setType(PDU.RESPONSE);
     responsePDU.setErrorStatus(PDU.noError);
     responsePDU.setErrorIndex(0);
-    responsePDU.getVariableBindings().clear();
+    responsePDU.getVariableBindingList().clear();
     addTestVariableBindings(responsePDU, true, true, version);
     return responsePDU;
   }
@@ -548,7 +548,7 @@ public class SnmpTest extends TestCase {
     responsePDU.setType(PDU.REPORT);
     responsePDU.setErrorStatus(PDU.noError);
     responsePDU.setErrorIndex(0);
-    responsePDU.getVariableBindings().clear();
+    responsePDU.getVariableBindingList().clear();
     responsePDU.add(reportVariable);
     return responsePDU;
   }
@@ -0,0 +1,199 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestPDU.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j;
+
+import junit.framework.*;
+
+import java.util.List;
+
+import org.snmp4j.asn1.BERReverseEncoder;
+import org.snmp4j.smi.*;
+
+/**
+ * Tests the variable binding handling of {@link PDU} copies.
+ * @author Frank Fock
+ * @since 2.4
+ */
+public class TestPDU extends TestCase {
+
+  public TestPDU(String s) {
+    super(s);
+  }
+
+  private static <P extends PDU> P fill(P pdu) {
+    pdu.setType(PDU.GETNEXT);
+    pdu.setRequestID(new Integer32(4711));
+    for (int i=1; i<=10; i++) {
+      pdu.add(new VariableBinding(new OID("1.3.6.1.2.1.2.2.1.10."+i),
+                                  new Counter32(i)));
+    }
+    return pdu;
+  }
+
+  private static byte[] encode(PDU pdu) throws Exception {
+    BERReverseEncoder encoder = new BERReverseEncoder();
+    pdu.encodeBER(encoder);
+    return encoder.toByteArray();
+  }
+
+  public void testCopyOnWriteClone() throws Exception {
+    PDU pdu = fill(new PDU());
+    PDU copy = pdu.copyOnWriteClone();
+    assertEquals(PDU.class, copy.getClass());
+    assertEquals(pdu, copy);
+    assertTrue(java.util.Arrays.equals(encode(pdu), encode(copy)));
+    copy.get(0).setVariable(new Counter32(100));
+    copy.add(new VariableBinding(new OID("1.3.6.1"), new Integer32(1)));
+    assertEquals(new Counter32(1), pdu.get(0).getVariable());
+    assertEquals(10, pdu.size());
+    assertEquals(11, copy.size());
+    pdu.remove(1);
+    assertEquals(9, pdu.size());
+    assertEquals(new Counter32(2), copy.get(1).getVariable());
+  }
+
+  public void testCopyOnWriteCloneClear() throws Exception {
+    PDU pdu = fill(new PDU());
+    VariableBinding first = pdu.get(0);
+    PDU copy = pdu.copyOnWriteClone();
+    copy.clear();
+    assertEquals(0, copy.size());
+    assertEquals(10, pdu.size());
+    // the copy released its share, so the variable bindings are not copied
+    assertSame(first, pdu.get(0));
+  }
+
+  public void testCopyOnWriteCloneOfSubclasses() throws Exception {
+    ScopedPDU scopedPDU = fill(new ScopedPDU());
+    scopedPDU.setContextName(new OctetString("context"));
+    ScopedPDU scopedCopy = scopedPDU.copyOnWriteClone();
+    assertEquals(new OctetString("context"), scopedCopy.getContextName());
+    assertTrue(java.util.Arrays.equals(encode(scopedPDU), encode(scopedCopy)));
+    PDUv1 trap = fill(new PDUv1());
+    trap.setType(PDU.V1TRAP);
+    trap.setEnterprise(new OID("1.3.6.1.4.1.4976"));
+    PDUv1 trapCopy = trap.copyOnWriteClone();
+    assertEquals(trap.getEnterprise(), trapCopy.getEnterprise());
+    assertTrue(java.util.Arrays.equals(encode(trap), encode(trapCopy)));
+    trapCopy.trim();
+    assertEquals(10, trap.size());
+    assertEquals(9, trapCopy.size());
+  }
+
+  public void testUnmodifiableVariableBindings() {
+    PDU pdu = fill(new PDU());
+    List<? extends VariableBinding> vbs = pdu.getUnmodifiableVariableBindings();
+    assertEquals(pdu.getVariableBindingList(), vbs);
+    try {
+      vbs.remove(0);
+      fail("Variable binding list is modifiable");
+    }
+    catch (UnsupportedOperationException uoex) {
+      // expected
+    }
+    pdu.clear();
+    assertTrue(vbs.isEmpty());
+  }
+
+  /**
+   * A scoped PDU that encodes an additional variable binding by overriding
+   * the stream based encoding only.
+   */
+  static class ExtendedScopedPDU extends ScopedPDU {
+    private static final VariableBinding EXTRA =
+        new VariableBinding(new OID("1.3.6.1.4.1.4976.1"), new OctetString("extra"));
+
+    private ScopedPDU extended() {
+      ScopedPDU pdu = new ScopedPDU(this);
+      pdu.add(EXTRA);
+      return pdu;
+    }
+
+    public int getBERLength() {
+      return extended().getBERLength();
+    }
+
+    public void encodeBER(java.io.OutputStream outputStream)
+        throws java.io.IOException
+    {
+      extended().encodeBER(outputStream);
+    }
+  }
+
+  public void testEncodePDUOfSubclass() throws Exception {
+    ExtendedScopedPDU pdu = fill(new ExtendedScopedPDU());
+    java.nio.ByteBuffer expected = java.nio.ByteBuffer.allocate(pdu.getBERLength());
+    pdu.encodeBER(new org.snmp4j.asn1.BEROutputStream(expected));
+    BERReverseEncoder encoder = new BERReverseEncoder();
+    PDU.encodePDU(pdu, encoder);
+    assertTrue(java.util.Arrays.equals(expected.array(), encoder.toByteArray()));
+
+    ScopedPDU scopedPDU = fill(new ScopedPDU());
+    encoder.reset();
+    PDU.encodePDU(scopedPDU, encoder);
+    assertTrue(java.util.Arrays.equals(encode(scopedPDU), encoder.toByteArray()));
+  }
+
+  @SuppressWarnings("deprecation")
+  public void testVariableBindingsVector() {
+    PDU pdu = fill(new PDU());
+    PDU shared = pdu.copyOnWriteClone();
+    java.util.Vector<? extends VariableBinding> vbs = pdu.getVariableBindings();
+    assertEquals(pdu.getVariableBindingList(), vbs);
+    assertSame(vbs, pdu.getVariableBindings());
+    // modifications of the vector write through to the PDU
+    vbs.subList(5, 10).clear();
+    assertEquals(5, pdu.size());
+    assertEquals(10, shared.size());
+    pdu.add(new VariableBinding(new OID("1.3.6.1.2.1.1.2.0")));
+    assertEquals(6, vbs.size());
+    // the vector is not shared by copy on write clones
+    PDU copy = pdu.copyOnWriteClone();
+    vbs.clear();
+    assertEquals(0, pdu.size());
+    assertEquals(6, copy.size());
+  }
+
+  public void testSerializedForm() throws Exception {
+    java.io.ObjectStreamClass osc = java.io.ObjectStreamClass.lookup(PDU.class);
+    assertEquals(java.util.Vector.class, osc.getField("variableBindings").getType());
+    assertEquals(Integer32.class, osc.getField("requestID").getType());
+    assertEquals(Integer.TYPE, osc.getField("type").getType());
+
+    ScopedPDU pdu = fill(new ScopedPDU());
+    pdu.setType(PDU.GETBULK);
+    pdu.setRequestID(new Integer32(4711));
+    pdu.setMaxRepetitions(7);
+    pdu.setContextName(new OctetString("ctx"));
+    java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+    java.io.ObjectOutputStream oos = new java.io.ObjectOutputStream(bytes);
+    oos.writeObject(pdu);
+    oos.close();
+    java.io.ObjectInputStream ois = new java.io.ObjectInputStream(
+        new java.io.ByteArrayInputStream(bytes.toByteArray()));
+    ScopedPDU copy = (ScopedPDU) ois.readObject();
+    assertEquals(pdu, copy);
+    assertEquals(PDU.GETBULK, copy.getType());
+    assertEquals(7, copy.getMaxRepetitions());
+    assertEquals(new OctetString("ctx"), copy.getContextName());
+    copy.add(new VariableBinding(new OID("1.3.6.1.2.1.1.1.0")));
+    assertEquals(11, copy.size());
+  }
+}
@@ -0,0 +1,231 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestPDUCursor.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j;
+
+import junit.framework.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.snmp4j.asn1.BER;
+import org.snmp4j.asn1.BERReverseEncoder;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.*;
+
+/**
+ * Tests the streaming decoding of PDUs by {@link PDUCursor} and
+ * {@link org.snmp4j.asn1.BERCursor}.
+ * @author Frank Fock
+ * @since 2.4
+ */
+public class TestPDUCursor extends TestCase {
+
+  private static final OID SYS_DESCR = new OID("1.3.6.1.2.1.1.1.0");
+  private static final OID IF_TABLE = new OID("1.3.6.1.2.1.2.2");
+
+  public TestPDUCursor(String s) {
+    super(s);
+  }
+
+  private static PDU createPDU(PDU pdu) {
+    pdu.setType(PDU.TRAP);
+    pdu.setRequestID(new Integer32(-4711));
+    pdu.setErrorStatus(PDU.noSuchName);
+    pdu.setErrorIndex(2);
+    pdu.add(new VariableBinding(SnmpConstants.sysUpTime, new TimeTicks(4294967295l)));
+    pdu.add(new VariableBinding(SYS_DESCR, new OctetString("SNMP4J")));
+    pdu.add(new VariableBinding(new OID("1.3.6.1.2.1.2.2.1.2.4"), new Integer32(-129)));
+    pdu.add(new VariableBinding(new OID("1.3.6.1.2.1.2.2.1.10.4"), new Counter32(2147483648l)));
+    pdu.add(new VariableBinding(new OID("1.3.6.1.2.1.31.1.1.1.6.4"), new Counter64(-1l)));
+    pdu.add(new VariableBinding(new OID("0.0"), new IpAddress("10.1.2.3")));
+    pdu.add(new VariableBinding(new OID("2.999.4294967295"), Null.noSuchInstance));
+    return pdu;
+  }
+
+  private static ByteBuffer encodeMessage(int version, PDU pdu) throws IOException {
+    BERReverseEncoder encoder = new BERReverseEncoder();
+    pdu.encodeBER(encoder);
+    encoder.encodeString(BER.OCTETSTRING, "public".getBytes());
+    encoder.encodeInteger(BER.INTEGER, version);
+    encoder.encodeHeader(BER.SEQUENCE, encoder.length());
+    return encoder.toByteBuffer();
+  }
+
+  private static ByteBuffer encodeV3Message(ScopedPDU pdu, boolean encrypted)
+      throws IOException
+  {
+    BERReverseEncoder encoder = new BERReverseEncoder();
+    if (encrypted) {
+      encoder.encodeString(BER.OCTETSTRING, new byte[] { 1, 2, 3, 4 });
+    }
+    else {
+      pdu.encodeBER(encoder);
+    }
+    encoder.encodeString(BER.OCTETSTRING, new byte[0]);
+    int mark = encoder.length();
+    encoder.encodeInteger(BER.INTEGER, 3);
+    encoder.encodeString(BER.OCTETSTRING, new byte[] { (byte)(encrypted ? 3 : 0) });
+    encoder.encodeInteger(BER.INTEGER, 65535);
+    encoder.encodeInteger(BER.INTEGER, 1);
+    encoder.encodeHeader(BER.SEQUENCE, encoder.length() - mark);
+    encoder.encodeInteger(BER.INTEGER, SnmpConstants.version3);
+    encoder.encodeHeader(BER.SEQUENCE, encoder.length());
+    return encoder.toByteBuffer();
+  }
+
+  private static void assertVariableBindings(PDU pdu, PDUCursor cursor)
+      throws IOException
+  {
+    for (VariableBinding vb : pdu.getVariableBindingList()) {
+      assertTrue(cursor.nextVariableBinding());
+      assertEquals(vb, cursor.getVariableBinding());
+      assertEquals(vb.getOid().size(), cursor.getOIDLength());
+      assertEquals(0, cursor.compareOID(vb.getOid()));
+      assertTrue(cursor.startsWith(vb.getOid()));
+      assertEquals(vb.getSyntax(), cursor.getSyntax());
+      assertEquals(vb.isException(), cursor.isException());
+    }
+    assertFalse(cursor.nextVariableBinding());
+  }
+
+  public void testMessage() throws Exception {
+    PDU pdu = createPDU(new PDU());
+    ByteBuffer message = encodeMessage(SnmpConstants.version2c, pdu);
+    int position = message.position();
+    PDUCursor cursor = PDUCursor.forMessage(message);
+    assertEquals(SnmpConstants.version2c, cursor.getVersion());
+    assertEquals(new OctetString("public"), cursor.getCommunity());
+    assertEquals(PDU.TRAP, cursor.getType());
+    assertEquals(-4711, cursor.getRequestID());
+    assertEquals(PDU.noSuchName, cursor.getErrorStatus());
+    assertEquals(2, cursor.getErrorIndex());
+    assertNull(cursor.getContextName());
+    assertVariableBindings(pdu, cursor);
+    assertEquals(position, message.position());
+  }
+
+  public void testTypedValues() throws Exception {
+    PDUCursor cursor =
+        PDUCursor.forMessage(encodeMessage(SnmpConstants.version2c,
+                                           createPDU(new PDU())));
+    cursor.nextVariableBinding();
+    assertEquals(4294967295l, cursor.getValueAsUnsignedInteger());
+    cursor.nextVariableBinding();
+    assertTrue(cursor.valueEquals("SNMP4J".getBytes()));
+    assertEquals(6, cursor.getValueLength());
+    assertEquals(6, cursor.getValue().remaining());
+    try {
+      cursor.getValueAsInteger();
+      fail("Syntax mismatch not detected");
+    }
+    catch (IOException iox) {
+      // expected
+    }
+    cursor.nextVariableBinding();
+    assertTrue(cursor.startsWith(IF_TABLE));
+    assertFalse(cursor.startsWith(SYS_DESCR));
+    assertEquals(-129, cursor.getValueAsInteger());
+    cursor.nextVariableBinding();
+    assertEquals(2147483648l, cursor.getValueAsUnsignedInteger());
+    cursor.nextVariableBinding();
+    assertEquals(-1l, cursor.getValueAsCounter64());
+  }
+
+  public void testCompareOID() throws Exception {
+    Random random = new Random(4976);
+    for (int i=0; i<2000; i++) {
+      int[] a = new int[random.nextInt(8)+2];
+      int[] b = new int[random.nextInt(8)];
+      for (int j=0; j<a.length; j++) {
+        a[j] = (j == 0) ? random.nextInt(3) :
+            ((j == 1) ? random.nextInt(40) : random.nextInt(4) - 1);
+      }
+      for (int j=0; j<b.length; j++) {
+        b[j] = (j < a.length && random.nextBoolean()) ? a[j] : random.nextInt(4) - 1;
+      }
+      PDU pdu = new PDU();
+      pdu.add(new VariableBinding(new OID(a)));
+      BERReverseEncoder encoder = new BERReverseEncoder();
+      pdu.encodeBER(encoder);
+      PDUCursor cursor = PDUCursor.forPDU(encoder.toByteBuffer());
+      assertTrue(cursor.nextVariableBinding());
+      OID oidA = new OID(a);
+      OID oidB = new OID(b);
+      assertEquals(oidA+" <> "+oidB, Integer.signum(oidA.compareTo(oidB)),
+                   Integer.signum(cursor.compareOID(oidB)));
+      assertEquals(oidA+" startsWith "+oidB, oidA.startsWith(oidB),
+                   cursor.startsWith(oidB));
+    }
+  }
+
+  public void testV1Trap() throws Exception {
+    PDUv1 pdu = new PDUv1();
+    pdu.setType(PDU.V1TRAP);
+    pdu.setEnterprise(new OID("1.3.6.1.4.1.4976"));
+    pdu.setAgentAddress(new IpAddress("192.168.1.1"));
+    pdu.setGenericTrap(PDUv1.ENTERPRISE_SPECIFIC);
+    pdu.setSpecificTrap(12);
+    pdu.setTimestamp(3000000000l);
+    pdu.add(new VariableBinding(SYS_DESCR, new OctetString("v1")));
+    PDUCursor cursor =
+        PDUCursor.forMessage(encodeMessage(SnmpConstants.version1, pdu));
+    assertEquals(SnmpConstants.version1, cursor.getVersion());
+    assertEquals(PDU.V1TRAP, cursor.getType());
+    assertEquals(pdu.getEnterprise(), cursor.getEnterprise());
+    assertEquals(pdu.getAgentAddress(), cursor.getAgentAddress());
+    assertEquals(PDUv1.ENTERPRISE_SPECIFIC, cursor.getGenericTrap());
+    assertEquals(12, cursor.getSpecificTrap());
+    assertEquals(3000000000l, cursor.getTimestamp());
+    assertVariableBindings(pdu, cursor);
+  }
+
+  public void testScopedPDU() throws Exception {
+    ScopedPDU pdu = (ScopedPDU) createPDU(new ScopedPDU());
+    pdu.setContextEngineID(new OctetString("engine"));
+    pdu.setContextName(new OctetString("context"));
+    PDUCursor cursor = PDUCursor.forMessage(encodeV3Message(pdu, false));
+    assertEquals(SnmpConstants.version3, cursor.getVersion());
+    assertNull(cursor.getCommunity());
+    assertEquals(pdu.getContextEngineID(), cursor.getContextEngineID());
+    assertEquals(pdu.getContextName(), cursor.getContextName());
+    assertVariableBindings(pdu, cursor);
+    try {
+      PDUCursor.forMessage(encodeV3Message(pdu, true));
+      fail("Encrypted scoped PDU not detected");
+    }
+    catch (IOException iox) {
+      // expected
+    }
+  }
+
+  public void testTruncatedMessage() throws Exception {
+    ByteBuffer message = encodeMessage(SnmpConstants.version2c,
+                                       createPDU(new PDU()));
+    message.limit(message.limit() - 3);
+    try {
+      PDUCursor.forMessage(message);
+      fail("Truncated message not detected");
+    }
+    catch (IOException iox) {
+      // expected
+    }
+  }
+}
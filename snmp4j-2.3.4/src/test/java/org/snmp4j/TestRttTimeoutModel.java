@@ -0,0 +1,323 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestRttTimeoutModel.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j;
+
+import junit.framework.TestCase;
+
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.PduHandle;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.security.SecurityModel;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DummyTransport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the round trip time estimation and the retransmission timeouts of
+ * the {@link RttTimeoutModel}.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class TestRttTimeoutModel extends TestCase {
+
+  private static final Address ADDRESS = new UdpAddress("127.0.0.1/161");
+
+  private RttTimeoutModel model;
+
+  public TestRttTimeoutModel(String name) {
+    super(name);
+  }
+
+  protected void setUp() throws Exception {
+    model = new RttTimeoutModel();
+  }
+
+  private static long millis(long ms) {
+    return TimeUnit.MILLISECONDS.toNanos(ms);
+  }
+
+  public void testFirstSample() {
+    model.updateRoundTripTime(ADDRESS, millis(100));
+    RttTimeoutModel.RttStatistics stats = model.getStatistics(ADDRESS);
+    assertEquals(100000, stats.getSmoothedRoundTripTime());
+    assertEquals(50000, stats.getRoundTripTimeVariation());
+    assertEquals(100000, stats.getLastRoundTripTime());
+    assertEquals(1, stats.getSamples());
+    // RTO = SRTT + 4 * RTTVAR
+    assertEquals(300, stats.getRetransmissionTimeout());
+  }
+
+  public void testSmoothing() {
+    model.updateRoundTripTime(ADDRESS, millis(100));
+    model.updateRoundTripTime(ADDRESS, millis(200));
+    RttTimeoutModel.RttStatistics stats = model.getStatistics(ADDRESS);
+    // RTTVAR = 3/4 * 50ms + 1/4 * |100ms - 200ms|
+    assertEquals(62500, stats.getRoundTripTimeVariation());
+    // SRTT = 7/8 * 100ms + 1/8 * 200ms
+    assertEquals(112500, stats.getSmoothedRoundTripTime());
+    assertEquals(200000, stats.getLastRoundTripTime());
+    assertEquals(2, stats.getSamples());
+    // 362.5ms rounded up
+    assertEquals(363, stats.getRetransmissionTimeout());
+  }
+
+  public void testConvergence() {
+    for (int i=0; i<200; i++) {
+      model.updateRoundTripTime(ADDRESS, millis(150));
+    }
+    RttTimeoutModel.RttStatistics stats = model.getStatistics(ADDRESS);
+    assertTrue(Math.abs(stats.getSmoothedRoundTripTime() - 150000) < 10);
+    assertTrue(stats.getRoundTripTimeVariation() < 10);
+    // the RTO is rounded up to full milliseconds
+    long rto = stats.getRetransmissionTimeout();
+    assertTrue((rto >= 150) && (rto <= 151));
+  }
+
+  public void testTimeoutBounds() {
+    model.updateRoundTripTime(ADDRESS, millis(1));
+    assertEquals(RttTimeoutModel.DEFAULT_MIN_TIMEOUT,
+                 model.getStatistics(ADDRESS).getRetransmissionTimeout());
+    model.setTimeoutBounds(200, 1000);
+    assertEquals(200, model.getRetryTimeout(ADDRESS, 0, 0, 5000));
+    model.clearStatistics();
+    model.updateRoundTripTime(ADDRESS, millis(5000));
+    assertEquals(1000, model.getStatistics(ADDRESS).getRetransmissionTimeout());
+    assertEquals(1000, model.getRetryTimeout(ADDRESS, 0, 3, 5000));
+    try {
+      model.setTimeoutBounds(0, 1000);
+      fail("Zero minimum timeout accepted");
+    }
+    catch (IllegalArgumentException iaex) {
+      // expected
+    }
+    try {
+      model.setTimeoutBounds(1000, 999);
+      fail("Maximum timeout below minimum accepted");
+    }
+    catch (IllegalArgumentException iaex) {
+      // expected
+    }
+  }
+
+  public void testBackoff() {
+    model.updateRoundTripTime(ADDRESS, millis(100));
+    assertEquals(300, model.getRetryTimeout(ADDRESS, 0, 3, 5000));
+    assertEquals(600, model.getRetryTimeout(ADDRESS, 1, 3, 5000));
+    assertEquals(1200, model.getRetryTimeout(ADDRESS, 2, 3, 5000));
+    assertEquals(2400, model.getRetryTimeout(ADDRESS, 3, 3, 5000));
+    assertEquals(300+600+1200, model.getRequestTimeout(ADDRESS, 2, 5000));
+    // the backoff is capped without overflow
+    assertEquals(RttTimeoutModel.DEFAULT_MAX_TIMEOUT,
+                 model.getRetryTimeout(ADDRESS, 100, 100, 5000));
+  }
+
+  public void testTimeoutBackoff() {
+    model.updateRoundTripTime(ADDRESS, millis(100));
+    RttTimeoutModel.RttStatistics stats = model.getStatistics(ADDRESS);
+    assertEquals(300, stats.getRetransmissionTimeout());
+    model.timeoutExpired(ADDRESS, 300);
+    assertEquals(600, stats.getBackedOffTimeout());
+    assertEquals(600, stats.getRetransmissionTimeout());
+    // the retransmission uses the backed off RTO
+    assertEquals(600, model.getRetryTimeout(ADDRESS, 1, 3, 5000));
+    model.timeoutExpired(ADDRESS, 600);
+    // a concurrent request timed out with the old RTO does not back off again
+    model.timeoutExpired(ADDRESS, 300);
+    assertEquals(1200, model.getRetryTimeout(ADDRESS, 0, 3, 5000));
+    assertEquals(1200, model.getRetryTimeout(ADDRESS, 1, 3, 5000));
+    assertEquals(2400, model.getRetryTimeout(ADDRESS, 3, 3, 5000));
+    model.timeoutExpired(ADDRESS, RttTimeoutModel.DEFAULT_MAX_TIMEOUT);
+    assertEquals(RttTimeoutModel.DEFAULT_MAX_TIMEOUT,
+                 stats.getRetransmissionTimeout());
+    // a fresh sample ends the backoff
+    model.updateRoundTripTime(ADDRESS, millis(100));
+    assertEquals(0, stats.getBackedOffTimeout());
+    // RTTVAR = 3/4 * 50ms, thus RTO = 100ms + 4 * 37.5ms
+    assertEquals(250, stats.getRetransmissionTimeout());
+    // timeouts do not create statistics
+    Address other = new UdpAddress("127.0.0.2/161");
+    model.timeoutExpired(other, 300);
+    assertNull(model.getStatistics(other));
+  }
+
+  public void testUnknownAddress() {
+    assertNull(model.getStatistics(ADDRESS));
+    assertEquals(5000, model.getRetryTimeout(ADDRESS, 2, 3, 5000));
+    assertEquals(4*5000, model.getRequestTimeout(ADDRESS, 3, 5000));
+    model.updateRoundTripTime(null, millis(100));
+    model.updateRoundTripTime(ADDRESS, -1);
+    assertTrue(model.getStatistics().isEmpty());
+  }
+
+  public void testMaxAddresses() {
+    model.setMaxAddresses(2);
+    Address other = new UdpAddress("127.0.0.2/161");
+    Address third = new UdpAddress("127.0.0.3/161");
+    model.updateRoundTripTime(ADDRESS, millis(100));
+    model.updateRoundTripTime(other, millis(100));
+    model.updateRoundTripTime(third, millis(100));
+    assertEquals(2, model.getStatistics().size());
+    assertNull(model.getStatistics(third));
+    assertEquals(5000, model.getRetryTimeout(third, 0, 0, 5000));
+    // known addresses are still updated
+    model.updateRoundTripTime(ADDRESS, millis(100));
+    assertEquals(2, model.getStatistics(ADDRESS).getSamples());
+    assertNotNull(model.removeStatistics(other));
+    model.updateRoundTripTime(third, millis(100));
+    assertNotNull(model.getStatistics(third));
+  }
+
+  /**
+   * Only responses to requests that have not been retransmitted are sampled
+   * by {@link Snmp} (Karn's algorithm).
+   */
+  public void testKarnsRule() throws Exception {
+    DummyTransport<UdpAddress> transport =
+        new DummyTransport<UdpAddress>(new UdpAddress("127.0.0.1/4967"));
+    Snmp snmp = new Snmp(transport);
+    try {
+      snmp.setTimeoutModel(model);
+      CommunityTarget target =
+          new CommunityTarget(ADDRESS, new OctetString("public"));
+      target.setVersion(SnmpConstants.version2c);
+      target.setTimeout(10000);
+      target.setRetries(1);
+
+      // retransmitted request
+      PDU pdu = createRequest();
+      Snmp.PendingRequest request =
+          snmp.new PendingRequest(new NullListener(), null, pdu, target, transport);
+      PduHandle handle = snmp.sendMessage(pdu, target, transport, request);
+      request.run();
+      snmp.processPdu(createResponseEvent(snmp, transport, target, handle));
+      assertNull(model.getStatistics(ADDRESS));
+
+      // request answered without retransmission
+      pdu = createRequest();
+      request = snmp.new PendingRequest(new NullListener(), null, pdu, target, transport);
+      handle = snmp.sendMessage(pdu, target, transport, request);
+      snmp.processPdu(createResponseEvent(snmp, transport, target, handle));
+      assertNotNull(model.getStatistics(ADDRESS));
+      assertEquals(1, model.getStatistics(ADDRESS).getSamples());
+    }
+    finally {
+      snmp.close();
+    }
+  }
+
+  /**
+   * The round trip time of a target rises above the learned RTO. Without
+   * retries every request times out until the backed off RTO is large
+   * enough for a response to be received and sampled again.
+   */
+  public void testIncreasingRoundTripTime() throws Exception {
+    DummyTransport<UdpAddress> transport =
+        new DummyTransport<UdpAddress>(new UdpAddress("127.0.0.1/4967"));
+    Snmp snmp = new Snmp(transport);
+    try {
+      model.setTimeoutBounds(10, 60000);
+      snmp.setTimeoutModel(model);
+      CommunityTarget target =
+          new CommunityTarget(ADDRESS, new OctetString("public"));
+      target.setVersion(SnmpConstants.version2c);
+      target.setTimeout(10000);
+      target.setRetries(0);
+      model.updateRoundTripTime(ADDRESS, millis(10));
+      RttTimeoutModel.RttStatistics stats = model.getStatistics(ADDRESS);
+      assertEquals(30, stats.getRetransmissionTimeout());
+
+      // the target does not answer within the RTO anymore
+      BlockingListener listener = new BlockingListener();
+      snmp.send(createRequest(), target, null, listener);
+      assertNull(listener.poll().getResponse());
+      assertEquals(60, stats.getBackedOffTimeout());
+      snmp.send(createRequest(), target, null, listener);
+      assertNull(listener.poll().getResponse());
+      assertEquals(120, stats.getBackedOffTimeout());
+
+      // the response is received within the backed off RTO and sampled
+      PDU pdu = createRequest();
+      snmp.send(pdu, target, null, listener);
+      Thread.sleep(40);
+      snmp.processPdu(createResponseEvent(snmp, transport, target,
+          new PduHandle(pdu.getRequestID().toInt())));
+      assertNotNull(listener.poll().getResponse());
+      assertEquals(2, stats.getSamples());
+      assertEquals(0, stats.getBackedOffTimeout());
+      assertTrue(stats.getLastRoundTripTime() >= 40000);
+    }
+    finally {
+      snmp.close();
+    }
+  }
+
+  private static PDU createRequest() {
+    PDU pdu = new PDU();
+    pdu.setType(PDU.GET);
+    pdu.add(new VariableBinding(SnmpConstants.sysDescr));
+    return pdu;
+  }
+
+  private static CommandResponderEvent createResponseEvent(
+      Snmp snmp, TransportMapping transport, CommunityTarget target,
+      PduHandle handle)
+  {
+    PDU response = createRequest();
+    response.setType(PDU.RESPONSE);
+    response.setRequestID(new Integer32(handle.getTransactionID()));
+    return new CommandResponderEvent(snmp.getMessageDispatcher(), transport,
+                                     target.getAddress(), MPv2c.ID,
+                                     SecurityModel.SECURITY_MODEL_SNMPv2c,
+                                     target.getSecurityName().getValue(),
+                                     SecurityLevel.NOAUTH_NOPRIV, handle,
+                                     response, 65535, null);
+  }
+
+  static class BlockingListener implements ResponseListener {
+    private final java.util.concurrent.BlockingQueue<ResponseEvent> events =
+        new java.util.concurrent.LinkedBlockingQueue<ResponseEvent>();
+
+    public void onResponse(ResponseEvent event) {
+      ((Snmp)event.getSource()).cancel(event.getRequest(), this);
+      events.add(event);
+    }
+
+    ResponseEvent poll() throws InterruptedException {
+      ResponseEvent event = events.poll(5, TimeUnit.SECONDS);
+      assertNotNull(event);
+      return event;
+    }
+  }
+
+  static class NullListener implements ResponseListener {
+    public void onResponse(ResponseEvent event) {
+    }
+  }
+}
@@ -0,0 +1,263 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestSnmpFuture.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j;
+
+import junit.framework.TestCase;
+
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.mp.PduHandle;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.mp.StatusInformation;
+import org.snmp4j.smi.*;
+import org.snmp4j.transport.AbstractTransportMapping;
+import org.snmp4j.transport.DummyTransport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tests the completion, timeout, cancellation, and listener notification of
+ * {@link SnmpFuture}s returned by {@link Snmp#sendAsync}.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class TestSnmpFuture extends TestCase {
+
+  private DummyTransport<UdpAddress> transportCG;
+  private AbstractTransportMapping<UdpAddress> transportCR;
+  private RecordingSnmp snmpCommandGenerator;
+  private Snmp snmpCommandResponder;
+  private CommunityTarget target =
+      new CommunityTarget(new UdpAddress("127.0.0.1/161"), new OctetString("public"));
+
+  public TestSnmpFuture(String name) {
+    super(name);
+  }
+
+  protected void setUp() throws Exception {
+    transportCG = new DummyTransport<UdpAddress>(new UdpAddress("127.0.0.1/4967"));
+    transportCR = transportCG.getResponder(new UdpAddress("127.0.0.1/161"));
+    snmpCommandGenerator = new RecordingSnmp(transportCG);
+    snmpCommandResponder = new Snmp(transportCR);
+    target.setVersion(SnmpConstants.version2c);
+    target.setTimeout(10000);
+    target.setRetries(0);
+    snmpCommandGenerator.listen();
+  }
+
+  protected void tearDown() throws Exception {
+    snmpCommandGenerator.close();
+    snmpCommandResponder.close();
+  }
+
+  private void respond() throws Exception {
+    snmpCommandResponder.addCommandResponder(new CommandResponder() {
+      public void processPdu(CommandResponderEvent event) {
+        PDU response = (PDU) event.getPDU().clone();
+        response.setType(PDU.RESPONSE);
+        try {
+          event.getMessageDispatcher().returnResponsePdu(
+              event.getMessageProcessingModel(), event.getSecurityModel(),
+              event.getSecurityName(), event.getSecurityLevel(),
+              response, event.getMaxSizeResponsePDU(),
+              event.getStateReference(), new StatusInformation());
+        }
+        catch (MessageException ex) {
+          fail(ex.getMessage());
+        }
+      }
+    });
+    snmpCommandResponder.listen();
+  }
+
+  private static PDU createRequest() {
+    PDU pdu = new PDU();
+    pdu.add(new VariableBinding(SnmpConstants.sysDescr));
+    return pdu;
+  }
+
+  public void testCompletion() throws Exception {
+    respond();
+    SnmpFuture future = snmpCommandGenerator.getAsync(createRequest(), target);
+    ResponseEvent event = future.get(5, TimeUnit.SECONDS);
+    assertTrue(future.isDone());
+    assertFalse(future.isCancelled());
+    assertNotNull(event.getResponse());
+    assertEquals(PDU.RESPONSE, event.getResponse().getType());
+    assertEquals(future.getRequest().getRequestID(),
+                 event.getResponse().getRequestID());
+    assertFalse(future.cancel(true));
+    assertFalse(future.isCancelled());
+  }
+
+  public void testTimeout() throws Exception {
+    target.setTimeout(50);
+    SnmpFuture future = snmpCommandGenerator.getAsync(createRequest(), target);
+    ResponseEvent event = future.get(5, TimeUnit.SECONDS);
+    assertTrue(future.isDone());
+    assertNull(event.getResponse());
+    assertNull(event.getError());
+  }
+
+  public void testGetWithTimeout() throws Exception {
+    SnmpFuture future = snmpCommandGenerator.getAsync(createRequest(), target);
+    try {
+      future.get(10, TimeUnit.MILLISECONDS);
+      fail("Request completed without response");
+    }
+    catch (TimeoutException tex) {
+      // expected, the request is still pending
+    }
+    assertFalse(future.isDone());
+  }
+
+  public void testCancel() throws Exception {
+    SnmpFuture future = snmpCommandGenerator.getAsync(createRequest(), target);
+    ResponseCollector listener = new ResponseCollector();
+    future.addResponseListener(listener);
+    assertTrue(future.cancel(true));
+    assertFalse(future.cancel(true));
+    assertTrue(future.isDone());
+    assertTrue(future.isCancelled());
+    assertEquals(1, snmpCommandGenerator.cancelledHandles.size());
+    try {
+      future.get();
+      fail("Cancelled future returned a result");
+    }
+    catch (CancellationException cex) {
+      // expected
+    }
+    assertEquals(1, listener.events.size());
+    assertTrue(listener.events.get(0).getError() instanceof CancellationException);
+    ResponseCollector lateListener = new ResponseCollector();
+    future.addResponseListener(lateListener);
+    assertEquals(1, lateListener.events.size());
+    assertTrue(lateListener.events.get(0).getError() instanceof CancellationException);
+  }
+
+  public void testCancelBeforePduHandleAssigned() throws Exception {
+    PDU pdu = createRequest();
+    pdu.setType(PDU.GET);
+    SnmpFuture future = new SnmpFuture(snmpCommandGenerator, pdu, null);
+    Snmp.PendingRequest request =
+        snmpCommandGenerator.new FuturePendingRequest(future, pdu, target, transportCG);
+    assertTrue(future.cancel(true));
+    assertTrue(snmpCommandGenerator.cancelledHandles.isEmpty());
+    PduHandle handle = new PduHandle(4711);
+    request.pduHandleAssigned(handle, pdu);
+    assertEquals(Collections.singletonList(handle),
+                 snmpCommandGenerator.cancelledHandles);
+    assertTrue(request.isCancelled());
+  }
+
+  public void testListenerOrdering() throws Exception {
+    respond();
+    final List<Integer> calls = Collections.synchronizedList(new ArrayList<Integer>());
+    SnmpFuture future = snmpCommandGenerator.getAsync(createRequest(), target);
+    for (int i=0; i<3; i++) {
+      final int n = i;
+      future.addResponseListener(new ResponseListener() {
+        public void onResponse(ResponseEvent event) {
+          calls.add(n);
+          if (n == 1) {
+            throw new RuntimeException("Listener failure must not stop others");
+          }
+        }
+      });
+    }
+    future.get(5, TimeUnit.SECONDS);
+    // listeners are called after the waiting threads have been notified
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while ((calls.size() < 3) && (System.nanoTime() < deadline)) {
+      Thread.sleep(1);
+    }
+    assertEquals(java.util.Arrays.asList(0, 1, 2), calls);
+    final Thread[] caller = new Thread[1];
+    future.addResponseListener(new ResponseListener() {
+      public void onResponse(ResponseEvent event) {
+        caller[0] = Thread.currentThread();
+        calls.add(3);
+      }
+    });
+    assertSame(Thread.currentThread(), caller[0]);
+    assertEquals(java.util.Arrays.asList(0, 1, 2, 3), calls);
+  }
+
+  public void testSessionClose() throws Exception {
+    SnmpFuture future = snmpCommandGenerator.getAsync(createRequest(), target);
+    ResponseCollector listener = new ResponseCollector();
+    future.addResponseListener(listener);
+    snmpCommandGenerator.close();
+    assertTrue(future.isDone());
+    assertFalse(future.isCancelled());
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      fail("Future of closed session returned a result");
+    }
+    catch (ExecutionException eex) {
+      assertTrue(eex.getCause() instanceof InterruptedException);
+    }
+    assertEquals(1, listener.events.size());
+  }
+
+  public void testUnconfirmedPDU() throws Exception {
+    PDU pdu = createRequest();
+    pdu.setType(PDU.NOTIFICATION);
+    SnmpFuture future = snmpCommandGenerator.sendAsync(pdu, target);
+    assertTrue(future.isDone());
+    assertNull(future.get().getResponse());
+  }
+
+  static class ResponseCollector implements ResponseListener {
+    final List<ResponseEvent> events =
+        Collections.synchronizedList(new ArrayList<ResponseEvent>());
+
+    public void onResponse(ResponseEvent event) {
+      events.add(event);
+    }
+  }
+
+  /**
+   * Records the handles of the pending requests cancelled by a future.
+   */
+  static class RecordingSnmp extends Snmp {
+    final List<PduHandle> cancelledHandles =
+        Collections.synchronizedList(new ArrayList<PduHandle>());
+
+    RecordingSnmp(TransportMapping transportMapping) {
+      super(transportMapping);
+    }
+
+    void cancelPendingRequest(PduHandle pending) {
+      if (pending != null) {
+        cancelledHandles.add(pending);
+      }
+      super.cancelPendingRequest(pending);
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestSnmpPendingRequest.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j;
+
+import junit.framework.TestCase;
+
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.PduHandle;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.security.SecurityModel;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DummyTransport;
+import org.snmp4j.util.TimingWheelTimer;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the concurrent completion of the pending requests of {@link Snmp}
+ * by responses, timeouts, retries, and cancellation.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class TestSnmpPendingRequest extends TestCase {
+
+  private static final int RACES = 500;
+
+  private DummyTransport<UdpAddress> transport;
+  private Snmp snmp;
+  private CommunityTarget target =
+      new CommunityTarget(new UdpAddress("127.0.0.1/161"), new OctetString("public"));
+
+  public TestSnmpPendingRequest(String name) {
+    super(name);
+  }
+
+  protected void setUp() throws Exception {
+    transport = new DummyTransport<UdpAddress>(new UdpAddress("127.0.0.1/4967"));
+    snmp = new Snmp(transport);
+    target.setVersion(SnmpConstants.version2c);
+    target.setTimeout(10000);
+  }
+
+  protected void tearDown() throws Exception {
+    snmp.close();
+  }
+
+  private static PDU createRequest() {
+    PDU pdu = new PDU();
+    pdu.setType(PDU.GET);
+    pdu.add(new VariableBinding(SnmpConstants.sysDescr));
+    return pdu;
+  }
+
+  private CommandResponderEvent createResponseEvent(PduHandle handle) {
+    PDU response = createRequest();
+    response.setType(PDU.RESPONSE);
+    response.setRequestID(new org.snmp4j.smi.Integer32(handle.getTransactionID()));
+    return new CommandResponderEvent(snmp.getMessageDispatcher(), transport,
+                                     target.getAddress(), MPv2c.ID,
+                                     SecurityModel.SECURITY_MODEL_SNMPv2c,
+                                     target.getSecurityName().getValue(),
+                                     SecurityLevel.NOAUTH_NOPRIV, handle,
+                                     response, 65535, null);
+  }
+
+  private static void race(final Runnable first, final Runnable second)
+      throws Exception
+  {
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+    final Throwable[] failure = new Throwable[1];
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        try {
+          barrier.await();
+          second.run();
+        }
+        catch (Throwable t) {
+          failure[0] = t;
+        }
+      }
+    });
+    thread.start();
+    barrier.await();
+    first.run();
+    thread.join();
+    if (failure[0] != null) {
+      throw new AssertionError(failure[0]);
+    }
+  }
+
+  public void testResponseRacingTimeout() throws Exception {
+    target.setRetries(0);
+    for (int i=0; i<RACES; i++) {
+      CountingListener listener = new CountingListener();
+      PDU pdu = createRequest();
+      final Snmp.PendingRequest request =
+          snmp.new PendingRequest(listener, null, pdu, target, transport);
+      PduHandle handle = snmp.sendMessage(pdu, target, transport, request);
+      final CommandResponderEvent response = createResponseEvent(handle);
+      race(request, new Runnable() {
+        public void run() {
+          snmp.processPdu(response);
+        }
+      });
+      assertEquals("Race "+i, 1, listener.events.get());
+    }
+  }
+
+  public void testRetryRacingCancel() throws Exception {
+    target.setRetries(1);
+    for (int i=0; i<RACES; i++) {
+      final CountingListener listener = new CountingListener();
+      final PDU pdu = createRequest();
+      Snmp.PendingRequest request =
+          snmp.new AsyncPendingRequest(listener, null, pdu, target, transport);
+      PduHandle handle = snmp.sendMessage(pdu, target, transport, request);
+      race(request, new Runnable() {
+        public void run() {
+          snmp.cancel(pdu, listener);
+        }
+      });
+      // a retry that survived the cancellation would receive this response
+      snmp.processPdu(createResponseEvent(handle));
+      assertEquals("Race "+i, 0, listener.events.get());
+    }
+  }
+
+  public void testCancel() throws Exception {
+    target.setRetries(0);
+    PDU pdu = createRequest();
+    Snmp.PendingRequest request =
+        snmp.new PendingRequest(new CountingListener(), null, pdu, target, transport);
+    assertTrue(request.cancel());
+    assertTrue(request.isCancelled());
+    assertFalse(request.cancel());
+
+    request = snmp.new PendingRequest(new CountingListener(), null, pdu, target, transport);
+    request.run();
+    assertFalse("Cancelled after timeout", request.cancel());
+  }
+
+  public void testCancelOnTimingWheel() throws Exception {
+    target.setRetries(0);
+    TimingWheelTimer timer = new TimingWheelTimer(1, 16);
+    try {
+      CountingListener listener = new CountingListener();
+      PDU pdu = createRequest();
+      Snmp.PendingRequest request =
+          snmp.new PendingRequest(listener, null, pdu, target, transport);
+      snmp.sendMessage(pdu, target, transport, request);
+      timer.schedule(request, 20);
+      assertTrue("Request cancelled in time", request.cancel());
+      Thread.sleep(50);
+      assertEquals(0, listener.events.get());
+    }
+    finally {
+      timer.cancel();
+    }
+  }
+
+  static class CountingListener implements ResponseListener {
+    final AtomicInteger events = new AtomicInteger();
+
+    public void onResponse(ResponseEvent event) {
+      events.incrementAndGet();
+    }
+  }
+}
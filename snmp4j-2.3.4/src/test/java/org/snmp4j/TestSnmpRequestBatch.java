@@ -0,0 +1,207 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestSnmpRequestBatch.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j;
+
+import junit.framework.TestCase;
+
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.mp.PduHandle;
+import org.snmp4j.mp.PduHandleCallback;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.security.SecurityModel;
+import org.snmp4j.security.SecurityModels;
+import org.snmp4j.security.TSM;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+import org.snmp4j.transport.DummyTransport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests sending a {@link RequestBatch} by {@link Snmp#send(RequestBatch, ResponseListener)}.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class TestSnmpRequestBatch extends TestCase {
+
+  private DummyTransport<UdpAddress> transport;
+  private Snmp snmp;
+  private CommunityTarget target =
+      new CommunityTarget(new UdpAddress("127.0.0.1/161"), new OctetString("public"));
+  private final List<ResponseEvent> events =
+      Collections.synchronizedList(new ArrayList<ResponseEvent>());
+  private final ResponseListener listener = new ResponseListener() {
+    public void onResponse(ResponseEvent event) {
+      events.add(event);
+    }
+  };
+
+  public TestSnmpRequestBatch(String name) {
+    super(name);
+  }
+
+  protected void setUp() throws Exception {
+    transport = new DummyTransport<UdpAddress>(new UdpAddress("127.0.0.1/4967"));
+    snmp = new Snmp(transport) {
+      protected PduHandle sendMessage(PDU pdu, Target target,
+                                      TransportMapping transport,
+                                      PduHandleCallback<PDU> pduHandleCallback)
+          throws IOException
+      {
+        if (pdu instanceof ScopedPDU) {
+          // the context engine ID discovery of a batched request fails
+          throw new IOException("Test failure");
+        }
+        return super.sendMessage(pdu, target, transport, pduHandleCallback);
+      }
+    };
+    target.setVersion(SnmpConstants.version2c);
+    target.setTimeout(10000);
+    target.setRetries(0);
+  }
+
+  protected void tearDown() throws Exception {
+    snmp.close();
+  }
+
+  private static PDU createRequest() {
+    PDU pdu = new PDU();
+    pdu.setType(PDU.GET);
+    pdu.add(new VariableBinding(SnmpConstants.sysDescr));
+    return pdu;
+  }
+
+  private CommandResponderEvent createResponseEvent(PduHandle handle) {
+    PDU response = createRequest();
+    response.setType(PDU.RESPONSE);
+    response.setRequestID(new Integer32(handle.getTransactionID()));
+    return new CommandResponderEvent(snmp.getMessageDispatcher(), transport,
+                                     target.getAddress(), MPv2c.ID,
+                                     SecurityModel.SECURITY_MODEL_SNMPv2c,
+                                     target.getSecurityName().getValue(),
+                                     SecurityLevel.NOAUTH_NOPRIV, handle,
+                                     response, 65535, null);
+  }
+
+  public void testFinishedRequestsLeaveBatchTimerTask() throws Exception {
+    RequestBatch batch = new RequestBatch();
+    for (int i=0; i<3; i++) {
+      batch.add(createRequest(), target, transport, null);
+    }
+    snmp.send(batch, listener);
+    assertTrue(batch.isSuccess());
+    List<RequestBatch.Request> requests = batch.getRequests();
+    Snmp.BatchTimerTask task =
+        ((Snmp.PendingRequest) requests.get(0).getPduHandleCallback()).getBatchTimerTask();
+    assertNotNull(task);
+    assertEquals(3, task.size());
+
+    // a response releases its request
+    snmp.processPdu(createResponseEvent(requests.get(0).getPduHandle()));
+    assertEquals(1, events.size());
+    assertEquals(2, task.size());
+    // a cancelled request is released too
+    snmp.cancel(requests.get(1).getPdu(), listener);
+    assertEquals(1, task.size());
+    assertFalse(task.isCancelled());
+    snmp.processPdu(createResponseEvent(requests.get(2).getPduHandle()));
+    assertEquals(0, task.size());
+    assertTrue(task.isCancelled());
+    assertEquals(2, events.size());
+  }
+
+  /**
+   * The response to the first request of a batch arrives while the second
+   * request is being sent. The second request must still time out.
+   */
+  public void testResponseBeforeBatchIsSent() throws Exception {
+    snmp.close();
+    final RequestBatch batch = new RequestBatch();
+    transport = new DummyTransport<UdpAddress>(new UdpAddress("127.0.0.1/4967")) {
+      private boolean answered;
+      public void sendMessage(UdpAddress address, byte[] message,
+                              TransportStateReference tmStateReference)
+          throws IOException
+      {
+        super.sendMessage(address, message, tmStateReference);
+        if (!answered) {
+          answered = true;
+          PDU first = batch.getRequests().get(0).getPdu();
+          snmp.processPdu(createResponseEvent(
+              new PduHandle(first.getRequestID().toInt())));
+        }
+      }
+    };
+    snmp = new Snmp(transport);
+    target.setTimeout(100);
+    batch.add(createRequest(), target, transport, null);
+    batch.add(createRequest(), target, transport, null);
+    snmp.send(batch, listener);
+    assertEquals(1, events.size());
+    assertNotNull(events.get(0).getResponse());
+    long end = System.currentTimeMillis() + 5000;
+    while ((events.size() < 2) && (System.currentTimeMillis() < end)) {
+      Thread.sleep(10);
+    }
+    assertEquals(2, events.size());
+    assertSame(batch.getRequests().get(1).getPdu(), events.get(1).getRequest());
+    assertNull(events.get(1).getResponse());
+    assertNull(events.get(1).getError());
+  }
+
+  public void testFailedDiscoveryIsReported() throws Exception {
+    // TSM requires RFC 5343 context engine ID discovery
+    MPv3 mpv3 = (MPv3) snmp.getMessageDispatcher().getMessageProcessingModel(MPv3.ID);
+    SecurityModels securityModels = new SecurityModels() { };
+    securityModels.addSecurityModel(
+        new TSM(new OctetString(mpv3.getLocalEngineID()), false));
+    mpv3.setSecurityModels(securityModels);
+    UserTarget userTarget = new UserTarget(target.getAddress(),
+                                           new OctetString("SHADES"), new byte[0]);
+    userTarget.setVersion(SnmpConstants.version3);
+    userTarget.setSecurityModel(SecurityModel.SECURITY_MODEL_TSM);
+    userTarget.setSecurityLevel(SecurityLevel.NOAUTH_NOPRIV);
+    userTarget.setTimeout(10000);
+    ScopedPDU scopedPDU = new ScopedPDU();
+    scopedPDU.add(new VariableBinding(SnmpConstants.sysDescr));
+    RequestBatch batch = new RequestBatch();
+    RequestBatch.Request failed = batch.add(scopedPDU, userTarget, transport, null);
+    RequestBatch.Request sent = batch.add(createRequest(), target, transport, null);
+    snmp.send(batch, listener);
+    assertNotNull(failed.getException());
+    assertTrue(failed.getException().getCause() instanceof IOException);
+    assertNull(sent.getException());
+    assertNotNull(sent.getPduHandle());
+    assertEquals(1, events.size());
+    assertSame(scopedPDU, events.get(0).getRequest());
+    assertSame(failed.getException(), events.get(0).getError());
+  }
+}
@@ -0,0 +1,172 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestBERReverseEncoder.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.asn1;
+
+import junit.framework.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.SNMP4JSettings;
+import org.snmp4j.ScopedPDU;
+import org.snmp4j.smi.*;
+
+/**
+ * Tests that the {@link BERReverseEncoder} produces the same encoding as the
+ * forward encoding of {@link BER}.
+ * @author Frank Fock
+ * @since 2.4
+ */
+public class TestBERReverseEncoder extends TestCase {
+
+  private static final int[] INTEGERS = {
+      0, 1, -1, 127, 128, -128, -129, 255, 256, 32767, 32768, -32768, -32769,
+      8388607, 8388608, -8388608, -8388609, Integer.MAX_VALUE, Integer.MIN_VALUE
+  };
+
+  private BERReverseEncoder encoder;
+  private boolean allowSNMPv2InV1;
+
+  public TestBERReverseEncoder(String s) {
+    super(s);
+  }
+
+  protected void setUp() {
+    encoder = new BERReverseEncoder(16);
+    allowSNMPv2InV1 = SNMP4JSettings.isAllowSNMPv2InV1();
+  }
+
+  protected void tearDown() {
+    encoder = null;
+    SNMP4JSettings.setAllowSNMPv2InV1(allowSNMPv2InV1);
+  }
+
+  private static byte[] encodeForward(BERSerializable object) throws Exception {
+    ByteBuffer buf = ByteBuffer.allocate(object.getBERLength());
+    object.encodeBER(new BEROutputStream(buf));
+    assertEquals(0, buf.remaining());
+    return buf.array();
+  }
+
+  private void assertEncoding(Variable variable) throws Exception {
+    encoder.reset();
+    AbstractVariable.encodeVariable(variable, encoder);
+    assertTrue(variable.toString(),
+               Arrays.equals(encodeForward(variable), encoder.toByteArray()));
+  }
+
+  public void testEncodeLength() throws Exception {
+    int[] lengths = { 0, 0x7F, 0x80, 0xFF, 0x100, 0xFFFF, 0x10000, 7559605,
+                      0x1000000, Integer.MAX_VALUE, -1 };
+    for (int length : lengths) {
+      java.io.ByteArrayOutputStream os = new java.io.ByteArrayOutputStream();
+      BER.encodeLength(os, length);
+      encoder.reset();
+      encoder.encodeLength(length);
+      assertTrue("length "+length,
+                 Arrays.equals(os.toByteArray(), encoder.toByteArray()));
+      assertEquals(BER.getBERLengthOfLength(length), encoder.length());
+    }
+  }
+
+  public void testEncodeIntegers() throws Exception {
+    for (int value : INTEGERS) {
+      assertEncoding(new Integer32(value));
+      long unsigned = value & 0xFFFFFFFFL;
+      assertEncoding(new UnsignedInteger32(unsigned));
+      assertEncoding(new Counter32(unsigned));
+      assertEncoding(new Gauge32(unsigned));
+      assertEncoding(new TimeTicks(unsigned));
+      assertEncoding(new Counter64(value));
+      assertEncoding(new Counter64(((long)value << 32) | unsigned));
+    }
+    assertEncoding(new Counter64(-3914541189257109063l));
+  }
+
+  public void testEncodeOID() throws Exception {
+    assertEncoding(new OID());
+    assertEncoding(new OID(new int[] { 1 }));
+    assertEncoding(new OID(new int[] { 1, 3, 6, 3255 }));
+    assertEncoding(new OID(new int[] { 2, 999, 127, 128, 16383, 16384 }));
+    assertEncoding(new OID(new int[] { 1, 3, 6, -1, 0x0FFFFFFF, 0x10000000 }));
+    encoder.reset();
+    try {
+      encoder.encodeOID(BER.OID, new int[] { 3, 1 });
+      fail("Invalid first sub-identifier not detected");
+    }
+    catch (java.io.IOException iox) {
+      // expected
+    }
+  }
+
+  public void testEncodeOtherVariables() throws Exception {
+    assertEncoding(new OctetString());
+    assertEncoding(new OctetString(new byte[300]));
+    assertEncoding(new Opaque(new byte[] { 1, 2, 3 }));
+    assertEncoding(new Null());
+    assertEncoding(Null.endOfMibView);
+    assertEncoding(new IpAddress("192.168.0.1"));
+  }
+
+  public void testEncodePDU() throws Exception {
+    ScopedPDU scopedPDU = new ScopedPDU();
+    scopedPDU.setContextEngineID(new OctetString("engine"));
+    scopedPDU.setContextName(new OctetString("context"));
+    PDUv1 trap = new PDUv1();
+    trap.setType(PDU.V1TRAP);
+    trap.setEnterprise(new OID("1.3.6.1.4.1.4976"));
+    trap.setAgentAddress(new IpAddress("10.0.0.1"));
+    trap.setSpecificTrap(1);
+    trap.setTimestamp(123456);
+    PDU[] pdus = { new PDU(), scopedPDU, new PDUv1(), trap };
+    for (PDU pdu : pdus) {
+      if (pdu.getType() != PDU.V1TRAP) {
+        pdu.setType(PDU.RESPONSE);
+        pdu.setRequestID(new Integer32(-12345678));
+      }
+      for (int i=0; i<500; i++) {
+        pdu.add(new VariableBinding(new OID(new int[] { 1, 3, 6, 1, 2, 1, i }),
+                                    new OctetString("value"+i)));
+        pdu.add(new VariableBinding(new OID(new int[] { 1, 3, 6, 1, 4, 1, i }),
+                                    new Counter32(i * 1000)));
+      }
+      encoder.reset();
+      pdu.encodeBER(encoder);
+      assertTrue(pdu.getClass().getName(),
+                 Arrays.equals(encodeForward(pdu), encoder.toByteArray()));
+    }
+  }
+
+  public void testEncodeCounter64InV1PDU() throws Exception {
+    SNMP4JSettings.setAllowSNMPv2InV1(false);
+    PDUv1 pdu = new PDUv1();
+    pdu.add(new VariableBinding(new OID("1.3.6.1"), new Counter64(1)));
+    try {
+      pdu.encodeBER(encoder);
+      fail("Counter64 in SNMPv1 PDU not detected");
+    }
+    catch (java.io.IOException iox) {
+      // expected
+    }
+  }
+
+}
@@ -21,6 +21,8 @@
 
 package org.snmp4j.security;
 
+import java.util.Arrays;
+
 import org.snmp4j.smi.OctetString;
 import junit.framework.*;
 import org.apache.log4j.*;
@@ -327,4 +329,32 @@ public class TestAuthMD5
                           new ByteArrayWindow(msg, messageOffset + digestOffset, 12));
     assertEquals(false, res);
   }
+
+  public void testPrecomputedKey() {
+    AuthMD5 auth = new AuthMD5();
+    byte[] engineId = { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 2 };
+    byte[] key = auth.passwordToKey(new OctetString("maplesyrup"), engineId);
+    PrecomputedHmacKey hmacKey = auth.precomputeKey(key);
+    assertNotNull(hmacKey);
+    assertTrue(hmacKey.isKeyOf(auth, key));
+    assertFalse(hmacKey.isKeyOf(auth, key.clone()));
+    byte[] message = new byte[100];
+    for (int i = 0; i < message.length; i++) {
+      message[i] = (byte) i;
+    }
+    byte[] precomputedMessage = message.clone();
+    for (int n = 0; n < 2; n++) {
+      auth.authenticate(key, message, 0, message.length,
+                        new ByteArrayWindow(message, 10, 12));
+      auth.authenticate(hmacKey, precomputedMessage, 0,
+                        precomputedMessage.length,
+                        new ByteArrayWindow(precomputedMessage, 10, 12));
+      assertTrue(Arrays.equals(message, precomputedMessage));
+    }
+    assertTrue(auth.isAuthentic(hmacKey, message, 0, message.length,
+                                new ByteArrayWindow(message, 10, 12)));
+    message[50]++;
+    assertFalse(auth.isAuthentic(hmacKey, message, 0, message.length,
+                                 new ByteArrayWindow(message, 10, 12)));
+  }
 }
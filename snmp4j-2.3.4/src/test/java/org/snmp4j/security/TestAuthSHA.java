@@ -20,6 +20,9 @@
 
 package org.snmp4j.security;
 
+import java.util.Arrays;
+
+import org.snmp4j.smi.OID;
 import org.snmp4j.smi.OctetString;
 import junit.framework.*;
 
@@ -131,4 +134,77 @@ public class TestAuthSHA
     }
 
   }
+
+  public void testMasterKeyCache() {
+    byte[] engineId1 = {
+        (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,
+        (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x00,
+        (byte) 0x00, (byte) 0x00, (byte) 0x00, (byte) 0x02};
+    byte[] engineId2 = {
+        (byte) 0x80, (byte) 0x00, (byte) 0x13, (byte) 0x70,
+        (byte) 0x01, (byte) 0x7f, (byte) 0x00, (byte) 0x00, (byte) 0x01};
+    AuthSHA auth = new AuthSHA();
+    SecurityProtocols protocols = new SecurityProtocols();
+    protocols.addAuthenticationProtocol(auth);
+    OctetString[] passwords = {
+        new OctetString("maplesyrup"), new OctetString("newsyrup") };
+    protocols.setMasterKeyCacheSize(1);
+    for (int i=0; i<2; i++) {
+      for (OctetString password : passwords) {
+        assertTrue(Arrays.equals(
+            auth.passwordToKey(password, engineId1),
+            protocols.passwordToKey(AuthSHA.ID, password, engineId1)));
+        assertTrue(Arrays.equals(
+            auth.passwordToKey(password, engineId2),
+            protocols.passwordToKey(AuthSHA.ID, password, engineId2)));
+      }
+    }
+    protocols.setMasterKeyCacheSize(0);
+    assertEquals(0, protocols.getMasterKeyCacheSize());
+    assertTrue(Arrays.equals(
+        auth.passwordToKey(passwords[0], engineId2),
+        protocols.passwordToKey(AuthSHA.ID, passwords[0], engineId2)));
+  }
+
+  public void testMasterKeyCacheEviction() {
+    AuthSHA auth = new AuthSHA();
+    MasterKeyCache cache = new MasterKeyCache(2);
+    OctetString password = new OctetString("maplesyrup");
+    cache.precompute(auth, password);
+    cache.precompute(auth, new OctetString("newsyrup"));
+    cache.precompute(auth, password);
+    assertEquals(2, cache.size());
+    cache.precompute(auth, new OctetString("syrup"));
+    assertEquals(2, cache.size());
+    cache.setMaxSize(1);
+    assertEquals(1, cache.size());
+    cache.clear();
+    assertEquals(0, cache.size());
+    byte[] engineId = new byte[] { 1, 2, 3, 4, 5 };
+    assertTrue(Arrays.equals(auth.passwordToKey(password, engineId),
+                             cache.passwordToKey(auth, password, engineId)));
+  }
+
+  public void testPasswordToKeyOverride() {
+    final OID id = new OID("1.3.6.1.4.1.4976.99.1");
+    final byte[] customKey = new byte[] { 1, 2, 3, 4 };
+    AuthSHA auth = new AuthSHA() {
+      public OID getID() {
+        return id;
+      }
+
+      public byte[] passwordToKey(OctetString passwordString,
+                                  byte[] engineID) {
+        return customKey.clone();
+      }
+    };
+    assertTrue(new AuthSHA().isMasterKeyCacheable());
+    assertFalse(auth.isMasterKeyCacheable());
+    SecurityProtocols protocols = new SecurityProtocols();
+    protocols.addAuthenticationProtocol(auth);
+    OctetString password = new OctetString("maplesyrup");
+    protocols.precomputeMasterKey(id, password);
+    assertTrue(Arrays.equals(customKey,
+        protocols.passwordToKey(id, password, new byte[] { 1, 2, 3 })));
+  }
 }
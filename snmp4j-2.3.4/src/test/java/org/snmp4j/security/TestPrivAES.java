@@ -97,4 +97,31 @@ public class TestPrivAES
     assertEquals("66:95:fe:bc:92:88:e3:62:82:23:5f:c7:15:1f:12:84:97:b3:8f:3f:50:5e:07:eb:9a:f2:55:68:fa:1f:5d:be",
         new OctetString(key).toHexString());
   }
+
+  public void testCipherPoolKeySlots() {
+    PrivAES128 pd = new PrivAES128();
+    byte[][] keys = new byte[3][16];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i][0] = (byte) i;
+    }
+    byte[] plaintext = "This is a secret message, nobody is allowed to read it!".
+        getBytes();
+    for (int n = 0; n < 3; n++) {
+      for (byte[] key : keys) {
+        DecryptParams pp = new DecryptParams();
+        byte[] ciphertext =
+            pd.encrypt(plaintext, 0, plaintext.length, key, n, 4711, pp);
+        byte[] expected = new PrivAES128().decrypt(ciphertext, 0,
+            ciphertext.length, key, n, 4711, pp);
+        assertEquals(asHex(plaintext), asHex(expected));
+        byte[] decrypted =
+            pd.decrypt(ciphertext, 0, ciphertext.length, key, n, 4711, pp);
+        assertEquals(asHex(plaintext), asHex(decrypted));
+      }
+    }
+    CipherPool pool = pd.getCipherPool();
+    assertTrue(pool.getKeyHitCount() > 0);
+    assertTrue(pool.getHitCount() >= pool.getKeyHitCount());
+    assertTrue(pool.getMissCount() > 0);
+  }
 }
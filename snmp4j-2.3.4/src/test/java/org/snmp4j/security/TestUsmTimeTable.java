@@ -0,0 +1,160 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestUsmTimeTable.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.security;
+
+import java.io.*;
+
+import junit.framework.*;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.OctetString;
+
+
+public class TestUsmTimeTable
+    extends TestCase {
+
+  private static final OctetString LOCAL_ENGINE = OctetString.fromHexString("80:00:13:70:01:01");
+  private static final OctetString REMOTE_ENGINE = OctetString.fromHexString("80:00:13:70:01:02");
+
+  private UsmTimeTable table;
+
+  public TestUsmTimeTable(String p0) {
+    super(p0);
+  }
+
+  protected void setUp() {
+    table = new UsmTimeTable(LOCAL_ENGINE, 3);
+  }
+
+  protected void tearDown() {
+    table = null;
+  }
+
+  public void testAuthoritative() {
+    int engineTime = table.getEngineTime();
+    assertEquals(SnmpConstants.SNMPv3_USM_OK,
+                 table.checkTime(LOCAL_ENGINE, 3, engineTime));
+    assertEquals(SnmpConstants.SNMPv3_USM_NOT_IN_TIME_WINDOW,
+                 table.checkTime(LOCAL_ENGINE, 2, engineTime));
+    assertEquals(SnmpConstants.SNMPv3_USM_NOT_IN_TIME_WINDOW,
+                 table.checkTime(LOCAL_ENGINE, 3, engineTime + 151));
+    assertEquals(SnmpConstants.SNMPv3_USM_OK,
+                 table.checkTime(new UsmTimeEntry(LOCAL_ENGINE, 3, engineTime)));
+  }
+
+  public void testNonAuthoritative() {
+    assertEquals(SnmpConstants.SNMPv3_USM_UNKNOWN_ENGINEID,
+                 table.checkTime(REMOTE_ENGINE, 1, 1000));
+    assertEquals(SnmpConstants.SNMPv3_USM_UNKNOWN_ENGINEID,
+                 table.checkEngineID(REMOTE_ENGINE, false));
+    assertEquals(SnmpConstants.SNMPv3_USM_OK,
+                 table.checkEngineID(REMOTE_ENGINE, true));
+    assertEquals(SnmpConstants.SNMPv3_USM_OK,
+                 table.checkTime(REMOTE_ENGINE, 1, 1000));
+    UsmTimeEntry time = table.getTime(REMOTE_ENGINE);
+    assertEquals(1, time.getEngineBoots());
+    assertTrue(Math.abs(time.getLatestReceivedTime() - 1000) <= 1);
+    // older messages are accepted within 150 seconds
+    assertEquals(SnmpConstants.SNMPv3_USM_OK,
+                 table.checkTime(REMOTE_ENGINE, 1, 900));
+    assertEquals(SnmpConstants.SNMPv3_USM_NOT_IN_TIME_WINDOW,
+                 table.checkTime(REMOTE_ENGINE, 1, 849));
+    assertEquals(SnmpConstants.SNMPv3_USM_NOT_IN_TIME_WINDOW,
+                 table.checkTime(REMOTE_ENGINE, 0, 1000));
+    // a reboot of the remote engine
+    assertEquals(SnmpConstants.SNMPv3_USM_OK,
+                 table.checkTime(REMOTE_ENGINE, 2, 10));
+    assertEquals(2, table.getTime(REMOTE_ENGINE).getEngineBoots());
+    table.removeEntry(REMOTE_ENGINE);
+    assertNull(table.getTime(REMOTE_ENGINE));
+  }
+
+  public void testEviction() {
+    assertEquals(UsmTimeTable.DEFAULT_MAX_SIZE, table.getMaxSize());
+    for (int i=0; i<1000; i++) {
+      table.addEntry(new UsmTimeEntry(new OctetString("engine"+i), 1, i));
+    }
+    assertEquals(1000, table.size());
+    table.setMaxSize(160);
+    assertTrue(table.size() <= 160);
+    assertNotNull(table.getEntry(new OctetString("engine999")));
+    for (int i=1000; i<2000; i++) {
+      table.addEntry(new UsmTimeEntry(new OctetString("engine"+i), 1, i));
+    }
+    assertTrue(table.size() <= 160);
+    assertNotNull(table.getEntry(new OctetString("engine1999")));
+    assertNull(table.getEntry(new OctetString("engine0")));
+  }
+
+  /**
+   * Unauthenticated messages with random engine IDs must not evict the time
+   * entries of authenticated engines.
+   */
+  public void testSpoofedEngineIDFlood() {
+    table.setMaxSize(160);
+    assertEquals(SnmpConstants.SNMPv3_USM_OK,
+                 table.checkEngineID(REMOTE_ENGINE, true));
+    assertEquals(SnmpConstants.SNMPv3_USM_OK,
+                 table.checkTime(REMOTE_ENGINE, 7, 5000));
+    java.util.Random random = new java.util.Random(1);
+    for (int i=0; i<10000; i++) {
+      byte[] engineID = new byte[12];
+      random.nextBytes(engineID);
+      assertEquals(SnmpConstants.SNMPv3_USM_OK,
+                   table.checkEngineID(new OctetString(engineID), true));
+    }
+    assertTrue(table.size() <= 2*160);
+    UsmTimeEntry time = table.getTime(REMOTE_ENGINE);
+    assertNotNull(time);
+    assertEquals(7, time.getEngineBoots());
+    // a replayed message of the previous boot cycle is still rejected
+    assertEquals(SnmpConstants.SNMPv3_USM_NOT_IN_TIME_WINDOW,
+                 table.checkTime(REMOTE_ENGINE, 6, 5000));
+  }
+
+  public void testDiscoveredEntryAuthenticated() {
+    table.setMaxSize(16);
+    OctetString discovered = new OctetString("discovered");
+    assertEquals(SnmpConstants.SNMPv3_USM_OK,
+                 table.checkEngineID(discovered, true));
+    assertEquals(SnmpConstants.SNMPv3_USM_OK,
+                 table.checkTime(discovered, 1, 100));
+    // the authenticated entry is not evicted by newly discovered engines
+    for (int i=0; i<100; i++) {
+      table.checkEngineID(new OctetString("spoofed"+i), true);
+    }
+    assertEquals(1, table.getTime(discovered).getEngineBoots());
+  }
+
+  public void testSerialization() throws Exception {
+    table.addEntry(new UsmTimeEntry(REMOTE_ENGINE, 5, 500));
+    table.setMaxSize(1000);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(bos);
+    oos.writeObject(table);
+    oos.close();
+    ObjectInputStream ois =
+        new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+    UsmTimeTable copy = (UsmTimeTable) ois.readObject();
+    assertEquals(1000, copy.getMaxSize());
+    assertEquals(1, copy.size());
+    assertEquals(5, copy.getTime(REMOTE_ENGINE).getEngineBoots());
+    assertEquals(3, copy.getEngineBoots());
+  }
+}
@@ -0,0 +1,156 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestUsmUserTable.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.security;
+
+import java.io.*;
+import java.util.List;
+
+import junit.framework.*;
+import org.snmp4j.smi.OctetString;
+
+
+public class TestUsmUserTable
+    extends TestCase {
+
+  private static final OctetString ENGINE_A = OctetString.fromHexString("80:00:13:70:01:0a");
+  private static final OctetString ENGINE_B = OctetString.fromHexString("80:00:13:70:01:0b");
+
+  private UsmUserTable table;
+
+  public TestUsmUserTable(String p0) {
+    super(p0);
+  }
+
+  protected void setUp() {
+    table = new UsmUserTable();
+  }
+
+  protected void tearDown() {
+    table = null;
+  }
+
+  private static UsmUserEntry createEntry(OctetString engineID, String name) {
+    OctetString securityName = new OctetString(name);
+    return new UsmUserEntry(securityName, engineID,
+                            new UsmUser(securityName, null, null, null, null));
+  }
+
+  public void testLookup() {
+    UsmUserEntry a = createEntry(ENGINE_A, "alice");
+    UsmUserEntry b = createEntry(ENGINE_B, "alice");
+    UsmUserEntry c = createEntry(null, "bob");
+    table.addUser(b);
+    table.addUser(a);
+    table.addUser(c);
+    assertEquals(3, table.size());
+    assertSame(a, table.getUser(ENGINE_A, new OctetString("alice")));
+    assertSame(b, table.getUser(ENGINE_B, new OctetString("alice")));
+    assertNull(table.getUser(ENGINE_A, new OctetString("bob")));
+    assertSame(c, table.getUser(new OctetString("bob")));
+    assertNull(table.getUser(new OctetString("alice")));
+
+    List<UsmUserEntry> alice = table.getUserEntries(new OctetString("alice"));
+    assertEquals(2, alice.size());
+    assertSame(a, alice.get(0));
+    assertSame(b, alice.get(1));
+    assertTrue(table.getUserEntries(new OctetString("carol")).isEmpty());
+
+    List<UsmUserEntry> all = table.getUserEntries();
+    assertEquals(3, all.size());
+    assertSame(c, all.get(0));
+    assertSame(a, all.get(1));
+    assertSame(b, all.get(2));
+  }
+
+  public void testReplaceAndRemove() {
+    UsmUserEntry a = createEntry(ENGINE_A, "alice");
+    UsmUserEntry a2 = createEntry(ENGINE_A, "alice");
+    table.addUser(a);
+    assertSame(a, table.addUser(a2));
+    assertEquals(1, table.getUserEntries(new OctetString("alice")).size());
+    assertSame(a2, table.getUserEntries(new OctetString("alice")).get(0));
+
+    table.addUser(createEntry(ENGINE_B, "alice"));
+    table.addUser(createEntry(ENGINE_B, "bob"));
+    assertSame(a2, table.removeUser(ENGINE_A, new OctetString("alice")));
+    assertEquals(1, table.getUserEntries(new OctetString("alice")).size());
+
+    List<UsmUserEntry> removed =
+        table.removeAllUsers(new OctetString("alice"), null);
+    assertEquals(1, removed.size());
+    assertTrue(table.getUserEntries(new OctetString("alice")).isEmpty());
+    assertEquals(1, table.size());
+
+    removed = table.removeAllUsers(new OctetString("bob"), ENGINE_B);
+    assertEquals(1, removed.size());
+    assertEquals(0, table.size());
+  }
+
+  public void testUserNameDiffersFromSecurityName() {
+    UsmUserEntry entry = new UsmUserEntry(new OctetString("user"), ENGINE_A,
+        new UsmUser(new OctetString("secName"), null, null, null, null));
+    table.addUser(entry);
+    assertSame(entry, table.getUser(ENGINE_A, new OctetString("secName")));
+    assertEquals(1, table.getUserEntries(new OctetString("user")).size());
+    assertTrue(table.getUserEntries(new OctetString("secName")).isEmpty());
+    assertTrue(table.removeAllUsers(new OctetString("user"), null).isEmpty());
+    assertEquals(1, table.removeAllUsers(new OctetString("secName"), null).size());
+    assertTrue(table.getUserEntries(new OctetString("user")).isEmpty());
+  }
+
+  public void testSetUsersAndClear() {
+    table.addUser(createEntry(ENGINE_A, "alice"));
+    table.setUsers(java.util.Arrays.asList(createEntry(ENGINE_B, "bob"),
+                                           createEntry(ENGINE_B, "carol")));
+    assertTrue(table.getUserEntries(new OctetString("alice")).isEmpty());
+    assertEquals(1, table.getUserEntries(new OctetString("bob")).size());
+    assertEquals(2, table.size());
+    table.clear();
+    assertEquals(0, table.size());
+    assertTrue(table.getUserEntries(new OctetString("bob")).isEmpty());
+  }
+
+  public void testReplaceWithOtherUserName() {
+    UsmUser user = new UsmUser(new OctetString("secName"), null, null, null, null);
+    table.addUser(new UsmUserEntry(new OctetString("old"), ENGINE_A, user));
+    table.addUser(new UsmUserEntry(new OctetString("new"), ENGINE_A, user));
+    assertTrue(table.getUserEntries(new OctetString("old")).isEmpty());
+    assertEquals(1, table.getUserEntries(new OctetString("new")).size());
+    assertEquals(1, table.removeAllUsers(new OctetString("secName"), null).size());
+    assertTrue(table.getUserEntries(new OctetString("new")).isEmpty());
+  }
+
+  /**
+   * Adds the same user for many engines, as USM does when localizing the
+   * keys of a user for each authoritative engine.
+   */
+  public void testManyEnginesPerUser() {
+    int engines = 40000;
+    for (int i=0; i<engines; i++) {
+      OctetString engineID = new OctetString(ENGINE_A);
+      engineID.append(new OctetString(new byte[] {
+          (byte)(i >> 16), (byte)(i >> 8), (byte)i }));
+      table.addUser(createEntry(engineID, "alice"));
+    }
+    assertEquals(engines, table.getUserEntries(new OctetString("alice")).size());
+    assertEquals(engines, table.removeAllUsers(new OctetString("alice"), null).size());
+    assertEquals(0, table.size());
+  }
+}
@@ -0,0 +1,139 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestAbstractVariable.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.smi;
+
+import junit.framework.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.snmp4j.SNMP4JSettings;
+import org.snmp4j.asn1.BER;
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.asn1.BEROutputStream;
+
+/**
+ * Tests the creation of variables by the registered syntaxes of
+ * {@link AbstractVariable}.
+ * @author Frank Fock
+ * @since 2.4
+ */
+public class TestAbstractVariable extends TestCase {
+
+  private static final int CUSTOM_SYNTAX = 0x47;
+
+  private static final Variable[] VARIABLES = {
+      new Integer32(-4711), new OctetString("SNMP4J"), Null.instance,
+      new OID("1.3.6.1.4.1.4976"), new IpAddress("10.1.2.3"),
+      new Counter32(2147483648l), new Gauge32(4294967295l),
+      new TimeTicks(100), new Opaque(new byte[] { 1, 2 }), new Counter64(-1l),
+      Null.noSuchObject, Null.noSuchInstance, Null.endOfMibView
+  };
+
+  private boolean extensibilityEnabled;
+
+  public TestAbstractVariable(String s) {
+    super(s);
+  }
+
+  protected void setUp() throws Exception {
+    super.setUp();
+    extensibilityEnabled = SNMP4JSettings.isExtensibilityEnabled();
+  }
+
+  protected void tearDown() throws Exception {
+    SNMP4JSettings.setExtensibilityEnabled(extensibilityEnabled);
+    super.tearDown();
+  }
+
+  private static BERInputStream encode(Variable variable) throws IOException {
+    BEROutputStream os =
+        new BEROutputStream(ByteBuffer.allocate(variable.getBERLength()));
+    variable.encodeBER(os);
+    return new BERInputStream(ByteBuffer.wrap(os.getBuffer().array()));
+  }
+
+  private static void assertCreateFromBER() throws IOException {
+    for (Variable v : VARIABLES) {
+      Variable decoded = AbstractVariable.createFromBER(encode(v));
+      assertEquals(v.getClass(), decoded.getClass());
+      assertEquals(v, decoded);
+      assertEquals(v.getSyntax(), decoded.getSyntax());
+      assertEquals(v.getSyntax(),
+                   AbstractVariable.createFromSyntax(v.getSyntax()).getSyntax());
+    }
+  }
+
+  public void testCreateFromBER() throws Exception {
+    SNMP4JSettings.setExtensibilityEnabled(false);
+    assertCreateFromBER();
+    SNMP4JSettings.setExtensibilityEnabled(true);
+    assertCreateFromBER();
+  }
+
+  public void testRegisterSyntax() throws Exception {
+    SNMP4JSettings.setExtensibilityEnabled(true);
+    Variable custom = new OctetString("custom") {
+      public int getSyntax() {
+        return CUSTOM_SYNTAX;
+      }
+      public void encodeBER(java.io.OutputStream outputStream)
+          throws IOException {
+        BER.encodeString(outputStream, (byte)CUSTOM_SYNTAX, getValue());
+      }
+    };
+    try {
+      AbstractVariable.createFromBER(encode(custom));
+      fail("Unsupported syntax not detected");
+    }
+    catch (IOException iox) {
+      // expected
+    }
+    AbstractVariable.registerSyntax(CUSTOM_SYNTAX, new VariableFactory() {
+      public Variable createVariable(int smiSyntax) {
+        assertEquals(CUSTOM_SYNTAX, smiSyntax);
+        return new Opaque() {
+          public void decodeBER(BERInputStream inputStream) throws IOException {
+            BER.MutableByte type = new BER.MutableByte();
+            byte[] value = new byte[BER.decodeHeader(inputStream, type)];
+            inputStream.read(value);
+            setValue(value);
+          }
+        };
+      }
+    });
+    try {
+      Variable decoded = AbstractVariable.createFromBER(encode(custom));
+      assertEquals(new OctetString("custom"),
+                   new OctetString(((Opaque)decoded).getValue()));
+      assertNotNull(AbstractVariable.createFromSyntax(CUSTOM_SYNTAX));
+    }
+    finally {
+      AbstractVariable.registerSyntax(CUSTOM_SYNTAX, null);
+    }
+    try {
+      AbstractVariable.createFromSyntax(CUSTOM_SYNTAX);
+      fail("Removed syntax still registered");
+    }
+    catch (IllegalArgumentException iaex) {
+      // expected
+    }
+  }
+}
@@ -139,4 +139,84 @@ public class TestOID extends TestCase {
     assertEquals(a, b);
   }
 
+  private static byte[] encode(VariableBinding vb) throws Exception {
+    java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(vb.getBERLength());
+    vb.encodeBER(new org.snmp4j.asn1.BEROutputStream(buf));
+    return buf.array();
+  }
+
+  private static byte[] reverseEncode(VariableBinding vb) throws Exception {
+    org.snmp4j.asn1.BERReverseEncoder encoder =
+        new org.snmp4j.asn1.BERReverseEncoder();
+    vb.encodeBER(encoder);
+    return encoder.toByteArray();
+  }
+
+  public void testImmutableOID() throws Exception {
+    OID oid = new OID("1.3.6.1.2.1.2.2.1.10.4294967295");
+    VariableBinding expected = new VariableBinding(oid, new OctetString("v"));
+    for (boolean cached : new boolean[] { false, true }) {
+      ImmutableOID immutable = new ImmutableOID(oid, cached);
+      assertEquals(cached, immutable.isBEREncodingCached());
+      assertEquals(oid, immutable);
+      assertEquals(oid.hashCode(), immutable.hashCode());
+      assertEquals(oid.getBERLength(), immutable.getBERLength());
+      VariableBinding vb = new VariableBinding(immutable,
+          new ImmutableOctetString("v".getBytes(), cached));
+      assertEquals(expected.getBERLength(), vb.getBERLength());
+      assertTrue(java.util.Arrays.equals(encode(expected), encode(vb)));
+      assertTrue(java.util.Arrays.equals(encode(expected), reverseEncode(vb)));
+      try {
+        immutable.append(1);
+        fail("ImmutableOID modified");
+      }
+      catch (UnsupportedOperationException uoex) {
+        // expected
+      }
+      OID copy = (OID) immutable.clone();
+      copy.append(1);
+      assertEquals(oid.size()+1, copy.size());
+      assertEquals(oid, immutable);
+    }
+  }
+
+  public void testImmutableValuesInPDU() throws Exception {
+    OID oid = new OID("1.3.6.1.2.1.1.1.0");
+    ImmutableOID immutableOID = new ImmutableOID(oid, true);
+    ImmutableOctetString immutableValue =
+        new ImmutableOctetString("SNMP4J".getBytes(), true);
+    org.snmp4j.PDU expected = new org.snmp4j.PDU();
+    expected.setType(org.snmp4j.PDU.RESPONSE);
+    expected.add(new VariableBinding(oid, new OctetString("SNMP4J")));
+    org.snmp4j.PDU pdu = new org.snmp4j.PDU();
+    pdu.setType(org.snmp4j.PDU.RESPONSE);
+    VariableBinding vb = new VariableBinding();
+    vb.setOid(immutableOID);
+    vb.setVariable(immutableValue);
+    pdu.add(vb);
+    pdu.add(new VariableBinding(immutableOID, immutableValue));
+    pdu.add((VariableBinding) vb.clone());
+    for (VariableBinding added : pdu.getVariableBindingList()) {
+      assertSame(immutableOID, added.getOid());
+      assertSame(immutableValue, added.getVariable());
+    }
+    for (int i=1; i<pdu.size(); i++) {
+      expected.add(new VariableBinding(oid, new OctetString("SNMP4J")));
+    }
+    assertEquals(expected.getBERLength(), pdu.getBERLength());
+    java.nio.ByteBuffer expectedBuf =
+        java.nio.ByteBuffer.allocate(expected.getBERLength());
+    expected.encodeBER(new org.snmp4j.asn1.BEROutputStream(expectedBuf));
+    java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(pdu.getBERLength());
+    pdu.encodeBER(new org.snmp4j.asn1.BEROutputStream(buf));
+    assertTrue(java.util.Arrays.equals(expectedBuf.array(), buf.array()));
+
+    // decoding into a variable binding holding an immutable OID
+    java.nio.ByteBuffer vbBuf = java.nio.ByteBuffer.wrap(encode(vb));
+    VariableBinding decoded = new VariableBinding(immutableOID);
+    decoded.decodeBER(new org.snmp4j.asn1.BERInputStream(vbBuf));
+    assertEquals(oid, decoded.getOid());
+    assertEquals(OID.class, decoded.getOid().getClass());
+  }
+
 }
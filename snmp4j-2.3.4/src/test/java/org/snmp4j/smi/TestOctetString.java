@@ -67,4 +67,121 @@ public class TestOctetString
     OctetString nonPrintable = OctetString.fromHexString("1C:32:41:1C:4E:38");
     assertFalse(nonPrintable.isPrintable());
   }
+
+  private static byte[] encodeVariableBindings(OctetString... values)
+      throws Exception
+  {
+    org.snmp4j.PDU pdu = new org.snmp4j.PDU();
+    for (int i=0; i<values.length; i++) {
+      pdu.add(new VariableBinding(new OID(new int[] { 1,3,6,1,i+1 }),
+                                  values[i]));
+    }
+    org.snmp4j.asn1.BERReverseEncoder encoder =
+        new org.snmp4j.asn1.BERReverseEncoder();
+    pdu.encodeBER(encoder);
+    return encoder.toByteArray();
+  }
+
+  public void testBufferView() throws Exception {
+    byte[] large = new byte[300];
+    for (int i=0; i<large.length; i++) {
+      large[i] = (byte)i;
+    }
+    byte[] encoded = encodeVariableBindings(new OctetString(large),
+                                            new Opaque(large),
+                                            new OctetString("small"));
+    int minViewLength = org.snmp4j.SNMP4JSettings.getOctetStringViewMinLength();
+    org.snmp4j.SNMP4JSettings.setOctetStringViewMinLength(64);
+    try {
+      org.snmp4j.PDU pdu = new org.snmp4j.PDU();
+      pdu.decodeBER(new org.snmp4j.asn1.BERInputStream(
+          java.nio.ByteBuffer.wrap(encoded.clone()), false));
+      assertFalse(((OctetString)pdu.get(0).getVariable()).isBufferView());
+
+      byte[] buffer = encoded.clone();
+      pdu.decodeBER(new org.snmp4j.asn1.BERInputStream(
+          java.nio.ByteBuffer.wrap(buffer), true));
+      OctetString view = (OctetString)pdu.get(0).getVariable();
+      Opaque opaqueView = (Opaque)pdu.get(1).getVariable();
+      assertTrue(view.isBufferView());
+      assertTrue(opaqueView.isBufferView());
+      assertFalse(((OctetString)pdu.get(2).getVariable()).isBufferView());
+      assertEquals(large.length, view.length());
+      OctetString clone = (OctetString)view.clone();
+      assertTrue(clone.isBufferView());
+      // re-encoding does not copy the value
+      org.snmp4j.asn1.BERReverseEncoder encoder =
+          new org.snmp4j.asn1.BERReverseEncoder();
+      pdu.encodeBER(encoder);
+      assertTrue(java.util.Arrays.equals(encoded, encoder.toByteArray()));
+      java.nio.ByteBuffer out = java.nio.ByteBuffer.allocate(pdu.getBERLength());
+      pdu.encodeBER(new org.snmp4j.asn1.BEROutputStream(out));
+      assertTrue(java.util.Arrays.equals(encoded, out.array()));
+      assertTrue(view.isBufferView());
+      // access copies the value
+      assertTrue(java.util.Arrays.equals(large, view.getValue()));
+      assertFalse(view.isBufferView());
+      view.set(0, (byte)1);
+      assertEquals(0, clone.get(0));
+      assertEquals(new OctetString(large), opaqueView);
+    }
+    finally {
+      org.snmp4j.SNMP4JSettings.setOctetStringViewMinLength(minViewLength);
+    }
+  }
+
+  /**
+   * Reads shared buffer views concurrently. The first access of each view
+   * copies its value while other threads read its length and hash code.
+   */
+  public void testBufferViewConcurrentAccess() throws Exception {
+    final byte[] large = new byte[128];
+    java.util.Arrays.fill(large, (byte)'x');
+    final OctetString expected = new OctetString(large);
+    OctetString[] values = new OctetString[50];
+    java.util.Arrays.fill(values, new OctetString(large));
+    byte[] encoded = encodeVariableBindings(values);
+    int minViewLength = org.snmp4j.SNMP4JSettings.getOctetStringViewMinLength();
+    org.snmp4j.SNMP4JSettings.setOctetStringViewMinLength(64);
+    try {
+      for (int round=0; round<100; round++) {
+        final org.snmp4j.PDU pdu = new org.snmp4j.PDU();
+        pdu.decodeBER(new org.snmp4j.asn1.BERInputStream(
+            java.nio.ByteBuffer.wrap(encoded.clone()), true));
+        final java.util.concurrent.CyclicBarrier start =
+            new java.util.concurrent.CyclicBarrier(4);
+        final java.util.concurrent.atomic.AtomicReference<Throwable> failure =
+            new java.util.concurrent.atomic.AtomicReference<Throwable>();
+        Thread[] threads = new Thread[4];
+        for (int t=0; t<threads.length; t++) {
+          threads[t] = new Thread() {
+            public void run() {
+              try {
+                start.await();
+                for (int i=0; i<pdu.size(); i++) {
+                  OctetString value = (OctetString)pdu.get(i).getVariable();
+                  assertEquals(large.length, value.length());
+                  assertEquals(expected.hashCode(), value.hashCode());
+                  assertEquals(expected, value);
+                }
+              }
+              catch (Throwable ex) {
+                failure.compareAndSet(null, ex);
+              }
+            }
+          };
+          threads[t].start();
+        }
+        for (Thread thread : threads) {
+          thread.join();
+        }
+        if (failure.get() != null) {
+          throw new AssertionError(failure.get());
+        }
+      }
+    }
+    finally {
+      org.snmp4j.SNMP4JSettings.setOctetStringViewMinLength(minViewLength);
+    }
+  }
 }
@@ -0,0 +1,132 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestPooledOID.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.smi;
+
+import junit.framework.*;
+
+import java.util.Random;
+
+/**
+ * Tests the interning of OIDs by {@link OIDPool} and the comparison of
+ * {@link PooledOID} instances against {@link OID}.
+ * @author Frank Fock
+ * @since 2.4
+ */
+public class TestPooledOID extends TestCase {
+
+  private OIDPool pool;
+
+  public TestPooledOID(String s) {
+    super(s);
+  }
+
+  protected void setUp() {
+    pool = new OIDPool();
+  }
+
+  protected void tearDown() {
+    pool = null;
+  }
+
+  private static OID randomOID(Random random) {
+    int[] value = new int[random.nextInt(10)];
+    for (int i=0; i<value.length; i++) {
+      value[i] = (i < 4) ? i + 1 : random.nextInt(4) - 1;
+    }
+    return new OID(value);
+  }
+
+  public void testIntern() {
+    OID oid = new OID("1.3.6.1.2.1.2.2.1.10.4");
+    PooledOID pooled = pool.intern(oid);
+    assertSame(pooled, pool.intern(new OID(oid)));
+    assertSame(pooled, pool.get(oid));
+    assertEquals(oid.size(), pool.size());
+    assertEquals(oid, pooled.toOID());
+    assertEquals(oid.toString(), pooled.toString());
+    assertEquals(oid.size(), pooled.size());
+    assertEquals(4, pooled.last());
+    assertEquals(6, pooled.get(2));
+    assertSame(pool.intern(new OID("1.3.6.1.2.1.2")), pooled.getPrefix(7));
+    assertSame(pooled.getParent(), pool.get(new OID("1.3.6.1.2.1.2.2.1.10")));
+    assertSame(pooled, pool.get(new OID("1.3.6.1.2.1.2.2.1")).append(new OID("10.4")));
+    assertSame(pool.getRoot(), pool.get(new OID()));
+    assertNull(pool.get(new OID("1.3.6.1.2.1.2.2.1.10.5")));
+    assertEquals(oid.size(), pool.size());
+  }
+
+  public void testCompare() {
+    Random random = new Random(4976);
+    OIDPool otherPool = new OIDPool();
+    for (int i=0; i<5000; i++) {
+      OID a = randomOID(random);
+      OID b = randomOID(random);
+      PooledOID pa = pool.intern(a);
+      PooledOID pb = pool.intern(b);
+      String msg = a+" <> "+b;
+      assertEquals(msg, Integer.signum(a.compareTo(b)),
+                   Integer.signum(pa.compareTo(pb)));
+      assertEquals(msg, a.equals(b), pa == pb);
+      assertEquals(msg, a.equals(b), pa.equals(otherPool.intern(b)));
+      assertEquals(msg, Integer.signum(a.compareTo(b)),
+                   Integer.signum(pa.compareTo(otherPool.intern(b))));
+      assertEquals(msg, a.startsWith(b), pa.startsWith(pb));
+      assertEquals(msg, a.startsWith(b), pa.startsWith(b));
+      assertEquals(msg, a.startsWith(b), pa.startsWith(otherPool.intern(b)));
+    }
+  }
+
+  public void testUnsignedSubIdentifiers() {
+    PooledOID small = pool.intern(new OID(new int[] { 1, 3, 0x7FFFFFFF }));
+    PooledOID large = pool.intern(new OID(new int[] { 1, 3, -1 }));
+    assertTrue(small.compareTo(large) < 0);
+    assertTrue(large.compareTo(small) > 0);
+  }
+
+  public void testConcurrentIntern() throws Exception {
+    final OID[] oids = new OID[2000];
+    Random random = new Random(1);
+    for (int i=0; i<oids.length; i++) {
+      oids[i] = randomOID(random);
+    }
+    final PooledOID[][] results = new PooledOID[4][oids.length];
+    Thread[] threads = new Thread[results.length];
+    for (int t=0; t<threads.length; t++) {
+      final PooledOID[] result = results[t];
+      threads[t] = new Thread() {
+        public void run() {
+          for (int i=0; i<oids.length; i++) {
+            result[i] = pool.intern(oids[i]);
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (int i=0; i<oids.length; i++) {
+      for (int t=1; t<results.length; t++) {
+        assertSame(results[0][i], results[t][i]);
+      }
+      assertEquals(oids[i], results[0][i].toOID());
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestVariableBindingBatch.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.smi;
+
+import junit.framework.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.snmp4j.PDU;
+import org.snmp4j.PDUCursor;
+import org.snmp4j.asn1.BERCursor;
+import org.snmp4j.asn1.BERReverseEncoder;
+import org.snmp4j.mp.SnmpConstants;
+
+/**
+ * Tests the columnar storage of variable bindings by
+ * {@link VariableBindingBatch}.
+ * @author Frank Fock
+ * @since 2.4
+ */
+public class TestVariableBindingBatch extends TestCase {
+
+  private static final OID IF_HC_IN_OCTETS = new OID("1.3.6.1.2.1.31.1.1.1.6");
+
+  public TestVariableBindingBatch(String s) {
+    super(s);
+  }
+
+  private static List<VariableBinding> createVariableBindings(int rows) {
+    List<VariableBinding> vbs = new ArrayList<VariableBinding>();
+    for (int i=1; i<=rows; i++) {
+      vbs.add(new VariableBinding(new OID(IF_HC_IN_OCTETS.getValue(), i),
+                                  new Counter64(-i * 1000000007l)));
+      vbs.add(new VariableBinding(new OID("1.3.6.1.2.1.2.2.1.10."+i),
+                                  new Counter32(4294967295l - i)));
+      vbs.add(new VariableBinding(new OID("1.3.6.1.2.1.2.2.1.5."+i),
+                                  new Gauge32(i * 10000000l)));
+      vbs.add(new VariableBinding(new OID("1.3.6.1.2.1.2.2.1.1."+i),
+                                  new Integer32(-i)));
+      vbs.add(new VariableBinding(new OID("1.3.6.1.2.1.2.2.1.2."+i),
+                                  new OctetString("eth"+i)));
+    }
+    vbs.add(new VariableBinding(SnmpConstants.sysUpTime, new TimeTicks(123456)));
+    vbs.add(new VariableBinding(SnmpConstants.sysObjectID,
+                                new OID("1.3.6.1.4.1.4976.1.2")));
+    vbs.add(new VariableBinding(new OID("1.3.6.1.4.1.4976.2"),
+                                new IpAddress("192.168.1.2")));
+    vbs.add(new VariableBinding(new OID("1.3.6.1.4.1.4976.3"),
+                                new Opaque(new byte[] { 1, 2, 3 })));
+    vbs.add(new VariableBinding(new OID("1.3.6.1.4.1.4976.4"), new Null()));
+    vbs.add(new VariableBinding(new OID("1.3.6.1.4.1.4976.5"),
+                                Null.noSuchInstance));
+    vbs.add(new VariableBinding(new OID("2.999"), Null.endOfMibView));
+    return vbs;
+  }
+
+  private static void assertBatch(List<? extends VariableBinding> expected,
+                                  VariableBindingBatch batch) {
+    assertEquals(expected.size(), batch.size());
+    assertEquals(expected, batch);
+    int[] oid = new int[128];
+    for (int i=0; i<expected.size(); i++) {
+      VariableBinding vb = expected.get(i);
+      assertEquals(vb.getOid().size(), batch.getOIDLength(i));
+      assertEquals(vb.getOid().size(), batch.getOID(i, oid));
+      assertEquals(vb.getOid(), new OID(oid, 0, batch.getOIDLength(i)));
+      assertEquals(vb.getSyntax(), batch.getSyntax(i));
+      assertEquals(vb.isException(), batch.isException(i));
+      Variable v = vb.getVariable();
+      if ((v instanceof Integer32) || (v instanceof UnsignedInteger32) ||
+          (v instanceof Counter64)) {
+        assertEquals(v.toLong(), batch.getLong(i));
+      }
+    }
+  }
+
+  public void testAdd() {
+    List<VariableBinding> vbs = createVariableBindings(50);
+    VariableBindingBatch batch = new VariableBindingBatch(4);
+    batch.addAll(vbs);
+    assertBatch(vbs, batch);
+    assertTrue(batch.startsWith(0, IF_HC_IN_OCTETS));
+    assertFalse(batch.startsWith(1, IF_HC_IN_OCTETS));
+    try {
+      batch.getLong(4);
+      fail("Non-numeric value not detected");
+    }
+    catch (UnsupportedOperationException uoex) {
+      // expected
+    }
+    batch.clear();
+    assertTrue(batch.isEmpty());
+    vbs = createVariableBindings(3);
+    batch.addAll(vbs);
+    assertBatch(vbs, batch);
+  }
+
+  public void testDecodeFromPDU() throws Exception {
+    PDU pdu = new PDU();
+    pdu.setType(PDU.RESPONSE);
+    pdu.addAll(createVariableBindings(200).toArray(new VariableBinding[0]));
+    BERReverseEncoder encoder = new BERReverseEncoder();
+    pdu.encodeBER(encoder);
+    PDUCursor cursor = PDUCursor.forPDU(encoder.toByteBuffer());
+    VariableBindingBatch batch = new VariableBindingBatch();
+    assertEquals(pdu.size(), cursor.getVariableBindings(batch));
+    assertBatch(pdu.getVariableBindingList(), batch);
+    assertFalse(cursor.nextVariableBinding());
+  }
+
+  public void testDecodeVariableBindingList() throws Exception {
+    List<VariableBinding> vbs = createVariableBindings(10);
+    BERReverseEncoder encoder = new BERReverseEncoder();
+    PDU.encodeVariableBindings(encoder, vbs);
+    BERCursor cursor = new BERCursor(encoder.toByteBuffer());
+    cursor.next();
+    VariableBindingBatch batch = new VariableBindingBatch();
+    batch.add(new VariableBinding(SnmpConstants.sysDescr, new OctetString("x")));
+    assertEquals(vbs.size(), batch.decodeBER(cursor));
+    assertEquals(0, cursor.getDepth());
+    assertEquals(new VariableBinding(SnmpConstants.sysDescr, new OctetString("x")),
+                 batch.get(0));
+    assertEquals(vbs, batch.subList(1, batch.size()));
+  }
+}
@@ -0,0 +1,105 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestMultiSocketUdpTransportMapping.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.transport;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.*;
+import org.snmp4j.*;
+import org.snmp4j.smi.*;
+
+
+public class TestMultiSocketUdpTransportMapping
+    extends TestCase {
+
+  private MultiSocketUdpTransportMapping transport;
+
+  public TestMultiSocketUdpTransportMapping(String p0) {
+    super(p0);
+  }
+
+  protected void tearDown() throws Exception {
+    if (transport != null) {
+      transport.close();
+    }
+  }
+
+  private static boolean isReusePortSupported() throws Exception {
+    DatagramChannel c = DatagramChannel.open();
+    try {
+      return MultiSocketUdpTransportMapping.setReusePort(c);
+    }
+    finally {
+      c.close();
+    }
+  }
+
+  /**
+   * The option is set while the super constructor binds the first channel,
+   * thus the flag must survive the initialization of the subclass.
+   */
+  public void testReusePortEnabled() throws Exception {
+    boolean supported = isReusePortSupported();
+    transport =
+        new MultiSocketUdpTransportMapping(new UdpAddress("127.0.0.1/0"), 2);
+    assertEquals(supported, transport.isReusePortEnabled());
+    assertEquals(2, transport.getSocketCount());
+    assertTrue(transport.getListenAddress().getPort() > 0);
+  }
+
+  public void testReceive() throws Exception {
+    transport =
+        new MultiSocketUdpTransportMapping(new UdpAddress("127.0.0.1/0"), 2);
+    final BlockingQueue<byte[]> received = new LinkedBlockingQueue<byte[]>();
+    transport.addTransportListener(new TransportListener() {
+      public void processMessage(TransportMapping sourceTransport,
+                                 Address incomingAddress,
+                                 ByteBuffer wholeMessage,
+                                 TransportStateReference tmStateReference) {
+        byte[] message = new byte[wholeMessage.remaining()];
+        wholeMessage.duplicate().get(message);
+        received.add(message);
+      }
+    });
+    transport.listen();
+    UdpAddress address = transport.getListenAddress();
+    DatagramSocket socket = new DatagramSocket();
+    try {
+      for (int i=0; i<4; i++) {
+        byte[] message = new byte[] { 0x30, 0x01, (byte)i };
+        socket.send(new DatagramPacket(message, message.length,
+                                       address.getInetAddress(),
+                                       address.getPort()));
+        byte[] result = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(result);
+        assertEquals(new OctetString(message), new OctetString(result));
+      }
+    }
+    finally {
+      socket.close();
+    }
+  }
+}
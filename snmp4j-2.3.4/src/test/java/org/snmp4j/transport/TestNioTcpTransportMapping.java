@@ -0,0 +1,263 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestNioTcpTransportMapping.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.*;
+import org.snmp4j.*;
+import org.snmp4j.asn1.BER;
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.smi.*;
+
+
+public class TestNioTcpTransportMapping
+    extends TestCase {
+
+  private NioTcpTransportMapping receiver;
+  private Socket socket;
+
+  public TestNioTcpTransportMapping(String p0) {
+    super(p0);
+  }
+
+  protected void setUp() throws Exception {
+    receiver = new NioTcpTransportMapping(new TcpAddress("127.0.0.1/0"));
+    receiver.setSelectorThreadCount(1);
+  }
+
+  protected void tearDown() throws Exception {
+    if (socket != null) {
+      socket.close();
+    }
+    receiver.close();
+  }
+
+  /**
+   * Creates a BER sequence with the given number of content bytes.
+   */
+  private static byte[] createMessage(int contentLength, byte fill) {
+    byte[] message = new byte[contentLength+2];
+    message[0] = BER.SEQUENCE;
+    message[1] = (byte)contentLength;
+    for (int i=2; i<message.length; i++) {
+      message[i] = fill;
+    }
+    return message;
+  }
+
+  private void connect() throws IOException {
+    TcpAddress address = receiver.getListenAddress();
+    socket = new Socket(address.getInetAddress(), address.getPort());
+  }
+
+  private void send(byte[] message) throws IOException {
+    OutputStream os = socket.getOutputStream();
+    os.write(message);
+    os.flush();
+  }
+
+  /**
+   * Waits until the transport has returned its reference to the last
+   * dispatched buffer, which happens after the listener has been called.
+   */
+  private static void waitForAvailable(ByteBufferPool pool, int count)
+      throws InterruptedException
+  {
+    long end = System.currentTimeMillis() + 5000;
+    while ((pool.getAvailableCount() < count) &&
+           (System.currentTimeMillis() < end)) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, pool.getAvailableCount());
+  }
+
+  private static class RecordingListener implements TransportListener {
+    private final BlockingQueue<ByteBuffer> buffers =
+        new LinkedBlockingQueue<ByteBuffer>();
+    private final BlockingQueue<byte[]> messages =
+        new LinkedBlockingQueue<byte[]>();
+    private final boolean retain;
+
+    RecordingListener(boolean retain) {
+      this.retain = retain;
+    }
+
+    public void processMessage(TransportMapping sourceTransport,
+                               Address incomingAddress,
+                               ByteBuffer wholeMessage,
+                               TransportStateReference tmStateReference) {
+      if (retain) {
+        assertTrue(((PooledBufferTransportMapping)sourceTransport).
+                   retainBuffer(wholeMessage));
+      }
+      byte[] message = new byte[wholeMessage.remaining()];
+      wholeMessage.duplicate().get(message);
+      messages.add(message);
+      buffers.add(wholeMessage);
+    }
+  }
+
+  /**
+   * The message length has to be decoded from the header bytes alone,
+   * although the header announces more bytes than it contains.
+   */
+  public void testMessageLengthFromHeaderOnly() throws Exception {
+    MessageLengthDecoder decoder =
+        new DefaultTcpTransportMapping.SnmpMesssageLengthDecoder();
+    byte[] header = new byte[decoder.getMinHeaderLength()];
+    System.arraycopy(createMessage(200, (byte)1), 0, header, 0, header.length);
+    header[1] = (byte)0x81;
+    header[2] = (byte)200;
+    try {
+      BER.decodeHeader(new BERInputStream(ByteBuffer.wrap(header)),
+                       new BER.MutableByte());
+      fail("Length check should fail on a header-only buffer");
+    }
+    catch (IOException iox) {
+      // expected
+    }
+    MessageLength messageLength =
+        decoder.getMessageLength(ByteBuffer.wrap(header));
+    assertEquals(3, messageLength.getHeaderLength());
+    assertEquals(203, messageLength.getMessageLength());
+  }
+
+  public void testPooledBuffersAsync() throws Exception {
+    receiver.setBufferPoolSize(2);
+    RecordingListener listener = new RecordingListener(true);
+    receiver.addTransportListener(listener);
+    receiver.listen();
+    connect();
+    byte[] first = createMessage(10, (byte)'a');
+    byte[] second = createMessage(20, (byte)'b');
+    send(first);
+    send(second);
+    ByteBuffer firstBuffer = listener.buffers.poll(5, TimeUnit.SECONDS);
+    ByteBuffer secondBuffer = listener.buffers.poll(5, TimeUnit.SECONDS);
+    assertNotNull(secondBuffer);
+    assertNotSame(firstBuffer, secondBuffer);
+    assertEquals(new OctetString(first),
+                 new OctetString(listener.messages.poll()));
+    assertEquals(new OctetString(second),
+                 new OctetString(listener.messages.poll()));
+    ByteBufferPool pool = receiver.getBufferPool();
+    assertNotNull(pool);
+    assertEquals(2, pool.getHitCount());
+    assertEquals(0, pool.getAvailableCount());
+    receiver.releaseBuffer(firstBuffer);
+    receiver.releaseBuffer(secondBuffer);
+    waitForAvailable(pool, 2);
+  }
+
+  public void testPooledBufferReturnedWithoutRetain() throws Exception {
+    receiver.setBufferPoolSize(1);
+    RecordingListener listener = new RecordingListener(false);
+    receiver.addTransportListener(listener);
+    receiver.listen();
+    connect();
+    List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+    for (int i=0; i<3; i++) {
+      send(createMessage(10, (byte)i));
+      buffers.add(listener.buffers.poll(5, TimeUnit.SECONDS));
+      waitForAvailable(receiver.getBufferPool(), 1);
+    }
+    assertSame(buffers.get(0), buffers.get(1));
+    assertSame(buffers.get(1), buffers.get(2));
+    ByteBufferPool pool = receiver.getBufferPool();
+    assertEquals(3, pool.getHitCount());
+    assertEquals(0, pool.getMissCount());
+  }
+
+  public void testReusedBufferSync() throws Exception {
+    receiver.setAsyncMsgProcessingSupported(false);
+    RecordingListener listener = new RecordingListener(false);
+    receiver.addTransportListener(listener);
+    receiver.listen();
+    connect();
+    send(createMessage(20, (byte)'a'));
+    ByteBuffer firstBuffer = listener.buffers.poll(5, TimeUnit.SECONDS);
+    send(createMessage(10, (byte)'b'));
+    ByteBuffer secondBuffer = listener.buffers.poll(5, TimeUnit.SECONDS);
+    assertSame(firstBuffer, secondBuffer);
+    assertNull(receiver.getBufferPool());
+    assertFalse(receiver.retainBuffer(secondBuffer));
+  }
+
+  public void testPartialMessageReleasedOnClose() throws Exception {
+    receiver.setBufferPoolSize(1);
+    final BlockingQueue<TransportStateEvent> events =
+        new LinkedBlockingQueue<TransportStateEvent>();
+    receiver.addTransportStateListener(new TransportStateListener() {
+      public void connectionStateChanged(TransportStateEvent change) {
+        events.add(change);
+      }
+    });
+    receiver.listen();
+    connect();
+    byte[] message = createMessage(100, (byte)'a');
+    OutputStream os = socket.getOutputStream();
+    os.write(message, 0, 50);
+    os.flush();
+    assertEquals(TransportStateEvent.STATE_CONNECTED,
+                 events.poll(5, TimeUnit.SECONDS).getNewState());
+    long end = System.currentTimeMillis() + 5000;
+    while ((receiver.getBufferPool() == null) &&
+           (System.currentTimeMillis() < end)) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, receiver.getBufferPool().getAvailableCount());
+    socket.close();
+    socket = null;
+    assertEquals(TransportStateEvent.STATE_DISCONNECTED_REMOTELY,
+                 events.poll(5, TimeUnit.SECONDS).getNewState());
+    waitForAvailable(receiver.getBufferPool(), 1);
+  }
+
+  public void testMessageShorterThanHeader() throws Exception {
+    final BlockingQueue<TransportStateEvent> events =
+        new LinkedBlockingQueue<TransportStateEvent>();
+    receiver.addTransportStateListener(new TransportStateListener() {
+      public void connectionStateChanged(TransportStateEvent change) {
+        events.add(change);
+      }
+    });
+    RecordingListener listener = new RecordingListener(false);
+    receiver.addTransportListener(listener);
+    receiver.listen();
+    connect();
+    byte[] message = createMessage(4, (byte)'a');
+    message[1] = 1;
+    send(message);
+    assertEquals(TransportStateEvent.STATE_CONNECTED,
+                 events.poll(5, TimeUnit.SECONDS).getNewState());
+    assertEquals(TransportStateEvent.STATE_CLOSED,
+                 events.poll(5, TimeUnit.SECONDS).getNewState());
+    assertTrue(listener.messages.isEmpty());
+  }
+}
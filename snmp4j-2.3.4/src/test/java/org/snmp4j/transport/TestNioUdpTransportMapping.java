@@ -0,0 +1,121 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestNioUdpTransportMapping.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.transport;
+
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.*;
+import org.snmp4j.*;
+import org.snmp4j.mp.MPv2c;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.*;
+
+
+public class TestNioUdpTransportMapping
+    extends TestCase {
+
+  private int octetStringViewMinLength;
+  private NioUdpTransportMapping receiver;
+  private Snmp sender;
+
+  public TestNioUdpTransportMapping(String p0) {
+    super(p0);
+  }
+
+  protected void setUp() throws Exception {
+    octetStringViewMinLength = SNMP4JSettings.getOctetStringViewMinLength();
+    SNMP4JSettings.setOctetStringViewMinLength(16);
+    receiver = new NioUdpTransportMapping(new UdpAddress("127.0.0.1/0"));
+    sender = new Snmp(new DefaultUdpTransportMapping(new UdpAddress("127.0.0.1/0")));
+  }
+
+  protected void tearDown() throws Exception {
+    SNMP4JSettings.setOctetStringViewMinLength(octetStringViewMinLength);
+    receiver.close();
+    sender.close();
+  }
+
+  private static byte[] createValue(char c) {
+    byte[] value = new byte[64];
+    Arrays.fill(value, (byte)c);
+    return value;
+  }
+
+  private void sendTrap(byte[] value) throws Exception {
+    CommunityTarget target = new CommunityTarget(receiver.getListenAddress(),
+                                                 new OctetString("public"));
+    target.setVersion(SnmpConstants.version2c);
+    PDU pdu = new PDU();
+    pdu.setType(PDU.TRAP);
+    pdu.add(new VariableBinding(SnmpConstants.sysUpTime, new TimeTicks(1)));
+    pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, SnmpConstants.coldStart));
+    pdu.add(new VariableBinding(SnmpConstants.sysDescr, new OctetString(value)));
+    sender.send(pdu, target);
+  }
+
+  /**
+   * Receives two datagrams into the same pooled heap buffer and checks that
+   * the values decoded from the first one are not overwritten by the second.
+   */
+  public void testPooledBufferNotShared() throws Exception {
+    receiver.setDirectBuffers(false);
+    receiver.setBufferPoolSize(1);
+    assertFalse(receiver.isMessageBufferShareable());
+    MessageDispatcherImpl dispatcher = new MessageDispatcherImpl();
+    dispatcher.addMessageProcessingModel(new MPv2c());
+    final BlockingQueue<PDU> received = new LinkedBlockingQueue<PDU>();
+    dispatcher.addCommandResponder(new CommandResponder() {
+      public void processPdu(CommandResponderEvent event) {
+        received.add(event.getPDU());
+        event.setProcessed(true);
+      }
+    });
+    receiver.addTransportListener(dispatcher);
+    receiver.listen();
+    sender.listen();
+
+    byte[] first = createValue('a');
+    byte[] second = createValue('b');
+    sendTrap(first);
+    PDU firstPDU = received.poll(5, TimeUnit.SECONDS);
+    assertNotNull(firstPDU);
+    sendTrap(second);
+    PDU secondPDU = received.poll(5, TimeUnit.SECONDS);
+    assertNotNull(secondPDU);
+
+    OctetString firstValue = (OctetString) firstPDU.get(2).getVariable();
+    OctetString secondValue = (OctetString) secondPDU.get(2).getVariable();
+    assertFalse(firstValue.isBufferView());
+    assertEquals(new OctetString(first), firstValue);
+    assertEquals(new OctetString(second), secondValue);
+  }
+
+  public void testCopyingTransportShared() throws Exception {
+    DefaultUdpTransportMapping udp =
+        new DefaultUdpTransportMapping(new UdpAddress("127.0.0.1/0"));
+    assertTrue(udp.isMessageBufferShareable());
+    udp.setAsyncMsgProcessingSupported(false);
+    assertFalse(udp.isMessageBufferShareable());
+    udp.close();
+  }
+}
@@ -0,0 +1,237 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestExecutorWorkerPool.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.*;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.transport.AbstractTransportMapping;
+import org.snmp4j.transport.PooledBufferTransportMapping;
+
+
+public class TestExecutorWorkerPool
+    extends TestCase {
+
+  private ExecutorWorkerPool pool;
+  private CountDownLatch release;
+
+  public TestExecutorWorkerPool(String p0) {
+    super(p0);
+  }
+
+  protected void setUp() {
+    release = new CountDownLatch(1);
+  }
+
+  protected void tearDown() {
+    release.countDown();
+    if (pool != null) {
+      pool.stop();
+    }
+  }
+
+  /**
+   * Creates a pool with a single pending task slot and occupies it with a
+   * task that waits for {@link #release}.
+   */
+  private void createExhaustedPool(ExecutorWorkerPool.RejectionPolicy policy)
+      throws InterruptedException
+  {
+    pool = ExecutorWorkerPool.create("test", 1, 0, policy);
+    final CountDownLatch started = new CountDownLatch(1);
+    pool.execute(new Task() {
+      public void run() {
+        started.countDown();
+        try {
+          release.await();
+        }
+        catch (InterruptedException iex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    assertEquals(1, pool.getPendingTaskCount());
+  }
+
+  public void testBlock() throws Exception {
+    createExhaustedPool(ExecutorWorkerPool.RejectionPolicy.block);
+    final CountDownLatch executed = new CountDownLatch(1);
+    final CountDownLatch submitted = new CountDownLatch(1);
+    Thread submitter = new Thread() {
+      public void run() {
+        pool.execute(new Task() {
+          public void run() {
+            executed.countDown();
+          }
+        });
+        submitted.countDown();
+      }
+    };
+    submitter.start();
+    assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+    release.countDown();
+    assertTrue(submitted.await(5, TimeUnit.SECONDS));
+    assertTrue(executed.await(5, TimeUnit.SECONDS));
+    assertEquals(0, pool.getRejectedTaskCount());
+  }
+
+  public void testCallerRuns() throws Exception {
+    createExhaustedPool(ExecutorWorkerPool.RejectionPolicy.callerRuns);
+    final AtomicReference<Thread> runner = new AtomicReference<Thread>();
+    pool.execute(new Task() {
+      public void run() {
+        runner.set(Thread.currentThread());
+      }
+    });
+    assertSame(Thread.currentThread(), runner.get());
+    assertEquals(1, pool.getRejectedTaskCount());
+  }
+
+  public void testDiscard() throws Exception {
+    createExhaustedPool(ExecutorWorkerPool.RejectionPolicy.discard);
+    final AtomicInteger runs = new AtomicInteger();
+    final AtomicInteger discards = new AtomicInteger();
+    pool.execute(new DiscardableTask() {
+      public void run() {
+        runs.incrementAndGet();
+      }
+
+      public void discarded() {
+        discards.incrementAndGet();
+      }
+    });
+    // a task without discard notification is dropped silently
+    pool.execute(new Task() {
+      public void run() {
+        runs.incrementAndGet();
+      }
+    });
+    release.countDown();
+    pool.stop();
+    assertEquals(0, runs.get());
+    assertEquals(1, discards.get());
+    assertEquals(2, pool.getRejectedTaskCount());
+  }
+
+  public void testAbort() throws Exception {
+    createExhaustedPool(ExecutorWorkerPool.RejectionPolicy.abort);
+    try {
+      pool.execute(new Task() {
+        public void run() {
+          fail("Task must not be executed");
+        }
+      });
+      fail("RejectedExecutionException expected");
+    }
+    catch (RejectedExecutionException rex) {
+      // expected
+    }
+    assertEquals(1, pool.getRejectedTaskCount());
+    assertFalse(pool.tryToExecute(new Task()));
+  }
+
+  /**
+   * A message dropped by a worker pool with the discard policy releases the
+   * retained receive buffer of a pooled transport mapping.
+   */
+  public void testDiscardReleasesMessageBuffer() throws Exception {
+    createExhaustedPool(ExecutorWorkerPool.RejectionPolicy.discard);
+    MultiThreadedMessageDispatcher dispatcher =
+        new MultiThreadedMessageDispatcher(pool, new MessageDispatcherImpl());
+    PooledTransport transport = new PooledTransport();
+    dispatcher.processMessage(transport, new UdpAddress("127.0.0.1/161"),
+                              ByteBuffer.allocate(16), null);
+    assertEquals(1, transport.retained.get());
+    assertEquals(1, transport.released.get());
+    assertEquals(1, dispatcher.getDroppedMessages());
+  }
+
+  static class Task implements WorkerTask {
+    public void run() {
+    }
+
+    public void terminate() {
+    }
+
+    public void join() throws InterruptedException {
+    }
+
+    public void interrupt() {
+    }
+  }
+
+  abstract static class DiscardableTask extends Task
+      implements DiscardableWorkerTask {
+  }
+
+  /**
+   * A transport mapping that counts retained and released buffers.
+   */
+  static class PooledTransport extends AbstractTransportMapping<UdpAddress>
+      implements PooledBufferTransportMapping {
+
+    final AtomicInteger retained = new AtomicInteger();
+    final AtomicInteger released = new AtomicInteger();
+
+    public boolean retainBuffer(ByteBuffer messageBuffer) {
+      retained.incrementAndGet();
+      return true;
+    }
+
+    public void releaseBuffer(ByteBuffer messageBuffer) {
+      released.incrementAndGet();
+    }
+
+    public Class<? extends Address> getSupportedAddressClass() {
+      return UdpAddress.class;
+    }
+
+    public void sendMessage(UdpAddress address, byte[] message,
+                            TransportStateReference tmStateReference)
+        throws IOException
+    {
+    }
+
+    public void close() throws IOException {
+    }
+
+    public void listen() throws IOException {
+    }
+
+    public UdpAddress getListenAddress() {
+      return null;
+    }
+
+    public boolean isListening() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,355 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestMultiThreadedMessageDispatcher.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.*;
+import org.snmp4j.MessageDispatcherImpl;
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.TransportMapping;
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.asn1.BER;
+import org.snmp4j.asn1.BEROutputStream;
+import org.snmp4j.asn1.BERSerializable;
+import org.snmp4j.event.CounterEvent;
+import org.snmp4j.event.CounterListener;
+import org.snmp4j.mp.CounterSupport;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.*;
+import org.snmp4j.util.MultiThreadedMessageDispatcher.InboundQueuePolicy;
+
+/**
+ * Tests the inbound queue of the {@link MultiThreadedMessageDispatcher}.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class TestMultiThreadedMessageDispatcher extends TestCase {
+
+  private static final Address SOURCE = new UdpAddress("127.0.0.1/161");
+
+  private ExecutorWorkerPool pool;
+  private CountDownLatch release;
+  private MultiThreadedMessageDispatcher dispatcher;
+  private RecordingDispatcher recorder;
+  private TestExecutorWorkerPool.PooledTransport transport;
+  private AtomicInteger queueDrops;
+  private AtomicInteger responseDrops;
+
+  public TestMultiThreadedMessageDispatcher(String name) {
+    super(name);
+  }
+
+  protected void setUp() throws Exception {
+    release = new CountDownLatch(1);
+    recorder = new RecordingDispatcher();
+    transport = new TestExecutorWorkerPool.PooledTransport();
+    queueDrops = new AtomicInteger();
+    responseDrops = new AtomicInteger();
+  }
+
+  protected void tearDown() throws Exception {
+    release.countDown();
+    if (dispatcher != null) {
+      dispatcher.stop();
+    }
+    if (pool != null) {
+      pool.stop();
+    }
+  }
+
+  /**
+   * Creates a dispatcher whose single worker is blocked until
+   * {@link #release} is counted down, thus the inbound queue thread blocks
+   * on submitting the first queued message.
+   */
+  private void createDispatcher(int capacity, InboundQueuePolicy policy)
+      throws Exception
+  {
+    pool = ExecutorWorkerPool.create("test", 1, 0,
+                                     ExecutorWorkerPool.RejectionPolicy.block);
+    final CountDownLatch started = new CountDownLatch(1);
+    pool.execute(new TestExecutorWorkerPool.Task() {
+      public void run() {
+        started.countDown();
+        try {
+          release.await();
+        }
+        catch (InterruptedException iex) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    dispatcher = new MultiThreadedMessageDispatcher(pool, recorder,
+                                                    capacity, policy);
+    dispatcher.setCounterSupport(new CounterSupport() { });
+    dispatcher.getCounterSupport().addCounterListener(new CounterListener() {
+      public void incrementCounter(CounterEvent event) {
+        if (SnmpConstants.snmp4jStatsInQueueDrops.equals(event.getOid())) {
+          queueDrops.incrementAndGet();
+        }
+        else if (SnmpConstants.snmp4jStatsInQueueResponseDrops.equals(event.getOid())) {
+          responseDrops.incrementAndGet();
+        }
+      }
+    });
+  }
+
+  private void receive(ByteBuffer message) {
+    dispatcher.processMessage(transport, SOURCE, message, null);
+  }
+
+  /**
+   * Receives the first message, which the inbound queue thread takes and
+   * then blocks on, because the worker pool is busy.
+   */
+  private ByteBuffer receiveInFlight() throws Exception {
+    ByteBuffer message = request();
+    receive(message);
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while ((dispatcher.getInboundQueueSize() > 0) &&
+           (System.nanoTime() < deadline)) {
+      Thread.sleep(1);
+    }
+    assertEquals(0, dispatcher.getInboundQueueSize());
+    return message;
+  }
+
+  private List<ByteBuffer> processAll(int expected) throws Exception {
+    release.countDown();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while ((recorder.processed.size() < expected) &&
+           (System.nanoTime() < deadline)) {
+      Thread.sleep(1);
+    }
+    // give surplus messages a chance to show up
+    Thread.sleep(20);
+    return recorder.processed;
+  }
+
+  public void testDropNewest() throws Exception {
+    createDispatcher(2, InboundQueuePolicy.dropNewest);
+    ByteBuffer m0 = receiveInFlight();
+    ByteBuffer m1 = request(), m2 = request(), m3 = request();
+    receive(m1);
+    receive(m2);
+    assertEquals(2, dispatcher.getInboundQueueSize());
+    receive(m3);
+    assertEquals(2, dispatcher.getInboundQueueSize());
+    assertEquals(1, dispatcher.getDroppedMessages());
+    assertEquals(1, transport.released.get());
+    assertEquals(Arrays.asList(m0, m1, m2), processAll(3));
+    assertEquals(4, transport.released.get());
+    assertEquals(1, queueDrops.get());
+  }
+
+  public void testDropOldest() throws Exception {
+    createDispatcher(2, InboundQueuePolicy.dropOldest);
+    ByteBuffer m0 = receiveInFlight();
+    ByteBuffer m1 = request(), m2 = request(), m3 = request();
+    receive(m1);
+    receive(m2);
+    receive(m3);
+    assertEquals(2, dispatcher.getInboundQueueSize());
+    assertEquals(1, dispatcher.getDroppedMessages());
+    assertEquals(1, transport.released.get());
+    assertEquals(Arrays.asList(m0, m2, m3), processAll(3));
+    assertEquals(4, transport.released.get());
+  }
+
+  public void testPrioritizeResponses() throws Exception {
+    createDispatcher(2, InboundQueuePolicy.prioritizeResponses);
+    ByteBuffer m0 = receiveInFlight();
+    ByteBuffer m1 = request(), m2 = request();
+    ByteBuffer r3 = response(), r4 = response(), r5 = response();
+    ByteBuffer m6 = request();
+    receive(m1);
+    receive(m2);
+    // a response replaces the oldest request of the full queue
+    receive(r3);
+    receive(r4);
+    assertEquals(2, dispatcher.getDroppedMessages());
+    assertEquals(0, responseDrops.get());
+    // without queued requests, responses and requests are dropped
+    receive(r5);
+    receive(m6);
+    assertEquals(4, dispatcher.getDroppedMessages());
+    assertEquals(4, queueDrops.get());
+    assertEquals(1, responseDrops.get());
+    assertEquals(4, transport.released.get());
+    assertEquals(Arrays.asList(m0, r3, r4), processAll(3));
+    assertEquals(7, transport.released.get());
+  }
+
+  public void testResponsesFirst() throws Exception {
+    createDispatcher(4, InboundQueuePolicy.prioritizeResponses);
+    ByteBuffer m0 = receiveInFlight();
+    ByteBuffer m1 = request(), r2 = response(), m3 = request(), r4 = response();
+    receive(m1);
+    receive(r2);
+    receive(m3);
+    receive(r4);
+    assertEquals(0, dispatcher.getDroppedMessages());
+    assertEquals(Arrays.asList(m0, r2, r4, m1, m3), processAll(5));
+  }
+
+  public void testStopReleasesQueuedMessages() throws Exception {
+    createDispatcher(4, InboundQueuePolicy.dropNewest);
+    ByteBuffer m0 = receiveInFlight();
+    receive(request());
+    receive(request());
+    // stop() waits for the queue thread, which waits for the worker
+    new Thread() {
+      public void run() {
+        try {
+          Thread.sleep(50);
+        }
+        catch (InterruptedException iex) {
+          // release anyway
+        }
+        release.countDown();
+      }
+    }.start();
+    dispatcher.stop();
+    assertEquals(Collections.singletonList(m0), processAll(1));
+    assertEquals(3, transport.released.get());
+    receive(request());
+    assertEquals(4, transport.released.get());
+    assertEquals(1, dispatcher.getDroppedMessages());
+    dispatcher = null;
+  }
+
+  public void testIsResponse() throws Exception {
+    assertFalse(isResponse(message(SnmpConstants.version1, pdu(PDU.GET))));
+    assertFalse(isResponse(message(SnmpConstants.version2c, pdu(PDU.GETBULK))));
+    assertFalse(isResponse(message(SnmpConstants.version2c, pdu(PDU.SET))));
+    assertFalse(isResponse(message(SnmpConstants.version2c, pdu(PDU.NOTIFICATION))));
+    assertFalse(isResponse(message(SnmpConstants.version2c, pdu(PDU.INFORM))));
+    assertFalse(isResponse(message(SnmpConstants.version1, new PDUv1())));
+    assertTrue(isResponse(message(SnmpConstants.version1, pdu(PDU.RESPONSE))));
+    assertTrue(isResponse(message(SnmpConstants.version2c, pdu(PDU.RESPONSE))));
+    assertTrue(isResponse(message(SnmpConstants.version2c, pdu(PDU.REPORT))));
+    assertFalse(isResponse(messageV3(MPv3.MPv3_REPORTABLE_FLAG)));
+    assertFalse(isResponse(messageV3(MPv3.MPv3_REPORTABLE_FLAG | 3)));
+    assertTrue(isResponse(messageV3(0)));
+    assertTrue(isResponse(messageV3(3)));
+    assertFalse(isResponse(ByteBuffer.wrap(new byte[] { 0x30, 0x03, 0x02 })));
+    assertFalse(isResponse(ByteBuffer.allocate(0)));
+  }
+
+  private static boolean isResponse(ByteBuffer message) {
+    int position = message.position();
+    boolean response = MultiThreadedMessageDispatcher.isResponse(message);
+    assertEquals(position, message.position());
+    return response;
+  }
+
+  private static PDU pdu(int type) {
+    PDU pdu = new PDU();
+    pdu.setType(type);
+    pdu.setRequestID(new Integer32(4711));
+    pdu.add(new VariableBinding(SnmpConstants.sysDescr));
+    return pdu;
+  }
+
+  private static ByteBuffer request() throws IOException {
+    return message(SnmpConstants.version2c, pdu(PDU.GET));
+  }
+
+  private static ByteBuffer response() throws IOException {
+    return message(SnmpConstants.version2c, pdu(PDU.RESPONSE));
+  }
+
+  private static ByteBuffer encode(BERSerializable... elements)
+      throws IOException
+  {
+    int length = 0;
+    for (BERSerializable e : elements) {
+      length += e.getBERLength();
+    }
+    ByteBuffer buffer =
+        ByteBuffer.allocate(1 + BER.getBERLengthOfLength(length) + length);
+    BEROutputStream os = new BEROutputStream(buffer);
+    BER.encodeHeader(os, BER.SEQUENCE, length);
+    for (BERSerializable e : elements) {
+      e.encodeBER(os);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static ByteBuffer message(int version, PDU pdu) throws IOException {
+    return encode(new Integer32(version), new OctetString("public"), pdu);
+  }
+
+  private static ByteBuffer messageV3(int flags) throws IOException {
+    final ByteBuffer globalData =
+        encode(new Integer32(4711), new Integer32(65535),
+               new OctetString(new byte[] { (byte) flags }), new Integer32(3));
+    BERSerializable header = new BERSerializable() {
+      public int getBERLength() {
+        return globalData.limit();
+      }
+
+      public int getBERPayloadLength() {
+        return globalData.limit();
+      }
+
+      public void decodeBER(org.snmp4j.asn1.BERInputStream inputStream) {
+      }
+
+      public void encodeBER(java.io.OutputStream outputStream)
+          throws IOException
+      {
+        outputStream.write(globalData.array(), 0, globalData.limit());
+      }
+    };
+    return encode(new Integer32(SnmpConstants.version3), header,
+                  new OctetString(), new OctetString(new byte[8]));
+  }
+
+  /**
+   * Records the messages in the order they are processed.
+   */
+  static class RecordingDispatcher extends MessageDispatcherImpl {
+    final List<ByteBuffer> processed =
+        Collections.synchronizedList(new ArrayList<ByteBuffer>());
+
+    public void processMessage(TransportMapping sourceTransport,
+                               Address incomingAddress,
+                               ByteBuffer wholeMessage,
+                               TransportStateReference tmStateReference) {
+      processed.add(wholeMessage);
+    }
+  }
+}
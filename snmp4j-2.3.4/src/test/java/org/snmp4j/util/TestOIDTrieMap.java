@@ -0,0 +1,226 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestOIDTrieMap.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import junit.framework.*;
+
+import java.util.*;
+
+import org.snmp4j.smi.OID;
+
+/**
+ * Tests {@link OIDTrieMap} against a {@link TreeMap} with random OIDs.
+ * @author Frank Fock
+ * @since 2.4
+ */
+public class TestOIDTrieMap extends TestCase {
+
+  private Random random;
+  private OIDTrieMap<Integer> trie;
+  private TreeMap<OID,Integer> tree;
+
+  public TestOIDTrieMap(String s) {
+    super(s);
+  }
+
+  protected void setUp() {
+    random = new Random(4976);
+    trie = new OIDTrieMap<Integer>();
+    tree = new TreeMap<OID,Integer>();
+  }
+
+  protected void tearDown() {
+    trie = null;
+    tree = null;
+  }
+
+  private OID randomOID() {
+    int[] value = new int[random.nextInt(7)];
+    for (int i=0; i<value.length; i++) {
+      int r = random.nextInt(10);
+      value[i] = (r == 0) ? -1 : ((r == 1) ? Integer.MAX_VALUE : r % 4);
+    }
+    return new OID(value);
+  }
+
+  private void fill(int count) {
+    for (int i=0; i<count; i++) {
+      OID oid = randomOID();
+      assertEquals(tree.put(oid, i), trie.put(oid, i));
+    }
+  }
+
+  private static void assertSameMap(NavigableMap<OID,Integer> expected,
+                                    NavigableMap<OID,Integer> actual) {
+    assertEquals(expected.size(), actual.size());
+    assertEquals(expected.isEmpty(), actual.isEmpty());
+    assertEquals(new ArrayList<Map.Entry<OID,Integer>>(expected.entrySet()),
+                 new ArrayList<Map.Entry<OID,Integer>>(actual.entrySet()));
+    assertEquals(new ArrayList<OID>(expected.descendingKeySet()),
+                 new ArrayList<OID>(actual.descendingKeySet()));
+    assertEquals(expected.firstEntry(), actual.firstEntry());
+    assertEquals(expected.lastEntry(), actual.lastEntry());
+    assertEquals(expected, actual);
+    assertEquals(expected.hashCode(), actual.hashCode());
+  }
+
+  private void assertNavigation(NavigableMap<OID,Integer> expected,
+                                NavigableMap<OID,Integer> actual) {
+    for (int i=0; i<200; i++) {
+      OID oid = randomOID();
+      String msg = oid.toString();
+      assertEquals(msg, expected.get(oid), actual.get(oid));
+      assertEquals(msg, expected.containsKey(oid), actual.containsKey(oid));
+      assertEquals(msg, expected.ceilingEntry(oid), actual.ceilingEntry(oid));
+      assertEquals(msg, expected.higherEntry(oid), actual.higherEntry(oid));
+      assertEquals(msg, expected.floorEntry(oid), actual.floorEntry(oid));
+      assertEquals(msg, expected.lowerEntry(oid), actual.lowerEntry(oid));
+    }
+  }
+
+  public void testPutGetRemove() {
+    fill(3000);
+    assertSameMap(tree, trie);
+    assertNavigation(tree, trie);
+    for (int i=0; i<3000; i++) {
+      OID oid = randomOID();
+      assertEquals(tree.remove(oid), trie.remove(oid));
+    }
+    assertSameMap(tree, trie);
+    assertNavigation(tree, trie);
+    fill(500);
+    assertSameMap(tree, trie);
+    trie.clear();
+    assertTrue(trie.isEmpty());
+    assertNull(trie.firstEntry());
+    assertNull(trie.ceilingEntry(new OID("1.3")));
+  }
+
+  public void testIteratorRemove() {
+    fill(2000);
+    Iterator<Map.Entry<OID,Integer>> it = trie.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<OID,Integer> entry = it.next();
+      if (entry.getValue() % 3 == 0) {
+        it.remove();
+        tree.remove(entry.getKey());
+      }
+      else {
+        entry.setValue(-entry.getValue());
+        tree.put(entry.getKey(), entry.getValue());
+      }
+    }
+    assertSameMap(tree, trie);
+    Iterator<OID> keys = trie.descendingKeySet().iterator();
+    while (keys.hasNext()) {
+      OID key = keys.next();
+      if (key.size() % 2 == 0) {
+        keys.remove();
+        tree.remove(key);
+      }
+    }
+    assertSameMap(tree, trie);
+    assertNavigation(tree, trie);
+    try {
+      for (OID key : trie.keySet()) {
+        trie.remove(key);
+      }
+      fail("Concurrent modification not detected");
+    }
+    catch (ConcurrentModificationException cmex) {
+      // expected
+    }
+  }
+
+  public void testViews() {
+    fill(2000);
+    for (int i=0; i<50; i++) {
+      OID a = randomOID();
+      OID b = randomOID();
+      if (a.compareTo(b) > 0) {
+        OID t = a;
+        a = b;
+        b = t;
+      }
+      boolean ai = random.nextBoolean();
+      boolean bi = random.nextBoolean();
+      assertSameMap(tree.subMap(a, ai, b, bi), trie.subMap(a, ai, b, bi));
+      assertSameMap(tree.headMap(b, bi), trie.headMap(b, bi));
+      assertSameMap(tree.tailMap(a, ai), trie.tailMap(a, ai));
+      assertSameMap(tree.descendingMap().subMap(b, bi, a, ai),
+                    trie.descendingMap().subMap(b, bi, a, ai));
+      assertNavigation(tree.subMap(a, ai, b, bi), trie.subMap(a, ai, b, bi));
+      assertNavigation(tree.descendingMap().headMap(a, ai),
+                       trie.descendingMap().headMap(a, ai));
+    }
+    assertSameMap(tree.descendingMap(), trie.descendingMap());
+    assertNavigation(tree.descendingMap(), trie.descendingMap());
+    OID a = new OID("1.2");
+    OID b = new OID("1.3");
+    trie.subMap(a, b).clear();
+    tree.subMap(a, b).clear();
+    assertSameMap(tree, trie);
+    assertEquals(tree.pollFirstEntry(), trie.pollFirstEntry());
+    assertEquals(tree.descendingMap().pollFirstEntry(),
+                 trie.descendingMap().pollFirstEntry());
+    assertSameMap(tree, trie);
+    try {
+      trie.headMap(a).put(b, 1);
+      fail("Key out of range not detected");
+    }
+    catch (IllegalArgumentException iaex) {
+      // expected
+    }
+  }
+
+  public void testPrefixMap() {
+    fill(2000);
+    for (int i=0; i<200; i++) {
+      OID prefix = randomOID();
+      NavigableMap<OID,Integer> expected = new TreeMap<OID,Integer>();
+      for (Map.Entry<OID,Integer> e : tree.tailMap(prefix, true).entrySet()) {
+        if (!e.getKey().startsWith(prefix)) {
+          break;
+        }
+        expected.put(e.getKey(), e.getValue());
+      }
+      NavigableMap<OID,Integer> actual = trie.prefixMap(prefix);
+      assertSameMap(expected, actual);
+      assertNavigation(expected, actual);
+      assertSameMap(expected.descendingMap(), actual.descendingMap());
+    }
+  }
+
+  public void testLongestPrefixEntry() {
+    fill(500);
+    for (int i=0; i<1000; i++) {
+      OID oid = randomOID();
+      Map.Entry<OID,Integer> expected = null;
+      for (int n=oid.size(); (n >= 0) && (expected == null); n--) {
+        OID prefix = new OID(oid.getValue(), 0, n);
+        if (tree.containsKey(prefix)) {
+          expected = new AbstractMap.SimpleImmutableEntry<OID,Integer>(prefix,
+              tree.get(prefix));
+        }
+      }
+      assertEquals(oid.toString(), expected, trie.longestPrefixEntry(oid));
+    }
+  }
+}
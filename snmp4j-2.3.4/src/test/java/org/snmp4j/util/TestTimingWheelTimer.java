@@ -0,0 +1,249 @@
+/*_############################################################################
+  _## 
+  _##  SNMP4J 2 - TestTimingWheelTimer.java  
+  _## 
+  _##  Copyright (C) 2003-2013  Frank Fock and Jochen Katz (SNMP4J.org)
+  _##  
+  _##  Licensed under the Apache License, Version 2.0 (the "License");
+  _##  you may not use this file except in compliance with the License.
+  _##  You may obtain a copy of the License at
+  _##  
+  _##      http://www.apache.org/licenses/LICENSE-2.0
+  _##  
+  _##  Unless required by applicable law or agreed to in writing, software
+  _##  distributed under the License is distributed on an "AS IS" BASIS,
+  _##  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  _##  See the License for the specific language governing permissions and
+  _##  limitations under the License.
+  _##  
+  _##########################################################################*/
+package org.snmp4j.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the {@link TimingWheelTimer}.
+ *
+ * @author Frank Fock
+ * @version 2.4
+ * @since 2.4
+ */
+public class TestTimingWheelTimer extends TestCase {
+
+  private TimingWheelTimer timer;
+
+  public TestTimingWheelTimer(String name) {
+    super(name);
+  }
+
+  protected void setUp() throws Exception {
+    timer = new TimingWheelTimer(2, 8);
+  }
+
+  protected void tearDown() throws Exception {
+    timer.cancel();
+  }
+
+  public void testWheelSize() {
+    assertEquals(8, timer.getWheelSize());
+    assertEquals(2, timer.getTickMillis());
+    TimingWheelTimer t = new TimingWheelTimer(1, 5);
+    try {
+      assertEquals(8, t.getWheelSize());
+    }
+    finally {
+      t.cancel();
+    }
+    try {
+      new TimingWheelTimer(0, 8);
+      fail("Zero tick duration accepted");
+    }
+    catch (IllegalArgumentException iaex) {
+      // expected
+    }
+  }
+
+  public void testOrdering() throws Exception {
+    List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+    CountDownLatch latch = new CountDownLatch(4);
+    timer.schedule(new RecordingTask(order, 60, latch), 60);
+    timer.schedule(new RecordingTask(order, 5, latch), 5);
+    timer.schedule(new RecordingTask(order, 40, latch), 40);
+    timer.schedule(new RecordingTask(order, 20, latch), 20);
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(java.util.Arrays.asList(5, 20, 40, 60), order);
+  }
+
+  public void testNeverEarly() throws Exception {
+    int[] delays = { 1, 2, 3, 7, 15, 16, 17, 31, 50 };
+    TimedTask[] tasks = new TimedTask[delays.length];
+    CountDownLatch latch = new CountDownLatch(delays.length);
+    for (int i=0; i<delays.length; i++) {
+      tasks[i] = new TimedTask(latch);
+      timer.schedule(tasks[i], delays[i]);
+      // measure from after scheduling, which is later than the task's start
+      tasks[i].scheduled = System.nanoTime();
+    }
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    for (int i=0; i<delays.length; i++) {
+      assertTrue("Task with delay "+delays[i]+" ran early",
+                 tasks[i].getDelayNanos() >= TimeUnit.MILLISECONDS.toNanos(delays[i]));
+    }
+  }
+
+  public void testSeveralRounds() throws Exception {
+    // one revolution of the wheel takes 16ms
+    TimedTask task = new TimedTask(new CountDownLatch(1));
+    timer.schedule(task, 100);
+    Thread.sleep(60);
+    assertEquals(0, task.runs.get());
+    assertTrue(task.latch.await(5, TimeUnit.SECONDS));
+    assertTrue(task.getDelayNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+    Thread.sleep(40);
+    assertEquals(1, task.runs.get());
+  }
+
+  public void testCancelableTaskRemoved() throws Exception {
+    CancelableTimedTask cancelled = new CancelableTimedTask(new CountDownLatch(1));
+    CancelableTimedTask later = new CancelableTimedTask(new CountDownLatch(1));
+    TimedTask other = new TimedTask(new CountDownLatch(1));
+    timer.schedule(cancelled, 20);
+    timer.schedule(later, 20);
+    timer.schedule(other, 30);
+    later.cancel();
+    // cancel a task after it has been moved into its slot
+    Thread.sleep(5);
+    cancelled.cancel();
+    assertTrue(other.latch.await(5, TimeUnit.SECONDS));
+    assertEquals(0, cancelled.runs.get());
+    assertEquals(0, later.runs.get());
+  }
+
+  public void testPeriodicTask() throws Exception {
+    CancelableTimedTask task = new CancelableTimedTask(new CountDownLatch(3));
+    timer.schedule(task, 0, 10);
+    assertTrue(task.latch.await(5, TimeUnit.SECONDS));
+    // fixed-delay execution: three runs take at least two periods
+    assertTrue(task.getDelayNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+    task.cancel();
+    Thread.sleep(20);
+    int runs = task.runs.get();
+    Thread.sleep(40);
+    assertEquals(runs, task.runs.get());
+  }
+
+  public void testPeriodicTaskWithFirstTime() throws Exception {
+    TimedTask task = new TimedTask(new CountDownLatch(2));
+    timer.schedule(task, new Date(System.currentTimeMillis() + 10), 10);
+    assertTrue(task.latch.await(5, TimeUnit.SECONDS));
+  }
+
+  public void testFailingTaskDoesNotStopTimer() throws Exception {
+    timer.schedule(new TimerTask() {
+      public void run() {
+        throw new RuntimeException("Test failure");
+      }
+    }, 0);
+    TimedTask task = new TimedTask(new CountDownLatch(1));
+    timer.schedule(task, 10);
+    assertTrue(task.latch.await(5, TimeUnit.SECONDS));
+  }
+
+  public void testCancel() throws Exception {
+    TimedTask task = new TimedTask(new CountDownLatch(1));
+    timer.schedule(task, 20);
+    timer.schedule(new TimedTask(new CountDownLatch(1)), 0, 5);
+    timer.cancel();
+    try {
+      timer.schedule(new TimedTask(new CountDownLatch(1)), 0);
+      fail("Cancelled timer accepted a task");
+    }
+    catch (IllegalStateException isex) {
+      // expected
+    }
+    Thread.sleep(60);
+    assertEquals(0, task.runs.get());
+  }
+
+  public void testIllegalArguments() {
+    TimedTask task = new TimedTask(new CountDownLatch(1));
+    try {
+      timer.schedule(task, -1);
+      fail("Negative delay accepted");
+    }
+    catch (IllegalArgumentException iaex) {
+      // expected
+    }
+    try {
+      timer.schedule(task, 0, 0);
+      fail("Zero period accepted");
+    }
+    catch (IllegalArgumentException iaex) {
+      // expected
+    }
+  }
+
+  static class RecordingTask extends TimerTask {
+    private final List<Integer> order;
+    private final int id;
+    private final CountDownLatch latch;
+
+    RecordingTask(List<Integer> order, int id, CountDownLatch latch) {
+      this.order = order;
+      this.id = id;
+      this.latch = latch;
+    }
+
+    public void run() {
+      order.add(id);
+      latch.countDown();
+    }
+  }
+
+  static class TimedTask extends TimerTask {
+    volatile long scheduled = System.nanoTime();
+    final AtomicInteger runs = new AtomicInteger();
+    final CountDownLatch latch;
+    volatile long lastRun;
+
+    TimedTask(CountDownLatch latch) {
+      this.latch = latch;
+    }
+
+    public void run() {
+      lastRun = System.nanoTime();
+      runs.incrementAndGet();
+      latch.countDown();
+    }
+
+    long getDelayNanos() {
+      return lastRun - scheduled;
+    }
+  }
+
+  static class CancelableTimedTask extends TimedTask implements CancelableTask {
+    private volatile boolean cancelled;
+
+    CancelableTimedTask(CountDownLatch latch) {
+      super(latch);
+    }
+
+    public boolean cancel() {
+      cancelled = true;
+      return super.cancel();
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+  }
+}
@@ -21,6 +21,7 @@
 package org.snmp4j.agent;
 
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.snmp4j.*;
 import org.snmp4j.agent.mo.lock.LockRequest;
@@ -157,7 +158,14 @@ public class CommandProcessor
         event.setProcessed(true);
         Command command = new Command(event, cinfo);
         if (threadPool != null) {
-          threadPool.execute(command);
+          try {
+            threadPool.execute(command);
+          }
+          catch (RejectedExecutionException rex) {
+            // the worker pool is exhausted, the command sender will retry
+            logger.warn("Dropped request "+event.getPDU().getRequestID()+
+                        " from "+event.getPeerAddress()+": "+rex.getMessage());
+          }
         }
         else {
           command.run();
@@ -176,7 +184,15 @@ public class CommandProcessor
                          proxy);
           }
           if (threadPool != null) {
-            threadPool.execute(command);
+            try {
+              threadPool.execute(command);
+            }
+            catch (RejectedExecutionException rex) {
+              logger.warn("Dropped proxy request "+
+                          event.getPDU().getRequestID()+": "+rex.getMessage());
+              fireIncrementCounter(
+                  new CounterEvent(this, SnmpConstants.snmpProxyDrops));
+            }
           }
           else {
             command.run();
@@ -206,7 +222,12 @@ public class CommandProcessor
   }
 
   /**
-   * Sets the internal thread pool for task execution.
+   * Sets the internal thread pool for task execution. An
+   * {@link ExecutorWorkerPool} can be used to bound the number of pending
+   * requests, or to process each request in its own (virtual) thread, so that
+   * requests blocking on I/O (for example proxy requests) do not delay the
+   * processing of other requests. Requests rejected by the worker pool are
+   * dropped.
    *
    * @param threadPool
    *    a pool of workers/threads which can execute tasks.
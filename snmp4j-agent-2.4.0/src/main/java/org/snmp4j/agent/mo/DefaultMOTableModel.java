@@ -20,7 +20,7 @@
 
 package org.snmp4j.agent.mo;
 
-import java.util.TreeMap;
+import org.snmp4j.util.OIDTrieMap;
 import java.util.Collections;
 import java.util.SortedMap;
 import org.snmp4j.smi.OID;
@@ -31,7 +31,7 @@ import java.io.IOException;
 
 public class DefaultMOTableModel<R extends MOTableRow> implements MOTableModel<R> {
 
-  protected SortedMap<OID, R> rows = Collections.synchronizedSortedMap(new TreeMap<OID, R>());
+  protected SortedMap<OID, R> rows = Collections.synchronizedSortedMap(new OIDTrieMap<R>());
   protected int columnCount = 0;
 
   public DefaultMOTableModel() {
@@ -99,7 +99,7 @@ public class ProxyForwarderImpl implements ProxyForwarder {
         if (!translatedResponse.getClass().equals(respPDU.getClass())) {
           // not required PDU instance -> copy data
           translatedResponse.setType(respPDU.getType());
-          translatedResponse.addAll(respPDU.toArray());
+          translatedResponse.addAll(respPDU.getVariableBindingList());
           translatedResponse.setErrorIndex(respPDU.getErrorIndex());
           translatedResponse.setErrorStatus(respPDU.getErrorStatus());
         }
@@ -324,7 +324,7 @@ public class ProxyForwarderImpl implements ProxyForwarder {
                                          sourceV1.getEnterprise(),
                                          sourceV1.getGenericTrap(),
                                          sourceV1.getSpecificTrap())));
-      target.addAll(source.toArray());
+      target.addAll(source.getVariableBindingList());
       target.add(new VariableBinding(SnmpConstants.snmpTrapAddress,
                                      sourceV1.getAgentAddress()));
       target.add(new VariableBinding(SnmpConstants.snmpTrapEnterprise,
@@ -369,7 +369,7 @@ public class ProxyForwarderImpl implements ProxyForwarder {
         targetV1.setGenericTrap(genericID);
         targetV1.setSpecificTrap(0);
       }
-      target.addAll(source.toArray());
+      target.addAll(source.getVariableBindingList());
       if (request.getCommandEvent().getPeerAddress() instanceof IpAddress) {
         InetAddress agentAddress = ((IpAddress)
            request.getCommandEvent().getPeerAddress()).getInetAddress();
@@ -381,7 +381,7 @@ public class ProxyForwarderImpl implements ProxyForwarder {
       targetV1.setTimestamp(sysUpTime.getValue());
     }
     else {
-      target.addAll(source.toArray());
+      target.addAll(source.getVariableBindingList());
     }
   }
 
@@ -178,7 +178,7 @@ public class MOSubtreeProxy implements ManagedObject {
           request.setErrorStatus(rpdu.getErrorStatus());
         }
         else {
-          VariableBinding rvb = resp.getResponse().getVariableBindings().get(0);
+          VariableBinding rvb = resp.getResponse().getVariableBindingList().get(0);
           OID nextOID = rvb.getOid();
           if (translation != null) {
             nextOID = translation.backwardTranslate(nextOID);
@@ -219,7 +219,7 @@ public class MOSubtreeProxy implements ManagedObject {
           if (rpdu.getErrorStatus() != PDU.noError) {
             request.setErrorStatus(rpdu.getErrorStatus());
           }
-          VariableBinding rvb = rpdu.getVariableBindings().get(0);
+          VariableBinding rvb = rpdu.getVariableBindingList().get(0);
           if ((rvb == null) || rvb.isException()) {
             request.setErrorStatus(PDU.noSuchName);
           }
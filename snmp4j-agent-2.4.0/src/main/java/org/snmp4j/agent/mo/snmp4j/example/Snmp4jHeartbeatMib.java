@@ -44,6 +44,7 @@ import org.snmp4j.agent.io.MOInput;
 import java.io.IOException;
 import org.snmp4j.agent.io.MOOutput;
 import org.snmp4j.SNMP4JSettings;
+import org.snmp4j.util.CancelableTask;
 import org.snmp4j.util.CommonTimer;
 
 //--AgentGen BEGIN=_IMPORT
@@ -574,9 +575,10 @@ public class Snmp4jHeartbeatMib
 
 //--AgentGen BEGIN=_CLASSES
 
-  class HeartbeatTask extends TimerTask {
+  class HeartbeatTask extends TimerTask implements CancelableTask {
 
     private Snmp4jAgentHBCtrlEntryRow configRow;
+    private volatile boolean cancelled;
 
     public HeartbeatTask(Snmp4jAgentHBCtrlEntryRow configRow) {
       this.configRow = configRow;
@@ -607,6 +609,15 @@ public class Snmp4jHeartbeatMib
         cancel();
       }
     }
+
+    public boolean cancel() {
+      cancelled = true;
+      return super.cancel();
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
   }
 
 //--AgentGen END
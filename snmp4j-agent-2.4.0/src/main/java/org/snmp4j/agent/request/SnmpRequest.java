@@ -187,7 +187,7 @@ public class SnmpRequest extends AbstractRequest<SnmpRequest.SnmpSubRequest, Com
   }
 
   private PDU createResponse() {
-    PDU resp = (PDU) source.getPDU().clone();
+    PDU resp = source.getPDU().copyOnWriteClone();
     resp.clear();
     resp.setType(PDU.RESPONSE);
     resp.setRequestID(source.getPDU().getRequestID());
@@ -479,7 +479,7 @@ public class SnmpRequest extends AbstractRequest<SnmpRequest.SnmpSubRequest, Com
                     List tail = subrequests.subList(lastElementIndex + 1,
                         subrequests.size());
                     tail.clear();
-                    tail = response.getVariableBindings().
+                    tail = response.getVariableBindingList().
                         subList(lastElementIndex + 1, response.size());
                     tail.clear();
                   }